@@ -0,0 +1,31 @@
+package com.demo.notecam;
+
+import android.graphics.Bitmap;
+
+// mutable bitmaps for BitmapFactory.Options.inBitmap; the decoder allocates on a miss
+public final class BitmapPool extends BufferPool<Bitmap> {
+
+  public BitmapPool(long budgetBytes) {
+    super(budgetBytes);
+  }
+
+  @Override
+  protected int sizeOf(Bitmap bitmap) {
+    return bitmap.getAllocationByteCount();
+  }
+
+  @Override
+  protected Bitmap create(int size) {
+    return null;
+  }
+
+  @Override
+  protected boolean isReusable(Bitmap bitmap) {
+    return bitmap.isMutable() && !bitmap.isRecycled();
+  }
+
+  @Override
+  protected void onEvicted(Bitmap bitmap) {
+    bitmap.recycle();
+  }
+}
@@ -0,0 +1,129 @@
+package com.demo.notecam;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+// keeps released buffers around for reuse, looked up by size. pooled memory is capped by a
+// budget and the least recently released buffers are dropped first when it is exceeded.
+public abstract class BufferPool<T> {
+
+  // a pooled buffer may be at most this many times larger than what was asked for
+  private static final int MAX_OVERSIZE = 2;
+
+  private final long budgetBytes;
+  private final TreeMap<Integer, ArrayDeque<T>> bySize = new TreeMap<>();
+  // identity of each pooled buffer to its size, in release order
+  private final LinkedHashMap<T, Integer> lru = new LinkedHashMap<>();
+  private long pooledBytes;
+  private long hits;
+  private long misses;
+  private long evictions;
+
+  protected BufferPool(long budgetBytes) {
+    this.budgetBytes = budgetBytes;
+  }
+
+  // size in bytes the buffer can hold
+  protected abstract int sizeOf(T buffer);
+
+  // a fresh buffer of at least size bytes, or null if the caller allocates on a miss
+  protected abstract T create(int size);
+
+  // whether the buffer may be handed out again
+  protected boolean isReusable(T buffer) {
+    return true;
+  }
+
+  protected void onEvicted(T buffer) {}
+
+  public synchronized T acquire(int size) {
+    Map.Entry<Integer, ArrayDeque<T>> entry = bySize.ceilingEntry(size);
+    while (entry != null && entry.getKey() <= (long) size * MAX_OVERSIZE) {
+      T buffer = entry.getValue().pollLast();
+      if (entry.getValue().isEmpty()) bySize.remove(entry.getKey());
+      lru.remove(buffer);
+      pooledBytes -= entry.getKey();
+      if (isReusable(buffer)) {
+        hits++;
+        return buffer;
+      }
+      entry = bySize.ceilingEntry(size);
+    }
+    misses++;
+    return create(size);
+  }
+
+  public synchronized void release(T buffer) {
+    if (buffer == null || lru.containsKey(buffer) || !isReusable(buffer)) return;
+    int size = sizeOf(buffer);
+    if (size > budgetBytes) {
+      evictions++;
+      onEvicted(buffer);
+      return;
+    }
+    ArrayDeque<T> bucket = bySize.get(size);
+    if (bucket == null) {
+      bucket = new ArrayDeque<>();
+      bySize.put(size, bucket);
+    }
+    bucket.addLast(buffer);
+    lru.put(buffer, size);
+    pooledBytes += size;
+    trimTo(budgetBytes);
+  }
+
+  public synchronized void clear() {
+    trimTo(0);
+  }
+
+  private void trimTo(long maxBytes) {
+    Iterator<Map.Entry<T, Integer>> it = lru.entrySet().iterator();
+    while (pooledBytes > maxBytes && it.hasNext()) {
+      Map.Entry<T, Integer> eldest = it.next();
+      it.remove();
+      ArrayDeque<T> bucket = bySize.get(eldest.getValue());
+      bucket.remove(eldest.getKey());
+      if (bucket.isEmpty()) bySize.remove(eldest.getValue());
+      pooledBytes -= eldest.getValue();
+      evictions++;
+      onEvicted(eldest.getKey());
+    }
+  }
+
+  public synchronized long getPooledBytes() {
+    return pooledBytes;
+  }
+
+  public long getBudgetBytes() {
+    return budgetBytes;
+  }
+
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  public synchronized long getEvictions() {
+    return evictions;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return String.format(
+        Locale.US,
+        "%s: hits=%d misses=%d evictions=%d pooled=%dKB/%dKB",
+        getClass().getSimpleName(),
+        hits,
+        misses,
+        evictions,
+        pooledBytes / 1024,
+        budgetBytes / 1024);
+  }
+}
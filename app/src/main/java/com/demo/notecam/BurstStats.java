@@ -0,0 +1,123 @@
+package com.demo.notecam;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+// what one press-and-hold burst achieved. latencies are shutter request to saved photo. a shot
+// belongs to the burst it was fired in and is pending until it is saved, failed or dropped, the
+// stats are final once the burst has stopped and nothing it fired is pending
+public final class BurstStats {
+
+  private final int targetFps;
+  // newest samples overwrite the oldest once the burst outlives the buffer
+  private final long[] latencies;
+  private int latencyCount;
+  private long startNanos;
+  private long stopNanos;
+  private boolean stopped;
+  private int pending;
+  private int saved;
+  private int failed;
+  private int dropped;
+  private int coalesced;
+
+  public BurstStats(int targetFps, int latencyCapacity) {
+    this.targetFps = targetFps;
+    this.latencies = new long[latencyCapacity];
+  }
+
+  public synchronized void start(long nowNanos) {
+    startNanos = nowNanos;
+  }
+
+  // the shutter was fired for this burst
+  public synchronized void onShotFired() {
+    pending++;
+  }
+
+  // the frame was captured but the pipeline was full; true when the stats are now final
+  public synchronized boolean onDropped() {
+    pending--;
+    dropped++;
+    return stopped && pending == 0;
+  }
+
+  // the camera never delivered a frame for the shot; true when the stats are now final
+  public synchronized boolean onShotLost() {
+    pending--;
+    failed++;
+    return stopped && pending == 0;
+  }
+
+  // the tick came while the camera was still busy with the previous frame
+  public synchronized void onCoalesced() {
+    coalesced++;
+  }
+
+  // returns true when this was the last shot of a stopped burst, i.e. the stats are final
+  public synchronized boolean onShotFinished(long latencyNanos, boolean success) {
+    pending--;
+    if (success) {
+      saved++;
+      latencies[latencyCount++ % latencies.length] = latencyNanos;
+    } else {
+      failed++;
+    }
+    return stopped && pending == 0;
+  }
+
+  // returns true when no shot is left in flight, otherwise the last onShotFinished will say so
+  public synchronized boolean stop(long nowNanos) {
+    stopped = true;
+    stopNanos = nowNanos;
+    return pending == 0;
+  }
+
+  public synchronized double getAchievedFps() {
+    long duration = (stopped ? stopNanos : System.nanoTime()) - startNanos;
+    return duration <= 0 ? 0 : saved * 1e9 / duration;
+  }
+
+  public synchronized int getSaved() {
+    return saved;
+  }
+
+  public synchronized int getFailed() {
+    return failed;
+  }
+
+  public synchronized int getDropped() {
+    return dropped;
+  }
+
+  public synchronized int getCoalesced() {
+    return coalesced;
+  }
+
+  // nearest-rank percentile of the recorded latencies, 0 when there are none
+  public synchronized long getLatencyPercentile(double percentile) {
+    int n = Math.min(latencyCount, latencies.length);
+    if (n == 0) return 0;
+    long[] sorted = Arrays.copyOf(latencies, n);
+    Arrays.sort(sorted);
+    int rank = (int) Math.ceil(percentile / 100 * n);
+    return sorted[Math.max(0, Math.min(n, rank) - 1)];
+  }
+
+  @Override
+  public synchronized String toString() {
+    return String.format(
+        Locale.US,
+        "burst: %.1f/%d fps, saved=%d failed=%d dropped=%d coalesced=%d,"
+            + " latency p50=%dms p95=%dms p99=%dms",
+        getAchievedFps(),
+        targetFps,
+        saved,
+        failed,
+        dropped,
+        coalesced,
+        getLatencyPercentile(50) / 1_000_000,
+        getLatencyPercentile(95) / 1_000_000,
+        getLatencyPercentile(99) / 1_000_000);
+  }
+}
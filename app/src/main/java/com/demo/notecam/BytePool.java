@@ -0,0 +1,23 @@
+package com.demo.notecam;
+
+public final class BytePool extends BufferPool<byte[]> {
+
+  // encoded sizes differ a little from shot to shot, leave room so the next one still fits
+  private static final int GRANULARITY = 64 * 1024;
+
+  public BytePool(long budgetBytes) {
+    super(budgetBytes);
+  }
+
+  @Override
+  protected int sizeOf(byte[] buffer) {
+    return buffer.length;
+  }
+
+  @Override
+  protected byte[] create(int size) {
+    long padded = size + size / 8L;
+    padded = (padded + GRANULARITY - 1) / GRANULARITY * GRANULARITY;
+    return new byte[(int) Math.min(padded, Integer.MAX_VALUE - 8)];
+  }
+}
@@ -2,110 +2,311 @@ package com.demo.notecam;
 
 import android.Manifest;
 import android.app.Dialog;
+import android.content.ContentUris;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.res.Configuration;
 import android.graphics.Bitmap;
+import android.hardware.camera2.CameraManager;
+import android.hardware.camera2.CameraMetadata;
 import android.location.Location;
 import android.media.SoundPool;
+import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.PowerManager;
+import android.os.SystemClock;
 import android.util.Log;
-import android.view.View;
+import android.util.Size;
+import android.view.MotionEvent;
 import android.view.Window;
 import android.view.WindowManager;
 
 import androidx.activity.result.ActivityResultLauncher;
 import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.annotation.NonNull;
+import androidx.annotation.OptIn;
+import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.camera.camera2.interop.Camera2CameraInfo;
+import androidx.camera.camera2.interop.ExperimentalCamera2Interop;
+import androidx.camera.core.CameraInfo;
 import androidx.camera.core.CameraSelector;
 import androidx.camera.core.ImageCapture;
+import androidx.camera.core.ImageCaptureException;
 import androidx.camera.core.ImageProxy;
-import androidx.camera.core.Preview;
 import androidx.camera.lifecycle.ProcessCameraProvider;
+import androidx.camera.view.CameraController;
 import androidx.camera.view.LifecycleCameraController;
+import androidx.camera.view.PreviewView;
 import androidx.core.content.ContextCompat;
 
 import com.demo.notecam.databinding.ActivityCameraBinding;
-import com.demo.notecam.databinding.MetaDataBinding;
 import com.google.android.material.button.MaterialButton;
 import com.google.common.util.concurrent.ListenableFuture;
 
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class CameraActivity extends AppCompatActivity {
 
   private static final String TAG = "CameraActivity";
   private static final String FILENAME_FORMAT = "yyyy-MM-dd-HH-mm-ss-SSS";
+  // shots allowed between shutter and MediaStore before new captures are refused
+  private static final int MAX_SHOTS_IN_FLIGHT = 3;
+  // share of the heap the capture buffer pools may hold on to
+  private static final int POOL_HEAP_DIVISOR = 4;
+  // finished photos published to the gallery per MediaStore batch while shots keep coming
+  private static final int PUBLISH_BATCH_SIZE = 8;
+  // a fix older or vaguer than this is left off the photo
+  private static final long MAX_FIX_AGE_MS = 2 * 60 * 1000;
+  private static final float MAX_FIX_ACCURACY_M = 200;
+  private static final String JOURNAL_FILE = "capture.journal";
+  private static final long JOURNAL_MAX_BYTES = 512L * 1024 * 1024;
+  // thumbnails are made this big on the short side, straight from the capture
+  private static final int THUMBNAIL_SIZE = 192;
+  private static final String THUMBNAIL_DIR = "thumbnails";
+  private static final int MAX_THUMBNAILS = 500;
+  private static final int THUMBNAIL_HEAP_DIVISOR = 16;
+  private static final int GALLERY_SIZE = 100;
+  private static final String CATALOGUE_FILE = "photo.catalogue";
+  // p50/p95/p99 per step, rewritten on every destroy so it can be pulled with adb
+  private static final String METRICS_FILE = "shot_metrics.json";
+  private static final String PREFS_NAME = "capture_settings";
+  private static final String KEY_CAPTURE_MODE = "capture_mode";
+  private static final String KEY_CAPTURE_PROFILE = "capture_profile";
+  private static final String CAPABILITIES_FILE = "camera.capabilities";
+  // encoder settings are per deployment, a target size above zero switches to size targeting
+  private static final String KEY_ENCODING_FORMAT = "encoding_format";
+  private static final String KEY_ENCODING_QUALITY = "encoding_quality";
+  private static final String KEY_ENCODING_TARGET_KB = "encoding_target_kb";
+  // photos are exported only on devices given an endpoint, while the app is in the background
+  private static final String KEY_EXPORT_URL = "export_url";
+  private static final String KEY_EXPORT_PARALLELISM = "export_parallelism";
+  private static final String KEY_EXPORT_KBPS = "export_kbps";
+  private static final int DEFAULT_EXPORT_PARALLELISM = 2;
+  private static final int EXPORT_CHUNK_BYTES = 1024 * 1024;
+  private static final int EXPORT_MAX_ATTEMPTS = 5;
+  private static final String EXPORT_CURSOR_FILE = "export.cursor";
+  // near-duplicates are noted in the catalogue, or not saved at all when skipping is set
+  private static final String KEY_DEDUP_DISTANCE = "dedup_distance";
+  private static final String KEY_DEDUP_SKIP_NEAR = "dedup_skip_near";
+  private static final int DEFAULT_DEDUP_DISTANCE = 6;
+  private static final String DEDUP_FILE = "dedup.index";
+  // a site list dropped into the app's external files dir, indexed into internal storage
+  private static final String[] SITE_LIST_FILES = {"sites.csv", "sites.geojson"};
+  private static final String SITE_INDEX_FILE = "sites.index";
+  private static final String KEY_SITE_MAX_METERS = "site_max_meters";
+  private static final int DEFAULT_SITE_MAX_METERS = 250;
+  private static final Size YUV_TARGET_SIZE = new Size(1920, 1080);
+  // frames the zero-shutter-lag ring keeps, capped by its share of the heap
+  private static final String KEY_ZSL_FRAMES = "zsl_frames";
+  private static final int DEFAULT_ZSL_FRAMES = 8;
+  private static final int ZSL_HEAP_DIVISOR = 8;
+  // holding the shutter this long starts a burst
+  private static final long BURST_HOLD_DELAY_MS = 400;
+  private static final int BURST_FPS = 5;
+  private static final int BURST_LATENCY_SAMPLES = 1024;
   private final LocationUtil locationUtil = new LocationUtil(this);
   private ActivityCameraBinding binding;
-  private MetaDataBinding metaDataBinding;
-  private Location location;
   private final LocationUtil.LocationResult locationResult =
       new LocationUtil.LocationResult() {
         @Override
         public void gotLocation(Location location) {
           // Got the location!
-          CameraActivity.this.location = location;
-          if (metaDataBinding != null && location != null) {
-            metaDataBinding.longitudeTv.setVisibility(View.VISIBLE);
-            metaDataBinding.latitudeTv.setVisibility(View.VISIBLE);
-            metaDataBinding.accuracyTv.setVisibility(View.VISIBLE);
-            metaDataBinding.accuracyTv.setText(
-                getString(R.string.accuracy) + " " + location.getAccuracy() + " m");
-            metaDataBinding.latitudeTv.setText(
-                getString(R.string.latitude) + " " + location.getLatitude());
-            metaDataBinding.longitudeTv.setText(
-                getString(R.string.longitude) + " " + location.getLongitude());
+          if (binding != null && location != null) {
+            // the same estimate a shot taken now would be saved with
+            float errorMeters =
+                locationUtil.getFixAt(
+                        SystemClock.elapsedRealtimeNanos(),
+                        MAX_FIX_AGE_MS,
+                        MAX_FIX_ACCURACY_M,
+                        previewFix)
+                    ? previewFix.errorMeters
+                    : Float.NaN;
+            binding.metaData.setLocation(location, errorMeters, siteFor(location));
           }
         }
       };
-  private SoundPool soundPool = new SoundPool.Builder().build();
-  private int soundId;
+  // released in onDestroy while cameraExecutor may still be finishing a shot, read it once
+  private volatile SoundPool soundPool = new SoundPool.Builder().build();
+  // loaded on a warm-up thread
+  private volatile int soundId;
   private ListenableFuture<ProcessCameraProvider> cameraProviderFuture;
   private ActivityResultLauncher<String[]> resultLauncher;
   private ExecutorService cameraExecutor;
   private LifecycleCameraController cameraController;
   private Handler handler;
-  private final Runnable timeUpdater =
+  private CapturePipeline<CaptureJob> capturePipeline;
+  private BytePool bytePool;
+  private BitmapPool bitmapPool;
+  private MediaStoreWriter mediaStoreWriter;
+  private ThumbnailCache thumbnailCache;
+  private PhotoCatalog photoCatalog;
+  private EncodingPolicy encodingPolicy;
+  private FrameRing frameRing;
+  private final ShotMetrics shotMetrics = Util.getShotMetrics();
+  private final CaptureClock captureClock = new CaptureClock();
+  private StartupOrchestrator startup;
+  // opened off the main thread, shots taken before that are simply not journaled
+  private volatile CaptureJournal journal;
+  // null when no endpoint is set or until the cursor is read
+  private volatile PhotoExporter exporter;
+  // shots saved before it is read are not checked
+  private volatile DuplicateIndex duplicateIndex;
+  // written before duplicateIndex is published
+  private boolean skipNearDuplicates;
+  // null without a site list, or until it is indexed
+  private volatile Gazetteer gazetteer;
+  // written before gazetteer is published
+  private int siteMaxMeters;
+  // thumbnail pixels for the perceptual hash, only touched on the decode stage
+  private int[] hashPixels = new int[0];
+  private CaptureMode captureMode = CaptureMode.JPEG;
+  private CaptureProfile captureProfile = CaptureProfile.EVIDENCE_FULL_RES;
+  // null until the capability cache is read, the profile is applied from then on
+  private CameraCapabilities capabilities;
+  // null for CameraX's default back camera
+  private String cameraId;
+  private Size appliedCaptureSize;
+  // the shot waiting for the next analysis frame, null when there is none
+  private final AtomicReference<ShotRequest> yuvShotRequest = new AtomicReference<>();
+  // scratch for per-shot fix lookups, only touched on cameraExecutor
+  private final FixSample shotFix = new FixSample();
+  // the same for the live overlay, only touched on the main thread
+  private final FixSample previewFix = new FixSample();
+  // a takePicture call has not come back yet
+  private final AtomicBoolean captureOutstanding = new AtomicBoolean(false);
+  private volatile BurstStats burst;
+  private int previousCaptureMode;
+  private long nextBurstTick;
+  private final Runnable burstTick =
       new Runnable() {
         @Override
         public void run() {
-          if (handler != null && metaDataBinding != null) {
-            metaDataBinding.timeTv.setText(getString(R.string.time) + " " + Util.getCurrentTime());
-            handler.postDelayed(this, 1000);
-          }
+          BurstStats stats = burst;
+          if (stats == null) return;
+          takePhoto(stats);
+          nextBurstTick += 1000 / BURST_FPS;
+          handler.postAtTime(this, nextBurstTick);
         }
       };
-
+  private final Runnable burstStarter = this::startBurst;
   @Override
   protected void onCreate(Bundle savedInstanceState) {
+    startup = new StartupOrchestrator(shotMetrics, System.nanoTime());
     super.onCreate(savedInstanceState);
     setFullScreen();
     binding = ActivityCameraBinding.inflate(getLayoutInflater());
     setContentView(binding.getRoot());
-    // Request camera permissions
     init();
+    captureMode =
+        CaptureMode.valueOf(
+            getSharedPreferences(PREFS_NAME, MODE_PRIVATE)
+                .getString(KEY_CAPTURE_MODE, CaptureMode.JPEG.name()));
+    captureProfile =
+        CaptureProfile.valueOf(
+            getSharedPreferences(PREFS_NAME, MODE_PRIVATE)
+                .getString(KEY_CAPTURE_PROFILE, CaptureProfile.EVIDENCE_FULL_RES.name()));
+    // the preview goes first, it is what the user waits on
+    binding
+        .viewFinder
+        .getPreviewStreamState()
+        .observe(
+            this,
+            state -> {
+              if (state == PreviewView.StreamState.STREAMING) startup.onFirstFrame();
+            });
     if (Util.isPermissionGranted(this, Manifest.permission.CAMERA)) {
       startCamera();
     } else {
       requestPermission(Manifest.permission.CAMERA);
     }
-    locationUtil.getLocation(locationResult);
+    // read from the cache this usually lands before the camera binds, so no rebind is needed
+    startup.warmUp("capabilities", this::loadCapabilities);
+    startup.warmUp("sound", this::loadSound);
+    startup.warmUp(
+        "overlay",
+        () ->
+            Util.warmUpOverlay(
+                YUV_TARGET_SIZE.getWidth(),
+                YUV_TARGET_SIZE.getHeight(),
+                captureMode != CaptureMode.JPEG));
+    initCapturePipeline();
     initViews();
-    init();
     // Set up the listeners for take photo capture and other buttons
     onClickEvents();
   }
 
+  @Override
+  protected void onStart() {
+    super.onStart();
+    // registering listeners is cheap but the first fixes are not needed before the preview
+    startup.afterFirstFrame(this::startLocationUpdates);
+    // uploads would compete with the camera for the disk and the CPU
+    if (exporter != null) exporter.stop();
+  }
+
+  @Override
+  protected void onStop() {
+    super.onStop();
+    locationUtil.stop();
+    // resumes from the cursor if the process is killed before it is done
+    if (exporter != null) exporter.start(photoCatalog);
+  }
+
   @Override
   protected void onDestroy() {
     super.onDestroy();
+    startup.shutdown();
+    Log.d(TAG, startup.toString());
     cameraExecutor.shutdown();
+    capturePipeline.shutdown();
+    // shots still inside publish theirs as the pipeline drains
+    publishPhotos();
+    for (LatencyCounter counter : capturePipeline.getStageLatencies()) {
+      Log.d(TAG, counter.toString());
+    }
+    Log.d(TAG, capturePipeline.getTotalLatency().toString());
+    Log.d(TAG, bytePool.toString());
+    Log.d(TAG, "MediaStore calls per photo: " + mediaStoreWriter.getCallsPerPhoto());
+    Log.d(TAG, bitmapPool.toString());
+    bitmapPool.clear();
+    Log.d(TAG, Util.getWaterMarkRenderer().toString());
+    Util.getWaterMarkRenderer().clear();
+    Log.d(TAG, Util.getOverlayLayoutEngine().toString());
+    Log.d(TAG, thumbnailCache.toString());
+    Log.d(TAG, encodingPolicy.toString());
+    Log.d(TAG, frameRing.toString());
+    if (duplicateIndex != null) Log.d(TAG, duplicateIndex.toString());
+    if (gazetteer != null) Log.d(TAG, gazetteer.toString());
+    if (exporter != null) Log.d(TAG, exporter.toString());
+    Log.i(TAG, shotMetrics.toString());
+    try {
+      shotMetrics.writeJson(new File(getFilesDir(), METRICS_FILE));
+    } catch (IOException e) {
+      Log.w(TAG, "Failed to write shot metrics", e);
+    }
     soundPool.release();
     soundPool = null;
   }
 
+  private void loadSound() {
+    SoundPool sound = soundPool;
+    if (sound != null) soundId = sound.load(this, R.raw.photo_click, 1);
+  }
+
   private Dialog getDialog(String permission) {
     return Util.createPermissionDialog(
         this,
@@ -133,7 +334,8 @@ public class CameraActivity extends AppCompatActivity {
     handler = new Handler();
     cameraController = new LifecycleCameraController(this);
     cameraExecutor = Executors.newSingleThreadExecutor();
-    soundId = soundPool.load(this, R.raw.photo_click, 1);
+    soundPool.setOnLoadCompleteListener(
+        (pool, sampleId, status) -> startup.pass(StartupOrchestrator.Gate.SOUND_LOADED));
     resultLauncher =
         registerForActivityResult(
             new ActivityResultContracts.RequestMultiplePermissions(),
@@ -155,8 +357,10 @@ public class CameraActivity extends AppCompatActivity {
 
               if (fineLocationGranted != null && fineLocationGranted) {
                 // Precise location access granted.
+                startLocationUpdates();
               } else if (coarseLocationGranted != null && coarseLocationGranted) {
                 // Only approximate location access granted.
+                startLocationUpdates();
               } else {
                 // No location access granted.
                 // check is this is called for camera permission or not
@@ -167,22 +371,418 @@ public class CameraActivity extends AppCompatActivity {
             });
   }
 
+  private void startLocationUpdates() {
+    PowerManager powerManager = ContextCompat.getSystemService(this, PowerManager.class);
+    boolean powerSave = powerManager != null && powerManager.isPowerSaveMode();
+    locationUtil.start(
+        powerSave ? LocationUtil.Power.LOW_POWER : LocationUtil.Power.HIGH_ACCURACY,
+        locationResult);
+  }
+
+  // the best fix the cache has right now, chosen by accuracy and age
+  private Location currentFix() {
+    return locationUtil.getBestFix(MAX_FIX_AGE_MS, MAX_FIX_ACCURACY_M);
+  }
+
+  // pins the shot to where the device was when the sensor exposed it, runs on cameraExecutor
+  private void tagLocation(CaptureJob job) {
+    if (job.sensorTimestampNanos != 0
+        && locationUtil.getFixAt(
+            job.sensorTimestampNanos, MAX_FIX_AGE_MS, MAX_FIX_ACCURACY_M, shotFix)) {
+      job.location = LocationUtil.toLocation(shotFix);
+      job.locationErrorMeters = shotFix.errorMeters;
+      // zero for an interpolated position
+      shotMetrics.record(
+          ShotMetrics.Metric.LOCATION_AGE,
+          Math.abs(
+              LocationUtil.toElapsedRealtimeNanos(job.sensorTimestampNanos)
+                  - shotFix.elapsedRealtimeNanos));
+      return;
+    }
+    job.location = currentFix();
+    if (job.location != null) {
+      shotMetrics.record(
+          ShotMetrics.Metric.LOCATION_AGE,
+          SystemClock.elapsedRealtimeNanos() - job.location.getElapsedRealtimeNanos());
+    } else {
+      // counted as an error: the shot goes out without a position
+      shotMetrics.recordError(ShotMetrics.Metric.LOCATION_AGE);
+    }
+  }
+
+  private void initCapturePipeline() {
+    Context appContext = getApplicationContext();
+    long poolBudget = Runtime.getRuntime().maxMemory() / POOL_HEAP_DIVISOR;
+    bytePool = new BytePool(poolBudget / 2);
+    bitmapPool = new BitmapPool(poolBudget / 2);
+    mediaStoreWriter = Util.createMediaStoreWriter(appContext, PUBLISH_BATCH_SIZE);
+    encodingPolicy = loadEncodingPolicy();
+    frameRing =
+        new FrameRing(
+            getSharedPreferences(PREFS_NAME, MODE_PRIVATE)
+                .getInt(KEY_ZSL_FRAMES, DEFAULT_ZSL_FRAMES),
+            Runtime.getRuntime().maxMemory() / ZSL_HEAP_DIVISOR,
+            bytePool);
+    capturePipeline =
+        new CapturePipeline<CaptureJob>(
+                MAX_SHOTS_IN_FLIGHT,
+                (job, failedStage, error) -> {
+                  if (error != null) Log.e(TAG, "Capture failed at " + failedStage, error);
+                  if (job.burst != null
+                      && job.burst.onShotFinished(
+                          System.nanoTime() - job.shutterNanos, error == null)) {
+                    reportBurst(job.burst);
+                  }
+                  // a shot cut off by shutdown stays in the journal and is replayed next start,
+                  // a saved one stays there until its row is published
+                  if (job.journalOffset >= 0
+                      && journal != null
+                      && (error != null || job.skipped)
+                      && !(error instanceof RejectedExecutionException)) {
+                    journal.markDone(job.journalOffset);
+                  }
+                  // a retake of a shot that failed must not count as its duplicate
+                  DuplicateIndex index = duplicateIndex;
+                  if (error != null && job.contentHash != null && index != null) {
+                    index.remove(job.contentHash);
+                  }
+                  bitmapPool.release(job.bitmap);
+                  bytePool.release(job.getPayload());
+                  job.release();
+                })
+            // whether the last shot was saved, skipped or failed, nothing else is coming to
+            // fill the batch, don't keep finished photos hidden
+            .setIdleCallback(this::publishPhotos)
+            .addStage(
+                "decode",
+                shotMetrics.timed(
+                    ShotMetrics.Metric.DECODE,
+                    job -> {
+                      if (job.yuv != null) {
+                        job.thumbnail = Util.createThumbnail(job.yuv, THUMBNAIL_SIZE);
+                        checkDuplicate(job, job.yuv.data, job.yuv.width * job.yuv.height * 3 / 2);
+                        return;
+                      }
+                      job.thumbnail =
+                          Util.decodeThumbnail(
+                              job.jpeg, job.jpegLength, job.rotationDegrees, THUMBNAIL_SIZE);
+                      // before the full decode, which a skipped shot doesn't need
+                      checkDuplicate(job, job.jpeg, job.jpegLength);
+                      if (job.skipped) return;
+                      job.bitmap = Util.getBitmap(job.jpeg, job.jpegLength, bitmapPool);
+                      bytePool.release(job.jpeg);
+                      job.jpeg = null;
+                    }))
+            .addStage(
+                "annotate",
+                shotMetrics.timed(
+                    ShotMetrics.Metric.OVERLAY,
+                    job -> {
+                      if (job.skipped) return;
+                      // here rather than at the shutter so replayed shots are tagged too
+                      job.site = siteFor(job.location);
+                      if (job.yuv != null) {
+                        Util.drawWaterMark(
+                            job.yuv,
+                            job.location,
+                            job.locationErrorMeters,
+                            job.captureTimeMillis,
+                            job.site);
+                      } else {
+                        Util.drawWaterMark(
+                            job.bitmap,
+                            job.rotationDegrees,
+                            job.location,
+                            job.locationErrorMeters,
+                            job.captureTimeMillis,
+                            job.site);
+                      }
+                    }))
+            .addStage(
+                "persist",
+                job -> {
+                  if (job.skipped) return;
+                  EncodingPolicy.Format format = encodingPolicy.formatFor(job);
+                  MediaStoreWriter.ImageWriter image =
+                      job.yuv != null
+                          ? encodingPolicy.writer(job.yuv)
+                          : encodingPolicy.writer(job.bitmap);
+                  // the orientation travels in the Exif of either format
+                  image =
+                      Util.withExif(
+                          image,
+                          Util.createExif(
+                              job.location, job.captureTimeMillis, job.rotationDegrees, job.site),
+                          format);
+                  long journalOffset = job.journalOffset;
+                  byte[] contentHash = job.contentHash;
+                  Uri uri =
+                      mediaStoreWriter.write(
+                          String.valueOf(job.captureTimeMillis),
+                          format.mimeType,
+                          image,
+                          (published, ok) ->
+                              onPhotoPublished(published, ok, journalOffset, contentHash));
+                  long id = ContentUris.parseId(uri);
+                  catalogPhoto(id, job);
+                  if (job.thumbnail != null) storeThumbnail(id, job.thumbnail);
+                });
+    thumbnailCache =
+        new ThumbnailCache(
+            new File(getCacheDir(), THUMBNAIL_DIR),
+            Runtime.getRuntime().maxMemory() / THUMBNAIL_HEAP_DIVISOR,
+            MAX_THUMBNAILS);
+    photoCatalog = new PhotoCatalog(new File(getFilesDir(), CATALOGUE_FILE));
+    startup.pass(StartupOrchestrator.Gate.PIPELINE_READY);
+    startup.warmUp("thumbnails", this::showLatestThumbnail);
+    // last, replaying can wait on the pipeline for a while
+    startup.warmUp("journal", () -> openJournal(new File(getNoBackupFilesDir(), JOURNAL_FILE)));
+    startup.warmUp("export", this::openExporter);
+    startup.warmUp("dedup", this::openDuplicateIndex);
+    startup.warmUp("sites", this::openGazetteer);
+  }
+
+  private EncodingPolicy loadEncodingPolicy() {
+    SharedPreferences prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
+    EncodingPolicy.Format format =
+        EncodingPolicy.Format.valueOf(
+            prefs.getString(KEY_ENCODING_FORMAT, EncodingPolicy.Format.JPEG.name()));
+    int targetKb = prefs.getInt(KEY_ENCODING_TARGET_KB, 0);
+    if (targetKb > 0) return EncodingPolicy.targetSize(format, targetKb * 1024L);
+    return EncodingPolicy.fixedQuality(
+        format, prefs.getInt(KEY_ENCODING_QUALITY, EncodingPolicy.DEFAULT_QUALITY));
+  }
+
+  private void openDuplicateIndex() {
+    SharedPreferences prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
+    skipNearDuplicates = prefs.getBoolean(KEY_DEDUP_SKIP_NEAR, false);
+    try {
+      duplicateIndex =
+          DuplicateIndex.open(
+              new File(getFilesDir(), DEDUP_FILE),
+              prefs.getInt(KEY_DEDUP_DISTANCE, DEFAULT_DEDUP_DISTANCE));
+    } catch (IOException e) {
+      Log.e(TAG, "Duplicate index unavailable", e);
+    }
+  }
+
+  // the index is rebuilt whenever the list is newer than it, a million sites take a second or so
+  private void openGazetteer() {
+    File external = getExternalFilesDir(null);
+    if (external == null) return;
+    File list = null;
+    for (String name : SITE_LIST_FILES) {
+      File candidate = new File(external, name);
+      if (candidate.isFile()) {
+        list = candidate;
+        break;
+      }
+    }
+    if (list == null) return;
+    File index = new File(getFilesDir(), SITE_INDEX_FILE);
+    siteMaxMeters =
+        getSharedPreferences(PREFS_NAME, MODE_PRIVATE)
+            .getInt(KEY_SITE_MAX_METERS, DEFAULT_SITE_MAX_METERS);
+    try {
+      if (!index.isFile() || index.lastModified() < list.lastModified()) {
+        Gazetteer.build(SiteList.read(list), index);
+      }
+      gazetteer = Gazetteer.open(index);
+      Log.i(TAG, "Sites from " + list.getName() + ": " + gazetteer);
+    } catch (IOException e) {
+      Log.e(TAG, "Site list unavailable", e);
+    }
+  }
+
+  // any thread, no allocation beyond the name
+  private String siteFor(Location location) {
+    Gazetteer sites = gazetteer;
+    if (sites == null || location == null) return null;
+    int site = sites.nearest(location.getLatitude(), location.getLongitude(), siteMaxMeters);
+    return site >= 0 ? sites.getName(site) : null;
+  }
+
+  // on the decode stage. exact duplicates are never saved, near ones only flagged unless
+  // skipping is set; everything that will be saved goes into the index straight away so the
+  // rest of a burst is checked against it
+  private void checkDuplicate(CaptureJob job, byte[] data, int length) {
+    DuplicateIndex index = duplicateIndex;
+    if (index == null || job.thumbnail == null) return;
+    long start = System.nanoTime();
+    int width = job.thumbnail.getWidth();
+    int height = job.thumbnail.getHeight();
+    if (hashPixels.length < width * height) hashPixels = new int[width * height];
+    job.thumbnail.getPixels(hashPixels, 0, width, 0, 0, width, height);
+    long perceptualHash = DuplicateIndex.perceptualHash(hashPixels, width, height);
+    byte[] contentHash = DuplicateIndex.contentHash(data, 0, length);
+    DuplicateIndex.Match match = index.check(perceptualHash, contentHash);
+    shotMetrics.record(ShotMetrics.Metric.DEDUP, System.nanoTime() - start);
+    if (match.verdict == DuplicateIndex.Verdict.EXACT
+        || (match.verdict == DuplicateIndex.Verdict.NEAR && skipNearDuplicates)) {
+      job.skipped = true;
+      Log.i(TAG, "Not saving duplicate of photo " + match.photoId + ", " + match.verdict);
+      return;
+    }
+    if (match.verdict == DuplicateIndex.Verdict.NEAR) job.duplicateOf = match;
+    index.add(perceptualHash, contentHash);
+    job.contentHash = contentHash;
+  }
+
+  // on whichever thread flushed the batch. a row still pending when the process dies is gone,
+  // so until it is published the journal keeps the shot and the index holds no photo for it
+  private void onPhotoPublished(
+      Uri uri, boolean published, long journalOffset, byte[] contentHash) {
+    CaptureJournal currentJournal = journal;
+    if (journalOffset >= 0 && currentJournal != null) currentJournal.markDone(journalOffset);
+    DuplicateIndex index = duplicateIndex;
+    if (index == null || contentHash == null) return;
+    if (!published) {
+      // the row was deleted, a retake is not its duplicate
+      index.remove(contentHash);
+      return;
+    }
+    long id = ContentUris.parseId(uri);
+    try {
+      index.setPhotoId(contentHash, id);
+    } catch (IOException e) {
+      // still matched until the app restarts
+      Log.w(TAG, "Failed to index photo " + id, e);
+    }
+  }
+
+  private void publishPhotos() {
+    try {
+      mediaStoreWriter.flush();
+    } catch (IOException | RuntimeException e) {
+      Log.e(TAG, "Failed to publish photos", e);
+    }
+  }
+
+  private void catalogPhoto(long id, CaptureJob job) {
+    String note = Build.MODEL + "(" + Build.MANUFACTURER + ")";
+    if (job.duplicateOf != null) {
+      long original = job.duplicateOf.photoId;
+      note += original >= 0 ? " near-duplicate of " + original : " near-duplicate";
+    }
+    if (job.site != null) note += " at " + job.site;
+    Location location = job.location;
+    PhotoCatalog.Entry entry =
+        location == null
+            ? new PhotoCatalog.Entry(id, job.captureTimeMillis, note)
+            : new PhotoCatalog.Entry(
+                id,
+                job.captureTimeMillis,
+                location.getLatitude(),
+                location.getLongitude(),
+                location.hasAccuracy() ? location.getAccuracy() : Float.NaN,
+                note);
+    try {
+      photoCatalog.add(entry);
+    } catch (IOException e) {
+      // still queryable until the app restarts
+      Log.w(TAG, "Failed to catalogue photo " + id, e);
+    }
+  }
+
+  // the photo is saved by now, a thumbnail that can't be cached only costs the gallery a tile
+  private void storeThumbnail(long id, Bitmap thumbnail) {
+    try {
+      thumbnailCache.put(id, thumbnail);
+    } catch (IOException e) {
+      Log.w(TAG, "Failed to cache thumbnail", e);
+    }
+    runOnUiThread(() -> binding.photos.setImageBitmap(thumbnail));
+  }
+
+  private void showLatestThumbnail() {
+    long[] latest = thumbnailCache.getRecent(1);
+    if (latest.length == 0) return;
+    Bitmap thumbnail = thumbnailCache.get(latest[0]);
+    if (thumbnail != null) runOnUiThread(() -> binding.photos.setImageBitmap(thumbnail));
+  }
+
+  private void openJournal(File file) {
+    CaptureJournal opened;
+    try {
+      opened = CaptureJournal.open(file, JOURNAL_MAX_BYTES);
+    } catch (IOException e) {
+      Log.e(TAG, "Capture journal unavailable", e);
+      return;
+    }
+    journal = opened;
+    // shots the last process didn't get to save
+    for (CaptureJournal.Record record : opened.getRecoveredRecords()) {
+      byte[] payload = bytePool.acquire(record.payloadLength);
+      opened.readPayload(record, payload);
+      CaptureJob job = CaptureJob.fromRecord(record, payload);
+      job.shutterNanos = System.nanoTime();
+      try {
+        if (!capturePipeline.submit(job, 1, TimeUnit.MINUTES)) {
+          bytePool.release(payload);
+          return;
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+      Log.i(TAG, "Replaying journaled capture from " + record.captureTimeMillis);
+    }
+  }
+
+  private void openExporter() {
+    SharedPreferences prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
+    String endpoint = prefs.getString(KEY_EXPORT_URL, null);
+    if (endpoint == null || endpoint.isEmpty()) return;
+    try {
+      exporter =
+          new PhotoExporter(
+              new URL(endpoint.endsWith("/") ? endpoint : endpoint + "/"),
+              PhotoExporter.mediaStore(getContentResolver()),
+              ExportCursor.open(new File(getNoBackupFilesDir(), EXPORT_CURSOR_FILE)),
+              prefs.getInt(KEY_EXPORT_PARALLELISM, DEFAULT_EXPORT_PARALLELISM),
+              EXPORT_CHUNK_BYTES,
+              prefs.getInt(KEY_EXPORT_KBPS, 0) * 1024L,
+              EXPORT_MAX_ATTEMPTS);
+    } catch (IOException e) {
+      Log.e(TAG, "Photo export unavailable", e);
+    }
+  }
+
   private void initViews() {
-    metaDataBinding = binding.metaData;
-    metaDataBinding.timeTv.setText(getString(R.string.time) + " " + Util.getCurrentTime());
-    metaDataBinding.noteTv.setText(
-        getString(R.string.note) + " " + Build.MODEL + "(" + Build.MANUFACTURER + ")");
-    metaDataBinding.longitudeTv.setVisibility(View.GONE);
-    metaDataBinding.latitudeTv.setVisibility(View.GONE);
-    metaDataBinding.accuracyTv.setVisibility(View.GONE);
-    // scheduling update time after every 1 minute
-    timeUpdater.run();
+    // the clock on the preview only ticks while the activity is started
+    binding.metaData.bind(this);
   }
 
   private void onClickEvents() {
-    binding.capture.setOnClickListener(view -> takePhoto());
-    binding.photos.setOnClickListener(v -> Util.showShortToast(this, "photos clicked"));
-    binding.settings.setOnClickListener(v -> Util.showShortToast(this, "Settings clicked"));
+    binding.capture.setOnClickListener(view -> takePhoto(null));
+    binding.capture.setOnTouchListener(
+        (v, event) -> {
+          switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+              v.setPressed(true);
+              handler.postDelayed(burstStarter, BURST_HOLD_DELAY_MS);
+              return true;
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
+              v.setPressed(false);
+              handler.removeCallbacks(burstStarter);
+              if (burst != null) {
+                stopBurst();
+              } else if (event.getActionMasked() == MotionEvent.ACTION_UP) {
+                v.performClick();
+              }
+              return true;
+            default:
+              return false;
+          }
+        });
+    binding.photos.setOnClickListener(v -> Util.showGallery(this, thumbnailCache, GALLERY_SIZE));
+    binding.settings.setOnClickListener(v -> toggleCaptureMode());
+    binding.settings.setOnLongClickListener(
+        v -> {
+          showCaptureProfiles();
+          return true;
+        });
     binding.switchCamera.setOnClickListener(v -> switchCamera());
     binding.flashImage.setOnClickListener(v -> Util.showShortToast(this, "flash clicked"));
   }
@@ -211,17 +811,20 @@ public class CameraActivity extends AppCompatActivity {
 
     Runnable listener =
         () -> {
-          // Preview
-          Preview preview = new Preview.Builder().build();
-          preview.setSurfaceProvider(binding.viewFinder.getSurfaceProvider());
+          // the controller owns the Preview use case
           binding.viewFinder.setController(cameraController);
           // Select back camera as a default
-          cameraController.setCameraSelector(CameraSelector.DEFAULT_BACK_CAMERA);
+          cameraController.setCameraSelector(
+              cameraId == null ? CameraSelector.DEFAULT_BACK_CAMERA : selectorFor(cameraId));
+          applyCaptureMode();
+          // a no-op until the capabilities are in
+          applyCaptureProfile();
           try {
             // Unbind before rebinding
             cameraController.unbind();
             // Bind use cases to camera
             cameraController.bindToLifecycle(CameraActivity.this);
+            startup.pass(StartupOrchestrator.Gate.CAMERA_BOUND);
           } catch (IllegalStateException e) {
             Log.e(TAG, "Use case binding failed", e);
           }
@@ -242,31 +845,343 @@ public class CameraActivity extends AppCompatActivity {
     }
   }
 
+  // walks through every camera the capability probe found, or between the default back and
+  // front cameras until it has run
   private void switchCamera() {
     try {
-      if (cameraController.getCameraSelector() == CameraSelector.DEFAULT_BACK_CAMERA
-          && cameraController.hasCamera(CameraSelector.DEFAULT_FRONT_CAMERA)) {
-        cameraController.setCameraSelector(CameraSelector.DEFAULT_FRONT_CAMERA);
-      } else if (cameraController.getCameraSelector() == CameraSelector.DEFAULT_FRONT_CAMERA
-          && cameraController.hasCamera(CameraSelector.DEFAULT_BACK_CAMERA)) {
-        cameraController.setCameraSelector(CameraSelector.DEFAULT_BACK_CAMERA);
+      List<CameraCapabilities.Camera> cameras =
+          capabilities != null ? capabilities.getCameras() : null;
+      if (cameras == null || cameras.size() < 2) {
+        cameraController.setCameraSelector(
+            cameraController.getCameraSelector() == CameraSelector.DEFAULT_FRONT_CAMERA
+                ? CameraSelector.DEFAULT_BACK_CAMERA
+                : CameraSelector.DEFAULT_FRONT_CAMERA);
+        return;
       }
+      CameraCapabilities.Camera current = currentCamera();
+      CameraCapabilities.Camera next =
+          cameras.get((cameras.indexOf(current) + 1) % cameras.size());
+      cameraId = next.id;
+      // the old camera's size means nothing to the new one
+      appliedCaptureSize = null;
+      applyCaptureProfile();
+      cameraController.setCameraSelector(selectorFor(next.id));
     } catch (IllegalStateException e) {
       Log.d(TAG, e.getMessage());
     }
   }
 
-  private void takePhoto() {
-    cameraController.takePicture(
-        ContextCompat.getMainExecutor(this),
-        new ImageCapture.OnImageCapturedCallback() {
-          @Override
-          public void onCaptureSuccess(@NonNull ImageProxy image) {
-            super.onCaptureSuccess(image);
-            soundPool.play(soundId, 1, 1, 0, 0, 1);
-            Bitmap res = Util.addWaterMark(Util.getBitmap(image), location);
-            Util.saveImage(CameraActivity.this, res);
-          }
+  @OptIn(markerClass = ExperimentalCamera2Interop.class)
+  private static CameraSelector selectorFor(String cameraId) {
+    return new CameraSelector.Builder()
+        .addCameraFilter(
+            cameraInfos -> {
+              List<CameraInfo> matching = new ArrayList<>(1);
+              for (CameraInfo info : cameraInfos) {
+                if (cameraId.equals(Camera2CameraInfo.from(info).getCameraId())) {
+                  matching.add(info);
+                }
+              }
+              return matching;
+            })
+        .build();
+  }
+
+  // runs on a warm-up thread
+  private void loadCapabilities() {
+    CameraCapabilities loaded =
+        CameraCapabilities.load(
+            new File(getFilesDir(), CAPABILITIES_FILE),
+            ContextCompat.getSystemService(this, CameraManager.class));
+    if (loaded == null) return;
+    Log.d(TAG, loaded.toString());
+    runOnUiThread(
+        () -> {
+          capabilities = loaded;
+          applyCaptureProfile();
         });
   }
+
+  private CameraCapabilities.Camera currentCamera() {
+    if (capabilities == null) return null;
+    if (cameraId != null) {
+      CameraCapabilities.Camera camera = capabilities.find(cameraId);
+      if (camera != null) return camera;
+    }
+    return capabilities.first(CameraMetadata.LENS_FACING_BACK);
+  }
+
+  // every setter restarts the controller's use cases, so only what differs is set
+  private void applyCaptureProfile() {
+    CameraCapabilities.Camera camera = currentCamera();
+    if (camera == null) return;
+    Size size = captureProfile.pickSize(camera.jpegSizes);
+    if (size != null && !size.equals(appliedCaptureSize)) {
+      // sizes are listed in sensor orientation, CameraX wants them as the UI is held
+      boolean portrait =
+          getResources().getConfiguration().orientation == Configuration.ORIENTATION_PORTRAIT;
+      cameraController.setImageCaptureTargetSize(
+          new CameraController.OutputSize(
+              portrait ? new Size(size.getHeight(), size.getWidth()) : size));
+      appliedCaptureSize = size;
+      updateOverlayFrame();
+    }
+    // a running burst has its own mode and puts the profile's back when it stops
+    if (burst == null && cameraController.getImageCaptureMode() != captureProfile.captureMode) {
+      cameraController.setImageCaptureMode(captureProfile.captureMode);
+    }
+  }
+
+  // the preview band is laid out on the frame the next shot is saved at, upright as the UI is
+  // held. YUV and ZSL shots are analysis frames, JPEG ones the capture size
+  private void updateOverlayFrame() {
+    Size size = captureMode == CaptureMode.JPEG ? appliedCaptureSize : YUV_TARGET_SIZE;
+    if (size == null) return;
+    boolean portrait =
+        getResources().getConfiguration().orientation == Configuration.ORIENTATION_PORTRAIT;
+    binding.metaData.setOutputSize(
+        portrait ? size.getHeight() : size.getWidth(),
+        portrait ? size.getWidth() : size.getHeight());
+  }
+
+  private void showCaptureProfiles() {
+    CaptureProfile[] profiles = CaptureProfile.values();
+    String[] labels = new String[profiles.length];
+    for (int i = 0; i < profiles.length; i++) labels[i] = profiles[i].label;
+    new AlertDialog.Builder(this)
+        .setTitle(R.string.capture_profile)
+        .setSingleChoiceItems(
+            labels,
+            captureProfile.ordinal(),
+            (dialog, which) -> {
+              dialog.dismiss();
+              if (profiles[which] == captureProfile) return;
+              captureProfile = profiles[which];
+              getSharedPreferences(PREFS_NAME, MODE_PRIVATE)
+                  .edit()
+                  .putString(KEY_CAPTURE_PROFILE, captureProfile.name())
+                  .apply();
+              applyCaptureProfile();
+              Util.showShortToast(this, captureProfile.label);
+            })
+        .show();
+  }
+
+  private void toggleCaptureMode() {
+    CaptureMode[] modes = CaptureMode.values();
+    captureMode = modes[(captureMode.ordinal() + 1) % modes.length];
+    getSharedPreferences(PREFS_NAME, MODE_PRIVATE)
+        .edit()
+        .putString(KEY_CAPTURE_MODE, captureMode.name())
+        .apply();
+    applyCaptureMode();
+    Util.showShortToast(this, "Capture mode: " + captureMode);
+  }
+
+  private void applyCaptureMode() {
+    if (captureMode != CaptureMode.JPEG) {
+      cameraController.setImageAnalysisTargetSize(
+          new CameraController.OutputSize(YUV_TARGET_SIZE));
+      cameraController.setImageAnalysisAnalyzer(
+          cameraExecutor, captureMode == CaptureMode.ZSL ? this::bufferFrame : this::analyzeFrame);
+      cameraController.setEnabledUseCases(
+          CameraController.IMAGE_CAPTURE | CameraController.IMAGE_ANALYSIS);
+    } else {
+      cameraController.clearImageAnalysisAnalyzer();
+      cameraController.setEnabledUseCases(CameraController.IMAGE_CAPTURE);
+    }
+    updateOverlayFrame();
+    // queued behind any frame still being buffered
+    if (captureMode != CaptureMode.ZSL) cameraExecutor.execute(frameRing::clear);
+    // no analysis frame is coming for a shot still waiting on one
+    if (captureMode != CaptureMode.YUV) {
+      ShotRequest stale = yuvShotRequest.getAndSet(null);
+      if (stale != null) onShotLost(stale.burst);
+    }
+  }
+
+  // ZSL analyzer: every frame goes into the ring, nothing else happens until a tap
+  private void bufferFrame(ImageProxy image) {
+    try {
+      YuvFrame slot = frameRing.acquire(image.getWidth() & ~1, image.getHeight() & ~1);
+      Util.copyYuvFrame(image, slot);
+      frameRing.publish();
+    } finally {
+      image.close();
+    }
+  }
+
+  // runs on cameraExecutor, so the ring holds still while a frame is picked
+  private void takeFromRing(long shutterNanos, BurstStats stats) {
+    long latest = frameRing.getLatestTimestamp();
+    long tap = LocationUtil.toSensorClock(shutterNanos, latest);
+    YuvFrame frame = latest == 0 ? null : frameRing.take(tap);
+    if (frame == null) {
+      shotMetrics.recordError(ShotMetrics.Metric.ZSL_FRAME_OFFSET);
+      Log.w(TAG, "No buffered frame to take the shot from");
+      onShotLost(stats);
+      return;
+    }
+    long offset = frame.timestampNanos - tap;
+    shotMetrics.record(ShotMetrics.Metric.ZSL_FRAME_OFFSET, Math.abs(offset));
+    Log.d(TAG, String.format(Locale.US, "ZSL frame %+.1fms from the tap", offset / 1e6));
+    // the photo is dated when it was exposed, not when the tap was handled
+    CaptureJob job =
+        new CaptureJob(frame, captureClock.captureTimeMillis(frame.timestampNanos), null);
+    tagLocation(job);
+    submitShot(job, shutterNanos, stats);
+  }
+
+  private void analyzeFrame(ImageProxy image) {
+    try {
+      ShotRequest request = yuvShotRequest.getAndSet(null);
+      if (request != null) {
+        YuvFrame frame = Util.getYuvFrame(image, bytePool);
+        CaptureJob job =
+            new CaptureJob(frame, captureClock.captureTimeMillis(frame.timestampNanos), null);
+        tagLocation(job);
+        submitShot(job, request.shutterNanos, request.burst);
+      }
+    } finally {
+      image.close();
+    }
+  }
+
+  // stats is the burst the shot is fired for, null for a single tap. it travels with the shot so
+  // a frame delivered after the burst stopped still counts towards it
+  private void takePhoto(BurstStats stats) {
+    long shutterNanos = System.nanoTime();
+    if (captureMode == CaptureMode.ZSL) {
+      if (stats != null) stats.onShotFired();
+      cameraExecutor.execute(() -> takeFromRing(shutterNanos, stats));
+      return;
+    }
+    if (captureMode == CaptureMode.YUV) {
+      // the next analysis frame becomes the photo, a request already waiting for it takes this one
+      if (!yuvShotRequest.compareAndSet(null, new ShotRequest(shutterNanos, stats))) {
+        if (stats != null) stats.onCoalesced();
+        return;
+      }
+      if (stats != null) stats.onShotFired();
+      return;
+    }
+    if (!captureOutstanding.compareAndSet(false, true)) {
+      // the camera hasn't delivered the previous frame yet, fold this request into it
+      if (stats != null) stats.onCoalesced();
+      return;
+    }
+    if (stats != null) stats.onShotFired();
+    try {
+      cameraController.takePicture(
+          cameraExecutor,
+          new ImageCapture.OnImageCapturedCallback() {
+            @Override
+            public void onCaptureSuccess(@NonNull ImageProxy image) {
+              super.onCaptureSuccess(image);
+              captureOutstanding.set(false);
+              CaptureJob job;
+              try {
+                job = CaptureJob.fromImage(image, bytePool, captureClock);
+              } finally {
+                image.close();
+              }
+              tagLocation(job);
+              submitShot(job, shutterNanos, stats);
+            }
+
+            @Override
+            public void onError(@NonNull ImageCaptureException exception) {
+              captureOutstanding.set(false);
+              shotMetrics.recordError(ShotMetrics.Metric.SHUTTER_TO_CAPTURE);
+              Log.e(TAG, "Capture failed", exception);
+              onShotLost(stats);
+            }
+          });
+    } catch (IllegalStateException e) {
+      // camera not bound yet
+      captureOutstanding.set(false);
+      shotMetrics.recordError(ShotMetrics.Metric.SHUTTER_TO_CAPTURE);
+      Log.w(TAG, e.getMessage());
+      onShotLost(stats);
+    }
+  }
+
+  private void submitShot(CaptureJob job, long shutterNanos, BurstStats stats) {
+    shotMetrics.record(ShotMetrics.Metric.SHUTTER_TO_CAPTURE, System.nanoTime() - shutterNanos);
+    job.shutterNanos = shutterNanos;
+    job.burst = stats;
+    CaptureJournal currentJournal = journal;
+    if (currentJournal != null) {
+      // from here on the shot survives the process dying
+      try {
+        job.journalOffset =
+            currentJournal.append(
+                job.toRecord(Build.MODEL + "(" + Build.MANUFACTURER + ")"),
+                job.getPayload(),
+                job.getPayloadLength());
+      } catch (IOException e) {
+        Log.w(TAG, "Capture not journaled", e);
+      }
+    }
+    if (capturePipeline.submit(job)) {
+      SoundPool sound = soundPool;
+      if (sound != null) sound.play(soundId, 1, 1, 0, 0, 1);
+    } else {
+      // still busy with earlier shots, drop this one rather than queue it
+      if (currentJournal != null) currentJournal.markDone(job.journalOffset);
+      bytePool.release(job.getPayload());
+      job.release();
+      Log.w(TAG, "Capture dropped, " + capturePipeline.getInFlight() + " shots in flight");
+      if (stats != null && stats.onDropped()) reportBurst(stats);
+    }
+  }
+
+  private void onShotLost(BurstStats stats) {
+    if (stats != null && stats.onShotLost()) reportBurst(stats);
+  }
+
+  private void startBurst() {
+    previousCaptureMode = cameraController.getImageCaptureMode();
+    cameraController.setImageCaptureMode(ImageCapture.CAPTURE_MODE_MINIMIZE_LATENCY);
+    BurstStats stats = new BurstStats(BURST_FPS, BURST_LATENCY_SAMPLES);
+    stats.start(System.nanoTime());
+    burst = stats;
+    nextBurstTick = SystemClock.uptimeMillis();
+    burstTick.run();
+  }
+
+  private void stopBurst() {
+    BurstStats stats = burst;
+    burst = null;
+    handler.removeCallbacks(burstTick);
+    cameraController.setImageCaptureMode(previousCaptureMode);
+    // in case the profile changed while the burst ran
+    applyCaptureProfile();
+    if (stats.stop(System.nanoTime())) reportBurst(stats);
+  }
+
+  private void reportBurst(BurstStats stats) {
+    Log.i(TAG, stats.toString());
+    runOnUiThread(
+        () ->
+            Util.showShortToast(
+                this,
+                String.format(
+                    Locale.US,
+                    "%d photos, %.1f fps, %d dropped",
+                    stats.getSaved(),
+                    stats.getAchievedFps(),
+                    stats.getDropped() + stats.getCoalesced())));
+  }
+
+  // a shutter press on its way to a YUV analysis frame
+  private static final class ShotRequest {
+    final long shutterNanos;
+    final BurstStats burst;
+
+    ShotRequest(long shutterNanos, BurstStats burst) {
+      this.shutterNanos = shutterNanos;
+      this.burst = burst;
+    }
+  }
 }
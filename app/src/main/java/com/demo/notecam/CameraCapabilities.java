@@ -0,0 +1,218 @@
+package com.demo.notecam;
+
+import android.graphics.ImageFormat;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraManager;
+import android.hardware.camera2.CameraMetadata;
+import android.hardware.camera2.params.StreamConfigurationMap;
+import android.os.Build;
+import android.util.Log;
+import android.util.Size;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+// every camera's output sizes, asked of Camera2 once and then kept in a small binary file.
+// the file is keyed on the build fingerprint, so an OS update that changes the HAL probes
+// again. probing takes a few binder calls per camera, reading the file takes none
+public final class CameraCapabilities {
+
+  private static final String TAG = "CameraCapabilities";
+  private static final int MAGIC = 0x4e434331; // "NCC1"
+  private static final int VERSION = 1;
+
+  public static final class Camera {
+    public final String id;
+    // CameraMetadata.LENS_FACING_*
+    public final int lensFacing;
+    // largest first
+    public final List<Size> jpegSizes;
+    public final List<Size> yuvSizes;
+
+    Camera(String id, int lensFacing, List<Size> jpegSizes, List<Size> yuvSizes) {
+      this.id = id;
+      this.lensFacing = lensFacing;
+      this.jpegSizes = Collections.unmodifiableList(jpegSizes);
+      this.yuvSizes = Collections.unmodifiableList(yuvSizes);
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          Locale.US,
+          "camera %s facing=%d jpeg=%d sizes, max %s",
+          id,
+          lensFacing,
+          jpegSizes.size(),
+          jpegSizes.isEmpty() ? "-" : jpegSizes.get(0));
+    }
+  }
+
+  private final List<Camera> cameras;
+  private final boolean probed;
+
+  private CameraCapabilities(List<Camera> cameras, boolean probed) {
+    this.cameras = Collections.unmodifiableList(cameras);
+    this.probed = probed;
+  }
+
+  // blocking, call off the main thread. a cache that can't be read or written only costs a
+  // probe; null when Camera2 can't be asked either
+  public static CameraCapabilities load(File cache, CameraManager manager) {
+    if (cache.exists()) {
+      try {
+        List<Camera> cameras = read(cache);
+        if (cameras != null) return new CameraCapabilities(cameras, false);
+      } catch (IOException e) {
+        Log.w(TAG, "Unreadable capability cache, probing again", e);
+      }
+    }
+    List<Camera> cameras;
+    try {
+      cameras = probe(manager);
+    } catch (CameraAccessException e) {
+      Log.e(TAG, "Camera capabilities unavailable", e);
+      return null;
+    }
+    try {
+      write(cache, cameras);
+    } catch (IOException e) {
+      Log.w(TAG, "Failed to cache camera capabilities", e);
+    }
+    return new CameraCapabilities(cameras, true);
+  }
+
+  public List<Camera> getCameras() {
+    return cameras;
+  }
+
+  // null when there is no such camera
+  public Camera find(String id) {
+    for (Camera camera : cameras) {
+      if (camera.id.equals(id)) return camera;
+    }
+    return null;
+  }
+
+  // the first camera facing that way, null when there is none
+  public Camera first(int lensFacing) {
+    for (Camera camera : cameras) {
+      if (camera.lensFacing == lensFacing) return camera;
+    }
+    return null;
+  }
+
+  // false when the sizes came from the cache file
+  public boolean wasProbed() {
+    return probed;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder text =
+        new StringBuilder(getClass().getSimpleName())
+            .append(probed ? ": probed" : ": cached");
+    for (Camera camera : cameras) text.append("\n  ").append(camera);
+    return text.toString();
+  }
+
+  private static List<Camera> probe(CameraManager manager) throws CameraAccessException {
+    List<Camera> cameras = new ArrayList<>();
+    for (String id : manager.getCameraIdList()) {
+      CameraCharacteristics characteristics = manager.getCameraCharacteristics(id);
+      StreamConfigurationMap map =
+          characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+      Integer facing = characteristics.get(CameraCharacteristics.LENS_FACING);
+      if (map == null) continue;
+      List<Size> jpegSizes = sorted(map.getOutputSizes(ImageFormat.JPEG));
+      // depth-only and other cameras CameraX can't take a photo with
+      if (jpegSizes.isEmpty()) continue;
+      cameras.add(
+          new Camera(
+              id,
+              facing != null ? facing : CameraMetadata.LENS_FACING_EXTERNAL,
+              jpegSizes,
+              sorted(map.getOutputSizes(ImageFormat.YUV_420_888))));
+    }
+    return cameras;
+  }
+
+  private static List<Size> sorted(Size[] sizes) {
+    List<Size> list = new ArrayList<>();
+    if (sizes != null) Collections.addAll(list, sizes);
+    Collections.sort(list, (a, b) -> Long.compare(pixels(b), pixels(a)));
+    return list;
+  }
+
+  static long pixels(Size size) {
+    return (long) size.getWidth() * size.getHeight();
+  }
+
+  // null when the file was written by another build or format version
+  private static List<Camera> read(File cache) throws IOException {
+    try (InputStream in = new FileInputStream(cache)) {
+      DataInputStream data = new DataInputStream(in);
+      if (data.readInt() != MAGIC || data.readInt() != VERSION) return null;
+      if (!data.readUTF().equals(Build.FINGERPRINT)) return null;
+      int count = data.readInt();
+      List<Camera> cameras = new ArrayList<>(count);
+      for (int i = 0; i < count; i++) {
+        String id = data.readUTF();
+        int facing = data.readInt();
+        List<Size> jpegSizes = readSizes(data);
+        List<Size> yuvSizes = readSizes(data);
+        cameras.add(new Camera(id, facing, jpegSizes, yuvSizes));
+      }
+      return cameras;
+    }
+  }
+
+  private static List<Size> readSizes(DataInputStream data) throws IOException {
+    int count = data.readUnsignedShort();
+    List<Size> sizes = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      sizes.add(new Size(data.readUnsignedShort(), data.readUnsignedShort()));
+    }
+    return sizes;
+  }
+
+  // through a temp file, a crash mid-write leaves the old cache or none
+  private static void write(File cache, List<Camera> cameras) throws IOException {
+    File tmp = new File(cache.getPath() + ".tmp");
+    try (OutputStream out = new FileOutputStream(tmp)) {
+      DataOutputStream data = new DataOutputStream(out);
+      data.writeInt(MAGIC);
+      data.writeInt(VERSION);
+      data.writeUTF(Build.FINGERPRINT);
+      data.writeInt(cameras.size());
+      for (Camera camera : cameras) {
+        data.writeUTF(camera.id);
+        data.writeInt(camera.lensFacing);
+        writeSizes(data, camera.jpegSizes);
+        writeSizes(data, camera.yuvSizes);
+      }
+      data.flush();
+    }
+    if (!tmp.renameTo(cache)) throw new IOException("Failed to replace " + cache);
+  }
+
+  // sides fit an unsigned short, no sensor is 64k pixels wide
+  private static void writeSizes(DataOutputStream data, List<Size> sizes) throws IOException {
+    data.writeShort(sizes.size());
+    for (Size size : sizes) {
+      data.writeShort(size.getWidth());
+      data.writeShort(size.getHeight());
+    }
+  }
+}
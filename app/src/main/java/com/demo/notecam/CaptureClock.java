@@ -0,0 +1,43 @@
+package com.demo.notecam;
+
+import android.os.SystemClock;
+
+// wall-clock capture times worked out from sensor timestamps. the wall clock is read once
+// next to elapsed realtime, and a frame is dated by how long after that it was exposed, so
+// the time is the exposure's rather than whenever the callback got to run. times handed out
+// only ever go up, a burst sorts in the order it was shot even across a wall clock change
+public final class CaptureClock {
+
+  // the wall clock moved this far from ours, it was set; follow it from here on
+  private static final long RESYNC_MILLIS = 1000;
+
+  private long anchorWallMillis;
+  private long anchorRealtimeNanos;
+  private long lastMillis = Long.MIN_VALUE;
+
+  public CaptureClock() {
+    anchor();
+  }
+
+  // sensorTimestampNanos on the camera's clock, 0 when unknown to date the shot now
+  public synchronized long captureTimeMillis(long sensorTimestampNanos) {
+    long now = SystemClock.elapsedRealtimeNanos();
+    if (Math.abs(toWallMillis(now) - System.currentTimeMillis()) > RESYNC_MILLIS) anchor();
+    long exposed =
+        sensorTimestampNanos != 0
+            ? LocationUtil.toElapsedRealtimeNanos(sensorTimestampNanos)
+            : now;
+    long time = Math.max(toWallMillis(exposed), lastMillis + 1);
+    lastMillis = time;
+    return time;
+  }
+
+  private long toWallMillis(long realtimeNanos) {
+    return anchorWallMillis + Math.floorDiv(realtimeNanos - anchorRealtimeNanos, 1_000_000L);
+  }
+
+  private void anchor() {
+    anchorRealtimeNanos = SystemClock.elapsedRealtimeNanos();
+    anchorWallMillis = System.currentTimeMillis();
+  }
+}
@@ -0,0 +1,144 @@
+package com.demo.notecam;
+
+import android.graphics.Bitmap;
+import android.location.Location;
+
+import androidx.camera.core.ImageProxy;
+
+import java.nio.ByteBuffer;
+
+// everything one shot carries from the capture callback down to the MediaStore
+public final class CaptureJob {
+
+  private static final String JOURNAL_PROVIDER = "journal";
+
+  // where the device was at exposure, filled in by the activity before the shot is journaled
+  public Location location;
+  // how far off location may be at the moment of exposure, NaN when unknown
+  public float locationErrorMeters = Float.NaN;
+  // ImageInfo timestamp of the frame, 0 when not known (replayed shots)
+  public long sensorTimestampNanos;
+  public final long captureTimeMillis;
+  public final int rotationDegrees;
+  // System.nanoTime() when the shutter was pressed, for end-to-end latency
+  public long shutterNanos;
+  // set when the shot belongs to a burst
+  public BurstStats burst;
+  // encoded frame as the camera delivered it, only the first jpegLength bytes are valid
+  public byte[] jpeg;
+  public int jpegLength;
+  public Bitmap bitmap;
+  // small copy for the gallery, owned by the thumbnail cache once the photo is saved
+  public Bitmap thumbnail;
+  public YuvFrame yuv;
+  // where the shot sits in the capture journal, -1 when it isn't journaled
+  public long journalOffset = -1;
+  // set once the shot is in the duplicate index
+  public byte[] contentHash;
+  // the earlier shot this one looks like, null when it matched nothing
+  public DuplicateIndex.Match duplicateOf;
+  // a duplicate that isn't saved, the stages after decode leave it alone
+  public boolean skipped;
+  // the named site location is at, null when there is none near or no site list
+  public String site;
+
+  public CaptureJob(
+      byte[] jpeg, int jpegLength, int rotationDegrees, long captureTimeMillis, Location location) {
+    this.jpeg = jpeg;
+    this.jpegLength = jpegLength;
+    this.rotationDegrees = rotationDegrees;
+    this.captureTimeMillis = captureTimeMillis;
+    this.location = location;
+  }
+
+  public CaptureJob(YuvFrame yuv, long captureTimeMillis, Location location) {
+    this.yuv = yuv;
+    this.rotationDegrees = yuv.rotationDegrees;
+    this.sensorTimestampNanos = yuv.timestampNanos;
+    this.captureTimeMillis = captureTimeMillis;
+    this.location = location;
+  }
+
+  // copies the JPEG out so the camera gets its buffer back right away; the caller closes image
+  public static CaptureJob fromImage(ImageProxy image, BytePool bytePool, CaptureClock clock) {
+    ByteBuffer buffer = image.getPlanes()[0].getBuffer();
+    int length = buffer.remaining();
+    byte[] bytes = bytePool.acquire(length);
+    buffer.get(bytes, 0, length);
+    CaptureJob job =
+        new CaptureJob(
+            bytes,
+            length,
+            image.getImageInfo().getRotationDegrees(),
+            clock.captureTimeMillis(image.getImageInfo().getTimestamp()),
+            null);
+    job.sensorTimestampNanos = image.getImageInfo().getTimestamp();
+    return job;
+  }
+
+  public static CaptureJob fromRecord(CaptureJournal.Record record, byte[] payload) {
+    Location location = null;
+    if (record.hasLocation) {
+      location = new Location(JOURNAL_PROVIDER);
+      location.setLatitude(record.latitude);
+      location.setLongitude(record.longitude);
+      location.setTime(record.fixTimeMillis);
+      if (record.hasAltitude) location.setAltitude(record.altitude);
+      if (record.hasAccuracy) location.setAccuracy(record.accuracy);
+    }
+    CaptureJob job;
+    if (record.kind == CaptureJournal.KIND_NV21) {
+      YuvFrame frame = new YuvFrame(record.width, record.height, payload);
+      frame.rotationDegrees = record.rotationDegrees;
+      job = new CaptureJob(frame, record.captureTimeMillis, location);
+    } else {
+      job =
+          new CaptureJob(
+              payload,
+              record.payloadLength,
+              record.rotationDegrees,
+              record.captureTimeMillis,
+              location);
+    }
+    job.journalOffset = record.offset;
+    return job;
+  }
+
+  public CaptureJournal.Record toRecord(String note) {
+    CaptureJournal.Record record = new CaptureJournal.Record();
+    record.kind = yuv != null ? CaptureJournal.KIND_NV21 : CaptureJournal.KIND_JPEG;
+    record.captureTimeMillis = captureTimeMillis;
+    record.rotationDegrees = rotationDegrees;
+    if (yuv != null) {
+      record.width = yuv.width;
+      record.height = yuv.height;
+    }
+    if (location != null) {
+      record.hasLocation = true;
+      record.latitude = location.getLatitude();
+      record.longitude = location.getLongitude();
+      record.fixTimeMillis = location.getTime();
+      record.hasAltitude = location.hasAltitude();
+      record.altitude = location.getAltitude();
+      record.hasAccuracy = location.hasAccuracy();
+      record.accuracy = location.getAccuracy();
+    }
+    record.note = note;
+    return record;
+  }
+
+  public byte[] getPayload() {
+    return yuv != null ? yuv.data : jpeg;
+  }
+
+  public int getPayloadLength() {
+    return yuv != null ? yuv.width * yuv.height * 3 / 2 : jpegLength;
+  }
+
+  public void release() {
+    jpeg = null;
+    bitmap = null;
+    thumbnail = null;
+    yuv = null;
+  }
+}
@@ -0,0 +1,233 @@
+package com.demo.notecam;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+// write-ahead log of captured frames. a shot is appended to a memory-mapped file the moment the
+// camera hands it over and marked done once it is in the MediaStore, so a shot that was still in
+// memory when the process died is found again and replayed on the next start.
+public final class CaptureJournal implements Closeable {
+
+  public static final int KIND_JPEG = 0;
+  public static final int KIND_NV21 = 1;
+
+  private static final int MAGIC = 0x4E434A31;
+  private static final byte STATE_PENDING = 0;
+  private static final byte STATE_DONE = 1;
+  private static final int FLAG_LOCATION = 1;
+  private static final int FLAG_ALTITUDE = 2;
+  private static final int FLAG_ACCURACY = 4;
+  private static final int OFFSET_STATE = 4;
+  // magic, state, kind, flags, spare, time, rotation, size, lat, lon, alt, accuracy, fix time
+  private static final int FIXED_HEADER = 60;
+  private static final int GROWTH = 16 * 1024 * 1024;
+
+  private final RandomAccessFile file;
+  private final FileChannel channel;
+  private final long maxBytes;
+  private final List<Record> recovered = new ArrayList<>();
+  private MappedByteBuffer map;
+  private int position;
+  private int pending;
+
+  private CaptureJournal(RandomAccessFile file, long maxBytes) {
+    this.file = file;
+    this.channel = file.getChannel();
+    this.maxBytes = Math.min(maxBytes, Integer.MAX_VALUE);
+  }
+
+  // scans what an earlier process left behind; getRecoveredRecords() lists what still needs saving
+  public static CaptureJournal open(File path, long maxBytes) throws IOException {
+    CaptureJournal journal = new CaptureJournal(new RandomAccessFile(path, "rw"), maxBytes);
+    try {
+      journal.recover();
+    } catch (IOException | RuntimeException e) {
+      journal.close();
+      throw e;
+    }
+    return journal;
+  }
+
+  private void recover() throws IOException {
+    long length = channel.size();
+    if (length > 0) {
+      map = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.min(length, maxBytes));
+      Record record;
+      while ((record = readRecord(position)) != null) {
+        if (map.get(position + OFFSET_STATE) == STATE_PENDING) {
+          recovered.add(record);
+          pending++;
+        }
+        position = record.payloadOffset + record.payloadLength + 4;
+      }
+    }
+    if (pending == 0) {
+      // nothing to replay, start from an empty file before anything maps it again
+      map = null;
+      channel.truncate(0);
+      position = 0;
+    }
+  }
+
+  public synchronized List<Record> getRecoveredRecords() {
+    return new ArrayList<>(recovered);
+  }
+
+  public synchronized int getPendingCount() {
+    return pending;
+  }
+
+  // returns the offset that identifies the record for markDone
+  public synchronized long append(Record record, byte[] payload, int payloadLength)
+      throws IOException {
+    byte[] note = record.note == null ? new byte[0] : record.note.getBytes(StandardCharsets.UTF_8);
+    int noteLength = Math.min(note.length, Short.MAX_VALUE);
+    int size = FIXED_HEADER + 2 + noteLength + 4 + payloadLength + 4;
+    // room for the terminator that keeps stale records after a reset from being read back
+    ensureCapacity(position + size + 4);
+
+    int start = position;
+    ByteBuffer out = map.duplicate();
+    out.position(start);
+    out.putInt(MAGIC);
+    out.put(STATE_PENDING);
+    out.put((byte) record.kind);
+    int flags =
+        (record.hasLocation ? FLAG_LOCATION : 0)
+            | (record.hasAltitude ? FLAG_ALTITUDE : 0)
+            | (record.hasAccuracy ? FLAG_ACCURACY : 0);
+    out.put((byte) flags);
+    out.put((byte) 0);
+    out.putLong(record.captureTimeMillis);
+    out.putInt(record.rotationDegrees);
+    out.putShort((short) record.width);
+    out.putShort((short) record.height);
+    out.putDouble(record.latitude);
+    out.putDouble(record.longitude);
+    out.putDouble(record.altitude);
+    out.putFloat(record.accuracy);
+    out.putLong(record.fixTimeMillis);
+    out.putShort((short) noteLength);
+    out.put(note, 0, noteLength);
+    out.putInt(payloadLength);
+    out.put(payload, 0, payloadLength);
+    out.putInt((int) crc(start, out.position() - start));
+    out.putInt(0);
+
+    position = start + size;
+    pending++;
+    return start;
+  }
+
+  public synchronized void readPayload(Record record, byte[] into) {
+    ByteBuffer in = map.duplicate();
+    in.position(record.payloadOffset);
+    in.get(into, 0, record.payloadLength);
+  }
+
+  public synchronized void markDone(long offset) {
+    if (map == null || offset < 0 || offset >= position) return;
+    if (map.get((int) offset + OFFSET_STATE) != STATE_PENDING) return;
+    map.put((int) offset + OFFSET_STATE, STATE_DONE);
+    pending--;
+    recovered.removeIf(record -> record.offset == offset);
+    if (pending == 0) {
+      // everything is saved: start over at the front, the terminator hides the old records
+      position = 0;
+      map.putInt(0, 0);
+    }
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    map = null;
+    file.close();
+  }
+
+  private void ensureCapacity(long needed) throws IOException {
+    if (needed > maxBytes) throw new IOException("Capture journal is full.");
+    if (map != null && needed <= map.capacity()) return;
+    long size = Math.min(maxBytes, (needed + GROWTH - 1) / GROWTH * GROWTH);
+    map = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+  }
+
+  private Record readRecord(int offset) {
+    int limit = map.capacity();
+    if (offset + FIXED_HEADER + 2 > limit || map.getInt(offset) != MAGIC) return null;
+    ByteBuffer in = map.duplicate();
+    in.position(offset + 5);
+    Record record = new Record();
+    record.offset = offset;
+    record.kind = in.get();
+    int flags = in.get();
+    in.get();
+    record.hasLocation = (flags & FLAG_LOCATION) != 0;
+    record.hasAltitude = (flags & FLAG_ALTITUDE) != 0;
+    record.hasAccuracy = (flags & FLAG_ACCURACY) != 0;
+    record.captureTimeMillis = in.getLong();
+    record.rotationDegrees = in.getInt();
+    record.width = in.getShort() & 0xFFFF;
+    record.height = in.getShort() & 0xFFFF;
+    record.latitude = in.getDouble();
+    record.longitude = in.getDouble();
+    record.altitude = in.getDouble();
+    record.accuracy = in.getFloat();
+    record.fixTimeMillis = in.getLong();
+    int noteLength = in.getShort();
+    if (noteLength < 0 || in.position() + noteLength + 4 > limit) return null;
+    byte[] note = new byte[noteLength];
+    in.get(note);
+    record.note = new String(note, StandardCharsets.UTF_8);
+    record.payloadLength = in.getInt();
+    record.payloadOffset = in.position();
+    long end = (long) record.payloadOffset + record.payloadLength;
+    if (record.payloadLength < 0 || end + 4 > limit) return null;
+    // a record torn by the process dying halfway through the append ends the journal
+    if (map.getInt((int) end) != (int) crc(offset, (int) (end - offset))) return null;
+    return record;
+  }
+
+  // the state byte is left out, it changes after the record is written
+  private long crc(int offset, int length) {
+    CRC32 crc = new CRC32();
+    ByteBuffer head = map.duplicate();
+    head.position(offset);
+    head.limit(offset + OFFSET_STATE);
+    crc.update(head);
+    ByteBuffer rest = map.duplicate();
+    rest.position(offset + OFFSET_STATE + 1);
+    rest.limit(offset + length);
+    crc.update(rest);
+    return crc.getValue();
+  }
+
+  public static final class Record {
+    public long offset = -1;
+    public int kind;
+    public long captureTimeMillis;
+    public int rotationDegrees;
+    // frame size, only used for NV21 payloads
+    public int width;
+    public int height;
+    public boolean hasLocation;
+    public boolean hasAltitude;
+    public boolean hasAccuracy;
+    public double latitude;
+    public double longitude;
+    public double altitude;
+    public float accuracy;
+    public long fixTimeMillis;
+    public String note;
+    int payloadOffset;
+    public int payloadLength;
+  }
+}
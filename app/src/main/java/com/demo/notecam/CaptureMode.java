@@ -0,0 +1,10 @@
+package com.demo.notecam;
+
+public enum CaptureMode {
+  // ImageCapture delivers a JPEG that is decoded, watermarked and encoded again
+  JPEG,
+  // frames come from ImageAnalysis as YUV, the overlay is drawn into the planes and encoded once
+  YUV,
+  // YUV as well, but from a ring of recent frames: the one exposed closest to the tap is taken
+  ZSL
+}
@@ -0,0 +1,188 @@
+package com.demo.notecam;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+// runs every shot through an ordered list of stages, each one on its own thread.
+// the number of shots inside the pipeline is capped so a slow stage pushes back on the
+// shutter instead of piling frames up in memory.
+public final class CapturePipeline<T> {
+
+  private final Semaphore inFlight;
+  private final int maxInFlight;
+  private final Listener<T> listener;
+  private Runnable idleCallback;
+  private final List<StageRunner> stages = new ArrayList<>();
+  private final LatencyCounter totalLatency = new LatencyCounter("total");
+  private volatile boolean started = false;
+  private volatile boolean shutdown = false;
+
+  public CapturePipeline(int maxInFlight, Listener<T> listener) {
+    if (maxInFlight < 1) throw new IllegalArgumentException("maxInFlight must be >= 1");
+    this.maxInFlight = maxInFlight;
+    this.inFlight = new Semaphore(maxInFlight);
+    this.listener = listener;
+  }
+
+  public CapturePipeline<T> addStage(String name, Stage<T> stage) {
+    if (started) throw new IllegalStateException("stages must be added before the first submit");
+    stages.add(new StageRunner(stages.size(), name, stage));
+    return this;
+  }
+
+  // runs each time the last shot inside finishes, whichever way it finished, on that shot's
+  // last thread. it must not throw
+  public CapturePipeline<T> setIdleCallback(Runnable callback) {
+    if (started) throw new IllegalStateException("set the idle callback before the first submit");
+    idleCallback = callback;
+    return this;
+  }
+
+  // returns false when the pipeline is full or shut down; the caller still owns the job then
+  public boolean submit(T job) {
+    if (shutdown || stages.isEmpty() || !inFlight.tryAcquire()) return false;
+    started = true;
+    stages.get(0).enqueue(job, System.nanoTime());
+    return true;
+  }
+
+  // waits up to timeout for room, for callers that can afford to block
+  public boolean submit(T job, long timeout, TimeUnit unit) throws InterruptedException {
+    if (shutdown || stages.isEmpty() || !inFlight.tryAcquire(timeout, unit)) return false;
+    if (shutdown) {
+      inFlight.release();
+      return false;
+    }
+    started = true;
+    stages.get(0).enqueue(job, System.nanoTime());
+    return true;
+  }
+
+  public int getInFlight() {
+    return maxInFlight - inFlight.availablePermits();
+  }
+
+  public int getMaxInFlight() {
+    return maxInFlight;
+  }
+
+  public List<LatencyCounter> getStageLatencies() {
+    List<LatencyCounter> counters = new ArrayList<>(stages.size());
+    for (StageRunner runner : stages) counters.add(runner.latency);
+    return counters;
+  }
+
+  public LatencyCounter getTotalLatency() {
+    return totalLatency;
+  }
+
+  // stops accepting shots; those already inside still run to the end since each stage
+  // only shuts down once the stage before it has drained
+  public void shutdown() {
+    shutdown = true;
+    if (!stages.isEmpty()) stages.get(0).executor.shutdown();
+  }
+
+  public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    for (StageRunner runner : stages) {
+      long left = deadline - System.nanoTime();
+      if (left <= 0 || !runner.executor.awaitTermination(left, TimeUnit.NANOSECONDS)) return false;
+    }
+    return true;
+  }
+
+  private void finish(T job, long submittedAt, String failedStage, Exception error) {
+    try {
+      if (error == null) {
+        totalLatency.record(System.nanoTime() - submittedAt);
+      } else {
+        totalLatency.recordError();
+      }
+      if (listener != null) listener.onFinished(job, failedStage, error);
+    } finally {
+      inFlight.release();
+    }
+    // checked after the release, so of two shots finishing together one sees the pipeline empty
+    if (idleCallback != null && inFlight.availablePermits() == maxInFlight) idleCallback.run();
+  }
+
+  public interface Stage<T> {
+    void process(T job) throws Exception;
+  }
+
+  public interface Listener<T> {
+    // called exactly once per accepted job, on the thread of the last stage that ran.
+    // failedStage and error are null when every stage succeeded
+    void onFinished(T job, String failedStage, Exception error);
+  }
+
+  private final class StageRunner {
+    private final int index;
+    private final String name;
+    private final Stage<T> stage;
+    private final ThreadPoolExecutor executor;
+    private final LatencyCounter latency;
+
+    StageRunner(int index, String name, Stage<T> stage) {
+      this.index = index;
+      this.name = name;
+      this.stage = stage;
+      this.latency = new LatencyCounter(name);
+      // the in-flight permits already bound the work, so the queue can never overflow
+      this.executor =
+          new ThreadPoolExecutor(
+              1,
+              1,
+              0L,
+              TimeUnit.MILLISECONDS,
+              new ArrayBlockingQueue<>(maxInFlight),
+              namedThreadFactory("capture-" + name)) {
+            @Override
+            protected void terminated() {
+              if (index + 1 < stages.size()) stages.get(index + 1).executor.shutdown();
+            }
+          };
+    }
+
+    void enqueue(T job, long submittedAt) {
+      try {
+        executor.execute(() -> run(job, submittedAt));
+      } catch (RejectedExecutionException e) {
+        // shut down while the shot was between stages
+        finish(job, submittedAt, name, e);
+      }
+    }
+
+    private void run(T job, long submittedAt) {
+      long start = System.nanoTime();
+      try {
+        stage.process(job);
+        latency.record(System.nanoTime() - start);
+      } catch (Exception e) {
+        latency.recordError();
+        finish(job, submittedAt, name, e);
+        return;
+      }
+      if (index + 1 < stages.size()) {
+        stages.get(index + 1).enqueue(job, submittedAt);
+      } else {
+        finish(job, submittedAt, null, null);
+      }
+    }
+  }
+
+  private static ThreadFactory namedThreadFactory(String name) {
+    return runnable -> {
+      Thread thread = new Thread(runnable, name);
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+}
@@ -0,0 +1,50 @@
+package com.demo.notecam;
+
+import android.util.Size;
+
+import androidx.camera.core.ImageCapture;
+
+import java.util.List;
+
+// what a shot is taken for decides its size and whether the camera may trade quality for speed
+public enum CaptureProfile {
+  DOCUMENT_4MP_FAST("Document 4 MP, fast", 4_000_000, ImageCapture.CAPTURE_MODE_MINIMIZE_LATENCY),
+  EVIDENCE_FULL_RES("Evidence, full resolution", 0, ImageCapture.CAPTURE_MODE_MAXIMIZE_QUALITY),
+  BURST_2MP("Burst 2 MP", 2_000_000, ImageCapture.CAPTURE_MODE_MINIMIZE_LATENCY);
+
+  // sizes within this of the sensor's aspect ratio count as uncropped
+  private static final double ASPECT_TOLERANCE = 0.01;
+
+  public final String label;
+  // 0 for the largest size the camera has
+  public final long maxPixels;
+  // ImageCapture.CAPTURE_MODE_*
+  public final int captureMode;
+
+  CaptureProfile(String label, long maxPixels, int captureMode) {
+    this.label = label;
+    this.maxPixels = maxPixels;
+    this.captureMode = captureMode;
+  }
+
+  // the largest size within the budget that keeps the full sensor's aspect ratio, falling back
+  // to any aspect and then to the smallest size; null when the camera lists none
+  public Size pickSize(List<Size> sizes) {
+    if (sizes.isEmpty()) return null;
+    // largest first, so the first one is the full sensor
+    Size full = sizes.get(0);
+    if (maxPixels <= 0) return full;
+    double aspect = aspect(full);
+    Size anyAspect = null;
+    for (Size size : sizes) {
+      if (CameraCapabilities.pixels(size) > maxPixels) continue;
+      if (Math.abs(aspect(size) - aspect) <= ASPECT_TOLERANCE) return size;
+      if (anyAspect == null) anyAspect = size;
+    }
+    return anyAspect != null ? anyAspect : sizes.get(sizes.size() - 1);
+  }
+
+  private static double aspect(Size size) {
+    return (double) size.getWidth() / size.getHeight();
+  }
+}
@@ -0,0 +1,244 @@
+package com.demo.notecam;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+// every saved shot by content hash and perceptual hash. the content hash (SHA-256 of what the
+// camera delivered) catches the same shot coming round twice; the perceptual hash (a 64-bit
+// dHash of the thumbnail, taken before the watermark goes on) catches frames that only differ
+// by noise, as a burst of a still page does. near lookups are a popcount over every hash,
+// a few microseconds for a year of shots. entries are appended to a log of fixed-size records
+// once the photo has an id; a shot that is still being saved is only in memory
+public final class DuplicateIndex implements Closeable {
+
+  public static final int CONTENT_HASH_BYTES = 32;
+  // hashing a 9x8 grey image gives 8 left/right comparisons per row
+  private static final int HASH_WIDTH = 9;
+  private static final int HASH_HEIGHT = 8;
+  private static final long PENDING = -1;
+  private static final int RECORD = 8 + CONTENT_HASH_BYTES + 8;
+
+  public enum Verdict {
+    NEW,
+    NEAR,
+    EXACT
+  }
+
+  public static final class Match {
+    public final Verdict verdict;
+    // the earlier photo, -1 when it is still being saved or for NEW
+    public final long photoId;
+    // Hamming distance between the perceptual hashes, 0 for EXACT
+    public final int distance;
+
+    Match(Verdict verdict, long photoId, int distance) {
+      this.verdict = verdict;
+      this.photoId = photoId;
+      this.distance = distance;
+    }
+  }
+
+  private static final Match NEW = new Match(Verdict.NEW, PENDING, 64);
+
+  // null keeps the index in memory only
+  private final File file;
+  private final int maxDistance;
+  private OutputStream out;
+  private long[] perceptual = new long[64];
+  private byte[][] content = new byte[64][];
+  private long[] photoIds = new long[64];
+  private int size;
+  // first 8 bytes of the content hash to the slot holding it
+  private final Map<Long, Integer> byContent = new HashMap<>();
+  private final ByteBuffer record = ByteBuffer.allocate(RECORD);
+  private long checked;
+  private long exact;
+  private long near;
+
+  private DuplicateIndex(File file, int maxDistance) {
+    this.file = file;
+    this.maxDistance = maxDistance;
+  }
+
+  // blocking, call off the main thread. maxDistance below 0 turns near matching off
+  public static DuplicateIndex open(File file, int maxDistance) throws IOException {
+    DuplicateIndex index = new DuplicateIndex(file, maxDistance);
+    if (file != null) index.load();
+    return index;
+  }
+
+  public synchronized Match check(long perceptualHash, byte[] contentHash) {
+    checked++;
+    int slot = find(contentHash);
+    if (slot >= 0) {
+      exact++;
+      return new Match(Verdict.EXACT, photoIds[slot], 0);
+    }
+    if (maxDistance < 0) return NEW;
+    int best = -1;
+    int bestDistance = maxDistance + 1;
+    for (int i = 0; i < size; i++) {
+      int distance = Long.bitCount(perceptual[i] ^ perceptualHash);
+      if (distance < bestDistance) {
+        bestDistance = distance;
+        best = i;
+      }
+    }
+    if (best < 0) return NEW;
+    near++;
+    return new Match(Verdict.NEAR, photoIds[best], bestDistance);
+  }
+
+  // a shot that is going to be saved, so the ones right behind it are checked against it too
+  public synchronized void add(long perceptualHash, byte[] contentHash) {
+    if (find(contentHash) >= 0) return;
+    if (size == perceptual.length) {
+      perceptual = Arrays.copyOf(perceptual, size * 2);
+      content = Arrays.copyOf(content, size * 2);
+      photoIds = Arrays.copyOf(photoIds, size * 2);
+    }
+    perceptual[size] = perceptualHash;
+    content[size] = contentHash;
+    photoIds[size] = PENDING;
+    byContent.put(prefix(contentHash), size);
+    size++;
+  }
+
+  // the shot is saved; only now is it written to the log
+  public synchronized void setPhotoId(byte[] contentHash, long photoId) throws IOException {
+    int slot = find(contentHash);
+    if (slot < 0) return;
+    photoIds[slot] = photoId;
+    if (out != null) {
+      record.clear();
+      record.putLong(perceptual[slot]).put(contentHash).putLong(photoId);
+      out.write(record.array(), 0, RECORD);
+      out.flush();
+    }
+  }
+
+  // the shot failed after add(), a retake must not match it
+  public synchronized void remove(byte[] contentHash) {
+    int slot = find(contentHash);
+    if (slot < 0 || photoIds[slot] != PENDING) return;
+    byContent.remove(prefix(contentHash));
+    int last = --size;
+    if (slot != last) {
+      perceptual[slot] = perceptual[last];
+      content[slot] = content[last];
+      photoIds[slot] = photoIds[last];
+      byContent.put(prefix(content[slot]), slot);
+    }
+    content[last] = null;
+  }
+
+  public synchronized int size() {
+    return size;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return String.format(
+        Locale.US,
+        "%s: size=%d checked=%d exact=%d near=%d (distance <= %d)",
+        getClass().getSimpleName(),
+        size,
+        checked,
+        exact,
+        near,
+        maxDistance);
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    if (out != null) out.close();
+    out = null;
+  }
+
+  // dHash of an ARGB image: box-averaged down to 9x8 grey, one bit per horizontally
+  // neighbouring pair, set where the left one is brighter
+  public static long perceptualHash(int[] argb, int width, int height) {
+    int[] grey = new int[HASH_WIDTH * HASH_HEIGHT];
+    for (int cy = 0; cy < HASH_HEIGHT; cy++) {
+      int top = cy * height / HASH_HEIGHT;
+      int bottom = Math.max(top + 1, (cy + 1) * height / HASH_HEIGHT);
+      for (int cx = 0; cx < HASH_WIDTH; cx++) {
+        int left = cx * width / HASH_WIDTH;
+        int right = Math.max(left + 1, (cx + 1) * width / HASH_WIDTH);
+        long sum = 0;
+        for (int y = top; y < bottom; y++) {
+          int row = y * width;
+          for (int x = left; x < right; x++) {
+            int pixel = argb[row + x];
+            // integer Rec. 601 luma
+            sum += (77 * (pixel >> 16 & 0xFF) + 150 * (pixel >> 8 & 0xFF) + 29 * (pixel & 0xFF));
+          }
+        }
+        grey[cy * HASH_WIDTH + cx] = (int) (sum / ((long) (bottom - top) * (right - left)));
+      }
+    }
+    long hash = 0;
+    for (int cy = 0; cy < HASH_HEIGHT; cy++) {
+      for (int cx = 0; cx < HASH_WIDTH - 1; cx++) {
+        int at = cy * HASH_WIDTH + cx;
+        hash = hash << 1 | (grey[at] > grey[at + 1] ? 1 : 0);
+      }
+    }
+    return hash;
+  }
+
+  public static byte[] contentHash(byte[] data, int offset, int length) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      // every Java platform has to provide SHA-256
+      throw new IllegalStateException(e);
+    }
+    digest.update(data, offset, length);
+    return digest.digest();
+  }
+
+  private int find(byte[] contentHash) {
+    Integer slot = byContent.get(prefix(contentHash));
+    return slot != null && Arrays.equals(content[slot], contentHash) ? slot : -1;
+  }
+
+  private static long prefix(byte[] contentHash) {
+    return ByteBuffer.wrap(contentHash).getLong();
+  }
+
+  private void load() throws IOException {
+    long length = 0;
+    if (file.exists()) {
+      try (RandomAccessFile in = new RandomAccessFile(file, "rw")) {
+        length = in.length() / RECORD * RECORD;
+        byte[] bytes = new byte[(int) length];
+        in.readFully(bytes);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+          long hash = buffer.getLong();
+          byte[] contentHash = new byte[CONTENT_HASH_BYTES];
+          buffer.get(contentHash);
+          long photoId = buffer.getLong();
+          add(hash, contentHash);
+          photoIds[find(contentHash)] = photoId;
+        }
+        // a torn record at the end
+        if (in.length() != length) in.setLength(length);
+      }
+    }
+    out = new FileOutputStream(file, true);
+  }
+}
@@ -0,0 +1,267 @@
+package com.demo.notecam;
+
+import android.graphics.Bitmap;
+import android.graphics.ImageFormat;
+import android.graphics.Rect;
+import android.graphics.YuvImage;
+import android.os.Build;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+// how finished shots are encoded: the output format, and either a fixed quality or a byte
+// budget met by searching qualities on a small probe. keeps timing and size numbers per format
+public final class EncodingPolicy {
+
+  public enum Format {
+    JPEG("image/jpeg"),
+    WEBP("image/webp");
+
+    public final String mimeType;
+
+    Format(String mimeType) {
+      this.mimeType = mimeType;
+    }
+  }
+
+  public enum Mode {
+    FIXED_QUALITY,
+    TARGET_SIZE
+  }
+
+  public static final int DEFAULT_QUALITY = 90;
+  // below this a budget is simply missed rather than met with visible blocking
+  private static final int MIN_QUALITY = 40;
+  private static final int MAX_QUALITY = 95;
+  // long side of the downscaled copy the quality search encodes
+  private static final int PROBE_SIZE = 512;
+
+  private final Format format;
+  private final Mode mode;
+  private final int quality;
+  private final long targetBytes;
+  private final Map<Format, FormatStats> stats = new EnumMap<>(Format.class);
+  // actual size over probe estimate, learned from the shots so far; probes overestimate since
+  // a downscaled image has more detail per pixel
+  private double correction = 1;
+
+  private EncodingPolicy(Format format, Mode mode, int quality, long targetBytes) {
+    this.format = format;
+    this.mode = mode;
+    this.quality = Math.max(1, Math.min(100, quality));
+    this.targetBytes = targetBytes;
+    for (Format f : Format.values()) stats.put(f, new FormatStats(f));
+  }
+
+  public static EncodingPolicy fixedQuality(Format format, int quality) {
+    return new EncodingPolicy(format, Mode.FIXED_QUALITY, quality, 0);
+  }
+
+  public static EncodingPolicy targetSize(Format format, long targetBytes) {
+    return new EncodingPolicy(format, Mode.TARGET_SIZE, DEFAULT_QUALITY, targetBytes);
+  }
+
+  // YUV frames only have a JPEG encoder, everything else gets the configured format
+  public Format formatFor(CaptureJob job) {
+    return job.yuv != null ? Format.JPEG : format;
+  }
+
+  public MediaStoreWriter.ImageWriter writer(Bitmap bitmap) {
+    return stream -> {
+      double[] predicted = {0};
+      long probeStart = System.nanoTime();
+      int q = mode == Mode.TARGET_SIZE ? searchQuality(bitmap, predicted) : quality;
+      long probeNanos = mode == Mode.TARGET_SIZE ? System.nanoTime() - probeStart : -1;
+      CountingOutputStream counting = new CountingOutputStream(stream);
+      long start = System.nanoTime();
+      boolean written = bitmap.compress(compressFormat(format), q, counting);
+      record(format, q, System.nanoTime() - start, probeNanos, counting.count, written);
+      if (written && predicted[0] > 0) learn(counting.count, predicted[0]);
+      return written;
+    };
+  }
+
+  // the frame is encoded exactly once, straight from NV21
+  public MediaStoreWriter.ImageWriter writer(YuvFrame frame) {
+    return stream -> {
+      YuvImage image = new YuvImage(frame.data, ImageFormat.NV21, frame.width, frame.height, null);
+      double[] predicted = {0};
+      long probeStart = System.nanoTime();
+      int q = mode == Mode.TARGET_SIZE ? searchQuality(image, frame, predicted) : quality;
+      long probeNanos = mode == Mode.TARGET_SIZE ? System.nanoTime() - probeStart : -1;
+      CountingOutputStream counting = new CountingOutputStream(stream);
+      long start = System.nanoTime();
+      boolean written =
+          image.compressToJpeg(new Rect(0, 0, frame.width, frame.height), q, counting);
+      record(Format.JPEG, q, System.nanoTime() - start, probeNanos, counting.count, written);
+      if (written && predicted[0] > 0) learn(counting.count, predicted[0]);
+      return written;
+    };
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder text =
+        new StringBuilder(getClass().getSimpleName())
+            .append(": ")
+            .append(format)
+            .append(' ')
+            .append(mode == Mode.TARGET_SIZE ? targetBytes / 1024 + "KB" : "q" + quality);
+    for (FormatStats formatStats : stats.values()) {
+      if (formatStats.encode.getCount() > 0) text.append("\n  ").append(formatStats);
+    }
+    return text.toString();
+  }
+
+  private static Bitmap.CompressFormat compressFormat(Format format) {
+    if (format == Format.JPEG) return Bitmap.CompressFormat.JPEG;
+    return Build.VERSION.SDK_INT >= Build.VERSION_CODES.R
+        ? Bitmap.CompressFormat.WEBP_LOSSY
+        : Bitmap.CompressFormat.WEBP;
+  }
+
+  // highest quality whose scaled-up probe size fits the budget; predicted[0] gets its estimate
+  private int searchQuality(Bitmap bitmap, double[] predicted) {
+    int width = bitmap.getWidth();
+    int height = bitmap.getHeight();
+    double scale = Math.min(1, (double) PROBE_SIZE / Math.max(width, height));
+    Bitmap probe =
+        scale < 1
+            ? Bitmap.createScaledBitmap(
+                bitmap,
+                Math.max(1, (int) (width * scale)),
+                Math.max(1, (int) (height * scale)),
+                true)
+            : bitmap;
+    double pixelRatio = (double) width * height / ((double) probe.getWidth() * probe.getHeight());
+    Bitmap.CompressFormat compressFormat = compressFormat(format);
+    int lo = MIN_QUALITY;
+    int hi = MAX_QUALITY;
+    while (lo < hi) {
+      int mid = (lo + hi + 1) >>> 1;
+      CountingOutputStream counting = new CountingOutputStream(null);
+      probe.compress(compressFormat, mid, counting);
+      double estimate = estimate(counting.count, pixelRatio);
+      if (estimate <= targetBytes) {
+        predicted[0] = estimate;
+        lo = mid;
+      } else {
+        hi = mid - 1;
+      }
+    }
+    if (probe != bitmap) probe.recycle();
+    return lo;
+  }
+
+  // YuvImage can't scale, so the probe is a centre crop with the probe's pixel count
+  private int searchQuality(YuvImage image, YuvFrame frame, double[] predicted) {
+    double scale = Math.min(1, (double) PROBE_SIZE / Math.max(frame.width, frame.height));
+    int probeWidth = Math.max(2, (int) (frame.width * scale)) & ~1;
+    int probeHeight = Math.max(2, (int) (frame.height * scale)) & ~1;
+    int left = (frame.width - probeWidth) / 2 & ~1;
+    int top = (frame.height - probeHeight) / 2 & ~1;
+    Rect crop = new Rect(left, top, left + probeWidth, top + probeHeight);
+    double pixelRatio = (double) frame.width * frame.height / ((double) probeWidth * probeHeight);
+    int lo = MIN_QUALITY;
+    int hi = MAX_QUALITY;
+    while (lo < hi) {
+      int mid = (lo + hi + 1) >>> 1;
+      CountingOutputStream counting = new CountingOutputStream(null);
+      image.compressToJpeg(crop, mid, counting);
+      double estimate = estimate(counting.count, pixelRatio);
+      if (estimate <= targetBytes) {
+        predicted[0] = estimate;
+        lo = mid;
+      } else {
+        hi = mid - 1;
+      }
+    }
+    return lo;
+  }
+
+  private synchronized double estimate(long probeBytes, double pixelRatio) {
+    return probeBytes * pixelRatio * correction;
+  }
+
+  private void record(
+      Format format, int q, long nanos, long probeNanos, long bytes, boolean written) {
+    FormatStats formatStats = stats.get(format);
+    if (!written) {
+      formatStats.encode.recordError();
+      return;
+    }
+    formatStats.encode.record(nanos);
+    if (probeNanos >= 0) formatStats.probe.record(probeNanos);
+    formatStats.bytes.addAndGet(bytes);
+    formatStats.qualitySum.addAndGet(q);
+  }
+
+  // moves the probe correction halfway (in log terms) towards what this shot actually came to
+  private synchronized void learn(long bytes, double predicted) {
+    double ratio = bytes / predicted;
+    correction = Math.max(0.25, Math.min(4, correction * Math.sqrt(ratio)));
+  }
+
+  private static final class FormatStats {
+    final Format format;
+    final LatencyCounter encode;
+    final LatencyCounter probe;
+    final AtomicLong bytes = new AtomicLong();
+    final AtomicLong qualitySum = new AtomicLong();
+
+    FormatStats(Format format) {
+      this.format = format;
+      this.encode = new LatencyCounter(format + " encode");
+      this.probe = new LatencyCounter(format + " probe");
+    }
+
+    @Override
+    public String toString() {
+      long n = Math.max(1, encode.getCount());
+      return String.format(
+          Locale.US,
+          "%s, mean size=%dKB, mean quality=%d, %s",
+          encode,
+          bytes.get() / n / 1024,
+          qualitySum.get() / n,
+          probe);
+    }
+  }
+
+  // counts what passes through; with no target it only counts, for probes
+  private static final class CountingOutputStream extends FilterOutputStream {
+    long count;
+
+    CountingOutputStream(OutputStream out) {
+      super(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      count++;
+      if (out != null) out.write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      count += len;
+      if (out != null) out.write(b, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+      if (out != null) out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+      // the MediaStore writer owns the real stream
+      flush();
+    }
+  }
+}
@@ -0,0 +1,127 @@
+package com.demo.notecam;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+// passes encoded JPEG bytes through, putting an APP1 Exif segment right after SOI and dropping
+// any Exif segment the encoder wrote itself. only the marker segments before the first non APPn
+// marker are looked at, everything after that is copied as it comes.
+public final class ExifOutputStream extends FilterOutputStream {
+
+  private static final int STATE_SOI = 0;
+  private static final int STATE_MARKER = 1;
+  private static final int STATE_SEGMENT = 2;
+  private static final int STATE_PASS = 3;
+
+  private final byte[] app1;
+  private final byte[] header = new byte[4];
+  private int headerLength;
+  private byte[] segment;
+  private int segmentLength;
+  private int state = STATE_SOI;
+
+  public ExifOutputStream(OutputStream out, byte[] app1) {
+    super(out);
+    this.app1 = app1;
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    switch (state) {
+      case STATE_SOI:
+        header[headerLength++] = (byte) b;
+        if (headerLength < 2) return;
+        if ((header[0] & 0xFF) == 0xFF && (header[1] & 0xFF) == 0xD8) {
+          out.write(header, 0, 2);
+          out.write(app1);
+          headerLength = 0;
+          state = STATE_MARKER;
+        } else {
+          // not a JPEG, leave it alone
+          passThroughHeader();
+        }
+        return;
+      case STATE_MARKER:
+        header[headerLength++] = (byte) b;
+        if (headerLength == 2) {
+          int marker = header[1] & 0xFF;
+          if ((header[0] & 0xFF) != 0xFF) {
+            passThroughHeader();
+          } else if (marker == 0xFF) {
+            // fill byte before the marker
+            headerLength = 1;
+          } else if (marker < 0xE0 || marker > 0xEF) {
+            passThroughHeader();
+          }
+        } else if (headerLength == 4) {
+          int length = ((header[2] & 0xFF) << 8) | (header[3] & 0xFF);
+          if (length < 2) {
+            passThroughHeader();
+            return;
+          }
+          segment = new byte[length + 2];
+          System.arraycopy(header, 0, segment, 0, 4);
+          segmentLength = 4;
+          state = STATE_SEGMENT;
+          if (segmentLength >= segment.length) endSegment();
+        }
+        return;
+      case STATE_SEGMENT:
+        segment[segmentLength++] = (byte) b;
+        if (segmentLength == segment.length) endSegment();
+        return;
+      default:
+        out.write(b);
+    }
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    while (len > 0 && state != STATE_PASS) {
+      write(b[off++]);
+      len--;
+    }
+    if (len > 0) out.write(b, off, len);
+  }
+
+  // writes out whatever is still held back, e.g. when the encoder stopped half way
+  public void finish() throws IOException {
+    if (state == STATE_SEGMENT) {
+      out.write(segment, 0, segmentLength);
+    } else if (state != STATE_PASS) {
+      out.write(header, 0, headerLength);
+    }
+    segment = null;
+    state = STATE_PASS;
+  }
+
+  @Override
+  public void close() throws IOException {
+    finish();
+    super.close();
+  }
+
+  private void passThroughHeader() throws IOException {
+    out.write(header, 0, headerLength);
+    state = STATE_PASS;
+  }
+
+  private void endSegment() throws IOException {
+    if (!isExif(segment)) out.write(segment, 0, segment.length);
+    segment = null;
+    headerLength = 0;
+    state = STATE_MARKER;
+  }
+
+  private static boolean isExif(byte[] segment) {
+    return (segment[1] & 0xFF) == 0xE1
+        && segment.length >= 10
+        && segment[4] == 'E'
+        && segment[5] == 'x'
+        && segment[6] == 'i'
+        && segment[7] == 'f'
+        && segment[8] == 0
+        && segment[9] == 0;
+  }
+}
@@ -0,0 +1,357 @@
+package com.demo.notecam;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+// builds the Exif metadata for a shot; ExifOutputStream splices it into encoded JPEG bytes as an
+// APP1 segment, WebpExifOutputStream into WebP as an EXIF chunk
+public final class ExifWriter {
+
+  private static final int TYPE_BYTE = 1;
+  private static final int TYPE_ASCII = 2;
+  private static final int TYPE_SHORT = 3;
+  private static final int TYPE_LONG = 4;
+  private static final int TYPE_RATIONAL = 5;
+  private static final int TYPE_UNDEFINED = 7;
+
+  private static final int TAG_IMAGE_DESCRIPTION = 0x010E;
+  private static final int TAG_MAKE = 0x010F;
+  private static final int TAG_MODEL = 0x0110;
+  private static final int TAG_ORIENTATION = 0x0112;
+  private static final int TAG_DATE_TIME = 0x0132;
+  private static final int TAG_EXIF_IFD = 0x8769;
+  private static final int TAG_GPS_IFD = 0x8825;
+  private static final int TAG_DATE_TIME_ORIGINAL = 0x9003;
+  private static final int TAG_OFFSET_TIME_ORIGINAL = 0x9011;
+  private static final int TAG_USER_COMMENT = 0x9286;
+  private static final int TAG_SUB_SEC_TIME_ORIGINAL = 0x9291;
+  private static final int TAG_GPS_VERSION = 0x0000;
+  private static final int TAG_GPS_LATITUDE_REF = 0x0001;
+  private static final int TAG_GPS_LATITUDE = 0x0002;
+  private static final int TAG_GPS_LONGITUDE_REF = 0x0003;
+  private static final int TAG_GPS_LONGITUDE = 0x0004;
+  private static final int TAG_GPS_ALTITUDE_REF = 0x0005;
+  private static final int TAG_GPS_ALTITUDE = 0x0006;
+  private static final int TAG_GPS_TIME_STAMP = 0x0007;
+  private static final int TAG_GPS_AREA_INFORMATION = 0x001C;
+  private static final int TAG_GPS_DATE_STAMP = 0x001D;
+  private static final int TAG_GPS_H_POSITIONING_ERROR = 0x001F;
+
+  private static final byte[] EXIF_HEADER = {'E', 'x', 'i', 'f', 0, 0};
+  private static final byte[] ASCII_COMMENT_PREFIX = {'A', 'S', 'C', 'I', 'I', 0, 0, 0};
+  private static final byte[] UNICODE_COMMENT_PREFIX = {'U', 'N', 'I', 'C', 'O', 'D', 'E', 0};
+  private static final int MAX_SEGMENT_LENGTH = 0xFFFF;
+
+  private final List<Entry> ifd0 = new ArrayList<>();
+  private final List<Entry> exifIfd = new ArrayList<>();
+  private final List<Entry> gpsIfd = new ArrayList<>();
+
+  public ExifWriter setMake(String make) {
+    put(ifd0, TAG_MAKE, TYPE_ASCII, ascii(make));
+    return this;
+  }
+
+  public ExifWriter setModel(String model) {
+    put(ifd0, TAG_MODEL, TYPE_ASCII, ascii(model));
+    return this;
+  }
+
+  // rotation the viewer has to apply, as reported by ImageInfo.getRotationDegrees()
+  public ExifWriter setRotationDegrees(int rotationDegrees) {
+    int orientation;
+    switch (((rotationDegrees % 360) + 360) % 360) {
+      case 90:
+        orientation = 6;
+        break;
+      case 180:
+        orientation = 3;
+        break;
+      case 270:
+        orientation = 8;
+        break;
+      default:
+        orientation = 1;
+    }
+    put(ifd0, TAG_ORIENTATION, TYPE_SHORT, shorts(orientation));
+    return this;
+  }
+
+  public ExifWriter setDateTimeOriginal(long epochMillis, TimeZone timeZone) {
+    Calendar calendar = Calendar.getInstance(timeZone, Locale.US);
+    calendar.setTimeInMillis(epochMillis);
+    String dateTime =
+        String.format(
+            Locale.US,
+            "%04d:%02d:%02d %02d:%02d:%02d",
+            calendar.get(Calendar.YEAR),
+            calendar.get(Calendar.MONTH) + 1,
+            calendar.get(Calendar.DAY_OF_MONTH),
+            calendar.get(Calendar.HOUR_OF_DAY),
+            calendar.get(Calendar.MINUTE),
+            calendar.get(Calendar.SECOND));
+    int offsetMinutes = timeZone.getOffset(epochMillis) / 60_000;
+    String offset =
+        String.format(
+            Locale.US,
+            "%c%02d:%02d",
+            offsetMinutes < 0 ? '-' : '+',
+            Math.abs(offsetMinutes) / 60,
+            Math.abs(offsetMinutes) % 60);
+    put(ifd0, TAG_DATE_TIME, TYPE_ASCII, ascii(dateTime));
+    put(exifIfd, TAG_DATE_TIME_ORIGINAL, TYPE_ASCII, ascii(dateTime));
+    put(exifIfd, TAG_OFFSET_TIME_ORIGINAL, TYPE_ASCII, ascii(offset));
+    put(
+        exifIfd,
+        TAG_SUB_SEC_TIME_ORIGINAL,
+        TYPE_ASCII,
+        ascii(String.format(Locale.US, "%03d", calendar.get(Calendar.MILLISECOND))));
+    return this;
+  }
+
+  // the note goes in both places readers commonly look for a free text caption
+  public ExifWriter setUserNote(String note) {
+    put(ifd0, TAG_IMAGE_DESCRIPTION, TYPE_ASCII, ascii(note));
+    byte[] text = note.getBytes(StandardCharsets.US_ASCII);
+    byte[] comment = new byte[ASCII_COMMENT_PREFIX.length + text.length];
+    System.arraycopy(ASCII_COMMENT_PREFIX, 0, comment, 0, ASCII_COMMENT_PREFIX.length);
+    System.arraycopy(text, 0, comment, ASCII_COMMENT_PREFIX.length, text.length);
+    put(exifIfd, TAG_USER_COMMENT, TYPE_UNDEFINED, comment);
+    return this;
+  }
+
+  // the named site the shot was taken at. names outside ASCII go in as UTF-16, big-endian
+  // like the rest of the segment
+  public ExifWriter setAreaName(String name) {
+    boolean ascii = StandardCharsets.US_ASCII.newEncoder().canEncode(name);
+    byte[] prefix = ascii ? ASCII_COMMENT_PREFIX : UNICODE_COMMENT_PREFIX;
+    byte[] text = name.getBytes(ascii ? StandardCharsets.US_ASCII : StandardCharsets.UTF_16BE);
+    byte[] area = new byte[prefix.length + text.length];
+    System.arraycopy(prefix, 0, area, 0, prefix.length);
+    System.arraycopy(text, 0, area, prefix.length, text.length);
+    put(gpsIfd, TAG_GPS_AREA_INFORMATION, TYPE_UNDEFINED, area);
+    return this;
+  }
+
+  // altitude may be NaN when the fix has none, accuracy may be NaN as well
+  public ExifWriter setGps(
+      double latitude, double longitude, double altitude, float accuracy, long fixTimeMillis) {
+    put(gpsIfd, TAG_GPS_VERSION, TYPE_BYTE, new byte[] {2, 3, 0, 0});
+    put(gpsIfd, TAG_GPS_LATITUDE_REF, TYPE_ASCII, ascii(latitude < 0 ? "S" : "N"));
+    put(gpsIfd, TAG_GPS_LATITUDE, TYPE_RATIONAL, degrees(Math.abs(latitude)));
+    put(gpsIfd, TAG_GPS_LONGITUDE_REF, TYPE_ASCII, ascii(longitude < 0 ? "W" : "E"));
+    put(gpsIfd, TAG_GPS_LONGITUDE, TYPE_RATIONAL, degrees(Math.abs(longitude)));
+    if (!Double.isNaN(altitude)) {
+      put(gpsIfd, TAG_GPS_ALTITUDE_REF, TYPE_BYTE, new byte[] {(byte) (altitude < 0 ? 1 : 0)});
+      put(gpsIfd, TAG_GPS_ALTITUDE, TYPE_RATIONAL, rationals(Math.abs(altitude), 100));
+    }
+    if (!Float.isNaN(accuracy)) {
+      put(gpsIfd, TAG_GPS_H_POSITIONING_ERROR, TYPE_RATIONAL, rationals(accuracy, 100));
+    }
+    // GPS time is always UTC
+    Calendar utc = Calendar.getInstance(TimeZone.getTimeZone("UTC"), Locale.US);
+    utc.setTimeInMillis(fixTimeMillis);
+    put(
+        gpsIfd,
+        TAG_GPS_TIME_STAMP,
+        TYPE_RATIONAL,
+        concat(
+            rationals(utc.get(Calendar.HOUR_OF_DAY), 1),
+            rationals(utc.get(Calendar.MINUTE), 1),
+            rationals(utc.get(Calendar.SECOND) + utc.get(Calendar.MILLISECOND) / 1000.0, 1000)));
+    put(
+        gpsIfd,
+        TAG_GPS_DATE_STAMP,
+        TYPE_ASCII,
+        ascii(
+            String.format(
+                Locale.US,
+                "%04d:%02d:%02d",
+                utc.get(Calendar.YEAR),
+                utc.get(Calendar.MONTH) + 1,
+                utc.get(Calendar.DAY_OF_MONTH))));
+    return this;
+  }
+
+  // the whole APP1 segment, marker and length included
+  public byte[] buildApp1() {
+    byte[] tiff = buildTiff();
+    int length = 2 + EXIF_HEADER.length + tiff.length;
+    if (length > MAX_SEGMENT_LENGTH) throw new IllegalStateException("Exif segment too large");
+    ByteArrayOutputStream segment = new ByteArrayOutputStream(length + 2);
+    segment.write(0xFF);
+    segment.write(0xE1);
+    writeShort(segment, length);
+    segment.write(EXIF_HEADER, 0, EXIF_HEADER.length);
+    segment.write(tiff, 0, tiff.length);
+    return segment.toByteArray();
+  }
+
+  // just the TIFF structure, from the byte order mark on, which is what a WebP EXIF chunk holds
+  public byte[] buildTiff() {
+    List<Entry> root = new ArrayList<>(ifd0);
+    // pointers are patched once the layout is known
+    if (!exifIfd.isEmpty()) root.add(new Entry(TAG_EXIF_IFD, TYPE_LONG, new byte[4]));
+    if (!gpsIfd.isEmpty()) root.add(new Entry(TAG_GPS_IFD, TYPE_LONG, new byte[4]));
+    Collections.sort(root, (a, b) -> Integer.compare(a.tag, b.tag));
+    List<Entry> exif = sorted(exifIfd);
+    List<Entry> gps = sorted(gpsIfd);
+
+    // TIFF offsets count from the byte order mark
+    int rootOffset = 8;
+    int exifOffset = rootOffset + ifdSize(root);
+    int gpsOffset = exifOffset + (exif.isEmpty() ? 0 : ifdSize(exif));
+    for (Entry entry : root) {
+      if (entry.tag == TAG_EXIF_IFD) entry.value = longs(exifOffset);
+      if (entry.tag == TAG_GPS_IFD) entry.value = longs(gpsOffset);
+    }
+
+    ByteArrayOutputStream tiff = new ByteArrayOutputStream();
+    tiff.write('M');
+    tiff.write('M');
+    writeShort(tiff, 42);
+    writeInt(tiff, rootOffset);
+    writeIfd(tiff, root, rootOffset);
+    if (!exif.isEmpty()) writeIfd(tiff, exif, exifOffset);
+    if (!gps.isEmpty()) writeIfd(tiff, gps, gpsOffset);
+    return tiff.toByteArray();
+  }
+
+  public ExifOutputStream wrap(OutputStream out) {
+    return new ExifOutputStream(out, buildApp1());
+  }
+
+  public WebpExifOutputStream wrapWebp(OutputStream out) {
+    return new WebpExifOutputStream(out, buildTiff());
+  }
+
+  private static int ifdSize(List<Entry> entries) {
+    int size = 2 + entries.size() * 12 + 4;
+    for (Entry entry : entries) {
+      if (entry.value.length > 4) size += entry.value.length + (entry.value.length & 1);
+    }
+    return size;
+  }
+
+  private static void writeIfd(ByteArrayOutputStream out, List<Entry> entries, int offset) {
+    int dataOffset = offset + 2 + entries.size() * 12 + 4;
+    writeShort(out, entries.size());
+    for (Entry entry : entries) {
+      writeShort(out, entry.tag);
+      writeShort(out, entry.type);
+      writeInt(out, entry.count());
+      if (entry.value.length > 4) {
+        writeInt(out, dataOffset);
+        dataOffset += entry.value.length + (entry.value.length & 1);
+      } else {
+        out.write(entry.value, 0, entry.value.length);
+        for (int i = entry.value.length; i < 4; i++) out.write(0);
+      }
+    }
+    // no next IFD, no thumbnail
+    writeInt(out, 0);
+    for (Entry entry : entries) {
+      if (entry.value.length > 4) {
+        out.write(entry.value, 0, entry.value.length);
+        // values start on word boundaries
+        if ((entry.value.length & 1) != 0) out.write(0);
+      }
+    }
+  }
+
+  private static void put(List<Entry> ifd, int tag, int type, byte[] value) {
+    for (int i = 0; i < ifd.size(); i++) {
+      if (ifd.get(i).tag == tag) {
+        ifd.set(i, new Entry(tag, type, value));
+        return;
+      }
+    }
+    ifd.add(new Entry(tag, type, value));
+  }
+
+  private static List<Entry> sorted(List<Entry> entries) {
+    List<Entry> copy = new ArrayList<>(entries);
+    Collections.sort(copy, (a, b) -> Integer.compare(a.tag, b.tag));
+    return copy;
+  }
+
+  private static byte[] ascii(String value) {
+    byte[] text = value.getBytes(StandardCharsets.US_ASCII);
+    byte[] terminated = new byte[text.length + 1];
+    System.arraycopy(text, 0, terminated, 0, text.length);
+    return terminated;
+  }
+
+  private static byte[] shorts(int value) {
+    return new byte[] {(byte) (value >> 8), (byte) value};
+  }
+
+  private static byte[] longs(int value) {
+    return new byte[] {
+      (byte) (value >> 24), (byte) (value >> 16), (byte) (value >> 8), (byte) value
+    };
+  }
+
+  private static byte[] rationals(double value, int denominator) {
+    return concat(longs((int) Math.round(value * denominator)), longs(denominator));
+  }
+
+  // degrees, minutes and seconds with the seconds kept to 1/10000
+  private static byte[] degrees(double value) {
+    int wholeDegrees = (int) value;
+    double minutes = (value - wholeDegrees) * 60;
+    int wholeMinutes = (int) minutes;
+    double seconds = (minutes - wholeMinutes) * 60;
+    return concat(
+        rationals(wholeDegrees, 1), rationals(wholeMinutes, 1), rationals(seconds, 10000));
+  }
+
+  private static byte[] concat(byte[]... parts) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    for (byte[] part : parts) out.write(part, 0, part.length);
+    return out.toByteArray();
+  }
+
+  private static void writeShort(ByteArrayOutputStream out, int value) {
+    out.write(value >> 8);
+    out.write(value);
+  }
+
+  private static void writeInt(ByteArrayOutputStream out, int value) {
+    out.write(value >> 24);
+    out.write(value >> 16);
+    out.write(value >> 8);
+    out.write(value);
+  }
+
+  private static final class Entry {
+    final int tag;
+    final int type;
+    byte[] value;
+
+    Entry(int tag, int type, byte[] value) {
+      this.tag = tag;
+      this.type = type;
+      this.value = value;
+    }
+
+    int count() {
+      switch (type) {
+        case TYPE_SHORT:
+          return value.length / 2;
+        case TYPE_LONG:
+          return value.length / 4;
+        case TYPE_RATIONAL:
+          return value.length / 8;
+        default:
+          return value.length;
+      }
+    }
+  }
+}
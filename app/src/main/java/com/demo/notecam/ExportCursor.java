@@ -0,0 +1,109 @@
+package com.demo.notecam;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+// how far each photo's upload has got, so an export that was cut off carries on from the last
+// chunk the server acknowledged. an append-only log of (id, offset) records where the last
+// record for an id wins; a finished upload is written as offset -1. the log is rewritten
+// without the superseded records when it is opened and they outnumber the live ones
+public final class ExportCursor implements Closeable {
+
+  private static final long DONE = -1;
+  private static final int RECORD = 16;
+
+  private final File file;
+  private final Map<Long, Long> offsets = new HashMap<>();
+  private final ByteBuffer record = ByteBuffer.allocate(RECORD);
+  private FileOutputStream out;
+
+  private ExportCursor(File file) {
+    this.file = file;
+  }
+
+  // blocking, call off the main thread
+  public static ExportCursor open(File file) throws IOException {
+    ExportCursor cursor = new ExportCursor(file);
+    cursor.load();
+    return cursor;
+  }
+
+  // 0 when nothing of it has been acknowledged yet
+  public synchronized long getOffset(long id) {
+    Long offset = offsets.get(id);
+    return offset == null || offset == DONE ? 0 : offset;
+  }
+
+  public synchronized boolean isDone(long id) {
+    Long offset = offsets.get(id);
+    return offset != null && offset == DONE;
+  }
+
+  // synced before returning, a chunk is only counted once the cursor behind it is on disk
+  public synchronized void advance(long id, long offset) throws IOException {
+    append(id, offset);
+  }
+
+  public synchronized void complete(long id) throws IOException {
+    append(id, DONE);
+  }
+
+  public synchronized int getDoneCount() {
+    int done = 0;
+    for (long offset : offsets.values()) {
+      if (offset == DONE) done++;
+    }
+    return done;
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    if (out != null) out.close();
+    out = null;
+  }
+
+  private void append(long id, long offset) throws IOException {
+    if (out == null) throw new IOException("Export cursor is closed");
+    record.clear();
+    record.putLong(id).putLong(offset);
+    out.write(record.array(), 0, RECORD);
+    out.getFD().sync();
+    offsets.put(id, offset);
+  }
+
+  private void load() throws IOException {
+    long records = 0;
+    if (file.exists()) {
+      try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+        // a torn record at the end is dropped with the rewrite or the truncate below
+        records = in.length() / RECORD;
+        byte[] bytes = new byte[(int) (records * RECORD)];
+        in.readFully(bytes);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) offsets.put(buffer.getLong(), buffer.getLong());
+      }
+    }
+    if (records > 2L * offsets.size() || file.length() != records * RECORD) rewrite();
+    out = new FileOutputStream(file, true);
+  }
+
+  // through a temp file, a crash mid-write leaves the old log
+  private void rewrite() throws IOException {
+    File tmp = new File(file.getPath() + ".tmp");
+    ByteBuffer buffer = ByteBuffer.allocate(offsets.size() * RECORD);
+    for (Map.Entry<Long, Long> entry : offsets.entrySet()) {
+      buffer.putLong(entry.getKey()).putLong(entry.getValue());
+    }
+    try (FileOutputStream tmpOut = new FileOutputStream(tmp)) {
+      tmpOut.write(buffer.array());
+      tmpOut.getFD().sync();
+    }
+    if (!tmp.renameTo(file)) throw new IOException("Failed to replace " + file);
+  }
+}
@@ -0,0 +1,179 @@
+package com.demo.notecam;
+
+// the most recent location fixes, oldest first, in preallocated arrays. T is whatever the
+// platform calls a fix; only the numbers stored next to it are looked at here.
+public final class FixRing<T> {
+
+  private final Object[] fixes;
+  private final long[] elapsedNanos;
+  private final long[] timesMillis;
+  private final double[] latitudes;
+  private final double[] longitudes;
+  private final float[] accuracies;
+  private final float[] speeds;
+  // index of the oldest fix
+  private int start;
+  private int size;
+
+  public FixRing(int capacity) {
+    if (capacity < 1) throw new IllegalArgumentException("capacity must be >= 1");
+    fixes = new Object[capacity];
+    elapsedNanos = new long[capacity];
+    timesMillis = new long[capacity];
+    latitudes = new double[capacity];
+    longitudes = new double[capacity];
+    accuracies = new float[capacity];
+    speeds = new float[capacity];
+  }
+
+  // fixes may come in late (a network fix older than the last GPS one), they're kept in order
+  public synchronized void add(
+      T fix,
+      long elapsedRealtimeNanos,
+      long timeMillis,
+      double latitude,
+      double longitude,
+      float accuracy,
+      float speed) {
+    int capacity = fixes.length;
+    if (size == capacity) {
+      if (elapsedRealtimeNanos < elapsedNanos[start]) return;
+      start = (start + 1) % capacity;
+      size--;
+    }
+    int i = size;
+    while (i > 0 && elapsedNanos[slot(i - 1)] > elapsedRealtimeNanos) {
+      int from = slot(i - 1);
+      int to = slot(i);
+      fixes[to] = fixes[from];
+      elapsedNanos[to] = elapsedNanos[from];
+      timesMillis[to] = timesMillis[from];
+      latitudes[to] = latitudes[from];
+      longitudes[to] = longitudes[from];
+      accuracies[to] = accuracies[from];
+      speeds[to] = speeds[from];
+      i--;
+    }
+    int to = slot(i);
+    fixes[to] = fix;
+    elapsedNanos[to] = elapsedRealtimeNanos;
+    timesMillis[to] = timeMillis;
+    latitudes[to] = latitude;
+    longitudes[to] = longitude;
+    accuracies[to] = accuracy;
+    speeds[to] = speed;
+    size++;
+  }
+
+  // position at an elapsed-realtime instant: interpolated between the fixes around it when they
+  // are at most maxGapNanos apart, otherwise the nearest fix. binary search, no allocation.
+  public synchronized boolean sampleAt(
+      long elapsedRealtimeNanos, long maxGapNanos, double driftMetersPerSecond, FixSample out) {
+    if (size == 0) return false;
+    // first fix strictly after the instant
+    int lo = 0;
+    int hi = size;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (elapsedNanos[slot(mid)] <= elapsedRealtimeNanos) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    int before = lo - 1;
+    int after = lo;
+
+    if (before >= 0 && after < size) {
+      int a = slot(before);
+      int b = slot(after);
+      long gap = elapsedNanos[b] - elapsedNanos[a];
+      if (gap <= maxGapNanos) {
+        long sinceA = elapsedRealtimeNanos - elapsedNanos[a];
+        double f = gap == 0 ? 0 : (double) sinceA / gap;
+        double deltaLongitude = longitudes[b] - longitudes[a];
+        // take the short way across the antimeridian
+        if (deltaLongitude > 180) deltaLongitude -= 360;
+        if (deltaLongitude < -180) deltaLongitude += 360;
+        double longitude = longitudes[a] + deltaLongitude * f;
+        if (longitude > 180) longitude -= 360;
+        if (longitude < -180) longitude += 360;
+        long nearestGap = Math.min(sinceA, elapsedNanos[b] - elapsedRealtimeNanos);
+        out.elapsedRealtimeNanos = elapsedRealtimeNanos;
+        out.timeMillis = timesMillis[a] + Math.round((timesMillis[b] - timesMillis[a]) * f);
+        out.latitude = latitudes[a] + (latitudes[b] - latitudes[a]) * f;
+        out.longitude = longitude;
+        out.accuracy = (float) (accuracies[a] + (accuracies[b] - accuracies[a]) * f);
+        // off the straight line by at most what can be covered from the nearer fix
+        out.errorMeters = (float) (out.accuracy + nearestGap / 1e9 * driftMetersPerSecond);
+        out.interpolated = true;
+        out.ageNanos = nearestGap;
+        return true;
+      }
+    }
+
+    int nearest;
+    if (before < 0) {
+      nearest = slot(after);
+    } else if (after >= size) {
+      nearest = slot(before);
+    } else {
+      int a = slot(before);
+      int b = slot(after);
+      nearest =
+          elapsedRealtimeNanos - elapsedNanos[a] <= elapsedNanos[b] - elapsedRealtimeNanos ? a : b;
+    }
+    long age = Math.abs(elapsedRealtimeNanos - elapsedNanos[nearest]);
+    out.elapsedRealtimeNanos = elapsedNanos[nearest];
+    out.timeMillis = timesMillis[nearest];
+    out.latitude = latitudes[nearest];
+    out.longitude = longitudes[nearest];
+    out.accuracy = accuracies[nearest];
+    out.errorMeters =
+        (float) (accuracies[nearest] + age / 1e9 * Math.max(driftMetersPerSecond, speeds[nearest]));
+    out.interpolated = false;
+    out.ageNanos = age;
+    return true;
+  }
+
+  // the fix with the smallest accuracy radius once it is grown by how far the device may have
+  // drifted since; null when nothing is recent and accurate enough
+  @SuppressWarnings("unchecked")
+  public synchronized T getBest(
+      long nowElapsedNanos, long maxAgeNanos, float maxAccuracy, double driftMetersPerSecond) {
+    T best = null;
+    double bestError = Double.MAX_VALUE;
+    for (int i = size - 1; i >= 0; i--) {
+      int slot = slot(i);
+      long age = nowElapsedNanos - elapsedNanos[slot];
+      // oldest first, nothing before this one can be younger
+      if (age > maxAgeNanos) break;
+      if (accuracies[slot] > maxAccuracy) continue;
+      double error = accuracies[slot] + Math.max(0, age) / 1e9 * driftMetersPerSecond;
+      if (error < bestError) {
+        bestError = error;
+        best = (T) fixes[slot];
+      }
+    }
+    return best;
+  }
+
+  @SuppressWarnings("unchecked")
+  public synchronized T getLatest() {
+    return size == 0 ? null : (T) fixes[slot(size - 1)];
+  }
+
+  public synchronized int size() {
+    return size;
+  }
+
+  public synchronized void clear() {
+    for (int i = 0; i < fixes.length; i++) fixes[i] = null;
+    start = 0;
+    size = 0;
+  }
+
+  private int slot(int i) {
+    return (start + i) % fixes.length;
+  }
+}
@@ -0,0 +1,17 @@
+package com.demo.notecam;
+
+// where the device was at one instant, filled in by FixRing.sampleAt so lookups don't allocate
+public final class FixSample {
+
+  public long elapsedRealtimeNanos;
+  public long timeMillis;
+  public double latitude;
+  public double longitude;
+  public float accuracy;
+  // accuracy plus how far the device may be from the estimate because of the time gap
+  public float errorMeters;
+  // true when the position lies between two fixes, false when it is the nearest fix as is
+  public boolean interpolated;
+  // how far the instant is from the nearest real fix, in time
+  public long ageNanos;
+}
@@ -0,0 +1,111 @@
+package com.demo.notecam;
+
+import java.util.Locale;
+
+// the last few analysis frames, kept so a shot can be taken from a frame exposed before the
+// tap was handled. every slot is allocated from the pool when the frame size is first seen
+// and then overwritten in place; a frame taken for a shot leaves with its buffer, which the
+// pipeline hands back to the pool, and its slot gets another pooled buffer straight away
+public final class FrameRing {
+
+  private final int maxFrames;
+  private final long budgetBytes;
+  private final BytePool pool;
+  private YuvFrame[] slots = new YuvFrame[0];
+  // sensor timestamp per slot, 0 while the slot holds nothing that can be taken
+  private long[] timestamps = new long[0];
+  private int next;
+  private long latestTimestamp;
+  private long taken;
+  private long empty;
+
+  public FrameRing(int maxFrames, long budgetBytes, BytePool pool) {
+    if (maxFrames < 1) throw new IllegalArgumentException("maxFrames must be >= 1");
+    this.maxFrames = maxFrames;
+    this.budgetBytes = budgetBytes;
+    this.pool = pool;
+  }
+
+  // the frame the next camera frame is copied into; it can't be taken until published
+  public synchronized YuvFrame acquire(int width, int height) {
+    if (slots.length == 0 || slots[0].width != width || slots[0].height != height) {
+      allocate(width, height);
+    }
+    timestamps[next] = 0;
+    return slots[next];
+  }
+
+  public synchronized void publish() {
+    timestamps[next] = slots[next].timestampNanos;
+    latestTimestamp = timestamps[next];
+    next = (next + 1) % slots.length;
+  }
+
+  // the buffered frame closest to the timestamp, on the sensor's clock; null when empty.
+  // the caller owns the frame and its buffer from here on
+  public synchronized YuvFrame take(long sensorTimestampNanos) {
+    int best = -1;
+    long bestDistance = Long.MAX_VALUE;
+    for (int i = 0; i < slots.length; i++) {
+      if (timestamps[i] == 0) continue;
+      long distance = Math.abs(timestamps[i] - sensorTimestampNanos);
+      if (distance < bestDistance) {
+        bestDistance = distance;
+        best = i;
+      }
+    }
+    if (best < 0) {
+      empty++;
+      return null;
+    }
+    YuvFrame frame = slots[best];
+    slots[best] = newFrame(frame.width, frame.height);
+    timestamps[best] = 0;
+    taken++;
+    return frame;
+  }
+
+  // 0 before the first frame
+  public synchronized long getLatestTimestamp() {
+    return latestTimestamp;
+  }
+
+  public synchronized int getCapacity() {
+    return slots.length;
+  }
+
+  // gives every buffer back, the next acquire allocates again
+  public synchronized void clear() {
+    for (YuvFrame slot : slots) pool.release(slot.data);
+    slots = new YuvFrame[0];
+    timestamps = new long[0];
+    next = 0;
+    latestTimestamp = 0;
+  }
+
+  @Override
+  public synchronized String toString() {
+    long frameBytes = slots.length == 0 ? 0 : slots[0].data.length;
+    return String.format(
+        Locale.US,
+        "%s: frames=%d bytes=%d taken=%d empty=%d",
+        getClass().getSimpleName(),
+        slots.length,
+        frameBytes * slots.length,
+        taken,
+        empty);
+  }
+
+  private void allocate(int width, int height) {
+    clear();
+    long frameBytes = (long) width * height * 3 / 2;
+    int capacity = (int) Math.max(1, Math.min(maxFrames, budgetBytes / frameBytes));
+    slots = new YuvFrame[capacity];
+    timestamps = new long[capacity];
+    for (int i = 0; i < capacity; i++) slots[i] = newFrame(width, height);
+  }
+
+  private YuvFrame newFrame(int width, int height) {
+    return new YuvFrame(width, height, pool.acquire(width * height * 3 / 2));
+  }
+}
@@ -0,0 +1,268 @@
+package com.demo.notecam;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+
+// named sites from a user's list, answering "which site is this fix at" without a network.
+// build() sorts the sites into a grid of lat/lon cells over their bounding box, a few sites
+// per cell, and writes the cell starts, the coordinates as fixed-point microdegrees and the
+// names as flat arrays; open() maps that file and reads it in place, so a million sites cost
+// the page cache rather than the heap. a lookup walks rings of cells out from the fix's cell
+// until no closer site can be left. distances are equirectangular, plenty for a site radius,
+// and the grid doesn't wrap at the antimeridian
+public final class Gazetteer {
+
+  private static final int MAGIC = 0x4e434731; // "NCG1"
+  private static final int VERSION = 1;
+  // magic, version, count, rows, cols, names length, then min lat/lon and cell height/width
+  private static final int HEADER = 6 * 4 + 4 * 8;
+  private static final int SITES_PER_CELL = 4;
+  private static final int MAX_CELLS = 1 << 22;
+  private static final double MICRODEGREES = 1e6;
+  private static final double METERS_PER_DEGREE = Math.toRadians(1) * 6_371_000;
+
+  public static final class Site {
+    public final String name;
+    public final double latitude;
+    public final double longitude;
+
+    public Site(String name, double latitude, double longitude) {
+      this.name = name;
+      this.latitude = latitude;
+      this.longitude = longitude;
+    }
+  }
+
+  private final int count;
+  private final int rows;
+  private final int cols;
+  private final double minLatitude;
+  private final double minLongitude;
+  private final double cellHeight;
+  private final double cellWidth;
+  // sites of cell c are [cellStarts[c], cellStarts[c + 1])
+  private final IntBuffer cellStarts;
+  private final IntBuffer latitudes;
+  private final IntBuffer longitudes;
+  // name of site i is names[nameStarts[i], nameStarts[i + 1]), UTF-8
+  private final IntBuffer nameStarts;
+  private final ByteBuffer names;
+
+  private Gazetteer(ByteBuffer map) throws IOException {
+    if (map.getInt(0) != MAGIC || map.getInt(4) != VERSION) {
+      throw new IOException("Not a site index");
+    }
+    count = map.getInt(8);
+    rows = map.getInt(12);
+    cols = map.getInt(16);
+    int namesLength = map.getInt(20);
+    minLatitude = map.getDouble(24);
+    minLongitude = map.getDouble(32);
+    cellHeight = map.getDouble(40);
+    cellWidth = map.getDouble(48);
+    int cellBytes = (rows * cols + 1) * 4;
+    int siteBytes = count * 4;
+    if (map.capacity() != (long) HEADER + cellBytes + 3 * siteBytes + 4 + namesLength) {
+      throw new IOException("Truncated site index");
+    }
+    int at = HEADER;
+    cellStarts = slice(map, at, cellBytes).asIntBuffer();
+    latitudes = slice(map, at += cellBytes, siteBytes).asIntBuffer();
+    longitudes = slice(map, at += siteBytes, siteBytes).asIntBuffer();
+    nameStarts = slice(map, at += siteBytes, siteBytes + 4).asIntBuffer();
+    names = slice(map, at + siteBytes + 4, namesLength);
+  }
+
+  // blocking, call off the main thread
+  public static Gazetteer open(File file) throws IOException {
+    try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+      // the mapping outlives the channel
+      MappedByteBuffer map = in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, in.length());
+      return new Gazetteer(map);
+    }
+  }
+
+  // writes the index for the sites to file, through a temp file
+  public static void build(List<Site> sites, File file) throws IOException {
+    int count = sites.size();
+    double minLat = 90;
+    double maxLat = -90;
+    double minLon = 180;
+    double maxLon = -180;
+    for (Site site : sites) {
+      minLat = Math.min(minLat, site.latitude);
+      maxLat = Math.max(maxLat, site.latitude);
+      minLon = Math.min(minLon, site.longitude);
+      maxLon = Math.max(maxLon, site.longitude);
+    }
+    if (count == 0) {
+      minLat = maxLat = minLon = maxLon = 0;
+    }
+    // cells roughly square on the ground, sized for a few sites each
+    double latSpan = Math.max(maxLat - minLat, 1e-6);
+    double lonSpan = Math.max(maxLon - minLon, 1e-6);
+    double midLat = Math.toRadians((minLat + maxLat) / 2);
+    double groundLonSpan = lonSpan * Math.max(0.01, Math.cos(midLat));
+    double cells = Math.min(MAX_CELLS, Math.max(1.0, (double) count / SITES_PER_CELL));
+    long squareRows = Math.round(Math.sqrt(cells * latSpan / groundLonSpan));
+    int rows = (int) Math.max(1, Math.min(cells, squareRows));
+    int cols = (int) Math.max(1, Math.min(MAX_CELLS / rows, Math.round(cells / rows)));
+    // a hair bigger so the maximum lands in the last cell rather than past it
+    double cellHeight = latSpan * (1 + 1e-9) / rows;
+    double cellWidth = lonSpan * (1 + 1e-9) / cols;
+
+    // counting sort by cell
+    int[] cellOf = new int[count];
+    int[] starts = new int[rows * cols + 1];
+    for (int i = 0; i < count; i++) {
+      Site site = sites.get(i);
+      int row = clamp((int) ((site.latitude - minLat) / cellHeight), rows);
+      int col = clamp((int) ((site.longitude - minLon) / cellWidth), cols);
+      cellOf[i] = row * cols + col;
+      starts[cellOf[i] + 1]++;
+    }
+    for (int c = 0; c < rows * cols; c++) starts[c + 1] += starts[c];
+    int[] order = new int[count];
+    int[] next = starts.clone();
+    for (int i = 0; i < count; i++) order[next[cellOf[i]]++] = i;
+
+    byte[][] encoded = new byte[count][];
+    int namesLength = 0;
+    for (int i = 0; i < count; i++) {
+      encoded[i] = sites.get(order[i]).name.getBytes(StandardCharsets.UTF_8);
+      namesLength += encoded[i].length;
+    }
+    int length = HEADER + (starts.length + 3 * count + 1) * 4 + namesLength;
+    ByteBuffer out = ByteBuffer.allocate(length);
+    out.putInt(MAGIC).putInt(VERSION).putInt(count).putInt(rows).putInt(cols).putInt(namesLength);
+    out.putDouble(minLat).putDouble(minLon).putDouble(cellHeight).putDouble(cellWidth);
+    for (int start : starts) out.putInt(start);
+    for (int i = 0; i < count; i++) {
+      out.putInt((int) Math.round(sites.get(order[i]).latitude * MICRODEGREES));
+    }
+    for (int i = 0; i < count; i++) {
+      out.putInt((int) Math.round(sites.get(order[i]).longitude * MICRODEGREES));
+    }
+    int nameStart = 0;
+    for (int i = 0; i < count; i++) {
+      out.putInt(nameStart);
+      nameStart += encoded[i].length;
+    }
+    out.putInt(nameStart);
+    for (byte[] name : encoded) out.put(name);
+
+    File tmp = new File(file.getPath() + ".tmp");
+    try (FileOutputStream stream = new FileOutputStream(tmp)) {
+      stream.write(out.array());
+    }
+    if (!tmp.renameTo(file)) throw new IOException("Failed to replace " + file);
+  }
+
+  // the nearest site within maxMeters, -1 when there is none. no allocation
+  public int nearest(double latitude, double longitude, double maxMeters) {
+    if (count == 0) return -1;
+    double cosLat = Math.cos(Math.toRadians(latitude));
+    // a fix this far outside every site's box can't be near any of them
+    double nearLat = Math.max(minLatitude, Math.min(latitude, minLatitude + rows * cellHeight));
+    double nearLon = Math.max(minLongitude, Math.min(longitude, minLongitude + cols * cellWidth));
+    if (squaredMeters(latitude, longitude, nearLat, nearLon, cosLat) > maxMeters * maxMeters) {
+      return -1;
+    }
+    int row = clamp((int) Math.floor((latitude - minLatitude) / cellHeight), rows);
+    int col = clamp((int) Math.floor((longitude - minLongitude) / cellWidth), cols);
+    int queryLat = (int) Math.round(latitude * MICRODEGREES);
+    int queryLon = (int) Math.round(longitude * MICRODEGREES);
+    double metersPerMicroLat = METERS_PER_DEGREE / MICRODEGREES;
+    double metersPerMicroLon = metersPerMicroLat * cosLat;
+    // on the same flattened ground as the distances, the smaller side of a cell
+    double cellMeters = Math.min(cellHeight, cellWidth * cosLat) * METERS_PER_DEGREE;
+    int best = -1;
+    double bestSquared = maxMeters * maxMeters;
+    for (int ring = 0; ; ring++) {
+      if (row - ring < 0 && row + ring >= rows && col - ring < 0 && col + ring >= cols) break;
+      if (ring > 1) {
+        // every site in this ring is at least ring - 1 whole cells away on one axis
+        double bound = (ring - 1) * cellMeters;
+        if (bound * bound > bestSquared) break;
+      }
+      for (int r = row - ring; r <= row + ring; r++) {
+        if (r < 0 || r >= rows) continue;
+        boolean edgeRow = r == row - ring || r == row + ring;
+        int step = edgeRow ? 1 : 2 * ring;
+        for (int c = col - ring; c <= col + ring; c += Math.max(1, step)) {
+          if (c < 0 || c >= cols) continue;
+          int cell = r * cols + c;
+          for (int i = cellStarts.get(cell), end = cellStarts.get(cell + 1); i < end; i++) {
+            double dy = (latitudes.get(i) - queryLat) * metersPerMicroLat;
+            double dx = (longitudes.get(i) - queryLon) * metersPerMicroLon;
+            double squared = dx * dx + dy * dy;
+            if (squared <= bestSquared) {
+              bestSquared = squared;
+              best = i;
+            }
+          }
+        }
+      }
+    }
+    return best;
+  }
+
+  public String getName(int site) {
+    int from = nameStarts.get(site);
+    byte[] bytes = new byte[nameStarts.get(site + 1) - from];
+    for (int i = 0; i < bytes.length; i++) bytes[i] = names.get(from + i);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  public double getLatitude(int site) {
+    return latitudes.get(site) / MICRODEGREES;
+  }
+
+  public double getLongitude(int site) {
+    return longitudes.get(site) / MICRODEGREES;
+  }
+
+  public int size() {
+    return count;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        Locale.US,
+        "%s: sites=%d grid=%dx%d cell=%.4fx%.4f deg",
+        getClass().getSimpleName(),
+        count,
+        rows,
+        cols,
+        cellHeight,
+        cellWidth);
+  }
+
+  private static double squaredMeters(
+      double lat1, double lon1, double lat2, double lon2, double cosLat) {
+    double dy = (lat2 - lat1) * METERS_PER_DEGREE;
+    double dx = (lon2 - lon1) * METERS_PER_DEGREE * cosLat;
+    return dx * dx + dy * dy;
+  }
+
+  private static int clamp(int index, int size) {
+    return Math.max(0, Math.min(size - 1, index));
+  }
+
+  private static ByteBuffer slice(ByteBuffer map, int offset, int length) {
+    ByteBuffer view = map.duplicate();
+    view.position(offset);
+    view.limit(offset + length);
+    return view.slice();
+  }
+}
@@ -0,0 +1,51 @@
+package com.demo.notecam;
+
+// coverage of every printable ASCII glyph rendered once, laid side by side in one strip
+public final class GlyphAtlas {
+
+  public static final char FIRST_CHAR = ' ';
+  public static final char LAST_CHAR = '~';
+
+  final int cellHeight;
+  // pixels between the top of a cell and the text baseline
+  final int ascent;
+  final int stride;
+  final byte[] coverage;
+  final int[] offsets;
+  final int[] widths;
+
+  public GlyphAtlas(int cellHeight, int ascent, int[] widths, byte[] coverage) {
+    if (widths.length != LAST_CHAR - FIRST_CHAR + 1)
+      throw new IllegalArgumentException("one width per printable ASCII glyph expected");
+    this.cellHeight = cellHeight;
+    this.ascent = ascent;
+    this.widths = widths;
+    this.offsets = new int[widths.length];
+    int x = 0;
+    for (int i = 0; i < widths.length; i++) {
+      offsets[i] = x;
+      x += widths[i];
+    }
+    this.stride = x;
+    if (coverage.length < stride * cellHeight)
+      throw new IllegalArgumentException("coverage smaller than " + stride + "x" + cellHeight);
+    this.coverage = coverage;
+  }
+
+  public static int totalWidth(int[] widths) {
+    int total = 0;
+    for (int width : widths) total += width;
+    return total;
+  }
+
+  // glyphs outside the atlas are drawn as a space
+  int index(char c) {
+    return c < FIRST_CHAR || c > LAST_CHAR ? 0 : c - FIRST_CHAR;
+  }
+
+  public int measure(CharSequence text) {
+    int width = 0;
+    for (int i = 0; i < text.length(); i++) width += widths[index(text.charAt(i))];
+    return width;
+  }
+}
@@ -0,0 +1,63 @@
+package com.demo.notecam;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+public final class LatencyCounter {
+
+  private final String name;
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong errors = new AtomicLong();
+  private final AtomicLong totalNanos = new AtomicLong();
+  private final AtomicLong maxNanos = new AtomicLong();
+
+  public LatencyCounter(String name) {
+    this.name = name;
+  }
+
+  public void record(long nanos) {
+    count.incrementAndGet();
+    totalNanos.addAndGet(nanos);
+    long max;
+    do {
+      max = maxNanos.get();
+    } while (nanos > max && !maxNanos.compareAndSet(max, nanos));
+  }
+
+  public void recordError() {
+    errors.incrementAndGet();
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public long getCount() {
+    return count.get();
+  }
+
+  public long getErrors() {
+    return errors.get();
+  }
+
+  public long getMeanNanos() {
+    long n = count.get();
+    return n == 0 ? 0 : totalNanos.get() / n;
+  }
+
+  public long getMaxNanos() {
+    return maxNanos.get();
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        Locale.US,
+        "%s: n=%d err=%d mean=%.1fms max=%.1fms",
+        name,
+        getCount(),
+        getErrors(),
+        getMeanNanos() / 1e6,
+        getMaxNanos() / 1e6);
+  }
+}
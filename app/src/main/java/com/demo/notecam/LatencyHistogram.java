@@ -0,0 +1,106 @@
+package com.demo.notecam;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// log-linear buckets in the style of HdrHistogram: 32 linear sub-buckets per power of two, so a
+// recorded value is off by at most ~3%. microsecond resolution, values past ~35 minutes are
+// clamped. recording is lock and allocation free, percentiles are read from a live snapshot
+public final class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 5;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int MAX_MAGNITUDE = 31;
+  private static final int BUCKETS = SUB_BUCKETS * (MAX_MAGNITUDE - SUB_BUCKET_BITS + 2);
+
+  private final String name;
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong errors = new AtomicLong();
+  private final AtomicLong totalMicros = new AtomicLong();
+  private final AtomicLong maxMicros = new AtomicLong();
+
+  public LatencyHistogram(String name) {
+    this.name = name;
+  }
+
+  public void record(long nanos) {
+    long micros = Math.max(0, nanos / 1000);
+    counts.incrementAndGet(indexOf(micros));
+    count.incrementAndGet();
+    totalMicros.addAndGet(micros);
+    long max;
+    do {
+      max = maxMicros.get();
+    } while (micros > max && !maxMicros.compareAndSet(max, micros));
+  }
+
+  public void recordError() {
+    errors.incrementAndGet();
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public long getCount() {
+    return count.get();
+  }
+
+  public long getErrors() {
+    return errors.get();
+  }
+
+  public long getMeanMicros() {
+    long n = count.get();
+    return n == 0 ? 0 : totalMicros.get() / n;
+  }
+
+  public long getMaxMicros() {
+    return maxMicros.get();
+  }
+
+  // highest value in the bucket holding the given quantile (0..1), 0 when empty
+  public long getPercentileMicros(double quantile) {
+    long total = 0;
+    for (int i = 0; i < BUCKETS; i++) total += counts.get(i);
+    if (total == 0) return 0;
+    long rank = Math.max(1, (long) Math.ceil(quantile * total));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += counts.get(i);
+      if (seen >= rank) return Math.min(highestEquivalent(i), maxMicros.get());
+    }
+    return maxMicros.get();
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        Locale.US,
+        "%s: n=%d err=%d p50=%.1fms p95=%.1fms p99=%.1fms max=%.1fms",
+        name,
+        getCount(),
+        getErrors(),
+        getPercentileMicros(0.50) / 1e3,
+        getPercentileMicros(0.95) / 1e3,
+        getPercentileMicros(0.99) / 1e3,
+        getMaxMicros() / 1e3);
+  }
+
+  static int indexOf(long micros) {
+    if (micros < SUB_BUCKETS) return (int) micros;
+    int magnitude = Math.min(MAX_MAGNITUDE, 63 - Long.numberOfLeadingZeros(micros));
+    int shift = magnitude - SUB_BUCKET_BITS;
+    int sub = (int) Math.min(SUB_BUCKETS - 1, (micros >>> shift) - SUB_BUCKETS);
+    return SUB_BUCKETS + shift * SUB_BUCKETS + sub;
+  }
+
+  static long highestEquivalent(int index) {
+    if (index < SUB_BUCKETS) return index;
+    int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+    int sub = (index - SUB_BUCKETS) % SUB_BUCKETS;
+    return ((long) (SUB_BUCKETS + sub + 1) << shift) - 1;
+  }
+}
@@ -7,22 +7,28 @@ import android.location.Location;
 import android.location.LocationListener;
 import android.location.LocationManager;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.util.Log;
 
 import androidx.core.app.ActivityCompat;
 
-import java.util.Timer;
-import java.util.TimerTask;
-
 public class LocationUtil {
 
   private static final String TAG = "LocationUtil";
+  private static final int HISTORY_SIZE = 64;
+  // how fast an inspector on foot may have moved away from an older fix
+  private static final double DRIFT_METERS_PER_SECOND = 1.5;
+  private static final String INTERPOLATED_PROVIDER = "interpolated";
+  private static final String FIX_PROVIDER = "fix";
+  // fixes further apart than this aren't interpolated between
+  private static final long MAX_INTERPOLATION_GAP_NANOS = 10_000_000_000L;
   private final Context context;
+  private final FixRing<Location> fixes = new FixRing<>(HISTORY_SIZE);
   private final LocationListener locationListenerGps;
   private final LocationListener locationListenerNetwork;
-  private Timer timer;
   private LocationManager manager;
   private LocationResult result;
+  private Power power;
   private boolean gps_enabled = false;
   private boolean network_enabled = false;
 
@@ -30,10 +36,7 @@ public class LocationUtil {
     locationListenerGps =
         new LocationListener() {
           public void onLocationChanged(Location location) {
-            timer.cancel();
-            result.gotLocation(location);
-            manager.removeUpdates(this);
-            manager.removeUpdates(locationListenerNetwork);
+            onFix(location);
           }
 
           public void onProviderDisabled(String provider) {}
@@ -45,10 +48,7 @@ public class LocationUtil {
     locationListenerNetwork =
         new LocationListener() {
           public void onLocationChanged(Location location) {
-            timer.cancel();
-            result.gotLocation(location);
-            manager.removeUpdates(this);
-            manager.removeUpdates(locationListenerGps);
+            onFix(location);
           }
 
           public void onProviderDisabled(String provider) {}
@@ -63,11 +63,15 @@ public class LocationUtil {
     this.context = context;
   }
 
-  public boolean getLocation(LocationResult result) {
+  // keeps listening until stop(); call again to switch power or after a permission is granted.
+  // must be called from a thread with a Looper, fixes are delivered there
+  public boolean start(Power power, LocationResult result) {
     //  use LocationResult callback class to pass location value from LocationUtil to user code.
     this.result = result;
+    this.power = power;
     if (manager == null)
       manager = (LocationManager) context.getSystemService(Context.LOCATION_SERVICE);
+    stop();
 
     // exceptions will be thrown if provider is not permitted.
     try {
@@ -84,63 +88,147 @@ public class LocationUtil {
     // don't start listeners if no provider is enabled
     if (!gps_enabled && !network_enabled) return false;
 
-    if (gps_enabled) {
-      if (ActivityCompat.checkSelfPermission(context, Manifest.permission.ACCESS_FINE_LOCATION)
-          == PackageManager.PERMISSION_GRANTED) {
-        manager.requestLocationUpdates(LocationManager.GPS_PROVIDER, 0, 0, locationListenerGps);
-      }
+    seedLastKnownLocations();
+    if (gps_enabled && isFineGranted()) {
+      manager.requestLocationUpdates(
+          LocationManager.GPS_PROVIDER,
+          power.minTimeMs,
+          power.minDistanceM,
+          locationListenerGps);
     }
-    if (network_enabled) {
-      if (ActivityCompat.checkSelfPermission(context, Manifest.permission.ACCESS_COARSE_LOCATION)
-          == PackageManager.PERMISSION_GRANTED) {
-        manager.requestLocationUpdates(
-            LocationManager.NETWORK_PROVIDER, 0, 0, locationListenerNetwork);
-      }
+    if (network_enabled && isCoarseGranted()) {
+      manager.requestLocationUpdates(
+          LocationManager.NETWORK_PROVIDER,
+          power.minTimeMs,
+          power.minDistanceM,
+          locationListenerNetwork);
     }
-    timer = new Timer();
-    timer.schedule(new GetLastLocation(), 1000);
     return true;
   }
 
-  public abstract static class LocationResult {
-    public abstract void gotLocation(Location location);
+  public void stop() {
+    if (manager == null) return;
+    manager.removeUpdates(locationListenerGps);
+    manager.removeUpdates(locationListenerNetwork);
+  }
+
+  public Power getPower() {
+    return power;
+  }
+
+  // never blocks; null when no fix is young and accurate enough
+  public Location getBestFix(long maxAgeMs, float maxAccuracyM) {
+    return fixes.getBest(
+        SystemClock.elapsedRealtimeNanos(),
+        maxAgeMs * 1_000_000L,
+        maxAccuracyM,
+        DRIFT_METERS_PER_SECOND);
+  }
+
+  // where the device was at a sensor timestamp; allocation free so it can run per frame. false
+  // when the nearest fix is further than maxAgeMs from the shot or the position is less accurate
+  // than maxAccuracyM, the same limits getBestFix applies
+  public boolean getFixAt(
+      long sensorTimestampNanos, long maxAgeMs, float maxAccuracyM, FixSample out) {
+    return fixes.sampleAt(
+            toElapsedRealtimeNanos(sensorTimestampNanos),
+            MAX_INTERPOLATION_GAP_NANOS,
+            DRIFT_METERS_PER_SECOND,
+            out)
+        && out.ageNanos <= maxAgeMs * 1_000_000L
+        && out.accuracy <= maxAccuracyM;
   }
 
-  class GetLastLocation extends TimerTask {
-    @Override
-    public void run() {
-      manager.removeUpdates(locationListenerGps);
-      manager.removeUpdates(locationListenerNetwork);
-
-      Location net_loc = null, gps_loc = null;
-      if (gps_enabled) {
-        if (ActivityCompat.checkSelfPermission(context, Manifest.permission.ACCESS_FINE_LOCATION)
-            == PackageManager.PERMISSION_GRANTED) {
-          manager.getLastKnownLocation(LocationManager.GPS_PROVIDER);
-        }
-      }
-      if (network_enabled) {
-        if (ActivityCompat.checkSelfPermission(context, Manifest.permission.ACCESS_COARSE_LOCATION)
-            == PackageManager.PERMISSION_GRANTED) {
-          manager.getLastKnownLocation(LocationManager.NETWORK_PROVIDER);
-        }
-      }
-      // if there are both values use the latest one
-      if (gps_loc != null && net_loc != null) {
-        if (gps_loc.getTime() > net_loc.getTime()) result.gotLocation(gps_loc);
-        else result.gotLocation(net_loc);
-        return;
-      }
-
-      if (gps_loc != null) {
-        result.gotLocation(gps_loc);
-        return;
-      }
-      if (net_loc != null) {
-        result.gotLocation(net_loc);
-        return;
-      }
-      result.gotLocation(null);
+  // camera timestamps are elapsed realtime on most devices but plain monotonic time (which
+  // stops during deep sleep) on some, pick whichever clock the timestamp is closer to
+  public static long toElapsedRealtimeNanos(long sensorTimestampNanos) {
+    long realtime = SystemClock.elapsedRealtimeNanos();
+    long monotonic = System.nanoTime();
+    if (Math.abs(sensorTimestampNanos - realtime) <= Math.abs(sensorTimestampNanos - monotonic)) {
+      return sensorTimestampNanos;
     }
+    return sensorTimestampNanos + (realtime - monotonic);
+  }
+
+  // a System.nanoTime() reading on the clock the camera stamps its frames with, judged by a
+  // recent frame timestamp
+  public static long toSensorClock(long nanoTime, long sensorReferenceNanos) {
+    if (toElapsedRealtimeNanos(sensorReferenceNanos) != sensorReferenceNanos) return nanoTime;
+    return nanoTime + (SystemClock.elapsedRealtimeNanos() - System.nanoTime());
+  }
+
+  public static Location toLocation(FixSample sample) {
+    Location location = new Location(sample.interpolated ? INTERPOLATED_PROVIDER : FIX_PROVIDER);
+    location.setLatitude(sample.latitude);
+    location.setLongitude(sample.longitude);
+    location.setAccuracy(sample.accuracy);
+    location.setTime(sample.timeMillis);
+    location.setElapsedRealtimeNanos(sample.elapsedRealtimeNanos);
+    return location;
+  }
+
+  public Location getLatestFix() {
+    return fixes.getLatest();
+  }
+
+  // every fix goes through here, a fake feed can call it directly
+  void onFix(Location location) {
+    if (location == null) return;
+    fixes.add(
+        location,
+        location.getElapsedRealtimeNanos(),
+        location.getTime(),
+        location.getLatitude(),
+        location.getLongitude(),
+        location.hasAccuracy() ? location.getAccuracy() : Float.MAX_VALUE,
+        location.hasSpeed() ? location.getSpeed() : 0);
+    if (result != null) result.gotLocation(location);
+  }
+
+  private void seedLastKnownLocations() {
+    Location net_loc = null, gps_loc = null;
+    if (gps_enabled && isFineGranted()) {
+      gps_loc = manager.getLastKnownLocation(LocationManager.GPS_PROVIDER);
+    }
+    if (network_enabled && isCoarseGranted()) {
+      net_loc = manager.getLastKnownLocation(LocationManager.NETWORK_PROVIDER);
+    }
+    // oldest first so the callback ends on the latest one
+    if (gps_loc != null && net_loc != null && gps_loc.getTime() > net_loc.getTime()) {
+      onFix(net_loc);
+      onFix(gps_loc);
+    } else {
+      onFix(gps_loc);
+      onFix(net_loc);
+    }
+  }
+
+  private boolean isFineGranted() {
+    return ActivityCompat.checkSelfPermission(context, Manifest.permission.ACCESS_FINE_LOCATION)
+        == PackageManager.PERMISSION_GRANTED;
+  }
+
+  private boolean isCoarseGranted() {
+    return ActivityCompat.checkSelfPermission(context, Manifest.permission.ACCESS_COARSE_LOCATION)
+        == PackageManager.PERMISSION_GRANTED;
+  }
+
+  public enum Power {
+    HIGH_ACCURACY(1000, 0),
+    BALANCED(5000, 5),
+    // battery saver is on
+    LOW_POWER(30000, 25);
+
+    final long minTimeMs;
+    final float minDistanceM;
+
+    Power(long minTimeMs, float minDistanceM) {
+      this.minTimeMs = minTimeMs;
+      this.minDistanceM = minDistanceM;
+    }
+  }
+
+  public abstract static class LocationResult {
+    public abstract void gotLocation(Location location);
   }
 }
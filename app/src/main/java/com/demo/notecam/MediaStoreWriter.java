@@ -0,0 +1,230 @@
+package com.demo.notecam;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.OperationApplicationException;
+import android.net.Uri;
+import android.os.RemoteException;
+import android.provider.MediaStore;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+// writes photos as pending MediaStore rows and publishes finished ones in batches, so the
+// gallery never indexes a half written file and a burst costs one publish call per batch
+public final class MediaStoreWriter {
+
+  private final Resolver resolver;
+  private final String relativePath;
+  private final int batchSize;
+  private final ShotMetrics metrics;
+  private final ArrayList<Uri> unpublished = new ArrayList<>();
+  // one per unpublished row, null where the caller doesn't need to know
+  private final ArrayList<PublishListener> listeners = new ArrayList<>();
+  private long calls;
+  private long written;
+
+  public MediaStoreWriter(Resolver resolver, String relativePath, int batchSize) {
+    this(resolver, relativePath, batchSize, new ShotMetrics());
+  }
+
+  // encode time is what the ImageWriter takes, insert time is every resolver call around it
+  public MediaStoreWriter(
+      Resolver resolver, String relativePath, int batchSize, ShotMetrics metrics) {
+    if (batchSize < 1) throw new IllegalArgumentException("batchSize must be >= 1");
+    this.resolver = resolver;
+    this.relativePath = relativePath;
+    this.batchSize = batchSize;
+    this.metrics = metrics;
+  }
+
+  public static Resolver wrap(ContentResolver contentResolver) {
+    return new Resolver() {
+      @Override
+      public Uri insert(Uri collection, ContentValues values) {
+        return contentResolver.insert(collection, values);
+      }
+
+      @Override
+      public OutputStream openOutputStream(Uri uri) throws IOException {
+        return contentResolver.openOutputStream(uri);
+      }
+
+      @Override
+      public int update(Uri uri, ContentValues values) {
+        return contentResolver.update(uri, values, null, null);
+      }
+
+      @Override
+      public int delete(Uri uri) {
+        return contentResolver.delete(uri, null, null);
+      }
+
+      @Override
+      public void applyBatch(ArrayList<ContentProviderOperation> operations) throws IOException {
+        try {
+          contentResolver.applyBatch(MediaStore.AUTHORITY, operations);
+        } catch (RemoteException | OperationApplicationException e) {
+          throw new IOException("Failed to apply MediaStore batch.", e);
+        }
+      }
+    };
+  }
+
+  // the row stays pending until the batch it lands in is published. a full batch is published
+  // before the row is inserted, so when that fails the shot is refused without a row of its own
+  // and retrying it can't leave a second one
+  public Uri write(String displayName, String mimeType, ImageWriter writer) throws IOException {
+    return write(displayName, mimeType, writer, null);
+  }
+
+  // the listener hears from whichever flush publishes the row or gives up on it. until then the
+  // row is pending and goes away with the process, so nothing that assumes the photo is kept
+  // belongs before it
+  public Uri write(
+      String displayName, String mimeType, ImageWriter writer, PublishListener listener)
+      throws IOException {
+    final long start = System.nanoTime();
+    boolean full;
+    synchronized (this) {
+      full = unpublished.size() >= batchSize;
+    }
+    if (full) flush();
+
+    final ContentValues contentValues = new ContentValues();
+    contentValues.put(MediaStore.MediaColumns.DISPLAY_NAME, displayName);
+    contentValues.put(MediaStore.MediaColumns.MIME_TYPE, mimeType);
+    contentValues.put(MediaStore.Images.Media.RELATIVE_PATH, relativePath);
+    contentValues.put(MediaStore.MediaColumns.IS_PENDING, 1);
+
+    ShotMetrics.beginSection(ShotMetrics.Metric.INSERT);
+    final Uri uri;
+    try {
+      uri = resolver.insert(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, contentValues);
+    } finally {
+      ShotMetrics.endSection();
+    }
+    if (uri == null) {
+      metrics.recordError(ShotMetrics.Metric.INSERT);
+      throw new IOException("Failed to create new MediaStore record.");
+    }
+    long encodeNanos;
+    ShotMetrics.Metric step = ShotMetrics.Metric.INSERT;
+    try (final OutputStream stream = resolver.openOutputStream(uri)) {
+      if (stream == null) throw new IOException("Failed to open output stream.");
+      step = ShotMetrics.Metric.ENCODE;
+      long encodeStart = System.nanoTime();
+      ShotMetrics.beginSection(ShotMetrics.Metric.ENCODE);
+      try {
+        if (!writer.writeTo(stream)) throw new IOException("Failed to write image.");
+      } finally {
+        ShotMetrics.endSection();
+      }
+      encodeNanos = System.nanoTime() - encodeStart;
+      // closing the stream is the provider's part again
+      step = ShotMetrics.Metric.INSERT;
+    } catch (IOException | RuntimeException e) {
+      metrics.recordError(step);
+      // Don't leave an orphan entry in the MediaStore
+      resolver.delete(uri);
+      throw e;
+    }
+    metrics.record(ShotMetrics.Metric.ENCODE, encodeNanos);
+
+    synchronized (this) {
+      calls += 2;
+      written++;
+      unpublished.add(uri);
+      listeners.add(listener);
+    }
+    metrics.record(ShotMetrics.Metric.INSERT, System.nanoTime() - start - encodeNanos);
+    return uri;
+  }
+
+  public void flush() throws IOException {
+    List<Uri> batch;
+    List<PublishListener> batchListeners;
+    synchronized (this) {
+      if (unpublished.isEmpty()) return;
+      batch = new ArrayList<>(unpublished);
+      batchListeners = new ArrayList<>(listeners);
+      unpublished.clear();
+      listeners.clear();
+      calls++;
+    }
+    ArrayList<ContentProviderOperation> operations = new ArrayList<>(batch.size());
+    for (Uri uri : batch) {
+      operations.add(
+          ContentProviderOperation.newUpdate(uri)
+              .withValue(MediaStore.MediaColumns.IS_PENDING, 0)
+              .build());
+    }
+    try {
+      resolver.applyBatch(operations);
+    } catch (IOException e) {
+      // publish one by one so a single bad row doesn't keep the others hidden
+      publishEach(batch, batchListeners, e);
+      return;
+    }
+    for (int i = 0; i < batch.size(); i++) report(batchListeners.get(i), batch.get(i), true);
+  }
+
+  private void publishEach(
+      List<Uri> batch, List<PublishListener> batchListeners, IOException cause)
+      throws IOException {
+    ContentValues published = new ContentValues();
+    published.put(MediaStore.MediaColumns.IS_PENDING, 0);
+    int failed = 0;
+    for (int i = 0; i < batch.size(); i++) {
+      Uri uri = batch.get(i);
+      boolean ok = resolver.update(uri, published) != 0;
+      if (!ok) {
+        resolver.delete(uri);
+        failed++;
+      }
+      report(batchListeners.get(i), uri, ok);
+    }
+    synchronized (this) {
+      calls += batch.size() + failed;
+    }
+    if (failed > 0) throw new IOException("Failed to publish " + failed + " photos.", cause);
+  }
+
+  private static void report(PublishListener listener, Uri uri, boolean published) {
+    if (listener != null) listener.onPublished(uri, published);
+  }
+
+  public synchronized int getUnpublishedCount() {
+    return unpublished.size();
+  }
+
+  // resolver round trips per photo written so far
+  public synchronized double getCallsPerPhoto() {
+    return written == 0 ? 0 : (double) calls / written;
+  }
+
+  public interface ImageWriter {
+    boolean writeTo(OutputStream stream) throws IOException;
+  }
+
+  // published is false when the row couldn't be published and was deleted
+  public interface PublishListener {
+    void onPublished(Uri uri, boolean published);
+  }
+
+  // the slice of ContentResolver used here, so a fake can stand in for it off device
+  public interface Resolver {
+    Uri insert(Uri collection, ContentValues values);
+
+    OutputStream openOutputStream(Uri uri) throws IOException;
+
+    int update(Uri uri, ContentValues values);
+
+    int delete(Uri uri);
+
+    void applyBatch(ArrayList<ContentProviderOperation> operations) throws IOException;
+  }
+}
@@ -0,0 +1,178 @@
+package com.demo.notecam;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.location.Location;
+import android.text.TextPaint;
+import android.util.AttributeSet;
+import android.view.View;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleEventObserver;
+import androidx.lifecycle.LifecycleOwner;
+
+// the watermark band drawn live over the preview: laid out by the same engine and filled by
+// the same formatter as the saved photo, so the screen shows what will be burned in. the band
+// is laid out at the size the photo is saved at and scaled onto where the preview shows that
+// frame, the view's centre at the frame's aspect ratio.
+// values sit in preallocated char buffers and only a changed value invalidates the view;
+// the clock ticks on the second and only while the lifecycle is started
+public final class MetaDataOverlayView extends View implements LifecycleEventObserver {
+
+  private static final int MAX_LINES = 8;
+
+  private final OverlayFormatter formatter = new OverlayFormatter();
+  private final Paint bandPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+  private final TextPaint textPaint = new TextPaint(TextPaint.ANTI_ALIAS_FLAG);
+  private final char[][] values = new char[MAX_LINES][OverlayFormatter.MAX_CHARS];
+  private final int[] lengths = new int[MAX_LINES];
+  private final char[] scratch = new char[OverlayFormatter.MAX_CHARS];
+  private final Runnable clockTick =
+      new Runnable() {
+        @Override
+        public void run() {
+          refresh();
+          postDelayed(this, 1000 - System.currentTimeMillis() % 1000);
+        }
+      };
+  private OverlayTemplate template = WatermarkRenderer.NO_LOCATION_TEMPLATE;
+  private OverlayLayout layout;
+  // the saved frame upright, and where it sits on screen
+  private int outputWidth;
+  private int outputHeight;
+  private float frameLeft;
+  private float frameTop;
+  private float frameScale;
+  private Location location;
+  private float errorMeters = Float.NaN;
+  private String site;
+
+  public MetaDataOverlayView(Context context) {
+    this(context, null);
+  }
+
+  public MetaDataOverlayView(Context context, AttributeSet attrs) {
+    super(context, attrs);
+    // same colours and spacing as WatermarkRenderer
+    bandPaint.setColor(Color.WHITE);
+    textPaint.setColor(Color.BLACK);
+    textPaint.setWordSpacing(0.1F);
+    clearValues();
+  }
+
+  // ticks from ON_START to ON_STOP of the owner
+  public void bind(LifecycleOwner owner) {
+    owner.getLifecycle().addObserver(this);
+  }
+
+  @Override
+  public void onStateChanged(@NonNull LifecycleOwner source, @NonNull Lifecycle.Event event) {
+    if (event == Lifecycle.Event.ON_START) {
+      clockTick.run();
+    } else if (event == Lifecycle.Event.ON_STOP) {
+      removeCallbacks(clockTick);
+    } else if (event == Lifecycle.Event.ON_DESTROY) {
+      source.getLifecycle().removeObserver(this);
+    }
+  }
+
+  // main thread; errorMeters is NaN when unknown and site null, as for the watermark
+  public void setLocation(Location location, float errorMeters, String site) {
+    this.location = location;
+    this.errorMeters = errorMeters;
+    this.site = site;
+    refresh();
+  }
+
+  // main thread; the size photos are saved at, as the UI is held. until it is known the band
+  // is laid out on the view itself
+  public void setOutputSize(int width, int height) {
+    if (width == outputWidth && height == outputHeight) return;
+    outputWidth = width;
+    outputHeight = height;
+    layout = null;
+    updateFrame();
+    invalidate();
+  }
+
+  @Override
+  protected void onSizeChanged(int width, int height, int oldWidth, int oldHeight) {
+    super.onSizeChanged(width, height, oldWidth, oldHeight);
+    layout = null;
+    updateFrame();
+  }
+
+  @Override
+  protected void onDraw(Canvas canvas) {
+    super.onDraw(canvas);
+    if (getWidth() == 0 || getHeight() == 0) return;
+    boolean known = outputWidth > 0 && outputHeight > 0;
+    if (layout == null) {
+      layout =
+          Util.getOverlayLayoutEngine()
+              .layout(
+                  known ? outputWidth : getWidth(), known ? outputHeight : getHeight(), template);
+    }
+    int saved = canvas.save();
+    if (known) {
+      canvas.translate(frameLeft, frameTop);
+      canvas.scale(frameScale, frameScale);
+    }
+    textPaint.setTextSize(layout.textSize);
+    canvas.drawRect(layout.left, layout.top, layout.right, layout.bottom, bandPaint);
+    for (int i = 0; i < layout.baselines.length; i++) {
+      canvas.drawText(
+          template.lines.get(i).label, layout.textX[i], layout.baselines[i], textPaint);
+      if (lengths[i] > 0) {
+        canvas.drawText(values[i], 0, lengths[i], layout.valueX[i], layout.baselines[i], textPaint);
+      }
+    }
+    canvas.restoreToCount(saved);
+  }
+
+  // the output frame fitted into the view and centred, as the preview scales it
+  private void updateFrame() {
+    if (outputWidth <= 0 || outputHeight <= 0) return;
+    frameScale = Math.min((float) getWidth() / outputWidth, (float) getHeight() / outputHeight);
+    frameLeft = (getWidth() - outputWidth * frameScale) / 2;
+    frameTop = (getHeight() - outputHeight * frameScale) / 2;
+  }
+
+  private void refresh() {
+    OverlayTemplate next = WatermarkRenderer.templateFor(location, site);
+    boolean changed = false;
+    if (next != template) {
+      template = next;
+      layout = null;
+      clearValues();
+      changed = true;
+    }
+    int lines = Math.min(template.getLineCount(), MAX_LINES);
+    long now = System.currentTimeMillis();
+    for (int i = 0; i < lines; i++) {
+      int length =
+          formatter.format(template.getField(i), location, errorMeters, now, site, scratch);
+      if (length < 0 || sameValue(i, length)) continue;
+      System.arraycopy(scratch, 0, values[i], 0, length);
+      lengths[i] = length;
+      changed = true;
+    }
+    if (changed) invalidate();
+  }
+
+  private boolean sameValue(int line, int length) {
+    if (lengths[line] != length) return false;
+    char[] value = values[line];
+    for (int i = 0; i < length; i++) {
+      if (value[i] != scratch[i]) return false;
+    }
+    return true;
+  }
+
+  private void clearValues() {
+    for (int i = 0; i < MAX_LINES; i++) lengths[i] = -1;
+  }
+}
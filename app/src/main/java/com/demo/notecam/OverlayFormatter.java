@@ -0,0 +1,97 @@
+package com.demo.notecam;
+
+import android.location.Location;
+
+// the text of every watermark field, written into a caller's char buffer instead of going
+// through String.format. the saved photo and the live preview both format through here, so
+// the two always read the same. not thread safe, each user keeps its own
+public final class OverlayFormatter {
+
+  // longest value a field can come to, accuracy with a clamped error included
+  public static final int MAX_CHARS = 40;
+  // longer site names end in "..."
+  public static final int MAX_SITE_CHARS = 32;
+  // anything bigger is not a position estimate, and wouldn't fit a long once scaled
+  private static final double MAX_METERS = 1e9;
+
+  private final TimeFormatter timeFormatter = new TimeFormatter();
+
+  // chars written from the start of out, -1 for lines without a value
+  public int format(
+      OverlayTemplate.Field field,
+      Location location,
+      float errorMeters,
+      long timeMillis,
+      String site,
+      char[] out) {
+    switch (field) {
+      case TIME:
+        return timeFormatter.formatSeconds(timeMillis, out, 0);
+      case LATITUDE:
+        return appendFixed(location.getLatitude(), 6, out, 0);
+      case LONGITUDE:
+        return appendFixed(location.getLongitude(), 6, out, 0);
+      case ACCURACY:
+        int length = appendFixed(Math.min(location.getAccuracy(), MAX_METERS), 1, out, 0);
+        length = append(" m", out, length);
+        if (Float.isNaN(errorMeters)) return length;
+        length = append(" (+/- ", out, length);
+        length = appendLong(Math.round(Math.min(errorMeters, MAX_METERS)), out, length);
+        return append(" m)", out, length);
+      case SITE:
+        if (site == null) return -1;
+        if (site.length() <= MAX_SITE_CHARS) return append(site, out, 0);
+        site.getChars(0, MAX_SITE_CHARS - 3, out, 0);
+        return append("...", out, MAX_SITE_CHARS - 3);
+      default:
+        return -1;
+    }
+  }
+
+  // allocating variant for callers that keep the text, null for lines without a value
+  public String format(
+      OverlayTemplate.Field field,
+      Location location,
+      float errorMeters,
+      long timeMillis,
+      String site) {
+    char[] out = new char[MAX_CHARS];
+    int length = format(field, location, errorMeters, timeMillis, site, out);
+    return length < 0 ? null : new String(out, 0, length);
+  }
+
+  // rounds half away from zero, the way %.Nf does
+  static int appendFixed(double value, int decimals, char[] out, int at) {
+    if (value < 0 || (value == 0 && 1 / value < 0)) {
+      out[at++] = '-';
+      value = -value;
+    }
+    long scale = 1;
+    for (int i = 0; i < decimals; i++) scale *= 10;
+    long scaled = Math.round(value * scale);
+    at = appendLong(scaled / scale, out, at);
+    if (decimals == 0) return at;
+    out[at++] = '.';
+    long fraction = scaled % scale;
+    for (long digit = scale / 10; digit > 0; digit /= 10) {
+      out[at++] = (char) ('0' + fraction / digit % 10);
+    }
+    return at;
+  }
+
+  // non-negative values only
+  static int appendLong(long value, char[] out, int at) {
+    int digits = 1;
+    for (long rest = value / 10; rest > 0; rest /= 10) digits++;
+    for (int i = at + digits - 1; i >= at; i--) {
+      out[i] = (char) ('0' + value % 10);
+      value /= 10;
+    }
+    return at + digits;
+  }
+
+  private static int append(String text, char[] out, int at) {
+    text.getChars(0, text.length(), out, at);
+    return at + text.length();
+  }
+}
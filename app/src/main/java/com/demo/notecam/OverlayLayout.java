@@ -0,0 +1,71 @@
+package com.demo.notecam;
+
+// where the band and each of its lines go on one frame size, in frame pixels
+public final class OverlayLayout {
+
+  public final OverlayTemplate template;
+  public final int frameWidth;
+  public final int frameHeight;
+  public final float textSize;
+  public final int left;
+  public final int top;
+  public final int right;
+  public final int bottom;
+  // label start, value start and baseline per template line
+  public final float[] textX;
+  public final float[] valueX;
+  public final float[] baselines;
+
+  OverlayLayout(
+      OverlayTemplate template,
+      int frameWidth,
+      int frameHeight,
+      float textSize,
+      int left,
+      int top,
+      int right,
+      int bottom,
+      float[] textX,
+      float[] valueX,
+      float[] baselines) {
+    this.template = template;
+    this.frameWidth = frameWidth;
+    this.frameHeight = frameHeight;
+    this.textSize = textSize;
+    this.left = left;
+    this.top = top;
+    this.right = right;
+    this.bottom = bottom;
+    this.textX = textX;
+    this.valueX = valueX;
+    this.baselines = baselines;
+  }
+
+  public int getWidth() {
+    return right - left;
+  }
+
+  public int getHeight() {
+    return bottom - top;
+  }
+
+  @Override
+  public String toString() {
+    return template
+        + " on "
+        + frameWidth
+        + "x"
+        + frameHeight
+        + ": text "
+        + textSize
+        + "px, band ["
+        + left
+        + ","
+        + top
+        + "]-["
+        + right
+        + ","
+        + bottom
+        + "]";
+  }
+}
@@ -0,0 +1,158 @@
+package com.demo.notecam;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+// sizes the watermark to the frame: text scales with the short side, the band is measured to
+// fit the template. labels and samples are measured once per template, layouts are cached per
+// (width, height, template) so a steady stream of same-sized shots does no layout work at all
+public final class OverlayLayoutEngine {
+
+  // the original watermark used 80 px text, which looks right on a 3000 px short side
+  private static final float TEXT_SIZE_PER_SHORT_SIDE = 80f / 3000;
+  private static final float MIN_TEXT_SIZE = 12;
+  // line pitch and padding in text sizes, 100 px and 50 px at 80 px text
+  private static final float LINE_HEIGHT = 1.25f;
+  private static final float PADDING = 0.625f;
+  private static final int MAX_CACHED_LAYOUTS = 16;
+
+  private final TextMeasurer measurer;
+  // per template: label width and label + sample width of each line, at the measurer's size
+  private final Map<OverlayTemplate, float[]> measured = new HashMap<>();
+  private final Map<Key, OverlayLayout> layouts = new LinkedHashMap<>(16, 0.75f, true);
+  private OverlayLayout last;
+  private int hits;
+  private int misses;
+
+  public OverlayLayoutEngine(TextMeasurer measurer) {
+    this.measurer = measurer;
+  }
+
+  public synchronized OverlayLayout layout(int width, int height, OverlayTemplate template) {
+    if (width <= 0 || height <= 0)
+      throw new IllegalArgumentException("empty frame " + width + "x" + height);
+    // consecutive shots almost always share a size, skip the map for them
+    OverlayLayout layout = last;
+    if (layout != null
+        && layout.template == template
+        && layout.frameWidth == width
+        && layout.frameHeight == height) {
+      hits++;
+      return layout;
+    }
+    Key key = new Key(width, height, template);
+    layout = layouts.get(key);
+    if (layout != null) {
+      hits++;
+    } else {
+      misses++;
+      layout = compute(width, height, template);
+      layouts.put(key, layout);
+      Iterator<OverlayLayout> it = layouts.values().iterator();
+      while (layouts.size() > MAX_CACHED_LAYOUTS) {
+        it.next();
+        it.remove();
+      }
+    }
+    last = layout;
+    return layout;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return String.format(
+        Locale.US,
+        "%s: hits=%d misses=%d layouts=%d",
+        getClass().getSimpleName(),
+        hits,
+        misses,
+        layouts.size());
+  }
+
+  private OverlayLayout compute(int width, int height, OverlayTemplate template) {
+    float[] widths = measure(template);
+    int lines = template.getLineCount();
+    float textSize = Math.max(MIN_TEXT_SIZE, Math.min(width, height) * TEXT_SIZE_PER_SHORT_SIDE);
+    float scale = textSize / measurer.getTextSize();
+    float padding = textSize * PADDING;
+    float lineHeight = textSize * LINE_HEIGHT;
+
+    float widest = 0;
+    for (int i = 0; i < lines; i++) widest = Math.max(widest, widths[2 * i + 1]);
+    int bandWidth = Math.min(width, (int) Math.ceil(2 * padding + widest * scale));
+    int bandHeight = Math.min(height, (int) Math.ceil(lines * lineHeight + padding));
+
+    OverlayTemplate.Corner corner = template.corner;
+    boolean alignRight =
+        corner == OverlayTemplate.Corner.TOP_RIGHT || corner == OverlayTemplate.Corner.BOTTOM_RIGHT;
+    boolean alignBottom =
+        corner == OverlayTemplate.Corner.BOTTOM_LEFT
+            || corner == OverlayTemplate.Corner.BOTTOM_RIGHT;
+    int left = alignRight ? width - bandWidth : 0;
+    int top = alignBottom ? height - bandHeight : 0;
+
+    float[] textX = new float[lines];
+    float[] valueX = new float[lines];
+    float[] baselines = new float[lines];
+    for (int i = 0; i < lines; i++) {
+      textX[i] = left + padding;
+      valueX[i] = textX[i] + widths[2 * i] * scale;
+      baselines[i] = top + (i + 1) * lineHeight;
+    }
+    return new OverlayLayout(
+        template,
+        width,
+        height,
+        textSize,
+        left,
+        top,
+        left + bandWidth,
+        top + bandHeight,
+        textX,
+        valueX,
+        baselines);
+  }
+
+  private float[] measure(OverlayTemplate template) {
+    float[] widths = measured.get(template);
+    if (widths != null) return widths;
+    template.freeze();
+    int lines = template.getLineCount();
+    widths = new float[2 * lines];
+    for (int i = 0; i < lines; i++) {
+      OverlayTemplate.Line line = template.lines.get(i);
+      float label = measurer.measure(line.label);
+      widths[2 * i] = label;
+      widths[2 * i + 1] = line.sample.isEmpty() ? label : label + measurer.measure(line.sample);
+    }
+    measured.put(template, widths);
+    return widths;
+  }
+
+  private static final class Key {
+    final int width;
+    final int height;
+    final OverlayTemplate template;
+
+    Key(int width, int height, OverlayTemplate template) {
+      this.width = width;
+      this.height = height;
+      this.template = template;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Key)) return false;
+      Key other = (Key) o;
+      return width == other.width && height == other.height && template == other.template;
+    }
+
+    @Override
+    public int hashCode() {
+      return (width * 31 + height) * 31 + System.identityHashCode(template);
+    }
+  }
+}
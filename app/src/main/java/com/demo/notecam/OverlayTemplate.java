@@ -0,0 +1,88 @@
+package com.demo.notecam;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// which lines the watermark band shows, top to bottom, and which corner of the frame it sits in
+public final class OverlayTemplate {
+
+  public enum Corner {
+    TOP_LEFT,
+    TOP_RIGHT,
+    BOTTOM_LEFT,
+    BOTTOM_RIGHT
+  }
+
+  // the value a line shows after its label, each with the widest text it is expected to take
+  public enum Field {
+    NONE(""),
+    TIME("00-00-0000 00:00:00"),
+    LATITUDE("-00.000000"),
+    LONGITUDE("-000.000000"),
+    ACCURACY("0000.0 m (+/- 0000 m)"),
+    // names are cut to OverlayFormatter.MAX_SITE_CHARS, this is a typical long one
+    SITE("Substation 14, North Gate Yard");
+
+    final String sample;
+
+    Field(String sample) {
+      this.sample = sample;
+    }
+  }
+
+  static final class Line {
+    final String label;
+    final Field field;
+    final String sample;
+
+    Line(String label, Field field, String sample) {
+      this.label = label;
+      this.field = field;
+      this.sample = sample;
+    }
+  }
+
+  final String name;
+  final Corner corner;
+  final List<Line> lines = new ArrayList<>();
+  // layouts are cached against the template, so it can't change once one has been made
+  private boolean frozen;
+
+  public OverlayTemplate(String name, Corner corner) {
+    this.name = name;
+    this.corner = corner;
+  }
+
+  public OverlayTemplate addLine(String label, Field field) {
+    return addLine(label, field, field.sample);
+  }
+
+  // sample is the widest value expected, the band is sized to fit it
+  public synchronized OverlayTemplate addLine(String label, Field field, String sample) {
+    if (frozen) throw new IllegalStateException(name + " is already in use");
+    lines.add(new Line(label, field, sample));
+    return this;
+  }
+
+  // a line without a value, like the device note
+  public OverlayTemplate addText(String text) {
+    return addLine(text, Field.NONE, "");
+  }
+
+  public int getLineCount() {
+    return lines.size();
+  }
+
+  public Field getField(int line) {
+    return lines.get(line).field;
+  }
+
+  synchronized void freeze() {
+    frozen = true;
+  }
+
+  @Override
+  public String toString() {
+    return name;
+  }
+}
@@ -0,0 +1,402 @@
+package com.demo.notecam;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.CRC32;
+
+// every saved photo with where and when it was taken, answering "near here" and "between then
+// and then" without touching the MediaStore. entries are kept twice in memory, sorted by capture
+// time and sorted by geohash, so both kinds of query are a few binary searches plus the hits.
+// the file is an append-only log of CRC-checked records, read back on first use.
+public final class PhotoCatalog implements Closeable {
+
+  // per axis, cells at full precision are ~0.6 m tall
+  private static final int GEOHASH_BITS = 26;
+  private static final double EARTH_RADIUS_M = 6_371_000;
+  // on the same sphere distanceMeters uses, so cell and box sizes never undershoot it
+  private static final double METERS_PER_DEGREE = Math.toRadians(1) * EARTH_RADIUS_M;
+  private static final int FLAG_LOCATION = 1;
+  private static final Comparator<Entry> BY_TIME =
+      (a, b) -> Long.compare(a.captureTimeMillis, b.captureTimeMillis);
+  private static final Comparator<Entry> BY_CELL = (a, b) -> Long.compare(a.cell, b.cell);
+
+  public static final class Entry {
+    public final long id;
+    public final long captureTimeMillis;
+    public final boolean hasLocation;
+    public final double latitude;
+    public final double longitude;
+    public final float accuracy;
+    public final String note;
+    final long cell;
+
+    public Entry(long id, long captureTimeMillis, String note) {
+      this(id, captureTimeMillis, false, 0, 0, 0, note);
+    }
+
+    public Entry(
+        long id,
+        long captureTimeMillis,
+        double latitude,
+        double longitude,
+        float accuracy,
+        String note) {
+      this(id, captureTimeMillis, true, latitude, longitude, accuracy, note);
+    }
+
+    private Entry(
+        long id,
+        long captureTimeMillis,
+        boolean hasLocation,
+        double latitude,
+        double longitude,
+        float accuracy,
+        String note) {
+      this.id = id;
+      this.captureTimeMillis = captureTimeMillis;
+      this.hasLocation = hasLocation;
+      this.latitude = latitude;
+      this.longitude = longitude;
+      this.accuracy = accuracy;
+      this.note = note == null ? "" : note;
+      this.cell = hasLocation ? geohash(latitude, longitude) : 0;
+    }
+  }
+
+  // null keeps the catalogue in memory only
+  private final File file;
+  private DataOutputStream out;
+  private boolean loaded;
+  private long[] times = new long[16];
+  private Entry[] byTime = new Entry[16];
+  private int size;
+  // entries with a location only
+  private long[] cells = new long[16];
+  private Entry[] byCell = new Entry[16];
+  private int located;
+  // geohash ranges of the cells a query covers, reused under the lock
+  private final int[] rangeFrom = new int[9];
+  private final int[] rangeTo = new int[9];
+  private double queryLatitude;
+  private double queryLongitude;
+  private double queryRadius;
+  private double queryLatitudeSpan;
+  private double queryLongitudeSpan;
+
+  // no disk work here, the file is read on first use off the main thread
+  public PhotoCatalog(File file) {
+    this.file = file;
+  }
+
+  public synchronized void add(Entry entry) throws IOException {
+    load();
+    if (out != null) {
+      byte[] record = encode(entry);
+      CRC32 crc = new CRC32();
+      crc.update(record);
+      out.writeInt(record.length);
+      out.write(record);
+      out.writeInt((int) crc.getValue());
+      out.flush();
+    }
+    insert(entry);
+  }
+
+  // captured in [fromMillis, toMillis), oldest first
+  public synchronized List<Entry> queryTime(long fromMillis, long toMillis) {
+    load();
+    int from = lowerBound(times, size, fromMillis);
+    int to = lowerBound(times, size, toMillis);
+    List<Entry> result = new ArrayList<>(Math.max(0, to - from));
+    for (int i = from; i < to; i++) result.add(byTime[i]);
+    return result;
+  }
+
+  // taken within radiusMeters of a point and in [fromMillis, toMillis), oldest first
+  public synchronized List<Entry> queryNear(
+      double latitude, double longitude, double radiusMeters, long fromMillis, long toMillis) {
+    load();
+    List<Entry> result = new ArrayList<>();
+    queryLatitude = latitude;
+    queryLongitude = longitude;
+    queryRadius = radiusMeters;
+    queryLatitudeSpan = radiusMeters / METERS_PER_DEGREE;
+    // widest longitude difference inside the circle, everything when it reaches a pole
+    double sinSpan =
+        Math.sin(Math.min(Math.PI / 2, radiusMeters / EARTH_RADIUS_M))
+            / Math.cos(Math.toRadians(latitude));
+    boolean reachesPole = Math.abs(latitude) + queryLatitudeSpan >= 90 || sinSpan >= 1;
+    queryLongitudeSpan = reachesPole ? 180 : Math.toDegrees(Math.asin(sinSpan));
+    int timeFrom = lowerBound(times, size, fromMillis);
+    int timeTo = lowerBound(times, size, toMillis);
+    int level = levelFor(queryLatitudeSpan, queryLongitudeSpan);
+    int ranges = 0;
+    int spatialCount = located;
+    if (level >= 2) {
+      // cells at this level are at least as big as the circle's box, so the circle lies
+      // within the query's cell and its eight neighbours
+      int drop = GEOHASH_BITS - level;
+      long latCell = quantize(latitude, 90, 180) >> drop;
+      long lonCell = quantize(longitude, 180, 360) >> drop;
+      long cellsPerAxis = 1L << level;
+      int shift = 2 * drop;
+      spatialCount = 0;
+      for (long dLat = -1; dLat <= 1; dLat++) {
+        long y = latCell + dLat;
+        if (y < 0 || y >= cellsPerAxis) continue;
+        for (long dLon = -1; dLon <= 1; dLon++) {
+          // wraps around the antimeridian
+          long x = (lonCell + dLon + cellsPerAxis) % cellsPerAxis;
+          long prefix = interleave(x, y);
+          int from = lowerBound(cells, located, prefix << shift);
+          int to = lowerBound(cells, located, (prefix + 1) << shift);
+          rangeFrom[ranges] = from;
+          rangeTo[ranges++] = to;
+          spatialCount += to - from;
+        }
+      }
+    }
+
+    // both candidate counts are known from the binary searches, walk the shorter list
+    if (timeTo - timeFrom <= spatialCount) {
+      for (int i = timeFrom; i < timeTo; i++) {
+        collect(byTime[i], fromMillis, toMillis, result);
+      }
+      // already in time order
+      return result;
+    }
+    if (level < 2) {
+      // the circle spans a quarter of the globe or reaches a pole, cells don't help
+      for (int i = 0; i < located; i++) {
+        collect(byCell[i], fromMillis, toMillis, result);
+      }
+    } else {
+      for (int r = 0; r < ranges; r++) {
+        for (int i = rangeFrom[r]; i < rangeTo[r]; i++) {
+          collect(byCell[i], fromMillis, toMillis, result);
+        }
+      }
+    }
+    Collections.sort(result, BY_TIME);
+    return result;
+  }
+
+  public synchronized int size() {
+    load();
+    return size;
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    if (out != null) out.close();
+    out = null;
+  }
+
+  public static double distanceMeters(double lat1, double lon1, double lat2, double lon2) {
+    double dLat = Math.toRadians(lat2 - lat1);
+    double dLon = Math.toRadians(lon2 - lon1);
+    double a =
+        Math.sin(dLat / 2) * Math.sin(dLat / 2)
+            + Math.cos(Math.toRadians(lat1))
+                * Math.cos(Math.toRadians(lat2))
+                * Math.sin(dLon / 2)
+                * Math.sin(dLon / 2);
+    return 2 * EARTH_RADIUS_M * Math.asin(Math.min(1, Math.sqrt(a)));
+  }
+
+  private void collect(Entry entry, long fromMillis, long toMillis, List<Entry> result) {
+    if (!entry.hasLocation) return;
+    if (entry.captureTimeMillis < fromMillis || entry.captureTimeMillis >= toMillis) return;
+    // bounding box in degrees first, the trigonometry is what a query spends its time on
+    if (Math.abs(entry.latitude - queryLatitude) > queryLatitudeSpan) return;
+    double dLon = Math.abs(entry.longitude - queryLongitude);
+    if (Math.min(dLon, 360 - dLon) > queryLongitudeSpan) return;
+    if (distanceMeters(queryLatitude, queryLongitude, entry.latitude, entry.longitude)
+        > queryRadius) {
+      return;
+    }
+    result.add(entry);
+  }
+
+  // finest level whose cells are at least as tall and wide, in degrees, as the circle's box
+  private static int levelFor(double latitudeSpan, double longitudeSpan) {
+    for (int level = GEOHASH_BITS; level > 0; level--) {
+      double cellHeight = 180.0 / (1L << level);
+      double cellWidth = 360.0 / (1L << level);
+      if (cellHeight >= latitudeSpan && cellWidth >= longitudeSpan) return level;
+    }
+    return 0;
+  }
+
+  // longitude takes the odd bits and latitude the even ones, as in a geohash
+  static long geohash(double latitude, double longitude) {
+    return interleave(quantize(longitude, 180, 360), quantize(latitude, 90, 180));
+  }
+
+  private static long quantize(double value, double offset, double range) {
+    long cells = 1L << GEOHASH_BITS;
+    long q = (long) ((value + offset) / range * cells);
+    return Math.max(0, Math.min(cells - 1, q));
+  }
+
+  private static long interleave(long x, long y) {
+    return spread(x) << 1 | spread(y);
+  }
+
+  // puts a zero bit between each of the low 32 bits
+  private static long spread(long v) {
+    v &= 0xFFFFFFFFL;
+    v = (v | v << 16) & 0x0000FFFF0000FFFFL;
+    v = (v | v << 8) & 0x00FF00FF00FF00FFL;
+    v = (v | v << 4) & 0x0F0F0F0F0F0F0F0FL;
+    v = (v | v << 2) & 0x3333333333333333L;
+    v = (v | v << 1) & 0x5555555555555555L;
+    return v;
+  }
+
+  // first index whose key is >= key
+  private static int lowerBound(long[] keys, int count, long key) {
+    int lo = 0;
+    int hi = count;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (keys[mid] < key) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+
+  // shots arrive in time order apart from journal replays, so this is nearly always an append
+  private void insert(Entry entry) {
+    if (size == times.length) {
+      times = Arrays.copyOf(times, size * 2);
+      byTime = Arrays.copyOf(byTime, size * 2);
+    }
+    int at = lowerBound(times, size, entry.captureTimeMillis + 1);
+    System.arraycopy(times, at, times, at + 1, size - at);
+    System.arraycopy(byTime, at, byTime, at + 1, size - at);
+    times[at] = entry.captureTimeMillis;
+    byTime[at] = entry;
+    size++;
+    if (!entry.hasLocation) return;
+
+    if (located == cells.length) {
+      cells = Arrays.copyOf(cells, located * 2);
+      byCell = Arrays.copyOf(byCell, located * 2);
+    }
+    at = lowerBound(cells, located, entry.cell);
+    System.arraycopy(cells, at, cells, at + 1, located - at);
+    System.arraycopy(byCell, at, byCell, at + 1, located - at);
+    cells[at] = entry.cell;
+    byCell[at] = entry;
+    located++;
+  }
+
+  private void load() {
+    if (loaded) return;
+    loaded = true;
+    if (file == null) return;
+    List<Entry> entries = new ArrayList<>();
+    long good = 0;
+    if (file.exists()) {
+      try (DataInputStream in =
+          new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+        CRC32 crc = new CRC32();
+        while (true) {
+          int length = in.readInt();
+          if (length <= 0 || length > 64 * 1024) break;
+          byte[] record = new byte[length];
+          in.readFully(record);
+          crc.reset();
+          crc.update(record);
+          if (in.readInt() != (int) crc.getValue()) break;
+          entries.add(decode(record));
+          good += 4 + length + 4;
+        }
+      } catch (EOFException e) {
+        // torn record at the end, everything before it is fine
+      } catch (IOException e) {
+        // what was read so far is kept
+      }
+    }
+    build(entries);
+    try {
+      if (file.exists() && file.length() != good) {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+          raf.setLength(good);
+        }
+      }
+      out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+    } catch (IOException e) {
+      // queries still work, new shots just aren't persisted
+      out = null;
+    }
+  }
+
+  // one sort per index instead of an insertion per entry
+  private void build(List<Entry> entries) {
+    Entry[] all = entries.toArray(new Entry[0]);
+    Arrays.sort(all, BY_TIME);
+    size = all.length;
+    byTime = Arrays.copyOf(all, Math.max(16, size * 2));
+    times = new long[byTime.length];
+    for (int i = 0; i < size; i++) times[i] = all[i].captureTimeMillis;
+
+    Arrays.sort(all, BY_CELL);
+    located = 0;
+    byCell = new Entry[byTime.length];
+    cells = new long[byTime.length];
+    for (Entry entry : all) {
+      if (!entry.hasLocation) continue;
+      byCell[located] = entry;
+      cells[located] = entry.cell;
+      located++;
+    }
+  }
+
+  private static byte[] encode(Entry entry) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+    DataOutputStream data = new DataOutputStream(bytes);
+    data.writeLong(entry.id);
+    data.writeLong(entry.captureTimeMillis);
+    data.writeByte(entry.hasLocation ? FLAG_LOCATION : 0);
+    data.writeDouble(entry.latitude);
+    data.writeDouble(entry.longitude);
+    data.writeFloat(entry.accuracy);
+    data.writeUTF(entry.note);
+    return bytes.toByteArray();
+  }
+
+  private static Entry decode(byte[] record) throws IOException {
+    DataInputStream data = new DataInputStream(new ByteArrayInputStream(record));
+    long id = data.readLong();
+    long time = data.readLong();
+    boolean hasLocation = (data.readByte() & FLAG_LOCATION) != 0;
+    double latitude = data.readDouble();
+    double longitude = data.readDouble();
+    float accuracy = data.readFloat();
+    String note = data.readUTF();
+    return hasLocation
+        ? new Entry(id, time, latitude, longitude, accuracy, note)
+        : new Entry(id, time, note);
+  }
+}
@@ -0,0 +1,401 @@
+package com.demo.notecam;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.provider.MediaStore;
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// copies the catalogued photos to an HTTP endpoint in resumable chunks. each photo is PUT to
+// <endpoint><id>.<ext> one chunk at a time with a Content-Range header and its catalogue
+// metadata as X-NoteCam-* headers. a 2xx acknowledges the chunk, or up to the Upload-Offset
+// the server sends back; a 409 or 416 with an Upload-Offset puts the upload at the server's
+// offset; 429, 5xx and a 2xx that acknowledges nothing new are retried with backoff. every
+// acknowledged chunk moves the ExportCursor on, so a stopped or killed export resumes from the
+// last chunk, and a local server can stand in for the endpoint since nothing here is tied to a
+// particular host
+public final class PhotoExporter {
+
+  private static final String TAG = "PhotoExporter";
+  private static final int CONNECT_TIMEOUT_MILLIS = 15_000;
+  private static final int READ_TIMEOUT_MILLIS = 30_000;
+  private static final long BACKOFF_BASE_MILLIS = 500;
+  private static final long BACKOFF_MAX_MILLIS = 30_000;
+
+  // one photo's bytes, however the source keeps them
+  public interface Content extends Closeable {
+    long length();
+
+    String mimeType();
+
+    // at least one byte unless the end is reached, -1 there
+    int read(long position, byte[] buffer, int offset, int length) throws IOException;
+  }
+
+  public interface Source {
+    // null when the photo is gone
+    Content open(long id) throws IOException;
+  }
+
+  private final URL endpoint;
+  private final Source source;
+  private final ExportCursor cursor;
+  private final int chunkBytes;
+  private final int maxAttempts;
+  private final TokenBucket bandwidth;
+  private final ThreadPoolExecutor executor;
+  private final ThreadLocal<byte[]> chunks;
+  // queued or uploading, so a restarted export doesn't upload a photo twice at once
+  private final Set<Long> active = ConcurrentHashMap.newKeySet();
+  private final Random jitter = new Random();
+  private final LatencyHistogram chunkLatency = new LatencyHistogram("export_chunk");
+  private final AtomicLong acknowledgedBytes = new AtomicLong();
+  private final AtomicLong bodyBytesOnWire = new AtomicLong();
+  private final AtomicLong responseBytes = new AtomicLong();
+  private final AtomicLong chunksSent = new AtomicLong();
+  private final AtomicLong retries = new AtomicLong();
+  private final AtomicLong resumed = new AtomicLong();
+  private final AtomicLong uploaded = new AtomicLong();
+  private final AtomicLong failed = new AtomicLong();
+  private volatile boolean running;
+  // wall time from each start to the last chunk acknowledged in that run
+  private long runStartedAt;
+  private long lastAckAt;
+  private long elapsedNanos;
+
+  // the endpoint must end in '/', photo names are resolved against it
+  public PhotoExporter(
+      URL endpoint,
+      Source source,
+      ExportCursor cursor,
+      int parallelism,
+      int chunkBytes,
+      long bytesPerSecond,
+      int maxAttempts) {
+    this.endpoint = endpoint;
+    this.source = source;
+    this.cursor = cursor;
+    this.chunkBytes = chunkBytes;
+    this.maxAttempts = maxAttempts;
+    this.bandwidth = new TokenBucket(bytesPerSecond);
+    this.chunks = ThreadLocal.withInitial(() -> new byte[chunkBytes]);
+    executor =
+        new ThreadPoolExecutor(
+            parallelism,
+            parallelism,
+            30,
+            TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(),
+            runnable -> {
+              Thread thread = new Thread(runnable, TAG);
+              thread.setDaemon(true);
+              thread.setPriority(Thread.MIN_PRIORITY);
+              return thread;
+            });
+    executor.allowCoreThreadTimeOut(true);
+  }
+
+  // reads the catalogue on a worker and queues every photo that isn't exported yet
+  public synchronized void start(PhotoCatalog catalog) {
+    if (running) return;
+    running = true;
+    runStartedAt = System.nanoTime();
+    lastAckAt = runStartedAt;
+    executor.execute(
+        () -> {
+          List<PhotoCatalog.Entry> entries = catalog.queryTime(Long.MIN_VALUE, Long.MAX_VALUE);
+          for (PhotoCatalog.Entry entry : entries) {
+            if (!running) return;
+            if (cursor.isDone(entry.id) || !active.add(entry.id)) continue;
+            executor.execute(() -> export(entry));
+          }
+        });
+  }
+
+  // uploads in progress stop after their current chunk and queued ones return straight away,
+  // unless a start comes first, in which case they simply carry on
+  public synchronized void stop() {
+    if (!running) return;
+    running = false;
+    elapsedNanos += lastAckAt - runStartedAt;
+    runStartedAt = lastAckAt;
+  }
+
+  public boolean isRunning() {
+    return running;
+  }
+
+  // acknowledged payload per second of export time
+  public synchronized double getThroughputBytesPerSecond() {
+    long nanos = elapsedNanos + (running ? lastAckAt - runStartedAt : 0);
+    return nanos <= 0 ? 0 : acknowledgedBytes.get() * 1e9 / nanos;
+  }
+
+  // request and response bodies, retries and resent ranges included
+  public long getBytesOnWire() {
+    return bodyBytesOnWire.get() + responseBytes.get();
+  }
+
+  public LatencyHistogram getChunkLatency() {
+    return chunkLatency;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        Locale.US,
+        "%s: uploaded=%d failed=%d done=%d acked=%dB wire=%dB (%dB sent) %.1fkB/s chunks=%d"
+            + " retries=%d resumed=%d limit=%dB/s",
+        getClass().getSimpleName(),
+        uploaded.get(),
+        failed.get(),
+        cursor.getDoneCount(),
+        acknowledgedBytes.get(),
+        getBytesOnWire(),
+        bodyBytesOnWire.get(),
+        getThroughputBytesPerSecond() / 1024,
+        chunksSent.get(),
+        retries.get(),
+        resumed.get(),
+        bandwidth.getBytesPerSecond());
+  }
+
+  // the MediaStore photo the catalogue entry's id refers to
+  public static Source mediaStore(ContentResolver resolver) {
+    return id -> {
+      Uri uri = ContentUris.withAppendedId(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, id);
+      ParcelFileDescriptor descriptor;
+      try {
+        descriptor = resolver.openFileDescriptor(uri, "r");
+      } catch (IOException e) {
+        // deleted from the gallery since
+        return null;
+      } catch (SecurityException e) {
+        // no longer ours to read, e.g. the storage permission was taken back; counted as a
+        // failure so it is tried again next start
+        throw new IOException("No access to " + uri, e);
+      }
+      if (descriptor == null) return null;
+      String mimeType = resolver.getType(uri);
+      FileChannel channel = new FileInputStream(descriptor.getFileDescriptor()).getChannel();
+      long length = descriptor.getStatSize();
+      return new Content() {
+        @Override
+        public long length() {
+          return length;
+        }
+
+        @Override
+        public String mimeType() {
+          return mimeType != null ? mimeType : EncodingPolicy.Format.JPEG.mimeType;
+        }
+
+        @Override
+        public int read(long position, byte[] buffer, int offset, int count)
+            throws IOException {
+          return channel.read(ByteBuffer.wrap(buffer, offset, count), position);
+        }
+
+        @Override
+        public void close() throws IOException {
+          channel.close();
+          descriptor.close();
+        }
+      };
+    };
+  }
+
+  private void export(PhotoCatalog.Entry entry) {
+    try (Content content = source.open(entry.id)) {
+      if (content == null) {
+        Log.w(TAG, "Photo " + entry.id + " is gone, not exporting it");
+        return;
+      }
+      long length = content.length();
+      long offset = cursor.getOffset(entry.id);
+      // the file changed under the cursor, start it over
+      if (offset > length) offset = 0;
+      if (offset > 0) resumed.incrementAndGet();
+      URL url = new URL(endpoint, entry.id + extensionOf(content.mimeType()));
+      byte[] chunk = chunks.get();
+      do {
+        if (!running) return;
+        int count = (int) Math.min(chunkBytes, length - offset);
+        readFully(content, offset, chunk, count);
+        long next = send(url, entry, content.mimeType(), chunk, offset, count, length);
+        acknowledgedBytes.addAndGet(Math.max(0, next - offset));
+        offset = next;
+        if (offset < length) cursor.advance(entry.id, offset);
+      } while (offset < length);
+      cursor.complete(entry.id);
+      uploaded.incrementAndGet();
+    } catch (IOException e) {
+      failed.incrementAndGet();
+      Log.w(TAG, "Failed to export photo " + entry.id, e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      active.remove(entry.id);
+    }
+  }
+
+  // the offset the server has acknowledged up to
+  private long send(
+      URL url,
+      PhotoCatalog.Entry entry,
+      String mimeType,
+      byte[] chunk,
+      long offset,
+      int count,
+      long length)
+      throws IOException, InterruptedException {
+    for (int attempt = 1; ; attempt++) {
+      int status;
+      long serverOffset;
+      long retryAfterMillis;
+      bandwidth.acquire(count);
+      long started = System.nanoTime();
+      HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+      try {
+        connection.setRequestMethod("PUT");
+        connection.setDoOutput(true);
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+        connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+        connection.setFixedLengthStreamingMode(count);
+        connection.setRequestProperty("Content-Type", mimeType);
+        connection.setRequestProperty(
+            "Content-Range",
+            length == 0
+                ? "bytes */0"
+                : "bytes " + offset + "-" + (offset + count - 1) + "/" + length);
+        setMetadata(connection, entry);
+        try (OutputStream out = connection.getOutputStream()) {
+          out.write(chunk, 0, count);
+        }
+        bodyBytesOnWire.addAndGet(count);
+        chunksSent.incrementAndGet();
+        status = connection.getResponseCode();
+        serverOffset = parseLong(connection.getHeaderField("Upload-Offset"));
+        retryAfterMillis = parseLong(connection.getHeaderField("Retry-After")) * 1000;
+        drain(status < 400 ? connection.getInputStream() : connection.getErrorStream());
+        chunkLatency.record(System.nanoTime() - started);
+      } catch (IOException e) {
+        chunkLatency.recordError();
+        if (attempt >= maxAttempts) throw e;
+        backOff(attempt, -1);
+        continue;
+      } finally {
+        connection.disconnect();
+      }
+
+      if (status / 100 == 2) {
+        long acked = serverOffset >= 0 ? Math.min(serverOffset, length) : offset + count;
+        // a success that doesn't move the upload on would have the chunk sent for ever, it is
+        // retried like a failure instead
+        if (acked > offset || offset == length) {
+          acknowledged();
+          return acked;
+        }
+      } else if ((status == 409 || status == 416) && serverOffset >= 0 && serverOffset != offset) {
+        // the server has a different part than the cursor thinks, go on from what it has
+        return Math.min(serverOffset, length);
+      } else if (status != 429 && status < 500) {
+        throw new IOException("HTTP " + status + " for " + url);
+      }
+      if (attempt >= maxAttempts) {
+        throw new IOException("HTTP " + status + " for " + url + " after " + attempt + " tries");
+      }
+      backOff(attempt, retryAfterMillis);
+    }
+  }
+
+  private synchronized void acknowledged() {
+    lastAckAt = System.nanoTime();
+    // the chunk that was in flight when the export stopped
+    if (!running) {
+      elapsedNanos += lastAckAt - runStartedAt;
+      runStartedAt = lastAckAt;
+    }
+  }
+
+  // exponential with jitter, so workers failing together don't retry together; a server's
+  // Retry-After wins when it asks for longer
+  private void backOff(int attempt, long retryAfterMillis) throws InterruptedException {
+    retries.incrementAndGet();
+    long ceiling = Math.min(BACKOFF_MAX_MILLIS, BACKOFF_BASE_MILLIS << Math.min(attempt - 1, 16));
+    long delay = ceiling / 2 + (long) (jitter.nextDouble() * ceiling / 2);
+    Thread.sleep(Math.max(delay, retryAfterMillis));
+  }
+
+  private static void setMetadata(HttpURLConnection connection, PhotoCatalog.Entry entry)
+      throws IOException {
+    connection.setRequestProperty("X-NoteCam-Id", String.valueOf(entry.id));
+    connection.setRequestProperty(
+        "X-NoteCam-Capture-Time", String.valueOf(entry.captureTimeMillis));
+    if (entry.hasLocation) {
+      connection.setRequestProperty(
+          "X-NoteCam-Latitude", String.format(Locale.US, "%.6f", entry.latitude));
+      connection.setRequestProperty(
+          "X-NoteCam-Longitude", String.format(Locale.US, "%.6f", entry.longitude));
+      if (!Float.isNaN(entry.accuracy)) {
+        connection.setRequestProperty(
+            "X-NoteCam-Accuracy", String.format(Locale.US, "%.1f", entry.accuracy));
+      }
+    }
+    connection.setRequestProperty("X-NoteCam-Note", URLEncoder.encode(entry.note, "UTF-8"));
+  }
+
+  private void drain(InputStream in) throws IOException {
+    if (in == null) return;
+    try (InputStream body = in) {
+      byte[] buffer = new byte[1024];
+      int read;
+      while ((read = body.read(buffer)) != -1) responseBytes.addAndGet(read);
+    }
+  }
+
+  private static void readFully(Content content, long position, byte[] buffer, int count)
+      throws IOException {
+    int read = 0;
+    while (read < count) {
+      int n = content.read(position + read, buffer, read, count - read);
+      if (n < 0) throw new IOException("Photo shorter than its length");
+      read += n;
+    }
+  }
+
+  private static String extensionOf(String mimeType) {
+    return EncodingPolicy.Format.WEBP.mimeType.equals(mimeType) ? ".webp" : ".jpg";
+  }
+
+  // -1 when missing or not a number
+  private static long parseLong(String value) {
+    if (value == null) return -1;
+    try {
+      return Long.parseLong(value.trim());
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+}
@@ -0,0 +1,138 @@
+package com.demo.notecam;
+
+import android.os.Build;
+import android.os.Trace;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+// where a shot's time goes, per step, as histograms that can be compared across device models.
+// every step is also a Trace section so it lines up with the system trace in Perfetto
+public final class ShotMetrics {
+
+  public enum Metric {
+    SHUTTER_TO_CAPTURE("shutter_to_capture"),
+    DECODE("decode"),
+    OVERLAY("overlay"),
+    ENCODE("encode"),
+    INSERT("mediastore_insert"),
+    // perceptual and content hash plus the index lookup
+    DEDUP("dedup"),
+    // how far the fix used for a shot is from the moment the shot was taken
+    LOCATION_AGE("location_age"),
+    // how far from the tap, either way, the frame a zero-shutter-lag shot was taken from lies
+    ZSL_FRAME_OFFSET("zsl_frame_offset"),
+    // cold start, from onCreate; one sample per launch
+    FIRST_PREVIEW_FRAME("first_preview_frame"),
+    SHUTTER_READY("shutter_ready");
+
+    public final String key;
+    final String traceName;
+
+    Metric(String key) {
+      this.key = key;
+      this.traceName = "NoteCam:" + key;
+    }
+  }
+
+  private final Map<Metric, LatencyHistogram> histograms = new EnumMap<>(Metric.class);
+
+  public ShotMetrics() {
+    for (Metric metric : Metric.values()) histograms.put(metric, new LatencyHistogram(metric.key));
+  }
+
+  public void record(Metric metric, long nanos) {
+    histograms.get(metric).record(nanos);
+  }
+
+  public void recordError(Metric metric) {
+    histograms.get(metric).recordError();
+  }
+
+  public LatencyHistogram get(Metric metric) {
+    return histograms.get(metric);
+  }
+
+  // sections must be ended on the thread that began them
+  public static void beginSection(Metric metric) {
+    Trace.beginSection(metric.traceName);
+  }
+
+  public static void endSection() {
+    Trace.endSection();
+  }
+
+  // a pipeline stage that is traced and timed as the given step; failures count as errors
+  public <T> CapturePipeline.Stage<T> timed(Metric metric, CapturePipeline.Stage<T> stage) {
+    LatencyHistogram histogram = histograms.get(metric);
+    return job -> {
+      long start = System.nanoTime();
+      Trace.beginSection(metric.traceName);
+      try {
+        stage.process(job);
+      } catch (Exception e) {
+        histogram.recordError();
+        throw e;
+      } finally {
+        Trace.endSection();
+      }
+      histogram.record(System.nanoTime() - start);
+    };
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder text = new StringBuilder(getClass().getSimpleName()).append(':');
+    for (LatencyHistogram histogram : histograms.values()) {
+      text.append("\n  ").append(histogram);
+    }
+    return text.toString();
+  }
+
+  public String toJson() {
+    StringBuilder json =
+        new StringBuilder("{\"device\":\"")
+            .append(escape(Build.MANUFACTURER + " " + Build.MODEL))
+            .append("\",\"sdk\":")
+            .append(Build.VERSION.SDK_INT)
+            .append(",\"metrics\":{");
+    boolean first = true;
+    for (LatencyHistogram histogram : histograms.values()) {
+      if (!first) json.append(',');
+      first = false;
+      json.append(
+          String.format(
+              Locale.US,
+              "\"%s\":{\"count\":%d,\"errors\":%d,\"mean_ms\":%.3f,\"p50_ms\":%.3f,"
+                  + "\"p95_ms\":%.3f,\"p99_ms\":%.3f,\"max_ms\":%.3f}",
+              histogram.getName(),
+              histogram.getCount(),
+              histogram.getErrors(),
+              histogram.getMeanMicros() / 1e3,
+              histogram.getPercentileMicros(0.50) / 1e3,
+              histogram.getPercentileMicros(0.95) / 1e3,
+              histogram.getPercentileMicros(0.99) / 1e3,
+              histogram.getMaxMicros() / 1e3));
+    }
+    return json.append("}}").toString();
+  }
+
+  // replaces the file as a whole so a reader never sees half a dump
+  public void writeJson(File file) throws IOException {
+    File tmp = new File(file.getPath() + ".tmp");
+    try (OutputStream out = new FileOutputStream(tmp)) {
+      out.write(toJson().getBytes(StandardCharsets.UTF_8));
+    }
+    if (!tmp.renameTo(file)) throw new IOException("Failed to replace " + file);
+  }
+
+  private static String escape(String text) {
+    return text.replace("\\", "\\\\").replace("\"", "\\\"");
+  }
+}
@@ -0,0 +1,165 @@
+package com.demo.notecam;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+// reads the sites a user supplies for the Gazetteer: CSV as name,latitude,longitude (a header
+// row naming the columns may put them in any order), or GeoJSON points, and polygons by the
+// mean of their outer ring, named by a "name" property
+public final class SiteList {
+
+  private SiteList() {}
+
+  public static List<Gazetteer.Site> read(File file) throws IOException {
+    try (Reader reader =
+        new BufferedReader(
+            new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+      if (file.getName().toLowerCase(Locale.US).endsWith(".csv")) return readCsv(reader);
+      StringBuilder text = new StringBuilder();
+      char[] buffer = new char[8192];
+      int read;
+      while ((read = reader.read(buffer)) != -1) text.append(buffer, 0, read);
+      return readGeoJson(text.toString());
+    }
+  }
+
+  // rows that don't parse are skipped, a hand-edited list shouldn't stop the rest loading
+  public static List<Gazetteer.Site> readCsv(Reader reader) throws IOException {
+    BufferedReader lines =
+        reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+    List<Gazetteer.Site> sites = new ArrayList<>();
+    int nameColumn = 0;
+    int latColumn = 1;
+    int lonColumn = 2;
+    boolean first = true;
+    String line;
+    List<String> fields = new ArrayList<>();
+    while ((line = lines.readLine()) != null) {
+      // a byte order mark, as spreadsheet exports often start with
+      if (first && line.startsWith("\uFEFF")) line = line.substring(1);
+      split(line, fields);
+      if (first) {
+        first = false;
+        int lat = indexOf(fields, "lat", "latitude");
+        int lon = indexOf(fields, "lon", "lng", "long", "longitude");
+        if (lat >= 0 && lon >= 0) {
+          latColumn = lat;
+          lonColumn = lon;
+          nameColumn = Math.max(0, indexOf(fields, "name", "site", "title"));
+          continue;
+        }
+      }
+      int columns = Math.max(nameColumn, Math.max(latColumn, lonColumn));
+      if (fields.size() <= columns) continue;
+      try {
+        double latitude = Double.parseDouble(fields.get(latColumn).trim());
+        double longitude = Double.parseDouble(fields.get(lonColumn).trim());
+        if (Math.abs(latitude) > 90 || Math.abs(longitude) > 180) continue;
+        sites.add(new Gazetteer.Site(fields.get(nameColumn).trim(), latitude, longitude));
+      } catch (NumberFormatException e) {
+        // a header we didn't recognise, or a typo
+      }
+    }
+    return sites;
+  }
+
+  public static List<Gazetteer.Site> readGeoJson(String text) throws IOException {
+    List<Gazetteer.Site> sites = new ArrayList<>();
+    try {
+      JSONObject root = new JSONObject(text);
+      JSONArray features = root.optJSONArray("features");
+      if (features == null) {
+        addFeature(root, sites);
+      } else {
+        for (int i = 0; i < features.length(); i++) {
+          JSONObject feature = features.optJSONObject(i);
+          if (feature != null) addFeature(feature, sites);
+        }
+      }
+    } catch (JSONException e) {
+      throw new IOException("Not GeoJSON", e);
+    }
+    return sites;
+  }
+
+  private static void addFeature(JSONObject feature, List<Gazetteer.Site> sites)
+      throws JSONException {
+    JSONObject geometry = feature.optJSONObject("geometry");
+    JSONObject properties = feature.optJSONObject("properties");
+    if (geometry == null || properties == null) return;
+    String name = properties.optString("name", null);
+    if (name == null || name.isEmpty()) return;
+    JSONArray coordinates = geometry.optJSONArray("coordinates");
+    if (coordinates == null) return;
+    switch (geometry.optString("type")) {
+      case "Point":
+        // GeoJSON positions are longitude first
+        sites.add(new Gazetteer.Site(name, coordinates.getDouble(1), coordinates.getDouble(0)));
+        break;
+      case "Polygon":
+        JSONArray ring = coordinates.getJSONArray(0);
+        // the closing position repeats the first
+        int points = Math.max(1, ring.length() - 1);
+        double latitude = 0;
+        double longitude = 0;
+        for (int i = 0; i < points; i++) {
+          longitude += ring.getJSONArray(i).getDouble(0);
+          latitude += ring.getJSONArray(i).getDouble(1);
+        }
+        sites.add(new Gazetteer.Site(name, latitude / points, longitude / points));
+        break;
+      default:
+        break;
+    }
+  }
+
+  // RFC 4180 quoting, one record per line
+  private static void split(String line, List<String> fields) {
+    fields.clear();
+    StringBuilder field = new StringBuilder();
+    boolean quoted = false;
+    for (int i = 0; i < line.length(); i++) {
+      char c = line.charAt(i);
+      if (quoted) {
+        if (c != '"') {
+          field.append(c);
+        } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+          field.append('"');
+          i++;
+        } else {
+          quoted = false;
+        }
+      } else if (c == '"') {
+        quoted = true;
+      } else if (c == ',') {
+        fields.add(field.toString());
+        field.setLength(0);
+      } else {
+        field.append(c);
+      }
+    }
+    fields.add(field.toString());
+  }
+
+  private static int indexOf(List<String> fields, String... names) {
+    for (int i = 0; i < fields.size(); i++) {
+      String field = fields.get(i).trim().toLowerCase(Locale.US);
+      for (String name : names) {
+        if (field.equals(name)) return i;
+      }
+    }
+    return -1;
+  }
+}
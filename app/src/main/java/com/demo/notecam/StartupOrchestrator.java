@@ -0,0 +1,127 @@
+package com.demo.notecam;
+
+import android.os.Trace;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// runs the cold start in the order the user notices it: the preview is bound on the main
+// thread first, everything else warms up on a small pool meanwhile. the shutter is ready
+// once every gate has been passed, which is when a press turns into a saved photo
+public final class StartupOrchestrator {
+
+  private static final String TAG = "StartupOrchestrator";
+  private static final int WARM_UP_THREADS = 2;
+
+  public enum Gate {
+    CAMERA_BOUND,
+    PIPELINE_READY,
+    SOUND_LOADED
+  }
+
+  private static final int ALL_GATES = (1 << Gate.values().length) - 1;
+
+  private final ShotMetrics metrics;
+  private final long startNanos;
+  private final ExecutorService warmUp =
+      Executors.newFixedThreadPool(
+          WARM_UP_THREADS,
+          runnable -> {
+            Thread thread = new Thread(runnable, "startup-warm-up");
+            thread.setDaemon(true);
+            return thread;
+          });
+  private final AtomicInteger passed = new AtomicInteger();
+  private final List<String> timings = new ArrayList<>();
+  // main thread work held back until the preview shows, run once and dropped
+  private final List<Runnable> afterFirstFrame = new ArrayList<>();
+  private boolean firstFrameSeen;
+
+  public StartupOrchestrator(ShotMetrics metrics, long startNanos) {
+    this.metrics = metrics;
+    this.startNanos = startNanos;
+  }
+
+  // off the main thread, in parallel with the camera coming up
+  public void warmUp(String name, Runnable task) {
+    warmUp.execute(
+        () -> {
+          long start = System.nanoTime();
+          Trace.beginSection("NoteCam:warm-up:" + name);
+          try {
+            task.run();
+          } catch (RuntimeException e) {
+            Log.w(TAG, "Warm-up " + name + " failed", e);
+          } finally {
+            Trace.endSection();
+          }
+          long end = System.nanoTime();
+          addTiming(
+              String.format(
+                  Locale.US,
+                  "%s=%.1fms, done at %.1fms",
+                  name,
+                  (end - start) / 1e6,
+                  (end - startNanos) / 1e6));
+        });
+  }
+
+  // main thread only; runs right away when the preview is already up
+  public void afterFirstFrame(Runnable task) {
+    if (firstFrameSeen) {
+      task.run();
+    } else {
+      afterFirstFrame.add(task);
+    }
+  }
+
+  // main thread only, from the preview's stream state turning to STREAMING
+  public void onFirstFrame() {
+    if (firstFrameSeen) return;
+    firstFrameSeen = true;
+    long nanos = System.nanoTime() - startNanos;
+    metrics.record(ShotMetrics.Metric.FIRST_PREVIEW_FRAME, nanos);
+    addTiming(String.format(Locale.US, "first preview frame at %.1fms", nanos / 1e6));
+    for (Runnable task : afterFirstFrame) task.run();
+    afterFirstFrame.clear();
+  }
+
+  // any thread; each gate counts once, the last one in records time-to-shutter-ready
+  public void pass(Gate gate) {
+    int bit = 1 << gate.ordinal();
+    int before;
+    do {
+      before = passed.get();
+      if ((before & bit) != 0) return;
+    } while (!passed.compareAndSet(before, before | bit));
+    if ((before | bit) != ALL_GATES) return;
+    long nanos = System.nanoTime() - startNanos;
+    metrics.record(ShotMetrics.Metric.SHUTTER_READY, nanos);
+    addTiming(String.format(Locale.US, "shutter ready at %.1fms", nanos / 1e6));
+    Log.i(TAG, toString());
+  }
+
+  public boolean isShutterReady() {
+    return passed.get() == ALL_GATES;
+  }
+
+  public void shutdown() {
+    warmUp.shutdown();
+  }
+
+  @Override
+  public synchronized String toString() {
+    StringBuilder text = new StringBuilder(getClass().getSimpleName()).append(':');
+    for (String timing : timings) text.append("\n  ").append(timing);
+    return text.toString();
+  }
+
+  private synchronized void addTiming(String timing) {
+    timings.add(timing);
+  }
+}
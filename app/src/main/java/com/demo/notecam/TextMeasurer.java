@@ -0,0 +1,9 @@
+package com.demo.notecam;
+
+// text widths at one reference size; OverlayLayoutEngine scales them to whatever size it picks
+public interface TextMeasurer {
+
+  float getTextSize();
+
+  float measure(String text);
+}
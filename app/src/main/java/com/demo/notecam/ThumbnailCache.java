@@ -0,0 +1,175 @@
+package com.demo.notecam;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// thumbnails of saved photos keyed by MediaStore id: an LRU in memory bounded by bytes, backed
+// by small JPEGs in an app-private directory. the index file lists ids oldest first so the
+// gallery knows the latest shots without asking the MediaStore or decoding anything full size
+public final class ThumbnailCache {
+
+  private static final String TAG = "ThumbnailCache";
+  private static final String INDEX_FILE = "index";
+  private static final int QUALITY = 85;
+
+  private final File dir;
+  private final long memoryBudget;
+  private final int maxEntries;
+  private final LinkedHashMap<Long, Bitmap> memory = new LinkedHashMap<>(64, 0.75f, true);
+  // ids on disk, oldest first; null until the index has been read
+  private List<Long> ids;
+  private long memoryBytes;
+  private int hits;
+  private int diskReads;
+  private int misses;
+
+  // no disk work here, the index is read on first use off the main thread
+  public ThumbnailCache(File dir, long memoryBudget, int maxEntries) {
+    this.dir = dir;
+    this.memoryBudget = memoryBudget;
+    this.maxEntries = maxEntries;
+  }
+
+  public synchronized void put(long id, Bitmap thumbnail) throws IOException {
+    List<Long> ids = loadIndex();
+    putInMemory(id, thumbnail);
+    File file = fileFor(id);
+    File tmp = new File(dir, id + ".tmp");
+    try (OutputStream out = new FileOutputStream(tmp)) {
+      if (!thumbnail.compress(Bitmap.CompressFormat.JPEG, QUALITY, out))
+        throw new IOException("Failed to encode thumbnail " + id);
+    }
+    if (!tmp.renameTo(file)) throw new IOException("Failed to store thumbnail " + id);
+    ids.add(id);
+    // a quarter of slack so the index is rewritten once per maxEntries / 4 shots, not every shot
+    if (ids.size() > maxEntries + maxEntries / 4) {
+      trim(ids);
+    } else {
+      try (Writer index = new FileWriter(new File(dir, INDEX_FILE), true)) {
+        index.write(id + "\n");
+      }
+    }
+  }
+
+  // memory first, then the disk copy; null when the id was never cached or has been trimmed
+  public synchronized Bitmap get(long id) {
+    Bitmap thumbnail = memory.get(id);
+    if (thumbnail != null && !thumbnail.isRecycled()) {
+      hits++;
+      return thumbnail;
+    }
+    File file = fileFor(id);
+    if (!file.exists()) {
+      misses++;
+      return null;
+    }
+    BitmapFactory.Options options = new BitmapFactory.Options();
+    options.inPreferredConfig = Bitmap.Config.RGB_565;
+    thumbnail = BitmapFactory.decodeFile(file.getPath(), options);
+    if (thumbnail == null) {
+      misses++;
+      return null;
+    }
+    diskReads++;
+    putInMemory(id, thumbnail);
+    return thumbnail;
+  }
+
+  // up to count ids, newest first
+  public synchronized long[] getRecent(int count) {
+    List<Long> ids = loadIndex();
+    int n = Math.min(count, ids.size());
+    long[] recent = new long[n];
+    for (int i = 0; i < n; i++) recent[i] = ids.get(ids.size() - 1 - i);
+    return recent;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return String.format(
+        Locale.US,
+        "%s: hits=%d diskReads=%d misses=%d memory=%dKB/%dKB entries=%d",
+        getClass().getSimpleName(),
+        hits,
+        diskReads,
+        misses,
+        memoryBytes / 1024,
+        memoryBudget / 1024,
+        ids == null ? 0 : ids.size());
+  }
+
+  private void putInMemory(long id, Bitmap thumbnail) {
+    Bitmap old = memory.put(id, thumbnail);
+    if (old != null) memoryBytes -= old.getAllocationByteCount();
+    memoryBytes += thumbnail.getAllocationByteCount();
+    // dropped, not recycled: an ImageView may still be showing it
+    Iterator<Map.Entry<Long, Bitmap>> it = memory.entrySet().iterator();
+    while (memoryBytes > memoryBudget && it.hasNext()) {
+      Map.Entry<Long, Bitmap> eldest = it.next();
+      if (eldest.getKey() == id) continue;
+      memoryBytes -= eldest.getValue().getAllocationByteCount();
+      it.remove();
+    }
+  }
+
+  private File fileFor(long id) {
+    return new File(dir, id + ".jpg");
+  }
+
+  private List<Long> loadIndex() {
+    if (ids != null) return ids;
+    ids = new ArrayList<>();
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      Log.w(TAG, "Can't create " + dir);
+      return ids;
+    }
+    File index = new File(dir, INDEX_FILE);
+    if (!index.exists()) return ids;
+    try (BufferedReader reader = new BufferedReader(new FileReader(index))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        try {
+          ids.add(Long.parseLong(line.trim()));
+        } catch (NumberFormatException e) {
+          // torn last line from a crash mid-append
+        }
+      }
+    } catch (IOException e) {
+      Log.w(TAG, "Failed to read thumbnail index", e);
+    }
+    return ids;
+  }
+
+  // drops the oldest thumbnails past maxEntries and rewrites the index without them
+  private void trim(List<Long> ids) throws IOException {
+    List<Long> dropped = ids.subList(0, ids.size() - maxEntries);
+    for (long id : dropped) {
+      Bitmap thumbnail = memory.remove(id);
+      if (thumbnail != null) memoryBytes -= thumbnail.getAllocationByteCount();
+      if (!fileFor(id).delete()) Log.w(TAG, "Failed to delete thumbnail " + id);
+    }
+    dropped.clear();
+    File tmp = new File(dir, INDEX_FILE + ".tmp");
+    try (Writer index = new FileWriter(tmp)) {
+      for (long id : ids) index.write(id + "\n");
+    }
+    if (!tmp.renameTo(new File(dir, INDEX_FILE)))
+      throw new IOException("Failed to replace thumbnail index");
+  }
+}
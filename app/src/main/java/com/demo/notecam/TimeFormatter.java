@@ -0,0 +1,72 @@
+package com.demo.notecam;
+
+import java.util.TimeZone;
+
+// "dd-MM-yyyy HH:mm:ss" in the default time zone, written into a caller's char buffer. the
+// date, hour and minute are worked out from the epoch day when the minute rolls over and
+// kept; within a minute only the two second digits are written. every zone in use today is
+// offset from UTC by whole minutes, so the rollover is the same in UTC and local time. the
+// zone is looked up again at each rollover, a change of zone shows within the minute. no
+// Calendar and no formatter objects; not thread safe, each user keeps its own
+public final class TimeFormatter {
+
+  // "dd-MM-yyyy HH:mm"
+  public static final int MINUTES_LENGTH = 16;
+  // "dd-MM-yyyy HH:mm:ss"
+  public static final int SECONDS_LENGTH = 19;
+  private static final long MILLIS_PER_DAY = 86_400_000L;
+
+  private final char[] minutes = new char[MINUTES_LENGTH];
+  private long cachedMinute = Long.MIN_VALUE;
+
+  // chars written end at the returned index
+  public int formatMinutes(long timeMillis, char[] out, int at) {
+    long minute = Math.floorDiv(timeMillis, 60_000L);
+    if (minute != cachedMinute) {
+      fill(timeMillis);
+      cachedMinute = minute;
+    }
+    System.arraycopy(minutes, 0, out, at, MINUTES_LENGTH);
+    return at + MINUTES_LENGTH;
+  }
+
+  public int formatSeconds(long timeMillis, char[] out, int at) {
+    at = formatMinutes(timeMillis, out, at);
+    int second = (int) (Math.floorMod(timeMillis, 60_000L) / 1000);
+    out[at++] = ':';
+    return twoDigits(second, out, at);
+  }
+
+  private void fill(long timeMillis) {
+    long local = timeMillis + TimeZone.getDefault().getOffset(timeMillis);
+    long days = Math.floorDiv(local, MILLIS_PER_DAY);
+    int minuteOfDay = (int) (Math.floorMod(local, MILLIS_PER_DAY) / 60_000);
+    // civil date from the day number, proleptic Gregorian (H. Hinnant's days_from_civil inverse)
+    long z = days + 719_468;
+    long era = Math.floorDiv(z, 146_097);
+    long dayOfEra = z - era * 146_097;
+    long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36_524 - dayOfEra / 146_096) / 365;
+    long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+    long shiftedMonth = (5 * dayOfYear + 2) / 153;
+    int day = (int) (dayOfYear - (153 * shiftedMonth + 2) / 5 + 1);
+    int month = (int) (shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9);
+    long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+    int at = twoDigits(day, minutes, 0);
+    minutes[at++] = '-';
+    at = twoDigits(month, minutes, at);
+    minutes[at++] = '-';
+    at = twoDigits((int) (year / 100 % 100), minutes, at);
+    at = twoDigits((int) (year % 100), minutes, at);
+    minutes[at++] = ' ';
+    at = twoDigits(minuteOfDay / 60, minutes, at);
+    minutes[at++] = ':';
+    twoDigits(minuteOfDay % 60, minutes, at);
+  }
+
+  private static int twoDigits(int value, char[] out, int at) {
+    out[at] = (char) ('0' + value / 10);
+    out[at + 1] = (char) ('0' + value % 10);
+    return at + 2;
+  }
+}
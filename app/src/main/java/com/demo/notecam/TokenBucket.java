@@ -0,0 +1,38 @@
+package com.demo.notecam;
+
+import java.util.concurrent.TimeUnit;
+
+// a bandwidth cap shared by every thread that sends. holds up to a second's worth of bytes;
+// a caller that takes more than is there goes into debt and sleeps it off, so the callers that
+// come after it wait their turn behind it instead of all waking at once
+public final class TokenBucket {
+
+  private final long bytesPerSecond;
+  private double tokens;
+  private long refilledAt;
+
+  // 0 or less means unlimited
+  public TokenBucket(long bytesPerSecond) {
+    this.bytesPerSecond = bytesPerSecond;
+    this.tokens = bytesPerSecond;
+    this.refilledAt = System.nanoTime();
+  }
+
+  // blocks until the bytes may go out
+  public void acquire(long bytes) throws InterruptedException {
+    if (bytesPerSecond <= 0) return;
+    long waitNanos;
+    synchronized (this) {
+      long now = System.nanoTime();
+      tokens = Math.min(bytesPerSecond, tokens + (now - refilledAt) * bytesPerSecond / 1e9);
+      refilledAt = now;
+      tokens -= bytes;
+      waitNanos = tokens >= 0 ? 0 : (long) (-tokens * 1e9 / bytesPerSecond);
+    }
+    if (waitNanos > 0) TimeUnit.NANOSECONDS.sleep(waitNanos);
+  }
+
+  public long getBytesPerSecond() {
+    return bytesPerSecond;
+  }
+}
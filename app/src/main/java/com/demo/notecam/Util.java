@@ -3,8 +3,8 @@ package com.demo.notecam;
 import android.Manifest;
 import android.app.Activity;
 import android.app.Dialog;
-import android.content.ContentResolver;
-import android.content.ContentValues;
+import android.content.ActivityNotFoundException;
+import android.content.ContentUris;
 import android.content.Context;
 import android.content.Intent;
 import android.content.pm.PackageManager;
@@ -12,9 +12,8 @@ import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
 import android.graphics.Color;
+import android.graphics.Matrix;
 import android.graphics.Paint;
-import android.icu.text.SimpleDateFormat;
-import android.icu.util.Calendar;
 import android.location.Location;
 import android.net.Uri;
 import android.os.Build;
@@ -25,9 +24,11 @@ import android.text.TextPaint;
 import android.view.KeyEvent;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.ImageView;
 import android.widget.Toast;
 
 import androidx.annotation.StringRes;
+import androidx.appcompat.widget.LinearLayoutCompat;
 import androidx.camera.core.ImageProxy;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
@@ -36,58 +37,326 @@ import com.google.android.material.button.MaterialButton;
 import com.google.android.material.snackbar.Snackbar;
 import com.google.android.material.textview.MaterialTextView;
 
-import java.io.IOException;
-import java.io.OutputStream;
-import java.nio.ByteBuffer;
-import java.util.Locale;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public final class Util {
   public static final int REQUEST_PERMISSION_SETTING = 12;
   private static final String DIRECTORY_NAME = "My Note Camera";
+  private static final float REFERENCE_TEXT_SIZE = 80;
+  // glyph atlases by text size, frames of a few sizes are all the YUV path ever sees
+  private static final Map<Integer, GlyphAtlas> glyphAtlases = new HashMap<>();
+  private static final int MAX_GLYPH_ATLASES = 4;
+  // one engine for both paths so a JPEG and a YUV shot of the same size look the same
+  private static final OverlayLayoutEngine overlayLayoutEngine =
+      new OverlayLayoutEngine(textMeasurer(createWaterMarkTextPaint(REFERENCE_TEXT_SIZE)));
+  // labels and note are pre-rendered per output size, see WatermarkRenderer
+  private static final WatermarkRenderer waterMarkRenderer =
+      new WatermarkRenderer(overlayLayoutEngine);
+  // every MediaStoreWriter reports into this, so one dump covers the whole process
+  private static final ShotMetrics shotMetrics = new ShotMetrics();
 
   private Util() {}
 
+  public static ShotMetrics getShotMetrics() {
+    return shotMetrics;
+  }
+
   public static Bitmap addWaterMark(Bitmap src, Location location) {
-    int w = src.getWidth();
-    int h = src.getHeight();
-    Bitmap result = Bitmap.createBitmap(w, h, src.getConfig());
+    Bitmap result = src.copy(src.getConfig(), true);
+    drawWaterMark(result, location);
+    return result;
+  }
+
+  // draws straight into a mutable bitmap, only the bottom band is touched
+  public static void drawWaterMark(Bitmap target, Location location) {
+    drawWaterMark(target, 0, location, Float.NaN, System.currentTimeMillis(), null);
+  }
+
+  // errorMeters is how far off the position may be at the moment of exposure, NaN if unknown.
+  // the band shows timeMillis, the capture time rather than the time it is drawn, and the
+  // named site when there is one. rotationDegrees is the Exif orientation the photo is saved
+  // with, the band comes out upright once a viewer applies it
+  public static void drawWaterMark(
+      Bitmap target,
+      int rotationDegrees,
+      Location location,
+      float errorMeters,
+      long timeMillis,
+      String site) {
+    waterMarkRenderer.draw(target, rotationDegrees, location, errorMeters, timeMillis, site);
+  }
 
-    Canvas canvas = new Canvas(result);
-    canvas.drawBitmap(src, 0, 0, null);
+  public static WatermarkRenderer getWaterMarkRenderer() {
+    return waterMarkRenderer;
+  }
+
+  // same band and lines as drawWaterMark(Bitmap, Location), rasterized into the luma plane
+  // upright for the frame's rotationDegrees, which its JPEG carries as Exif orientation
+  public static void drawWaterMark(YuvFrame frame, Location location) {
+    drawWaterMark(frame, location, Float.NaN, System.currentTimeMillis(), null);
+  }
+
+  public static void drawWaterMark(
+      YuvFrame frame, Location location, float errorMeters, long timeMillis, String site) {
+    int rotation = frame.rotationDegrees;
+    boolean sideways = rotation % 180 != 0;
+    OverlayLayout layout =
+        overlayLayoutEngine.layout(
+            sideways ? frame.height : frame.width,
+            sideways ? frame.width : frame.height,
+            WatermarkRenderer.templateFor(location, site));
+    GlyphAtlas atlas = getGlyphAtlas(Math.round(layout.textSize));
+    YuvOverlay.fillRect(
+        frame,
+        rotation,
+        layout.left,
+        layout.top,
+        layout.right,
+        layout.bottom,
+        YuvOverlay.LUMA_WHITE);
+    OverlayTemplate template = layout.template;
+    for (int i = 0; i < template.getLineCount(); i++) {
+      String text = template.lines.get(i).label;
+      String value =
+          waterMarkRenderer.valueOf(
+              template.getField(i), location, errorMeters, timeMillis, site);
+      if (value != null) text += value;
+      YuvOverlay.drawText(
+          frame,
+          rotation,
+          atlas,
+          text,
+          Math.round(layout.textX[i]),
+          Math.round(layout.baselines[i]),
+          YuvOverlay.LUMA_BLACK);
+    }
+  }
 
-    // for white rectangular draw
-    Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
-    paint.setColor(Color.WHITE);
+  // measures the templates, for landscape and portrait shots, and for YUV shots renders the
+  // glyph atlas ahead of the first shot
+  public static void warmUpOverlay(int width, int height, boolean yuv) {
+    OverlayLayout layout =
+        overlayLayoutEngine.layout(width, height, WatermarkRenderer.LOCATION_TEMPLATE);
+    overlayLayoutEngine.layout(width, height, WatermarkRenderer.NO_LOCATION_TEMPLATE);
+    overlayLayoutEngine.layout(width, height, WatermarkRenderer.SITE_TEMPLATE);
+    overlayLayoutEngine.layout(height, width, WatermarkRenderer.LOCATION_TEMPLATE);
+    overlayLayoutEngine.layout(height, width, WatermarkRenderer.NO_LOCATION_TEMPLATE);
+    overlayLayoutEngine.layout(height, width, WatermarkRenderer.SITE_TEMPLATE);
+    if (yuv) getGlyphAtlas(Math.round(layout.textSize));
+  }
 
-    // for text draw
+  public static OverlayLayoutEngine getOverlayLayoutEngine() {
+    return overlayLayoutEngine;
+  }
+
+  public static TextMeasurer textMeasurer(Paint paint) {
+    return new TextMeasurer() {
+      @Override
+      public float getTextSize() {
+        return paint.getTextSize();
+      }
+
+      @Override
+      public float measure(String text) {
+        return paint.measureText(text);
+      }
+    };
+  }
+
+  private static TextPaint createWaterMarkTextPaint(float textSize) {
     TextPaint textPaint = new TextPaint(TextPaint.ANTI_ALIAS_FLAG);
     textPaint.setColor(Color.BLACK);
-    textPaint.setTextSize(80);
+    textPaint.setTextSize(textSize);
     textPaint.setWordSpacing(0.1F);
+    return textPaint;
+  }
 
-    // order is important
-    // first white rectangle draw then written above white rectangle
-    if (location != null) {
-      canvas.drawRect(0, h - 550, 1000, h, paint);
-      canvas.drawText("Latitude : ", 50, h - 450, textPaint);
-      canvas.drawText("Longitude : ", 50, h - 350, textPaint);
-      canvas.drawText("Accuracy : ", 50, h - 250, textPaint);
-    } else {
-      canvas.drawRect(0, h - 250, 1000, h, paint);
+  private static synchronized GlyphAtlas getGlyphAtlas(int textSize) {
+    GlyphAtlas atlas = glyphAtlases.get(textSize);
+    if (atlas == null) {
+      if (glyphAtlases.size() >= MAX_GLYPH_ATLASES) glyphAtlases.clear();
+      atlas = createGlyphAtlas(createWaterMarkTextPaint(textSize));
+      glyphAtlases.put(textSize, atlas);
     }
+    return atlas;
+  }
 
-    canvas.drawText("Time : " + getCurrentTime(), 50, h - 150, textPaint);
-    canvas.drawText(
-        "Note : " + Build.MODEL + "(" + Build.MANUFACTURER + ")", 50, h - 50, textPaint);
+  public static GlyphAtlas createGlyphAtlas(Paint paint) {
+    int ascent = (int) Math.ceil(-paint.ascent());
+    int cellHeight = ascent + (int) Math.ceil(paint.descent());
+    int[] widths = new int[GlyphAtlas.LAST_CHAR - GlyphAtlas.FIRST_CHAR + 1];
+    char[] glyph = new char[1];
+    for (int i = 0; i < widths.length; i++) {
+      glyph[0] = (char) (GlyphAtlas.FIRST_CHAR + i);
+      widths[i] = Math.round(paint.measureText(glyph, 0, 1));
+    }
+    int stride = GlyphAtlas.totalWidth(widths);
+
+    Bitmap strip = Bitmap.createBitmap(stride, cellHeight, Bitmap.Config.ARGB_8888);
+    Canvas canvas = new Canvas(strip);
+    int x = 0;
+    for (int i = 0; i < widths.length; i++) {
+      glyph[0] = (char) (GlyphAtlas.FIRST_CHAR + i);
+      canvas.drawText(glyph, 0, 1, x, ascent, paint);
+      x += widths[i];
+    }
+    int[] pixels = new int[stride * cellHeight];
+    strip.getPixels(pixels, 0, stride, 0, 0, stride, cellHeight);
+    strip.recycle();
 
-    return result;
+    byte[] coverage = new byte[pixels.length];
+    for (int i = 0; i < pixels.length; i++) coverage[i] = (byte) Color.alpha(pixels[i]);
+    return new GlyphAtlas(cellHeight, ascent, widths, coverage);
+  }
+
+  public static YuvFrame getYuvFrame(ImageProxy imageProxy, BytePool bytePool) {
+    int width = imageProxy.getWidth() & ~1;
+    int height = imageProxy.getHeight() & ~1;
+    YuvFrame frame = new YuvFrame(width, height, bytePool.acquire(width * height * 3 / 2));
+    copyYuvFrame(imageProxy, frame);
+    return frame;
   }
 
-  public static Bitmap getBitmap(ImageProxy imageProxy) {
-    ByteBuffer byteBuffer = imageProxy.getPlanes()[0].getBuffer();
-    byte[] bytes = new byte[byteBuffer.capacity()];
-    byteBuffer.get(bytes);
-    return BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
+  // into a frame of the image's (even) size, e.g. a FrameRing slot
+  public static void copyYuvFrame(ImageProxy imageProxy, YuvFrame frame) {
+    ImageProxy.PlaneProxy[] planes = imageProxy.getPlanes();
+    frame.copyFromPlanes(
+        planes[0].getBuffer(),
+        planes[0].getRowStride(),
+        planes[1].getBuffer(),
+        planes[2].getBuffer(),
+        planes[1].getRowStride(),
+        planes[1].getPixelStride());
+    frame.timestampNanos = imageProxy.getImageInfo().getTimestamp();
+    frame.rotationDegrees = imageProxy.getImageInfo().getRotationDegrees();
+  }
+
+  public static Bitmap getBitmap(byte[] bytes, int length, BitmapPool bitmapPool) {
+    BitmapFactory.Options options = new BitmapFactory.Options();
+    options.inJustDecodeBounds = true;
+    BitmapFactory.decodeByteArray(bytes, 0, length, options);
+    options.inJustDecodeBounds = false;
+    // decode mutable so the watermark can be drawn in place instead of on a second copy
+    options.inMutable = true;
+    options.inBitmap = bitmapPool.acquire(options.outWidth * options.outHeight * 4);
+    try {
+      return BitmapFactory.decodeByteArray(bytes, 0, length, options);
+    } catch (IllegalArgumentException e) {
+      // the pooled bitmap could not be reused for this image, let the decoder allocate
+      bitmapPool.release(options.inBitmap);
+      options.inBitmap = null;
+      return BitmapFactory.decodeByteArray(bytes, 0, length, options);
+    }
+  }
+
+  // largest power of two that keeps the short side at or above size; JPEG decoders apply it
+  // while inverse-transforming, so most of the full-size work never happens
+  public static int thumbnailSampleSize(int width, int height, int size) {
+    int sampleSize = 1;
+    while (Math.min(width, height) / (sampleSize * 2) >= size) sampleSize *= 2;
+    return sampleSize;
+  }
+
+  public static Bitmap decodeThumbnail(byte[] bytes, int length, int rotationDegrees, int size) {
+    BitmapFactory.Options options = new BitmapFactory.Options();
+    options.inJustDecodeBounds = true;
+    BitmapFactory.decodeByteArray(bytes, 0, length, options);
+    options.inJustDecodeBounds = false;
+    options.inSampleSize = thumbnailSampleSize(options.outWidth, options.outHeight, size);
+    options.inPreferredConfig = Bitmap.Config.RGB_565;
+    Bitmap thumbnail = BitmapFactory.decodeByteArray(bytes, 0, length, options);
+    return thumbnail == null ? null : rotate(thumbnail, rotationDegrees);
+  }
+
+  // point-sampled straight from NV21, no encode or decode
+  public static Bitmap createThumbnail(YuvFrame frame, int size) {
+    int step = thumbnailSampleSize(frame.width, frame.height, size);
+    int width = frame.width / step;
+    int height = frame.height / step;
+    Bitmap thumbnail =
+        Bitmap.createBitmap(frame.toArgb(step, null), width, height, Bitmap.Config.RGB_565);
+    return rotate(thumbnail, frame.rotationDegrees);
+  }
+
+  private static Bitmap rotate(Bitmap bitmap, int degrees) {
+    if (degrees % 360 == 0) return bitmap;
+    Matrix matrix = new Matrix();
+    matrix.postRotate(degrees);
+    Bitmap rotated =
+        Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, true);
+    if (rotated != bitmap) bitmap.recycle();
+    return rotated;
+  }
+
+  // the latest shots as a strip; thumbnails come from the cache, never from the full photos
+  public static void showGallery(Activity activity, ThumbnailCache thumbnailCache, int count) {
+    Dialog dialog = new Dialog(activity);
+    dialog.setContentView(R.layout.gallery_dialog);
+    dialog
+        .getWindow()
+        .setLayout(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.WRAP_CONTENT);
+    LinearLayoutCompat strip = dialog.findViewById(R.id.thumbnails);
+    int size = activity.getResources().getDimensionPixelSize(R.dimen._75dp);
+    int margin = activity.getResources().getDimensionPixelSize(R.dimen._5dp);
+    AtomicBoolean dismissed = new AtomicBoolean();
+    dialog.setOnDismissListener(d -> dismissed.set(true));
+
+    new Thread(
+            () -> {
+              long[] ids = thumbnailCache.getRecent(count);
+              if (ids.length == 0) {
+                activity.runOnUiThread(
+                    () -> {
+                      dialog.dismiss();
+                      showShortToast(activity, activity.getString(R.string.no_photos));
+                    });
+                return;
+              }
+              ImageView[] views = new ImageView[ids.length];
+              activity.runOnUiThread(
+                  () -> {
+                    for (int i = 0; i < ids.length; i++) {
+                      ImageView view = new ImageView(activity);
+                      LinearLayoutCompat.LayoutParams params =
+                          new LinearLayoutCompat.LayoutParams(size, size);
+                      params.setMargins(margin, 0, margin, 0);
+                      view.setLayoutParams(params);
+                      view.setScaleType(ImageView.ScaleType.CENTER_CROP);
+                      Uri uri =
+                          ContentUris.withAppendedId(
+                              MediaStore.Images.Media.EXTERNAL_CONTENT_URI, ids[i]);
+                      view.setOnClickListener(v -> openPhoto(activity, uri));
+                      strip.addView(view);
+                      views[i] = view;
+                    }
+                  });
+              for (int i = 0; i < ids.length && !dismissed.get(); i++) {
+                Bitmap thumbnail = thumbnailCache.get(ids[i]);
+                if (thumbnail == null) continue;
+                int index = i;
+                // runs after the views were added, the UI queue keeps the order
+                activity.runOnUiThread(() -> views[index].setImageBitmap(thumbnail));
+              }
+            },
+            "gallery-loader")
+        .start();
+    dialog.show();
+  }
+
+  private static void openPhoto(Activity activity, Uri uri) {
+    // shots are JPEG or WebP depending on the encoding setting at the time
+    String type = activity.getContentResolver().getType(uri);
+    Intent intent =
+        new Intent(Intent.ACTION_VIEW).setDataAndType(uri, type != null ? type : "image/*");
+    intent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+    try {
+      activity.startActivity(intent);
+    } catch (ActivityNotFoundException e) {
+      showShortToast(activity, activity.getString(R.string.no_photo_viewer));
+    }
   }
 
   public static boolean isPermissionGranted(Context context, String permission) {
@@ -188,40 +457,53 @@ public final class Util {
     return dialog;
   }
 
-  public static String getCurrentTime() {
-    return new SimpleDateFormat("dd-MM-yyyy HH:mm", Locale.getDefault())
-        .format(Calendar.getInstance());
+  public static MediaStoreWriter createMediaStoreWriter(Context context, int batchSize) {
+    return new MediaStoreWriter(
+        MediaStoreWriter.wrap(context.getContentResolver()),
+        Environment.DIRECTORY_DCIM + "/" + DIRECTORY_NAME,
+        batchSize,
+        shotMetrics);
   }
 
-  public static void saveImage(Context context, Bitmap bitmap) {
-    // Create time stamped name and MediaStore entry.
-    final ContentValues contentValues = new ContentValues();
-    contentValues.put(
-        MediaStore.MediaColumns.DISPLAY_NAME, String.valueOf(System.currentTimeMillis()));
-    contentValues.put(MediaStore.MediaColumns.MIME_TYPE, "image/jpeg");
-    contentValues.put(
-        MediaStore.Images.Media.RELATIVE_PATH, Environment.DIRECTORY_DCIM + "/" + DIRECTORY_NAME);
-    final ContentResolver resolver = context.getContentResolver();
-    Uri uri = null;
-    try {
-      final Uri contentUri = MediaStore.Images.Media.EXTERNAL_CONTENT_URI;
-      uri = resolver.insert(contentUri, contentValues);
-
-      if (uri == null) throw new IOException("Failed to create new MediaStore record.");
-
-      try (final OutputStream stream = resolver.openOutputStream(uri)) {
-        if (stream == null) throw new IOException("Failed to open output stream.");
-
-        if (!bitmap.compress(Bitmap.CompressFormat.JPEG, 100, stream))
-          throw new IOException("Failed to save bitmap.");
-      }
-    } catch (IOException e) {
+  // site is null when the shot isn't at a named site
+  public static ExifWriter createExif(
+      Location location, long timeMillis, int rotationDegrees, String site) {
+    ExifWriter exif =
+        new ExifWriter()
+            .setMake(Build.MANUFACTURER)
+            .setModel(Build.MODEL)
+            .setRotationDegrees(rotationDegrees)
+            .setDateTimeOriginal(timeMillis, TimeZone.getDefault())
+            .setUserNote("Note : " + Build.MODEL + "(" + Build.MANUFACTURER + ")");
+    if (location != null) {
+      exif.setGps(
+          location.getLatitude(),
+          location.getLongitude(),
+          location.hasAltitude() ? location.getAltitude() : Double.NaN,
+          location.hasAccuracy() ? location.getAccuracy() : Float.NaN,
+          location.getTime());
+    }
+    if (site != null) exif.setAreaName(site);
+    return exif;
+  }
 
-      if (uri != null) {
-        // Don't leave an orphan entry in the MediaStore
-        resolver.delete(uri, null, null);
-      }
+  // metadata is spliced into the encoder's output as it streams by, pixels are never touched
+  public static MediaStoreWriter.ImageWriter withExif(
+      MediaStoreWriter.ImageWriter writer, ExifWriter exif, EncodingPolicy.Format format) {
+    if (format == EncodingPolicy.Format.WEBP) {
+      return stream -> {
+        WebpExifOutputStream webpStream = exif.wrapWebp(stream);
+        boolean written = writer.writeTo(webpStream);
+        webpStream.finish();
+        return written;
+      };
     }
+    return stream -> {
+      ExifOutputStream exifStream = exif.wrap(stream);
+      boolean written = writer.writeTo(exifStream);
+      exifStream.finish();
+      return written;
+    };
   }
 
   private boolean isAllPermissionGranted(Context context) {
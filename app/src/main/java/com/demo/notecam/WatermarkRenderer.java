@@ -0,0 +1,236 @@
+package com.demo.notecam;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.location.Location;
+import android.os.Build;
+import android.text.TextPaint;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+// keeps the watermark band pre-rendered per output size. labels and the note are drawn once,
+// only the values whose text changed since the last shot are redrawn, then the band is blitted
+public final class WatermarkRenderer {
+
+  static final OverlayTemplate LOCATION_TEMPLATE =
+      new OverlayTemplate("location", OverlayTemplate.Corner.BOTTOM_LEFT)
+          .addLine("Latitude : ", OverlayTemplate.Field.LATITUDE)
+          .addLine("Longitude : ", OverlayTemplate.Field.LONGITUDE)
+          .addLine("Accuracy : ", OverlayTemplate.Field.ACCURACY)
+          .addLine("Time : ", OverlayTemplate.Field.TIME)
+          .addText("Note : " + Build.MODEL + "(" + Build.MANUFACTURER + ")");
+  // a fix at one of the user's named sites
+  static final OverlayTemplate SITE_TEMPLATE =
+      new OverlayTemplate("site", OverlayTemplate.Corner.BOTTOM_LEFT)
+          .addLine("Site : ", OverlayTemplate.Field.SITE)
+          .addLine("Latitude : ", OverlayTemplate.Field.LATITUDE)
+          .addLine("Longitude : ", OverlayTemplate.Field.LONGITUDE)
+          .addLine("Accuracy : ", OverlayTemplate.Field.ACCURACY)
+          .addLine("Time : ", OverlayTemplate.Field.TIME)
+          .addText("Note : " + Build.MODEL + "(" + Build.MANUFACTURER + ")");
+  static final OverlayTemplate NO_LOCATION_TEMPLATE =
+      new OverlayTemplate("no-location", OverlayTemplate.Corner.BOTTOM_LEFT)
+          .addLine("Time : ", OverlayTemplate.Field.TIME)
+          .addText("Note : " + Build.MODEL + "(" + Build.MANUFACTURER + ")");
+
+  // full bands for a 50 MP frame are a few MB, keep only the sizes in use
+  private static final int MAX_CACHED_BANDS = 2;
+
+  private final OverlayLayoutEngine layoutEngine;
+  private final Paint bandPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+  private final TextPaint textPaint = new TextPaint(TextPaint.ANTI_ALIAS_FLAG);
+  private final Canvas canvas = new Canvas();
+  private final Map<BandKey, Band> bands = new LinkedHashMap<>(4, 0.75f, true);
+
+  private final OverlayFormatter formatter = new OverlayFormatter();
+  private int hits;
+  private int misses;
+  private int fieldRedraws;
+
+  public WatermarkRenderer(OverlayLayoutEngine layoutEngine) {
+    this.layoutEngine = layoutEngine;
+    // for white rectangular draw
+    bandPaint.setColor(Color.WHITE);
+
+    // for text draw
+    textPaint.setColor(Color.BLACK);
+    textPaint.setWordSpacing(0.1F);
+  }
+
+  // site is only shown with a location
+  public static OverlayTemplate templateFor(Location location, String site) {
+    if (location == null) return NO_LOCATION_TEMPLATE;
+    return site != null ? SITE_TEMPLATE : LOCATION_TEMPLATE;
+  }
+
+  // draws into a mutable bitmap, only the band is touched. the band is laid out upright on the
+  // photo as a viewer shows it, turned clockwise by rotationDegrees for its Exif orientation
+  public synchronized void draw(
+      Bitmap target,
+      int rotationDegrees,
+      Location location,
+      float errorMeters,
+      long timeMillis,
+      String site) {
+    int width = target.getWidth();
+    int height = target.getHeight();
+    int rotation = ((rotationDegrees % 360) + 360) % 360;
+    boolean sideways = rotation == 90 || rotation == 270;
+    Band band =
+        getBand(
+            sideways ? height : width,
+            sideways ? width : height,
+            target.getDensity(),
+            templateFor(location, site));
+    OverlayTemplate template = band.layout.template;
+    textPaint.setTextSize(band.layout.textSize);
+    for (int i = 0; i < band.values.length; i++) {
+      String value = valueOf(template.getField(i), location, errorMeters, timeMillis, site);
+      if (value != null) update(band, i, value);
+    }
+    canvas.setBitmap(target);
+    canvas.save();
+    // from upright coordinates back onto the sensor-oriented pixels
+    if (rotation == 90) {
+      canvas.translate(0, height);
+    } else if (rotation == 180) {
+      canvas.translate(width, height);
+    } else if (rotation == 270) {
+      canvas.translate(width, 0);
+    }
+    canvas.rotate(-rotation);
+    canvas.drawBitmap(band.bitmap, band.layout.left, band.layout.top, null);
+    canvas.restore();
+    // don't keep the photo reachable from the shared canvas
+    canvas.setBitmap(null);
+  }
+
+  public synchronized void clear() {
+    for (Band band : bands.values()) band.bitmap.recycle();
+    bands.clear();
+  }
+
+  @Override
+  public synchronized String toString() {
+    return String.format(
+        Locale.US,
+        "%s: hits=%d misses=%d fieldRedraws=%d bands=%d",
+        getClass().getSimpleName(),
+        hits,
+        misses,
+        fieldRedraws,
+        bands.size());
+  }
+
+  // text of a field for this shot, null for lines without a value
+  synchronized String valueOf(
+      OverlayTemplate.Field field,
+      Location location,
+      float errorMeters,
+      long timeMillis,
+      String site) {
+    return formatter.format(field, location, errorMeters, timeMillis, site);
+  }
+
+  // width and height as the photo is shown
+  private Band getBand(int width, int height, int density, OverlayTemplate template) {
+    BandKey key = new BandKey(width, height, density, template);
+    Band band = bands.get(key);
+    if (band != null) {
+      hits++;
+      return band;
+    }
+    misses++;
+    band = new Band(layoutEngine.layout(width, height, template));
+    // same density as the photo so the blit is never rescaled
+    band.bitmap.setDensity(density);
+    renderStatic(band);
+    bands.put(key, band);
+    Iterator<Band> it = bands.values().iterator();
+    while (bands.size() > MAX_CACHED_BANDS) {
+      it.next().bitmap.recycle();
+      it.remove();
+    }
+    return band;
+  }
+
+  // white box and every label, in band coordinates
+  private void renderStatic(Band band) {
+    OverlayLayout layout = band.layout;
+    textPaint.setTextSize(layout.textSize);
+    canvas.setBitmap(band.bitmap);
+    canvas.drawColor(Color.WHITE);
+    for (int i = 0; i < layout.baselines.length; i++) {
+      canvas.drawText(
+          layout.template.lines.get(i).label,
+          layout.textX[i] - layout.left,
+          layout.baselines[i] - layout.top,
+          textPaint);
+    }
+    canvas.setBitmap(null);
+  }
+
+  // dirty-region update: wipe the old value's line back to white and draw the new one
+  private void update(Band band, int line, String value) {
+    if (value.equals(band.values[line])) return;
+    OverlayLayout layout = band.layout;
+    float x = layout.valueX[line] - layout.left;
+    float baseline = layout.baselines[line] - layout.top;
+    canvas.setBitmap(band.bitmap);
+    canvas.drawRect(
+        x, baseline + textPaint.ascent(), band.bitmap.getWidth(), baseline + textPaint.descent(),
+        bandPaint);
+    canvas.drawText(value, x, baseline, textPaint);
+    canvas.setBitmap(null);
+    band.values[line] = value;
+    fieldRedraws++;
+  }
+
+  // every template has its own band, their lines differ
+  private static final class BandKey {
+    final int width;
+    final int height;
+    final int density;
+    final OverlayTemplate template;
+
+    BandKey(int width, int height, int density, OverlayTemplate template) {
+      this.width = width;
+      this.height = height;
+      this.density = density;
+      this.template = template;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof BandKey)) return false;
+      BandKey other = (BandKey) o;
+      return width == other.width
+          && height == other.height
+          && density == other.density
+          && template == other.template;
+    }
+
+    @Override
+    public int hashCode() {
+      return ((width * 31 + height) * 31 + density) * 31 + System.identityHashCode(template);
+    }
+  }
+
+  private static final class Band {
+    final OverlayLayout layout;
+    final Bitmap bitmap;
+    final String[] values;
+
+    Band(OverlayLayout layout) {
+      this.layout = layout;
+      bitmap =
+          Bitmap.createBitmap(layout.getWidth(), layout.getHeight(), Bitmap.Config.ARGB_8888);
+      values = new String[layout.baselines.length];
+    }
+  }
+}
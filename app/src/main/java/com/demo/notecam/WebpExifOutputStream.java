@@ -0,0 +1,173 @@
+package com.demo.notecam;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+// passes encoded WebP bytes through, announcing an EXIF chunk in a VP8X header and appending it
+// once the image data is done. libwebp writes the final RIFF size up front, so it is patched as
+// the header goes by and only the first chunk's header and dimensions are ever held back. a
+// stream that isn't a simple or extended WebP, or already carries Exif, is left alone.
+public final class WebpExifOutputStream extends FilterOutputStream {
+
+  private static final int RIFF_HEADER = 12;
+  private static final int CHUNK_HEADER = 8;
+  private static final int VP8X_PAYLOAD = 10;
+  // RIFF header, first chunk header and enough of its payload for the canvas size
+  private static final int HEAD = RIFF_HEADER + CHUNK_HEADER + 10;
+  private static final int FLAG_EXIF = 0x08;
+  private static final int FLAG_ALPHA = 0x10;
+
+  private final byte[] tiff;
+  private final byte[] head = new byte[HEAD];
+  private int headLength;
+  private boolean passing;
+  private boolean exifPending;
+
+  public WebpExifOutputStream(OutputStream out, byte[] tiff) {
+    super(out);
+    this.tiff = tiff;
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    if (passing) {
+      out.write(b);
+      return;
+    }
+    head[headLength++] = (byte) b;
+    if (headLength == RIFF_HEADER) {
+      if (!is(0, "RIFF") || !is(8, "WEBP")) passThroughHead();
+    } else if (headLength == RIFF_HEADER + 4) {
+      if (!is(RIFF_HEADER, "VP8 ") && !is(RIFF_HEADER, "VP8L") && !is(RIFF_HEADER, "VP8X")) {
+        passThroughHead();
+      }
+    } else if (headLength == HEAD) {
+      endHead();
+    }
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    while (len > 0 && !passing) {
+      write(b[off++]);
+      len--;
+    }
+    if (len > 0) out.write(b, off, len);
+  }
+
+  // writes out whatever is still held back, then the EXIF chunk if the header announced one
+  public void finish() throws IOException {
+    if (!passing) passThroughHead();
+    if (!exifPending) return;
+    exifPending = false;
+    writeFourCc("EXIF");
+    writeInt(tiff.length);
+    out.write(tiff);
+    // chunks are padded to an even size
+    if ((tiff.length & 1) != 0) out.write(0);
+  }
+
+  @Override
+  public void close() throws IOException {
+    finish();
+    super.close();
+  }
+
+  private void endHead() throws IOException {
+    int riffSize = intAt(4);
+    int exifChunk = CHUNK_HEADER + tiff.length + (tiff.length & 1);
+    int payload = RIFF_HEADER + CHUNK_HEADER;
+    if (is(RIFF_HEADER, "VP8X")) {
+      if ((head[payload] & FLAG_EXIF) != 0) {
+        passThroughHead();
+        return;
+      }
+      head[payload] |= FLAG_EXIF;
+      putInt(4, riffSize + exifChunk);
+      out.write(head, 0, HEAD);
+      passing = true;
+      exifPending = true;
+      return;
+    }
+
+    int width;
+    int height;
+    int flags = FLAG_EXIF;
+    if (is(RIFF_HEADER, "VP8L")) {
+      if (head[payload] != 0x2F) {
+        passThroughHead();
+        return;
+      }
+      int bits = intAt(payload + 1);
+      width = (bits & 0x3FFF) + 1;
+      height = (bits >>> 14 & 0x3FFF) + 1;
+      if ((bits >>> 28 & 1) != 0) flags |= FLAG_ALPHA;
+    } else {
+      // a 3 byte frame tag, the start code, then 14 bit width and height
+      if ((head[payload + 3] & 0xFF) != 0x9D
+          || head[payload + 4] != 0x01
+          || head[payload + 5] != 0x2A) {
+        passThroughHead();
+        return;
+      }
+      width = shortAt(payload + 6) & 0x3FFF;
+      height = shortAt(payload + 8) & 0x3FFF;
+    }
+
+    // a simple file becomes an extended one: VP8X goes in front of the image chunk
+    putInt(4, riffSize + CHUNK_HEADER + VP8X_PAYLOAD + exifChunk);
+    out.write(head, 0, RIFF_HEADER);
+    writeFourCc("VP8X");
+    writeInt(VP8X_PAYLOAD);
+    out.write(flags);
+    out.write(0);
+    out.write(0);
+    out.write(0);
+    writeInt24(width - 1);
+    writeInt24(height - 1);
+    out.write(head, RIFF_HEADER, HEAD - RIFF_HEADER);
+    passing = true;
+    exifPending = true;
+  }
+
+  private void passThroughHead() throws IOException {
+    out.write(head, 0, headLength);
+    passing = true;
+  }
+
+  private boolean is(int offset, String fourCc) {
+    for (int i = 0; i < 4; i++) {
+      if (head[offset + i] != fourCc.charAt(i)) return false;
+    }
+    return true;
+  }
+
+  // RIFF is little-endian throughout
+  private int shortAt(int offset) {
+    return (head[offset] & 0xFF) | (head[offset + 1] & 0xFF) << 8;
+  }
+
+  private int intAt(int offset) {
+    return shortAt(offset) | shortAt(offset + 2) << 16;
+  }
+
+  private void putInt(int offset, int value) {
+    for (int i = 0; i < 4; i++) head[offset + i] = (byte) (value >>> (8 * i));
+  }
+
+  private void writeFourCc(String fourCc) throws IOException {
+    for (int i = 0; i < 4; i++) out.write(fourCc.charAt(i));
+  }
+
+  private void writeInt(int value) throws IOException {
+    writeInt24(value);
+    out.write(value >>> 24);
+  }
+
+  private void writeInt24(int value) throws IOException {
+    out.write(value);
+    out.write(value >>> 8);
+    out.write(value >>> 16);
+  }
+}
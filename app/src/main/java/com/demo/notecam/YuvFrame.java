@@ -0,0 +1,82 @@
+package com.demo.notecam;
+
+import java.nio.ByteBuffer;
+
+// a camera frame kept as NV21 (full Y plane followed by interleaved V/U at half resolution)
+public final class YuvFrame {
+
+  public final int width;
+  public final int height;
+  public final byte[] data;
+  public long timestampNanos;
+  public int rotationDegrees;
+
+  public YuvFrame(int width, int height) {
+    this(width, height, new byte[width * height * 3 / 2]);
+  }
+
+  public YuvFrame(int width, int height, byte[] data) {
+    if ((width & 1) != 0 || (height & 1) != 0)
+      throw new IllegalArgumentException("NV21 needs even dimensions: " + width + "x" + height);
+    if (data.length < width * height * 3 / 2)
+      throw new IllegalArgumentException("buffer too small for " + width + "x" + height);
+    this.width = width;
+    this.height = height;
+    this.data = data;
+  }
+
+  // copies YUV_420_888 planes, whatever their row and pixel strides are
+  public void copyFromPlanes(
+      ByteBuffer y,
+      int yRowStride,
+      ByteBuffer u,
+      ByteBuffer v,
+      int uvRowStride,
+      int uvPixelStride) {
+    for (int row = 0; row < height; row++) {
+      y.position(row * yRowStride);
+      y.get(data, row * width, width);
+    }
+    int out = width * height;
+    int chromaWidth = width / 2;
+    int chromaHeight = height / 2;
+    for (int row = 0; row < chromaHeight; row++) {
+      int in = row * uvRowStride;
+      for (int col = 0; col < chromaWidth; col++) {
+        data[out++] = v.get(in);
+        data[out++] = u.get(in);
+        in += uvPixelStride;
+      }
+    }
+  }
+
+  // every step-th pixel as ARGB (BT.601 full range), for thumbnails that needn't be encoded first
+  public int[] toArgb(int step, int[] out) {
+    int outWidth = width / step;
+    int outHeight = height / step;
+    int size = outWidth * outHeight;
+    int[] pixels = out != null && out.length >= size ? out : new int[size];
+    int chroma = width * height;
+    int i = 0;
+    for (int row = 0; row < outHeight; row++) {
+      int y = row * step;
+      int uvRow = chroma + (y >> 1) * width;
+      for (int col = 0; col < outWidth; col++) {
+        int x = col * step;
+        int luma = data[y * width + x] & 0xff;
+        int uv = uvRow + (x & ~1);
+        int v = (data[uv] & 0xff) - 128;
+        int u = (data[uv + 1] & 0xff) - 128;
+        int r = luma + ((91881 * v) >> 16);
+        int g = luma - ((22554 * u + 46802 * v) >> 16);
+        int b = luma + ((116130 * u) >> 16);
+        pixels[i++] = 0xff000000 | clamp(r) << 16 | clamp(g) << 8 | clamp(b);
+      }
+    }
+    return pixels;
+  }
+
+  private static int clamp(int value) {
+    return value < 0 ? 0 : Math.min(value, 255);
+  }
+}
@@ -0,0 +1,141 @@
+package com.demo.notecam;
+
+// rasterizes the watermark straight into an NV21 frame so it never has to become a Bitmap
+public final class YuvOverlay {
+
+  public static final int LUMA_WHITE = 255;
+  public static final int LUMA_BLACK = 0;
+  private static final byte CHROMA_NEUTRAL = (byte) 128;
+
+  private YuvOverlay() {}
+
+  public static void fillRect(YuvFrame frame, int left, int top, int right, int bottom, int luma) {
+    left = clamp(left, 0, frame.width);
+    right = clamp(right, 0, frame.width);
+    top = clamp(top, 0, frame.height);
+    bottom = clamp(bottom, 0, frame.height);
+    if (left >= right || top >= bottom) return;
+
+    byte[] data = frame.data;
+    byte y = (byte) luma;
+    for (int row = top; row < bottom; row++) {
+      int start = row * frame.width;
+      for (int i = start + left, end = start + right; i < end; i++) data[i] = y;
+    }
+    // chroma is subsampled 2x2, grey out every block the rect touches
+    int chromaStart = frame.width * frame.height;
+    int chromaLeft = left & ~1;
+    int chromaRight = (right + 1) & ~1;
+    for (int row = top / 2, end = (bottom + 1) / 2; row < end; row++) {
+      int start = chromaStart + row * frame.width;
+      for (int i = start + chromaLeft, stop = start + chromaRight; i < stop; i++) {
+        data[i] = CHROMA_NEUTRAL;
+      }
+    }
+  }
+
+  // the rect in display coordinates: the frame is shown turned clockwise by rotationDegrees,
+  // as its Exif orientation tells a viewer to, so the rect is turned back onto the pixels
+  public static void fillRect(
+      YuvFrame frame, int rotationDegrees, int left, int top, int right, int bottom, int luma) {
+    int width = frame.width;
+    int height = frame.height;
+    switch (normalize(rotationDegrees)) {
+      case 90:
+        fillRect(frame, top, height - right, bottom, height - left, luma);
+        break;
+      case 180:
+        fillRect(frame, width - right, height - bottom, width - left, height - top, luma);
+        break;
+      case 270:
+        fillRect(frame, width - bottom, left, width - top, right, luma);
+        break;
+      default:
+        fillRect(frame, left, top, right, bottom, luma);
+    }
+  }
+
+  // draws text with its baseline at y; returns the x where the next glyph would go
+  public static int drawText(
+      YuvFrame frame, GlyphAtlas atlas, CharSequence text, int x, int baseline, int luma) {
+    return drawText(frame, 0, atlas, text, x, baseline, luma);
+  }
+
+  // x and baseline in display coordinates, as for fillRect
+  public static int drawText(
+      YuvFrame frame,
+      int rotationDegrees,
+      GlyphAtlas atlas,
+      CharSequence text,
+      int x,
+      int baseline,
+      int luma) {
+    int rotation = normalize(rotationDegrees);
+    int top = baseline - atlas.ascent;
+    for (int i = 0; i < text.length(); i++) {
+      int glyph = atlas.index(text.charAt(i));
+      drawGlyph(frame, rotation, atlas, glyph, x, top, luma);
+      x += atlas.widths[glyph];
+    }
+    return x;
+  }
+
+  // a display pixel (dx, dy) is frame.data[origin + dx * colStep + dy * rowStep]
+  private static void drawGlyph(
+      YuvFrame frame, int rotation, GlyphAtlas atlas, int glyph, int x, int top, int luma) {
+    int w = frame.width;
+    int h = frame.height;
+    boolean sideways = rotation == 90 || rotation == 270;
+    int displayWidth = sideways ? h : w;
+    int displayHeight = sideways ? w : h;
+    int origin;
+    int colStep;
+    int rowStep;
+    switch (rotation) {
+      case 90:
+        origin = (h - 1) * w;
+        colStep = -w;
+        rowStep = 1;
+        break;
+      case 180:
+        origin = h * w - 1;
+        colStep = -1;
+        rowStep = -w;
+        break;
+      case 270:
+        origin = w - 1;
+        colStep = w;
+        rowStep = -1;
+        break;
+      default:
+        origin = 0;
+        colStep = 1;
+        rowStep = w;
+    }
+    int width = atlas.widths[glyph];
+    int fromCol = Math.max(0, -x);
+    int toCol = Math.min(width, displayWidth - x);
+    int fromRow = Math.max(0, -top);
+    int toRow = Math.min(atlas.cellHeight, displayHeight - top);
+    byte[] data = frame.data;
+    byte[] coverage = atlas.coverage;
+    for (int row = fromRow; row < toRow; row++) {
+      int src = row * atlas.stride + atlas.offsets[glyph];
+      int dst = origin + (x + fromCol) * colStep + (top + row) * rowStep;
+      for (int col = fromCol; col < toCol; col++, dst += colStep) {
+        int alpha = coverage[src + col] & 0xff;
+        if (alpha == 0) continue;
+        int y = data[dst] & 0xff;
+        data[dst] = (byte) (y + (luma - y) * alpha / 255);
+      }
+    }
+  }
+
+  private static int normalize(int degrees) {
+    return ((degrees % 360) + 360) % 360;
+  }
+
+  private static int clamp(int value, int min, int max) {
+    return value < min ? min : Math.min(value, max);
+  }
+}
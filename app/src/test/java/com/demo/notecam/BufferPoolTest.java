@@ -0,0 +1,167 @@
+package com.demo.notecam;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class BufferPoolTest {
+
+  // plain arrays of exactly the asked size, evictions and spent buffers recorded
+  private static final class ArrayPool extends BufferPool<byte[]> {
+    final List<byte[]> evicted = new ArrayList<>();
+    final Set<byte[]> spent = new HashSet<>();
+
+    ArrayPool(long budgetBytes) {
+      super(budgetBytes);
+    }
+
+    @Override
+    protected int sizeOf(byte[] buffer) {
+      return buffer.length;
+    }
+
+    @Override
+    protected byte[] create(int size) {
+      return new byte[size];
+    }
+
+    @Override
+    protected boolean isReusable(byte[] buffer) {
+      return !spent.contains(buffer);
+    }
+
+    @Override
+    protected void onEvicted(byte[] buffer) {
+      evicted.add(buffer);
+    }
+  }
+
+  @Test
+  public void releasedBufferIsHandedOutAgain() {
+    ArrayPool pool = new ArrayPool(1000);
+    byte[] first = pool.acquire(100);
+    pool.release(first);
+    assertEquals(100, pool.getPooledBytes());
+
+    assertSame(first, pool.acquire(100));
+    assertEquals(0, pool.getPooledBytes());
+    assertEquals(1, pool.getHits());
+    assertEquals(1, pool.getMisses());
+    // the pool is empty again
+    assertNotSame(first, pool.acquire(100));
+    assertEquals(2, pool.getMisses());
+  }
+
+  @Test
+  public void bucketsServeAtMostTwiceTheAskedSize() {
+    ArrayPool pool = new ArrayPool(1000);
+    byte[] small = new byte[100];
+    byte[] large = new byte[300];
+    pool.release(small);
+    pool.release(large);
+
+    // the smallest bucket that fits
+    assertSame(small, pool.acquire(60));
+    // 300 is too wasteful for 140, the caller gets a fresh one
+    byte[] fresh = pool.acquire(140);
+    assertEquals(140, fresh.length);
+    assertSame(large, pool.acquire(150));
+    assertEquals(2, pool.getHits());
+    assertEquals(1, pool.getMisses());
+  }
+
+  @Test
+  public void sameSizedBuffersComeBackMostRecentFirst() {
+    ArrayPool pool = new ArrayPool(1000);
+    byte[] a = new byte[100];
+    byte[] b = new byte[100];
+    pool.release(a);
+    pool.release(b);
+    assertSame(b, pool.acquire(100));
+    assertSame(a, pool.acquire(100));
+  }
+
+  @Test
+  public void overBudgetDropsTheLeastRecentlyReleased() {
+    ArrayPool pool = new ArrayPool(300);
+    byte[] a = new byte[100];
+    byte[] b = new byte[200];
+    byte[] c = new byte[100];
+    byte[] d = new byte[150];
+    pool.release(a);
+    pool.release(b);
+    pool.release(c);
+    assertEquals(400 - 100, pool.getPooledBytes());
+    assertEquals(1, pool.evicted.size());
+    assertSame(a, pool.evicted.get(0));
+
+    // the oldest left goes first, whatever its size
+    pool.release(d);
+    assertEquals(2, pool.evicted.size());
+    assertSame(b, pool.evicted.get(1));
+    assertEquals(250, pool.getPooledBytes());
+    assertEquals(2, pool.getEvictions());
+
+    assertSame(c, pool.acquire(100));
+    assertSame(d, pool.acquire(150));
+    assertNotSame(a, pool.acquire(100));
+  }
+
+  @Test
+  public void bufferLargerThanTheBudgetIsNotKept() {
+    ArrayPool pool = new ArrayPool(300);
+    byte[] huge = new byte[400];
+    pool.release(huge);
+    assertEquals(0, pool.getPooledBytes());
+    assertEquals(1, pool.getEvictions());
+    assertSame(huge, pool.evicted.get(0));
+  }
+
+  @Test
+  public void spentOrDuplicateReleasesAreIgnored() {
+    ArrayPool pool = new ArrayPool(1000);
+    byte[] buffer = new byte[100];
+    pool.release(buffer);
+    pool.release(buffer);
+    assertEquals(100, pool.getPooledBytes());
+    pool.release(null);
+
+    // gone bad while pooled, e.g. a recycled bitmap: skipped and dropped from the pool
+    pool.spent.add(buffer);
+    byte[] other = pool.acquire(100);
+    assertNotSame(buffer, other);
+    assertEquals(0, pool.getPooledBytes());
+    assertEquals(0, pool.getHits());
+    pool.release(buffer);
+    assertEquals(0, pool.getPooledBytes());
+  }
+
+  @Test
+  public void clearEvictsEverything() {
+    ArrayPool pool = new ArrayPool(1000);
+    pool.release(new byte[100]);
+    pool.release(new byte[200]);
+    pool.clear();
+    assertEquals(0, pool.getPooledBytes());
+    assertEquals(2, pool.evicted.size());
+    assertTrue(pool.toString(), pool.toString().contains("evictions=2 pooled=0KB/0KB"));
+  }
+
+  @Test
+  public void bytePoolPadsSoTheNextShotStillFits() {
+    BytePool pool = new BytePool(4 << 20);
+    byte[] buffer = pool.acquire(1_000_000);
+    // an eighth extra, rounded up to 64 KB
+    assertEquals(1_179_648, buffer.length);
+    pool.release(buffer);
+    assertSame(buffer, pool.acquire(1_100_000));
+  }
+}
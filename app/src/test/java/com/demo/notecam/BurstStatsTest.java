@@ -0,0 +1,54 @@
+package com.demo.notecam;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class BurstStatsTest {
+
+  private static final long MS = 1_000_000L;
+
+  @Test
+  public void shotsFiredBeforeTheStopAreWaitedFor() {
+    BurstStats stats = new BurstStats(10, 16);
+    stats.start(0);
+    for (int i = 0; i < 3; i++) stats.onShotFired();
+    assertFalse(stats.onShotFinished(120 * MS, true));
+
+    // released with two shots still on their way from the camera
+    assertFalse(stats.stop(1000 * MS));
+    assertFalse(stats.onShotFinished(150 * MS, true));
+    assertTrue(stats.onShotFinished(400 * MS, true));
+    assertEquals(3, stats.getSaved());
+    assertEquals(3.0, stats.getAchievedFps(), 1e-9);
+    assertEquals(400 * MS, stats.getLatencyPercentile(99));
+  }
+
+  @Test
+  public void droppedAndLostShotsAlsoSettleTheBurst() {
+    BurstStats stats = new BurstStats(10, 16);
+    stats.start(0);
+    stats.onShotFired();
+    stats.onShotFired();
+    stats.onCoalesced();
+    assertFalse(stats.stop(500 * MS));
+    assertFalse(stats.onDropped());
+    assertTrue(stats.onShotLost());
+    assertEquals(0, stats.getSaved());
+    assertEquals(1, stats.getDropped());
+    assertEquals(1, stats.getFailed());
+    assertEquals(1, stats.getCoalesced());
+  }
+
+  @Test
+  public void burstWithNothingPendingIsFinalAtTheStop() {
+    BurstStats stats = new BurstStats(10, 16);
+    stats.start(0);
+    stats.onShotFired();
+    assertFalse(stats.onShotFinished(100 * MS, false));
+    assertTrue(stats.stop(200 * MS));
+    assertEquals(1, stats.getFailed());
+  }
+}
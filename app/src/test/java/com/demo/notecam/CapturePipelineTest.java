@@ -0,0 +1,192 @@
+package com.demo.notecam;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class CapturePipelineTest {
+
+  private static final long TIMEOUT_SECONDS = 5;
+
+  // what the listener was told about each job, in the order it was told
+  private static final class Recorder implements CapturePipeline.Listener<Integer> {
+    final List<Integer> jobs = Collections.synchronizedList(new ArrayList<>());
+    final List<String> failedStages = Collections.synchronizedList(new ArrayList<>());
+    final List<Exception> errors = Collections.synchronizedList(new ArrayList<>());
+    final CountDownLatch done;
+
+    Recorder(int expected) {
+      done = new CountDownLatch(expected);
+    }
+
+    @Override
+    public void onFinished(Integer job, String failedStage, Exception error) {
+      jobs.add(job);
+      failedStages.add(failedStage);
+      errors.add(error);
+      done.countDown();
+    }
+
+    void await() throws InterruptedException {
+      assertTrue("jobs did not finish", done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    }
+  }
+
+  @Test
+  public void runsEveryStageInSubmitOrder() throws Exception {
+    int count = 20;
+    Recorder recorder = new Recorder(count);
+    List<String> trace = Collections.synchronizedList(new ArrayList<>());
+    CapturePipeline<Integer> pipeline =
+        new CapturePipeline<>(count, recorder)
+            .addStage("decode", job -> trace.add("decode" + job))
+            .addStage("annotate", job -> trace.add("annotate" + job))
+            .addStage("persist", job -> trace.add("persist" + job));
+    for (int i = 0; i < count; i++) assertTrue(pipeline.submit(i));
+    recorder.await();
+
+    List<Integer> expected = new ArrayList<>();
+    for (int i = 0; i < count; i++) expected.add(i);
+    assertEquals(expected, recorder.jobs);
+    for (String stage : new String[] {"decode", "annotate", "persist"}) {
+      List<String> seen = new ArrayList<>();
+      synchronized (trace) {
+        for (String step : trace) if (step.startsWith(stage)) seen.add(step);
+      }
+      List<String> inOrder = new ArrayList<>();
+      for (int i = 0; i < count; i++) inOrder.add(stage + i);
+      assertEquals(inOrder, seen);
+    }
+    for (int i = 0; i < count; i++) {
+      assertNull(recorder.failedStages.get(i));
+      assertNull(recorder.errors.get(i));
+    }
+    assertEquals(count, pipeline.getTotalLatency().getCount());
+    for (LatencyCounter counter : pipeline.getStageLatencies()) {
+      assertEquals(count, counter.getCount());
+    }
+  }
+
+  @Test
+  public void failedStageSkipsTheRestAndReportsTheError() throws Exception {
+    Recorder recorder = new Recorder(3);
+    List<Integer> persisted = Collections.synchronizedList(new ArrayList<>());
+    IOException failure = new IOException("disk full");
+    CapturePipeline<Integer> pipeline =
+        new CapturePipeline<>(3, recorder)
+            .addStage("decode", job -> {})
+            .addStage(
+                "annotate",
+                job -> {
+                  if (job == 1) throw failure;
+                })
+            .addStage("persist", persisted::add);
+    for (int i = 0; i < 3; i++) assertTrue(pipeline.submit(i));
+    recorder.await();
+
+    assertEquals(2, persisted.size());
+    assertFalse(persisted.contains(1));
+    int failed = recorder.jobs.indexOf(1);
+    assertEquals("annotate", recorder.failedStages.get(failed));
+    assertSame(failure, recorder.errors.get(failed));
+    assertEquals(1, pipeline.getTotalLatency().getErrors());
+    assertEquals(1, pipeline.getStageLatencies().get(1).getErrors());
+    assertEquals(0, pipeline.getStageLatencies().get(2).getErrors());
+    // the failed job gave its slot back; the permit is released after the listener returns
+    pipeline.shutdown();
+    assertTrue(pipeline.awaitTermination(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    assertEquals(0, pipeline.getInFlight());
+  }
+
+  @Test
+  public void refusesShotsBeyondTheInFlightLimit() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    Recorder recorder = new Recorder(2);
+    CapturePipeline<Integer> pipeline =
+        new CapturePipeline<>(2, recorder).addStage("decode", job -> release.await());
+    assertTrue(pipeline.submit(0));
+    assertTrue(pipeline.submit(1));
+    assertFalse(pipeline.submit(2));
+    assertFalse(pipeline.submit(3, 10, TimeUnit.MILLISECONDS));
+    assertEquals(2, pipeline.getInFlight());
+
+    release.countDown();
+    recorder.await();
+    pipeline.shutdown();
+    assertTrue(pipeline.awaitTermination(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    assertEquals(0, pipeline.getInFlight());
+    assertEquals(2, recorder.jobs.size());
+  }
+
+  @Test
+  public void shutdownFinishesAcceptedShotsAndRefusesNewOnes() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    Recorder recorder = new Recorder(3);
+    List<Integer> persisted = Collections.synchronizedList(new ArrayList<>());
+    CapturePipeline<Integer> pipeline =
+        new CapturePipeline<>(3, recorder)
+            .addStage("decode", job -> release.await())
+            .addStage("persist", persisted::add);
+    for (int i = 0; i < 3; i++) assertTrue(pipeline.submit(i));
+    pipeline.shutdown();
+    assertFalse(pipeline.submit(3));
+
+    release.countDown();
+    assertTrue(pipeline.awaitTermination(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    recorder.await();
+    assertEquals(3, persisted.size());
+    for (String failedStage : recorder.failedStages) assertNull(failedStage);
+  }
+
+  @Test
+  public void idleCallbackRunsWhenTheLastShotFinishesHoweverItEnded() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    CountDownLatch idle = new CountDownLatch(1);
+    AtomicInteger idleCalls = new AtomicInteger();
+    AtomicInteger inFlightWhenIdle = new AtomicInteger(-1);
+    CapturePipeline<Integer> pipeline = new CapturePipeline<>(3, null);
+    pipeline
+        .setIdleCallback(
+            () -> {
+              inFlightWhenIdle.set(pipeline.getInFlight());
+              idleCalls.incrementAndGet();
+              idle.countDown();
+            })
+        .addStage(
+            "decode",
+            job -> {
+              release.await();
+              // the last shot out fails, it still has to leave the pipeline idle
+              if (job == 2) throw new IOException("corrupt frame");
+            })
+        .addStage("persist", job -> {});
+    for (int i = 0; i < 3; i++) assertTrue(pipeline.submit(i));
+    release.countDown();
+
+    assertTrue(idle.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    pipeline.shutdown();
+    assertTrue(pipeline.awaitTermination(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    assertEquals(0, inFlightWhenIdle.get());
+    assertTrue(idleCalls.get() >= 1);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void stagesAreFixedOnceShotsFlow() {
+    CapturePipeline<Integer> pipeline =
+        new CapturePipeline<Integer>(1, null).addStage("decode", job -> {});
+    pipeline.submit(0);
+    pipeline.addStage("late", job -> {});
+  }
+}
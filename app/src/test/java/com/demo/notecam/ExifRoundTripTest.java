@@ -0,0 +1,298 @@
+package com.demo.notecam;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TimeZone;
+import javax.imageio.ImageIO;
+
+// sample JPEGs from ImageIO through ExifOutputStream, read back with a small TIFF reader and
+// decoded again to check nothing but the metadata changed
+public class ExifRoundTripTest {
+
+  private static final int TAG_IMAGE_DESCRIPTION = 0x010E;
+  private static final int TAG_MAKE = 0x010F;
+  private static final int TAG_MODEL = 0x0110;
+  private static final int TAG_ORIENTATION = 0x0112;
+  private static final int TAG_DATE_TIME = 0x0132;
+  private static final int TAG_EXIF_IFD = 0x8769;
+  private static final int TAG_GPS_IFD = 0x8825;
+  private static final int TAG_DATE_TIME_ORIGINAL = 0x9003;
+  private static final int TAG_OFFSET_TIME_ORIGINAL = 0x9011;
+  private static final int TAG_USER_COMMENT = 0x9286;
+  private static final int TAG_SUB_SEC_TIME_ORIGINAL = 0x9291;
+  private static final int TAG_GPS_LATITUDE_REF = 0x0001;
+  private static final int TAG_GPS_LATITUDE = 0x0002;
+  private static final int TAG_GPS_LONGITUDE_REF = 0x0003;
+  private static final int TAG_GPS_LONGITUDE = 0x0004;
+  private static final int TAG_GPS_ALTITUDE_REF = 0x0005;
+  private static final int TAG_GPS_ALTITUDE = 0x0006;
+  private static final int TAG_GPS_TIME_STAMP = 0x0007;
+  private static final int TAG_GPS_DATE_STAMP = 0x001D;
+  private static final int TAG_GPS_H_POSITIONING_ERROR = 0x001F;
+
+  // 2026-10-18 14:05:09.250 UTC
+  private static final long TIME_MILLIS = 1_792_332_309_250L;
+
+  @Test
+  public void metadataSurvivesTheRoundTrip() throws IOException {
+    ExifWriter exif =
+        new ExifWriter()
+            .setMake("Google")
+            .setModel("Pixel 7")
+            .setRotationDegrees(90)
+            .setDateTimeOriginal(TIME_MILLIS, TimeZone.getTimeZone("GMT+05:30"))
+            .setUserNote("Note : Pixel 7(Google)")
+            .setGps(-33.856784, 151.215297, -12.5, 4.2f, TIME_MILLIS - 1000);
+    byte[] jpeg = sampleJpeg();
+    byte[] out = splice(jpeg, exif, jpeg.length);
+
+    Tiff tiff = Tiff.read(app1Of(out));
+    Map<Integer, byte[]> root = tiff.ifd(8);
+    assertEquals("Google", ascii(root.get(TAG_MAKE)));
+    assertEquals("Pixel 7", ascii(root.get(TAG_MODEL)));
+    assertEquals(6, tiff.shortAt(root.get(TAG_ORIENTATION), 0));
+    assertEquals("2026:10:18 19:35:09", ascii(root.get(TAG_DATE_TIME)));
+    assertEquals("Note : Pixel 7(Google)", ascii(root.get(TAG_IMAGE_DESCRIPTION)));
+
+    Map<Integer, byte[]> exifIfd = tiff.ifd(tiff.intAt(root.get(TAG_EXIF_IFD), 0));
+    assertEquals("2026:10:18 19:35:09", ascii(exifIfd.get(TAG_DATE_TIME_ORIGINAL)));
+    assertEquals("+05:30", ascii(exifIfd.get(TAG_OFFSET_TIME_ORIGINAL)));
+    assertEquals("250", ascii(exifIfd.get(TAG_SUB_SEC_TIME_ORIGINAL)));
+    byte[] comment = exifIfd.get(TAG_USER_COMMENT);
+    assertEquals("ASCII\0\0\0", new String(comment, 0, 8, StandardCharsets.US_ASCII));
+    assertEquals(
+        "Note : Pixel 7(Google)",
+        new String(comment, 8, comment.length - 8, StandardCharsets.US_ASCII));
+
+    Map<Integer, byte[]> gps = tiff.ifd(tiff.intAt(root.get(TAG_GPS_IFD), 0));
+    assertEquals("S", ascii(gps.get(TAG_GPS_LATITUDE_REF)));
+    assertEquals(33.856784, tiff.degrees(gps.get(TAG_GPS_LATITUDE)), 1e-6);
+    assertEquals("E", ascii(gps.get(TAG_GPS_LONGITUDE_REF)));
+    assertEquals(151.215297, tiff.degrees(gps.get(TAG_GPS_LONGITUDE)), 1e-6);
+    assertEquals(1, gps.get(TAG_GPS_ALTITUDE_REF)[0]);
+    assertEquals(12.5, tiff.rational(gps.get(TAG_GPS_ALTITUDE), 0), 1e-9);
+    assertEquals(4.2, tiff.rational(gps.get(TAG_GPS_H_POSITIONING_ERROR), 0), 1e-6);
+    byte[] time = gps.get(TAG_GPS_TIME_STAMP);
+    assertEquals(14, tiff.rational(time, 0), 0);
+    assertEquals(5, tiff.rational(time, 1), 0);
+    assertEquals(8.25, tiff.rational(time, 2), 1e-9);
+    assertEquals("2026:10:18", ascii(gps.get(TAG_GPS_DATE_STAMP)));
+
+    assertPixelsUnchanged(jpeg, out);
+  }
+
+  @Test
+  public void orientationFollowsTheRotation() throws IOException {
+    int[][] expected = {{0, 1}, {90, 6}, {180, 3}, {270, 8}, {-90, 8}, {450, 6}};
+    byte[] jpeg = sampleJpeg();
+    for (int[] pair : expected) {
+      ExifWriter exif = new ExifWriter().setRotationDegrees(pair[0]);
+      Tiff tiff = Tiff.read(app1Of(splice(jpeg, exif, jpeg.length)));
+      assertEquals(pair[1], tiff.shortAt(tiff.ifd(8).get(TAG_ORIENTATION), 0));
+    }
+  }
+
+  @Test
+  public void segmentGoesAfterSoiAndTheRestIsCopied() throws IOException {
+    byte[] jpeg = sampleJpeg();
+    ExifWriter exif = new ExifWriter().setMake("Google").setRotationDegrees(180);
+    byte[] app1 = exif.buildApp1();
+    byte[] expected =
+        concat(Arrays.copyOf(jpeg, 2), app1, Arrays.copyOfRange(jpeg, 2, jpeg.length));
+    // byte by byte, odd chunks and all at once all give the same file
+    for (int chunk : new int[] {1, 3, 7, 4096, jpeg.length}) {
+      assertArrayEquals("chunk " + chunk, expected, splice(jpeg, exif, chunk));
+    }
+  }
+
+  @Test
+  public void exifTheEncoderWroteIsReplaced() throws IOException {
+    byte[] jpeg = sampleJpeg();
+    byte[] encoderExif = new ExifWriter().setMake("Encoder").setRotationDegrees(0).buildApp1();
+    byte[] withExif =
+        concat(Arrays.copyOf(jpeg, 2), encoderExif, Arrays.copyOfRange(jpeg, 2, jpeg.length));
+    ExifWriter exif = new ExifWriter().setMake("Google").setRotationDegrees(270);
+    byte[] out = splice(withExif, exif, 5);
+
+    assertArrayEquals(
+        concat(Arrays.copyOf(jpeg, 2), exif.buildApp1(), Arrays.copyOfRange(jpeg, 2, jpeg.length)),
+        out);
+    Tiff tiff = Tiff.read(app1Of(out));
+    assertEquals("Google", ascii(tiff.ifd(8).get(TAG_MAKE)));
+    assertEquals(8, tiff.shortAt(tiff.ifd(8).get(TAG_ORIENTATION), 0));
+    assertPixelsUnchanged(jpeg, out);
+  }
+
+  @Test
+  public void withoutGpsThereIsNoGpsIfd() throws IOException {
+    byte[] jpeg = sampleJpeg();
+    ExifWriter exif = new ExifWriter().setMake("Google").setRotationDegrees(0);
+    Tiff tiff = Tiff.read(app1Of(splice(jpeg, exif, jpeg.length)));
+    assertNull(tiff.ifd(8).get(TAG_GPS_IFD));
+    assertNull(tiff.ifd(8).get(TAG_EXIF_IFD));
+  }
+
+  @Test
+  public void notAJpegPassesThroughUntouched() throws IOException {
+    byte[] png = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n', 0, 0, 0, 13};
+    assertArrayEquals(png, splice(png, new ExifWriter().setMake("Google"), 3));
+  }
+
+  @Test
+  public void finishWritesWhatWasHeldBack() throws IOException {
+    byte[] jpeg = sampleJpeg();
+    ExifWriter exif = new ExifWriter().setMake("Google");
+    // the encoder gave up inside the first APPn segment
+    byte[] cut = Arrays.copyOf(jpeg, 10);
+    assertArrayEquals(
+        concat(Arrays.copyOf(jpeg, 2), exif.buildApp1(), Arrays.copyOfRange(cut, 2, cut.length)),
+        splice(cut, exif, 1));
+  }
+
+  private static byte[] sampleJpeg() throws IOException {
+    BufferedImage image = new BufferedImage(64, 48, BufferedImage.TYPE_3BYTE_BGR);
+    for (int y = 0; y < image.getHeight(); y++) {
+      for (int x = 0; x < image.getWidth(); x++) image.setRGB(x, y, x * 4 << 16 | y * 5 << 8 | 90);
+    }
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    assertTrue(ImageIO.write(image, "jpg", out));
+    return out.toByteArray();
+  }
+
+  private static byte[] splice(byte[] jpeg, ExifWriter exif, int chunk) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ExifOutputStream stream = exif.wrap(out);
+    for (int at = 0; at < jpeg.length; at += chunk) {
+      int length = Math.min(chunk, jpeg.length - at);
+      if (length == 1) {
+        stream.write(jpeg[at]);
+      } else {
+        stream.write(jpeg, at, length);
+      }
+    }
+    stream.finish();
+    return out.toByteArray();
+  }
+
+  // the APP1 segment right after SOI, from its marker on
+  private static byte[] app1Of(byte[] jpeg) {
+    assertEquals(0xFF, jpeg[2] & 0xFF);
+    assertEquals(0xE1, jpeg[3] & 0xFF);
+    int length = (jpeg[4] & 0xFF) << 8 | (jpeg[5] & 0xFF);
+    return Arrays.copyOfRange(jpeg, 2, 4 + length);
+  }
+
+  private static void assertPixelsUnchanged(byte[] original, byte[] spliced) throws IOException {
+    BufferedImage before = ImageIO.read(new ByteArrayInputStream(original));
+    BufferedImage after = ImageIO.read(new ByteArrayInputStream(spliced));
+    assertNotNull(after);
+    assertEquals(before.getWidth(), after.getWidth());
+    assertEquals(before.getHeight(), after.getHeight());
+    for (int y = 0; y < before.getHeight(); y++) {
+      for (int x = 0; x < before.getWidth(); x++) {
+        assertEquals(before.getRGB(x, y), after.getRGB(x, y));
+      }
+    }
+  }
+
+  private static String ascii(byte[] value) {
+    assertNotNull(value);
+    assertEquals("not NUL terminated", 0, value[value.length - 1]);
+    return new String(value, 0, value.length - 1, StandardCharsets.US_ASCII);
+  }
+
+  private static byte[] concat(byte[]... parts) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    for (byte[] part : parts) out.write(part, 0, part.length);
+    return out.toByteArray();
+  }
+
+  // just enough of TIFF to read back what ExifWriter writes, in either byte order
+  private static final class Tiff {
+    private final ByteBuffer data;
+
+    private Tiff(ByteBuffer data) {
+      this.data = data;
+    }
+
+    static Tiff read(byte[] app1) {
+      assertEquals("Exif\0\0", new String(app1, 4, 6, StandardCharsets.US_ASCII));
+      ByteBuffer data = ByteBuffer.wrap(app1, 10, app1.length - 10).slice();
+      if (data.get(0) == 'I' && data.get(1) == 'I') {
+        data.order(ByteOrder.LITTLE_ENDIAN);
+      } else {
+        assertEquals('M', data.get(0));
+        assertEquals('M', data.get(1));
+      }
+      assertEquals(42, data.getShort(2));
+      assertEquals(8, data.getInt(4));
+      return new Tiff(data);
+    }
+
+    // tag to raw value bytes of the IFD at offset
+    Map<Integer, byte[]> ifd(int offset) {
+      Map<Integer, byte[]> entries = new HashMap<>();
+      int count = data.getShort(offset) & 0xFFFF;
+      int previous = -1;
+      for (int i = 0; i < count; i++) {
+        int at = offset + 2 + i * 12;
+        int tag = data.getShort(at) & 0xFFFF;
+        assertTrue("tags out of order", tag > previous);
+        previous = tag;
+        int type = data.getShort(at + 2);
+        int size = data.getInt(at + 4) * unitSize(type);
+        int valueAt = size > 4 ? data.getInt(at + 8) : at + 8;
+        byte[] value = new byte[size];
+        for (int b = 0; b < size; b++) value[b] = data.get(valueAt + b);
+        entries.put(tag, value);
+      }
+      return entries;
+    }
+
+    int shortAt(byte[] value, int index) {
+      return ByteBuffer.wrap(value).order(data.order()).getShort(index * 2) & 0xFFFF;
+    }
+
+    int intAt(byte[] value, int index) {
+      return ByteBuffer.wrap(value).order(data.order()).getInt(index * 4);
+    }
+
+    double rational(byte[] value, int index) {
+      ByteBuffer buffer = ByteBuffer.wrap(value).order(data.order());
+      return (double) buffer.getInt(index * 8) / buffer.getInt(index * 8 + 4);
+    }
+
+    double degrees(byte[] value) {
+      return rational(value, 0) + rational(value, 1) / 60 + rational(value, 2) / 3600;
+    }
+
+    private static int unitSize(int type) {
+      switch (type) {
+        case 3:
+          return 2;
+        case 4:
+          return 4;
+        case 5:
+          return 8;
+        default:
+          return 1;
+      }
+    }
+  }
+}
@@ -0,0 +1,102 @@
+package com.demo.notecam;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+public class ExportCursorTest {
+
+  @Rule public final TemporaryFolder folder = new TemporaryFolder();
+
+  private File file;
+
+  @Before
+  public void setUp() {
+    file = new File(folder.getRoot(), "export.cursor");
+  }
+
+  @Test
+  public void offsetsSurviveAReopen() throws IOException {
+    try (ExportCursor cursor = ExportCursor.open(file)) {
+      cursor.advance(1, 4096);
+      cursor.advance(1, 8192);
+      cursor.advance(2, 4096);
+      cursor.complete(3);
+    }
+    try (ExportCursor cursor = ExportCursor.open(file)) {
+      assertEquals(8192, cursor.getOffset(1));
+      assertEquals(4096, cursor.getOffset(2));
+      assertTrue(cursor.isDone(3));
+      assertEquals(1, cursor.getDoneCount());
+    }
+  }
+
+  @Test
+  public void finishedOrUnknownPhotosStartFromNothing() throws IOException {
+    try (ExportCursor cursor = ExportCursor.open(file)) {
+      assertEquals(0, cursor.getOffset(7));
+      assertFalse(cursor.isDone(7));
+      cursor.advance(7, 4096);
+      cursor.complete(7);
+      assertEquals(0, cursor.getOffset(7));
+      assertTrue(cursor.isDone(7));
+    }
+  }
+
+  @Test
+  public void supersededRecordsAreDroppedOnOpen() throws IOException {
+    try (ExportCursor cursor = ExportCursor.open(file)) {
+      for (long offset = 1; offset <= 10; offset++) cursor.advance(1, offset * 4096);
+      cursor.complete(2);
+    }
+    assertEquals(11 * 16, file.length());
+
+    try (ExportCursor cursor = ExportCursor.open(file)) {
+      assertEquals(2 * 16, file.length());
+      assertEquals(40_960, cursor.getOffset(1));
+      assertTrue(cursor.isDone(2));
+    }
+  }
+
+  @Test
+  public void tornRecordAtTheEndIsDropped() throws IOException {
+    try (ExportCursor cursor = ExportCursor.open(file)) {
+      cursor.advance(1, 4096);
+    }
+    // the app died half way through the next record
+    try (FileOutputStream out = new FileOutputStream(file, true)) {
+      out.write(new byte[] {0, 0, 0, 0, 0, 0, 0, 1, 0, 0});
+    }
+
+    try (ExportCursor cursor = ExportCursor.open(file)) {
+      assertEquals(16, file.length());
+      assertEquals(4096, cursor.getOffset(1));
+      cursor.advance(1, 8192);
+    }
+    try (ExportCursor cursor = ExportCursor.open(file)) {
+      assertEquals(8192, cursor.getOffset(1));
+    }
+  }
+
+  @Test
+  public void closedCursorRefusesToAdvance() throws IOException {
+    ExportCursor cursor = ExportCursor.open(file);
+    cursor.close();
+    try {
+      cursor.advance(1, 4096);
+      fail("advanced a closed cursor");
+    } catch (IOException expected) {
+      // the exporter counts it as a failed attempt
+    }
+  }
+}
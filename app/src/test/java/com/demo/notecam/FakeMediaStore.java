@@ -0,0 +1,114 @@
+package com.demo.notecam;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.net.Uri;
+import android.provider.MediaStore;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+// the MediaStore as MediaStoreWriter sees it: rows with their values and bytes, every call
+// counted, and switches to make each kind of call fail
+final class FakeMediaStore implements MediaStoreWriter.Resolver {
+
+  static final class Row {
+    final ContentValues values = new ContentValues();
+    final ByteArrayOutputStream data = new ByteArrayOutputStream();
+
+    boolean isPending() {
+      Integer pending = values.getAsInteger(MediaStore.MediaColumns.IS_PENDING);
+      return pending != null && pending == 1;
+    }
+  }
+
+  final Map<Uri, Row> rows = new LinkedHashMap<>();
+  final Set<Uri> failUpdates = new HashSet<>();
+  boolean failInsert;
+  boolean failOpen;
+  boolean failBatch;
+  int inserts;
+  int opens;
+  int updates;
+  int deletes;
+  int batches;
+  private long nextId = 1;
+
+  @Override
+  public synchronized Uri insert(Uri collection, ContentValues values) {
+    inserts++;
+    if (failInsert) return null;
+    Uri uri = ContentUris.withAppendedId(collection, nextId++);
+    Row row = new Row();
+    copy(values, row.values);
+    rows.put(uri, row);
+    return uri;
+  }
+
+  @Override
+  public synchronized OutputStream openOutputStream(Uri uri) throws IOException {
+    opens++;
+    if (failOpen) throw new IOException("no space left");
+    Row row = rows.get(uri);
+    if (row == null) throw new IOException("no row " + uri);
+    return row.data;
+  }
+
+  @Override
+  public synchronized int update(Uri uri, ContentValues values) {
+    updates++;
+    Row row = rows.get(uri);
+    if (row == null || failUpdates.contains(uri)) return 0;
+    copy(values, row.values);
+    return 1;
+  }
+
+  @Override
+  public synchronized int delete(Uri uri) {
+    deletes++;
+    return rows.remove(uri) != null ? 1 : 0;
+  }
+
+  @Override
+  public synchronized void applyBatch(ArrayList<ContentProviderOperation> operations)
+      throws IOException {
+    batches++;
+    if (failBatch) throw new IOException("provider died");
+    for (ContentProviderOperation operation : operations) {
+      Row row = rows.get(operation.getUri());
+      if (row == null || !operation.isUpdate()) throw new IOException("bad operation");
+      copy(operation.resolveValueBackReferences(new ContentProviderResult[0], 0), row.values);
+    }
+  }
+
+  synchronized Row row(Uri uri) {
+    return rows.get(uri);
+  }
+
+  synchronized int pendingCount() {
+    int pending = 0;
+    for (Row row : rows.values()) if (row.isPending()) pending++;
+    return pending;
+  }
+
+  private static void copy(ContentValues from, ContentValues to) {
+    for (String key : from.keySet()) {
+      Object value = from.get(key);
+      if (value instanceof Integer) {
+        to.put(key, (Integer) value);
+      } else if (value instanceof Long) {
+        to.put(key, (Long) value);
+      } else {
+        to.put(key, value == null ? null : value.toString());
+      }
+    }
+  }
+}
@@ -0,0 +1,142 @@
+package com.demo.notecam;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class FixRingTest {
+
+  private static final long SECOND = 1_000_000_000L;
+  private static final long MAX_GAP = 5 * SECOND;
+  private static final double DRIFT = 2.0;
+
+  private final FixSample sample = new FixSample();
+
+  @Test
+  public void emptyRingHasNoSample() {
+    assertFalse(new FixRing<String>(4).sampleAt(SECOND, MAX_GAP, DRIFT, sample));
+  }
+
+  @Test
+  public void interpolatesBetweenTheFixesAroundTheShot() {
+    FixRing<String> ring = new FixRing<>(4);
+    ring.add("a", 10 * SECOND, 100_000, 12.0, 77.0, 4f, 0f);
+    ring.add("b", 14 * SECOND, 104_000, 12.4, 77.8, 8f, 0f);
+
+    assertTrue(ring.sampleAt(11 * SECOND, MAX_GAP, DRIFT, sample));
+    assertTrue(sample.interpolated);
+    assertEquals(11 * SECOND, sample.elapsedRealtimeNanos);
+    assertEquals(101_000, sample.timeMillis);
+    assertEquals(12.1, sample.latitude, 1e-9);
+    assertEquals(77.2, sample.longitude, 1e-9);
+    assertEquals(5f, sample.accuracy, 1e-6f);
+    // a second from the nearer fix at 2 m/s
+    assertEquals(7f, sample.errorMeters, 1e-6f);
+    assertEquals(SECOND, sample.ageNanos);
+  }
+
+  @Test
+  public void interpolatesTheShortWayAcrossTheAntimeridian() {
+    FixRing<String> ring = new FixRing<>(4);
+    ring.add("a", 10 * SECOND, 100_000, -17.0, 179.8, 5f, 0f);
+    ring.add("b", 12 * SECOND, 102_000, -17.0, -179.8, 5f, 0f);
+
+    assertTrue(ring.sampleAt(11 * SECOND, MAX_GAP, DRIFT, sample));
+    assertTrue(sample.interpolated);
+    assertEquals(180.0, Math.abs(sample.longitude), 1e-9);
+
+    assertTrue(ring.sampleAt(11_500_000_000L, MAX_GAP, DRIFT, sample));
+    // a quarter of the 0.4 degrees past the line, not half way round the world
+    assertEquals(-179.9, sample.longitude, 1e-9);
+
+    ring.add("c", 14 * SECOND, 104_000, -17.0, 179.6, 5f, 0f);
+    assertTrue(ring.sampleAt(13 * SECOND, MAX_GAP, DRIFT, sample));
+    assertEquals(179.9, sample.longitude, 1e-9);
+  }
+
+  @Test
+  public void gapTooLongFallsBackToTheNearestFix() {
+    FixRing<String> ring = new FixRing<>(4);
+    ring.add("a", 10 * SECOND, 100_000, 12.0, 77.0, 4f, 1f);
+    ring.add("b", 30 * SECOND, 120_000, 12.5, 77.5, 6f, 3f);
+
+    assertTrue(ring.sampleAt(13 * SECOND, MAX_GAP, DRIFT, sample));
+    assertFalse(sample.interpolated);
+    assertEquals(10 * SECOND, sample.elapsedRealtimeNanos);
+    assertEquals(100_000, sample.timeMillis);
+    assertEquals(12.0, sample.latitude, 0);
+    assertEquals(77.0, sample.longitude, 0);
+    // grown by the larger of the drift and the fix's own speed
+    assertEquals(4f + 3 * 2f, sample.errorMeters, 1e-6f);
+    assertEquals(3 * SECOND, sample.ageNanos);
+
+    assertTrue(ring.sampleAt(26 * SECOND, MAX_GAP, DRIFT, sample));
+    assertFalse(sample.interpolated);
+    assertEquals(30 * SECOND, sample.elapsedRealtimeNanos);
+    assertEquals(6f + 4 * 3f, sample.errorMeters, 1e-6f);
+    assertEquals(4 * SECOND, sample.ageNanos);
+  }
+
+  @Test
+  public void shotOutsideTheRingUsesTheFixAtThatEnd() {
+    FixRing<String> ring = new FixRing<>(4);
+    ring.add("a", 10 * SECOND, 100_000, 12.0, 77.0, 4f, 0f);
+    ring.add("b", 12 * SECOND, 102_000, 12.2, 77.2, 4f, 0f);
+
+    assertTrue(ring.sampleAt(9 * SECOND, MAX_GAP, DRIFT, sample));
+    assertFalse(sample.interpolated);
+    assertEquals(12.0, sample.latitude, 0);
+    // before the first fix is as far from it as after the last one
+    assertEquals(SECOND, sample.ageNanos);
+
+    assertTrue(ring.sampleAt(15 * SECOND, MAX_GAP, DRIFT, sample));
+    assertFalse(sample.interpolated);
+    assertEquals(12.2, sample.latitude, 0);
+    assertEquals(4f + 3 * 2f, sample.errorMeters, 1e-6f);
+  }
+
+  @Test
+  public void lateFixIsSortedInAndTheOldestDropped() {
+    FixRing<String> ring = new FixRing<>(3);
+    ring.add("a", 10 * SECOND, 100_000, 10.0, 70.0, 4f, 0f);
+    ring.add("c", 14 * SECOND, 104_000, 14.0, 74.0, 4f, 0f);
+    // a network fix delivered after a newer GPS one
+    ring.add("b", 12 * SECOND, 102_000, 12.0, 72.0, 4f, 0f);
+    assertEquals("c", ring.getLatest());
+
+    assertTrue(ring.sampleAt(13 * SECOND, MAX_GAP, DRIFT, sample));
+    assertEquals(13.0, sample.latitude, 1e-9);
+
+    ring.add("d", 16 * SECOND, 106_000, 16.0, 76.0, 4f, 0f);
+    assertEquals(3, ring.size());
+    assertTrue(ring.sampleAt(0, MAX_GAP, DRIFT, sample));
+    assertEquals(12.0, sample.latitude, 0);
+    // older than everything in a full ring, not worth keeping
+    ring.add("z", SECOND, 91_000, 1.0, 61.0, 1f, 0f);
+    assertTrue(ring.sampleAt(0, MAX_GAP, DRIFT, sample));
+    assertEquals(12.0, sample.latitude, 0);
+  }
+
+  @Test
+  public void bestFixTradesAccuracyAgainstAge() {
+    FixRing<String> ring = new FixRing<>(4);
+    ring.add("old precise", 10 * SECOND, 100_000, 12.0, 77.0, 3f, 0f);
+    ring.add("coarse", 19 * SECOND, 109_000, 12.0, 77.0, 60f, 0f);
+    ring.add("recent", 18 * SECOND, 108_000, 12.0, 77.0, 8f, 0f);
+
+    // 3 + 10 s * 2 m/s loses to 8 + 2 s * 2 m/s
+    assertEquals("recent", ring.getBest(20 * SECOND, 30 * SECOND, 50f, DRIFT));
+    // without drift the old precise fix wins
+    assertEquals("old precise", ring.getBest(20 * SECOND, 30 * SECOND, 50f, 0));
+    // the coarse one only counts when it is allowed
+    assertEquals("coarse", ring.getBest(20 * SECOND, 1500_000_000L, 100f, DRIFT));
+    assertNull(ring.getBest(20 * SECOND, 1500_000_000L, 50f, DRIFT));
+
+    ring.clear();
+    assertNull(ring.getLatest());
+    assertNull(ring.getBest(20 * SECOND, 30 * SECOND, 50f, DRIFT));
+  }
+}
@@ -0,0 +1,191 @@
+package com.demo.notecam;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.Manifest;
+import android.app.Application;
+import android.content.Context;
+import android.location.Location;
+import android.location.LocationManager;
+import android.os.SystemClock;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowLocationManager;
+import org.robolectric.shadows.ShadowSystemClock;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+// LocationManager, permissions and the elapsed realtime clock come from Robolectric
+@RunWith(RobolectricTestRunner.class)
+public class LocationUtilTest {
+
+  private static final long SECOND = 1_000_000_000L;
+  private static final long MINUTE_MS = 60_000;
+
+  private final List<Location> delivered = new ArrayList<>();
+  private final LocationUtil.LocationResult result =
+      new LocationUtil.LocationResult() {
+        @Override
+        public void gotLocation(Location location) {
+          delivered.add(location);
+        }
+      };
+
+  private Application application;
+  private ShadowLocationManager provider;
+  private LocationUtil util;
+
+  @Before
+  public void setUp() {
+    // the clock starts near zero, leave room for fixes in the past
+    ShadowSystemClock.advanceBy(Duration.ofMinutes(10));
+    application = RuntimeEnvironment.getApplication();
+    provider =
+        shadowOf((LocationManager) application.getSystemService(Context.LOCATION_SERVICE));
+    util = new LocationUtil(application);
+  }
+
+  @Test
+  public void bestFixWeighsAccuracyAgainstAge() {
+    // 1.5 m/s of drift: 3 + 30 = 33 m, 10 + 6 = 16 m and 30 + 1.5 = 31.5 m
+    Location precise = fix(LocationManager.GPS_PROVIDER, 20 * SECOND, 3f);
+    Location recent = fix(LocationManager.GPS_PROVIDER, 4 * SECOND, 10f);
+    Location rough = fix(LocationManager.NETWORK_PROVIDER, SECOND, 30f);
+    util.onFix(precise);
+    util.onFix(recent);
+    util.onFix(rough);
+
+    assertSame(recent, util.getBestFix(MINUTE_MS, 50f));
+    assertSame(rough, util.getLatestFix());
+    // the only one accurate enough, however old
+    assertSame(precise, util.getBestFix(MINUTE_MS, 5f));
+    // too old for the age limit
+    assertNull(util.getBestFix(10_000, 5f));
+    // the only one young enough, however rough
+    assertSame(rough, util.getBestFix(2_000, 50f));
+  }
+
+  @Test
+  public void noFixYetIsNoBestFix() {
+    assertNull(util.getBestFix(MINUTE_MS, 50f));
+    util.onFix(null);
+    assertNull(util.getLatestFix());
+  }
+
+  @Test
+  public void fixesAgeWhileTheClockRuns() {
+    Location fix = fix(LocationManager.GPS_PROVIDER, 0, 5f);
+    util.onFix(fix);
+    assertSame(fix, util.getBestFix(30_000, 10f));
+    ShadowSystemClock.advanceBy(Duration.ofSeconds(31));
+    assertNull(util.getBestFix(30_000, 10f));
+  }
+
+  @Test
+  public void startListensOnEnabledProvidersAtThePowerRates() {
+    grantLocation();
+    provider.setProviderEnabled(LocationManager.GPS_PROVIDER, true);
+    provider.setProviderEnabled(LocationManager.NETWORK_PROVIDER, true);
+
+    assertTrue(util.start(LocationUtil.Power.BALANCED, result));
+    assertEquals(LocationUtil.Power.BALANCED, util.getPower());
+    assertRate(LocationManager.GPS_PROVIDER, 5000, 5f);
+    assertRate(LocationManager.NETWORK_PROVIDER, 5000, 5f);
+
+    // starting again swaps the rates rather than adding listeners
+    assertTrue(util.start(LocationUtil.Power.LOW_POWER, result));
+    assertEquals(2, provider.getLocationUpdateListeners().size());
+    assertRate(LocationManager.GPS_PROVIDER, 30000, 25f);
+    assertRate(LocationManager.NETWORK_PROVIDER, 30000, 25f);
+
+    util.stop();
+    assertTrue(provider.getLocationUpdateListeners().isEmpty());
+  }
+
+  @Test
+  public void coarsePermissionOnlyListensToTheNetwork() {
+    shadowOf(application).grantPermissions(Manifest.permission.ACCESS_COARSE_LOCATION);
+    provider.setProviderEnabled(LocationManager.GPS_PROVIDER, true);
+    provider.setProviderEnabled(LocationManager.NETWORK_PROVIDER, true);
+
+    assertTrue(util.start(LocationUtil.Power.HIGH_ACCURACY, result));
+    assertTrue(provider.getLocationUpdateListeners(LocationManager.GPS_PROVIDER).isEmpty());
+    assertRate(LocationManager.NETWORK_PROVIDER, 1000, 0f);
+  }
+
+  @Test
+  public void nothingEnabledListensToNothing() {
+    grantLocation();
+    assertFalse(util.start(LocationUtil.Power.HIGH_ACCURACY, result));
+    assertTrue(provider.getLocationUpdateListeners().isEmpty());
+    assertTrue(delivered.isEmpty());
+  }
+
+  @Test
+  public void lastKnownFixesAreSeededOldestFirst() {
+    grantLocation();
+    provider.setProviderEnabled(LocationManager.GPS_PROVIDER, true);
+    provider.setProviderEnabled(LocationManager.NETWORK_PROVIDER, true);
+    Location gps = fix(LocationManager.GPS_PROVIDER, 30 * SECOND, 5f);
+    Location network = fix(LocationManager.NETWORK_PROVIDER, 90 * SECOND, 40f);
+    provider.setLastKnownLocation(LocationManager.GPS_PROVIDER, gps);
+    provider.setLastKnownLocation(LocationManager.NETWORK_PROVIDER, network);
+
+    assertTrue(util.start(LocationUtil.Power.BALANCED, result));
+    // the callback ends on the latest, which is also what the ring holds last
+    assertEquals(2, delivered.size());
+    assertEquals(network.getTime(), delivered.get(0).getTime());
+    assertEquals(gps.getTime(), delivered.get(1).getTime());
+    assertEquals(gps.getTime(), util.getLatestFix().getTime());
+    // usable before the first live fix arrives
+    assertEquals(gps.getTime(), util.getBestFix(2 * MINUTE_MS, 10f).getTime());
+  }
+
+  @Test
+  public void seedingNeedsThePermission() {
+    provider.setProviderEnabled(LocationManager.GPS_PROVIDER, true);
+    provider.setLastKnownLocation(
+        LocationManager.GPS_PROVIDER, fix(LocationManager.GPS_PROVIDER, SECOND, 5f));
+
+    assertTrue(util.start(LocationUtil.Power.BALANCED, result));
+    assertTrue(delivered.isEmpty());
+    assertTrue(provider.getLocationUpdateListeners().isEmpty());
+  }
+
+  private void grantLocation() {
+    shadowOf(application)
+        .grantPermissions(
+            Manifest.permission.ACCESS_FINE_LOCATION, Manifest.permission.ACCESS_COARSE_LOCATION);
+  }
+
+  private void assertRate(String name, long minTimeMs, float minDistanceM) {
+    List<ShadowLocationManager.RoboLocationRequest> requests =
+        provider.getLegacyLocationRequests(name);
+    assertEquals(1, requests.size());
+    assertEquals(minTimeMs, requests.get(0).getIntervalMillis());
+    assertEquals(minDistanceM, requests.get(0).getMinUpdateDistanceMeters(), 0);
+  }
+
+  // a fix the given time before now, wall clock and elapsed realtime kept in step
+  private static Location fix(String name, long ageNanos, float accuracy) {
+    long elapsed = SystemClock.elapsedRealtimeNanos() - ageNanos;
+    Location location = new Location(name);
+    location.setLatitude(12.971599);
+    location.setLongitude(77.594566);
+    location.setAccuracy(accuracy);
+    location.setTime(1_792_332_309_250L + elapsed / 1_000_000);
+    location.setElapsedRealtimeNanos(elapsed);
+    return location;
+  }
+}
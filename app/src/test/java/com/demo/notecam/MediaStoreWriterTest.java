@@ -0,0 +1,213 @@
+package com.demo.notecam;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import android.net.Uri;
+import android.provider.MediaStore;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+// ContentValues, Uri and ContentProviderOperation are framework classes, hence Robolectric
+@RunWith(RobolectricTestRunner.class)
+public class MediaStoreWriterTest {
+
+  private static final String PATH = "DCIM/NoteCam";
+  private static final byte[] PHOTO = {(byte) 0xFF, (byte) 0xD8, 1, 2, 3, (byte) 0xFF, (byte) 0xD9};
+
+  private final FakeMediaStore store = new FakeMediaStore();
+
+  @Test
+  public void rowsStayPendingUntilTheirBatchIsPublished() throws IOException {
+    MediaStoreWriter writer = new MediaStoreWriter(store, PATH, 3);
+    List<Uri> uris = new ArrayList<>();
+    for (int i = 0; i < 3; i++) uris.add(writer.write("shot" + i, "image/jpeg", photo()));
+
+    for (Uri uri : uris) {
+      FakeMediaStore.Row row = store.row(uri);
+      assertTrue(row.isPending());
+      assertArrayEquals(PHOTO, row.data.toByteArray());
+      assertEquals(PATH, row.values.getAsString(MediaStore.Images.Media.RELATIVE_PATH));
+      assertEquals("image/jpeg", row.values.getAsString(MediaStore.MediaColumns.MIME_TYPE));
+    }
+    assertEquals(0, store.batches);
+    assertEquals(3, writer.getUnpublishedCount());
+
+    // the full batch goes out in one call before the next row is inserted
+    Uri fourth = writer.write("shot3", "image/jpeg", photo());
+    assertEquals(1, store.batches);
+    for (Uri uri : uris) assertFalse(store.row(uri).isPending());
+    assertTrue(store.row(fourth).isPending());
+    assertEquals(1, writer.getUnpublishedCount());
+
+    writer.flush();
+    assertEquals(2, store.batches);
+    assertEquals(0, store.pendingCount());
+    assertEquals(0, writer.getUnpublishedCount());
+    // nothing waiting, nothing sent
+    writer.flush();
+    assertEquals(2, store.batches);
+  }
+
+  @Test
+  public void batchingCutsResolverCallsPerPhoto() throws IOException {
+    MediaStoreWriter writer = new MediaStoreWriter(store, PATH, 8);
+    for (int i = 0; i < 8; i++) writer.write("shot" + i, "image/jpeg", photo());
+    writer.flush();
+    // an insert and an open per photo, one publish for all of them
+    assertEquals(17.0 / 8, writer.getCallsPerPhoto(), 1e-9);
+    assertEquals(8, store.inserts);
+    assertEquals(8, store.opens);
+    assertEquals(1, store.batches);
+    assertEquals(0, store.updates);
+  }
+
+  @Test
+  public void failedEncodeLeavesNoRow() {
+    MediaStoreWriter writer = new MediaStoreWriter(store, PATH, 8);
+    try {
+      writer.write("shot", "image/jpeg", stream -> false);
+      fail("expected the write to fail");
+    } catch (IOException expected) {
+      // the orphan row is cleaned up
+    }
+    assertTrue(store.rows.isEmpty());
+    assertEquals(1, store.deletes);
+    assertEquals(0, writer.getUnpublishedCount());
+  }
+
+  @Test
+  public void failedOpenLeavesNoRow() {
+    store.failOpen = true;
+    MediaStoreWriter writer = new MediaStoreWriter(store, PATH, 8);
+    try {
+      writer.write("shot", "image/jpeg", photo());
+      fail("expected the write to fail");
+    } catch (IOException expected) {
+      // the orphan row is cleaned up
+    }
+    assertTrue(store.rows.isEmpty());
+  }
+
+  @Test
+  public void failedInsertIsReported() {
+    store.failInsert = true;
+    MediaStoreWriter writer = new MediaStoreWriter(store, PATH, 8);
+    try {
+      writer.write("shot", "image/jpeg", photo());
+      fail("expected the write to fail");
+    } catch (IOException expected) {
+      // nothing to clean up
+    }
+    assertEquals(0, store.opens);
+    assertTrue(store.rows.isEmpty());
+  }
+
+  @Test
+  public void failedBatchPublishesRowsOneByOneAndDropsTheBadOne() throws IOException {
+    MediaStoreWriter writer = new MediaStoreWriter(store, PATH, 8);
+    Uri good = writer.write("good", "image/jpeg", photo());
+    Uri bad = writer.write("bad", "image/jpeg", photo());
+    store.failBatch = true;
+    store.failUpdates.add(bad);
+    try {
+      writer.flush();
+      fail("expected the publish to fail");
+    } catch (IOException expected) {
+      // one photo could not be published
+    }
+    assertFalse(store.row(good).isPending());
+    // a row that can't be published is deleted rather than left hidden for ever
+    assertFalse(store.rows.containsKey(bad));
+    assertEquals(0, writer.getUnpublishedCount());
+  }
+
+  @Test
+  public void failedPublishRefusesTheShotBeforeItsRowIsInserted() throws IOException {
+    MediaStoreWriter writer = new MediaStoreWriter(store, PATH, 1);
+    Uri earlier = writer.write("earlier", "image/jpeg", photo());
+    store.failBatch = true;
+    store.failUpdates.add(earlier);
+    try {
+      writer.write("next", "image/jpeg", photo());
+      fail("expected the write to fail");
+    } catch (IOException expected) {
+      // the publish of the earlier batch failed
+    }
+    // the refused shot never got a row, so retrying it can't leave a duplicate
+    assertTrue(store.rows.isEmpty());
+    assertEquals(1, store.inserts);
+
+    store.failBatch = false;
+    Uri retried = writer.write("next", "image/jpeg", photo());
+    writer.flush();
+    assertNotNull(store.row(retried));
+    assertFalse(store.row(retried).isPending());
+    assertEquals(1, store.rows.size());
+  }
+
+  @Test
+  public void listenersHearOnlyOnceTheRowIsPublished() throws IOException {
+    MediaStoreWriter writer = new MediaStoreWriter(store, PATH, 8);
+    List<Uri> heard = new ArrayList<>();
+    MediaStoreWriter.PublishListener listener =
+        (uri, published) -> {
+          // the row is visible by the time the listener runs
+          assertTrue(published);
+          assertFalse(store.row(uri).isPending());
+          heard.add(uri);
+        };
+    Uri first = writer.write("first", "image/jpeg", photo(), listener);
+    Uri second = writer.write("second", "image/jpeg", photo(), listener);
+    writer.write("quiet", "image/jpeg", photo());
+    assertTrue(heard.isEmpty());
+
+    writer.flush();
+    assertEquals(2, heard.size());
+    assertEquals(first, heard.get(0));
+    assertEquals(second, heard.get(1));
+    // each row is reported once
+    writer.flush();
+    assertEquals(2, heard.size());
+  }
+
+  @Test
+  public void listenerOfARowThatCouldNotBePublishedIsToldSo() throws IOException {
+    MediaStoreWriter writer = new MediaStoreWriter(store, PATH, 8);
+    List<Uri> published = new ArrayList<>();
+    List<Uri> dropped = new ArrayList<>();
+    MediaStoreWriter.PublishListener listener =
+        (uri, ok) -> (ok ? published : dropped).add(uri);
+    Uri good = writer.write("good", "image/jpeg", photo(), listener);
+    Uri bad = writer.write("bad", "image/jpeg", photo(), listener);
+    store.failBatch = true;
+    store.failUpdates.add(bad);
+    try {
+      writer.flush();
+      fail("expected the publish to fail");
+    } catch (IOException expected) {
+      // one photo could not be published
+    }
+    assertEquals(1, published.size());
+    assertEquals(good, published.get(0));
+    assertEquals(1, dropped.size());
+    assertEquals(bad, dropped.get(0));
+  }
+
+  private static MediaStoreWriter.ImageWriter photo() {
+    return stream -> {
+      stream.write(PHOTO);
+      return true;
+    };
+  }
+}
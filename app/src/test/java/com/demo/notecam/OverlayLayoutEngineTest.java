@@ -0,0 +1,131 @@
+package com.demo.notecam;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class OverlayLayoutEngineTest {
+
+  // every character 10 px wide at 20 px text, measurements counted
+  private static final class FixedWidthMeasurer implements TextMeasurer {
+    int calls;
+
+    @Override
+    public float getTextSize() {
+      return 20;
+    }
+
+    @Override
+    public float measure(String text) {
+      calls++;
+      return text.length() * 10;
+    }
+  }
+
+  private final FixedWidthMeasurer measurer = new FixedWidthMeasurer();
+  private final OverlayLayoutEngine engine = new OverlayLayoutEngine(measurer);
+
+  @Test
+  public void textScalesWithTheShortSide() {
+    OverlayTemplate template = template(OverlayTemplate.Corner.BOTTOM_LEFT);
+    assertEquals(80, engine.layout(4000, 3000, template).textSize, 1e-3f);
+    assertEquals(80, engine.layout(3000, 4000, template).textSize, 1e-3f);
+    assertEquals(163.2f, engine.layout(8160, 6120, template).textSize, 1e-3f);
+    assertEquals(12.8f, engine.layout(640, 480, template).textSize, 1e-3f);
+  }
+
+  @Test
+  public void tinyFramesKeepTheMinimumTextSize() {
+    assertEquals(
+        12, engine.layout(320, 240, template(OverlayTemplate.Corner.BOTTOM_LEFT)).textSize, 0);
+  }
+
+  @Test
+  public void bandFitsTheWidestLineInItsCorner() {
+    OverlayLayout layout = engine.layout(4000, 3000, template(OverlayTemplate.Corner.BOTTOM_LEFT));
+    // 80 px text is 4x the measurer: "Lat : " plus its 10 char sample is 640 px, 50 px padding
+    // either side; two 100 px lines and 50 px padding high
+    assertEquals(0, layout.left);
+    assertEquals(740, layout.right);
+    assertEquals(2750, layout.top);
+    assertEquals(3000, layout.bottom);
+    assertEquals(740, layout.getWidth());
+    assertEquals(250, layout.getHeight());
+    assertEquals(50, layout.textX[0], 1e-3f);
+    assertEquals(50 + 6 * 40, layout.valueX[0], 1e-3f);
+    assertEquals(2850, layout.baselines[0], 1e-3f);
+    assertEquals(2950, layout.baselines[1], 1e-3f);
+
+    layout = engine.layout(4000, 3000, template(OverlayTemplate.Corner.TOP_RIGHT));
+    assertEquals(3260, layout.left);
+    assertEquals(4000, layout.right);
+    assertEquals(0, layout.top);
+    assertEquals(250, layout.bottom);
+    assertEquals(3310, layout.textX[1], 1e-3f);
+    assertEquals(100, layout.baselines[0], 1e-3f);
+  }
+
+  @Test
+  public void bandIsClampedToTheFrame() {
+    OverlayTemplate wide =
+        new OverlayTemplate("wide", OverlayTemplate.Corner.BOTTOM_RIGHT)
+            .addLine("Site : ", OverlayTemplate.Field.SITE)
+            .addLine("Accuracy : ", OverlayTemplate.Field.ACCURACY)
+            .addLine("Time : ", OverlayTemplate.Field.TIME)
+            .addText("Note : a rather long device name");
+    OverlayLayout layout = engine.layout(200, 40, wide);
+    assertEquals(0, layout.left);
+    assertEquals(200, layout.right);
+    assertEquals(0, layout.top);
+    assertEquals(40, layout.bottom);
+  }
+
+  @Test
+  public void layoutsAreCachedAndTextMeasuredOncePerTemplate() {
+    OverlayTemplate template = template(OverlayTemplate.Corner.BOTTOM_LEFT);
+    OverlayLayout first = engine.layout(4000, 3000, template);
+    int measured = measurer.calls;
+    assertSame(first, engine.layout(4000, 3000, template));
+
+    // a new size reuses the measurements
+    OverlayLayout portrait = engine.layout(3000, 4000, template);
+    assertNotSame(first, portrait);
+    assertEquals(measured, measurer.calls);
+    // back to the first size through the map rather than the last-hit shortcut
+    assertSame(first, engine.layout(4000, 3000, template));
+    assertTrue(engine.toString(), engine.toString().contains("hits=2 misses=2 layouts=2"));
+
+    // a different template is a different layout at the same size
+    assertNotSame(first, engine.layout(4000, 3000, template(OverlayTemplate.Corner.BOTTOM_LEFT)));
+  }
+
+  @Test
+  public void leastRecentlyUsedLayoutsAreDropped() {
+    OverlayTemplate template = template(OverlayTemplate.Corner.BOTTOM_LEFT);
+    OverlayLayout first = engine.layout(1000, 1000, template);
+    for (int i = 1; i <= 16; i++) engine.layout(1000 + i, 1000, template);
+    assertNotSame(first, engine.layout(1000, 1000, template));
+    assertTrue(engine.toString(), engine.toString().contains("layouts=16"));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void templateIsFrozenOnceLaidOut() {
+    OverlayTemplate template = template(OverlayTemplate.Corner.BOTTOM_LEFT);
+    engine.layout(4000, 3000, template);
+    template.addText("late");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void emptyFrameIsRejected() {
+    engine.layout(0, 3000, template(OverlayTemplate.Corner.BOTTOM_LEFT));
+  }
+
+  private static OverlayTemplate template(OverlayTemplate.Corner corner) {
+    return new OverlayTemplate("test", corner)
+        .addLine("Lat : ", OverlayTemplate.Field.LATITUDE)
+        .addText("Note : X");
+  }
+}
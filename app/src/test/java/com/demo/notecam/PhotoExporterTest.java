@@ -0,0 +1,378 @@
+package com.demo.notecam;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.IntConsumer;
+
+// the exporter against a local HttpServer standing in for the endpoint, photos served from
+// memory. Log is a framework class, hence Robolectric
+@RunWith(RobolectricTestRunner.class)
+public class PhotoExporterTest {
+
+  private static final int CHUNK = 4096;
+  private static final long PHOTO_ID = 42;
+  private static final long TIMEOUT_MILLIS = 10_000;
+
+  @Rule public final TemporaryFolder folder = new TemporaryFolder();
+
+  private final Map<Long, byte[]> photos = new HashMap<>();
+  private final PhotoExporter.Source source =
+      id -> {
+        byte[] photo = photos.get(id);
+        if (photo == null) return null;
+        return new PhotoExporter.Content() {
+          @Override
+          public long length() {
+            return photo.length;
+          }
+
+          @Override
+          public String mimeType() {
+            return "image/jpeg";
+          }
+
+          @Override
+          public int read(long position, byte[] buffer, int offset, int length) {
+            if (position >= photo.length) return -1;
+            int count = (int) Math.min(length, photo.length - position);
+            System.arraycopy(photo, (int) position, buffer, offset, count);
+            return count;
+          }
+
+          @Override
+          public void close() {}
+        };
+      };
+
+  private final Endpoint endpoint = new Endpoint();
+  private HttpServer server;
+  private URL url;
+  private File cursorFile;
+  private PhotoCatalog catalog;
+
+  @Before
+  public void setUp() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/photos/", endpoint);
+    server.start();
+    url = new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/photos/");
+    cursorFile = folder.newFile("export.cursor");
+    catalog = new PhotoCatalog(folder.newFile("catalogue"));
+  }
+
+  @After
+  public void tearDown() {
+    server.stop(0);
+  }
+
+  @Test
+  public void photoGoesUpInChunksWithItsMetadata() throws Exception {
+    byte[] photo = addPhoto(PHOTO_ID, 10_000);
+    ExportCursor cursor = ExportCursor.open(cursorFile);
+    PhotoExporter exporter = exporter(cursor, 0, 3);
+    exporter.start(catalog);
+    awaitDone(cursor, PHOTO_ID);
+
+    assertEquals(3, endpoint.requests.size());
+    assertRange(endpoint.requests.get(0), 0, 4095, 10_000);
+    assertRange(endpoint.requests.get(1), 4096, 8191, 10_000);
+    assertRange(endpoint.requests.get(2), 8192, 9999, 10_000);
+    Request first = endpoint.requests.get(0);
+    assertEquals("/photos/42.jpg", first.path);
+    assertEquals("42", first.id);
+    assertEquals("image/jpeg", first.contentType);
+    assertArrayEquals(photo, endpoint.received("/photos/42.jpg"));
+    awaitStats(exporter, "uploaded=1 failed=0 done=1 acked=10000B");
+    assertEquals(3, exporter.getChunkLatency().getCount());
+  }
+
+  @Test
+  public void stoppedExportResumesFromTheCursor() throws Exception {
+    byte[] photo = addPhoto(PHOTO_ID, 12_000);
+    ExportCursor cursor = ExportCursor.open(cursorFile);
+    PhotoExporter exporter = exporter(cursor, 0, 3);
+    // stopped while the second chunk is in flight, which still counts
+    endpoint.onRequest =
+        count -> {
+          if (count == 2) exporter.stop();
+        };
+    exporter.start(catalog);
+    awaitOffset(cursor, PHOTO_ID, 8192);
+    assertFalse(cursor.isDone(PHOTO_ID));
+
+    // killed and started again: a fresh cursor read back from disk
+    endpoint.onRequest = null;
+    ExportCursor reopened = ExportCursor.open(cursorFile);
+    assertEquals(8192, reopened.getOffset(PHOTO_ID));
+    PhotoExporter restarted = exporter(reopened, 0, 3);
+    restarted.start(catalog);
+    awaitDone(reopened, PHOTO_ID);
+
+    assertEquals(3, endpoint.requests.size());
+    assertRange(endpoint.requests.get(2), 8192, 11_999, 12_000);
+    assertArrayEquals(photo, endpoint.received("/photos/42.jpg"));
+    assertTrue(restarted.toString(), restarted.toString().contains("resumed=1"));
+  }
+
+  @Test
+  public void conflictMovesTheUploadToTheServersOffset() throws Exception {
+    byte[] photo = addPhoto(PHOTO_ID, 10_000);
+    // an earlier session already got 6000 bytes across
+    endpoint.store("/photos/42.jpg", Arrays.copyOf(photo, 6000), 0);
+    endpoint.script.add(new Response(409, 6000, -1));
+    ExportCursor cursor = ExportCursor.open(cursorFile);
+    exporter(cursor, 0, 3).start(catalog);
+    awaitDone(cursor, PHOTO_ID);
+
+    assertEquals(2, endpoint.requests.size());
+    assertRange(endpoint.requests.get(1), 6000, 9999, 10_000);
+    assertArrayEquals(photo, endpoint.received("/photos/42.jpg"));
+  }
+
+  @Test
+  public void unsatisfiableRangeGoesBackToWhatTheServerHas() throws Exception {
+    byte[] photo = addPhoto(PHOTO_ID, 10_000);
+    ExportCursor cursor = ExportCursor.open(cursorFile);
+    // the cursor is ahead of the server, which lost the second chunk
+    cursor.advance(PHOTO_ID, 8192);
+    endpoint.store("/photos/42.jpg", Arrays.copyOf(photo, 4096), 0);
+    endpoint.script.add(new Response(416, 4096, -1));
+    exporter(cursor, 0, 3).start(catalog);
+    awaitDone(cursor, PHOTO_ID);
+
+    assertRange(endpoint.requests.get(0), 8192, 9999, 10_000);
+    assertRange(endpoint.requests.get(1), 4096, 8191, 10_000);
+    assertRange(endpoint.requests.get(2), 8192, 9999, 10_000);
+    assertArrayEquals(photo, endpoint.received("/photos/42.jpg"));
+  }
+
+  @Test
+  public void busyServerIsRetriedNoSoonerThanItAsks() throws Exception {
+    byte[] photo = addPhoto(PHOTO_ID, 1000);
+    endpoint.script.add(new Response(503, -1, 1));
+    endpoint.script.add(new Response(429, -1, -1));
+    ExportCursor cursor = ExportCursor.open(cursorFile);
+    PhotoExporter exporter = exporter(cursor, 0, 3);
+    exporter.start(catalog);
+    awaitDone(cursor, PHOTO_ID);
+
+    assertEquals(3, endpoint.requests.size());
+    long waited = endpoint.requests.get(1).arrivedNanos - endpoint.requests.get(0).arrivedNanos;
+    assertTrue("retried after " + waited + " ns", waited >= 1_000_000_000L);
+    assertArrayEquals(photo, endpoint.received("/photos/42.jpg"));
+    assertTrue(exporter.toString(), exporter.toString().contains("retries=2"));
+  }
+
+  @Test
+  public void successThatAcknowledgesNothingIsAFailedAttempt() throws Exception {
+    addPhoto(PHOTO_ID, 1000);
+    // used to be taken as progress and sent again for ever
+    endpoint.script.add(new Response(200, 0, -1));
+    endpoint.script.add(new Response(204, 0, -1));
+    ExportCursor cursor = ExportCursor.open(cursorFile);
+    PhotoExporter exporter = exporter(cursor, 0, 2);
+    exporter.start(catalog);
+    awaitStats(exporter, "failed=1");
+
+    assertEquals(2, endpoint.requests.size());
+    assertFalse(cursor.isDone(PHOTO_ID));
+    assertEquals(0, cursor.getOffset(PHOTO_ID));
+  }
+
+  @Test
+  public void clientErrorFailsThePhotoAndTheOthersCarryOn() throws Exception {
+    addPhoto(PHOTO_ID, 1000);
+    byte[] other = addPhoto(PHOTO_ID + 1, 1000);
+    endpoint.script.add(new Response(403, -1, -1));
+    ExportCursor cursor = ExportCursor.open(cursorFile);
+    PhotoExporter exporter = exporter(cursor, 0, 3);
+    exporter.start(catalog);
+    awaitDone(cursor, PHOTO_ID + 1);
+
+    assertFalse(cursor.isDone(PHOTO_ID));
+    assertArrayEquals(other, endpoint.received("/photos/43.jpg"));
+    awaitStats(exporter, "uploaded=1 failed=1");
+  }
+
+  @Test
+  public void bandwidthCapHoldsChunksBack() throws Exception {
+    byte[] photo = addPhoto(PHOTO_ID, 3 * 8192);
+    ExportCursor cursor = ExportCursor.open(cursorFile);
+    PhotoExporter exporter = exporter(cursor, 8192, 3);
+    long started = System.nanoTime();
+    exporter.start(catalog);
+    awaitDone(cursor, PHOTO_ID);
+    long elapsedMillis = (System.nanoTime() - started) / 1_000_000;
+
+    // a second's worth goes out straight away, the other two seconds' worth at the cap
+    assertTrue("took " + elapsedMillis + " ms", elapsedMillis >= 1900);
+    assertEquals(6, endpoint.requests.size());
+    assertArrayEquals(photo, endpoint.received("/photos/42.jpg"));
+    assertTrue(exporter.toString(), exporter.toString().contains("limit=8192B/s"));
+  }
+
+  private PhotoExporter exporter(ExportCursor cursor, long bytesPerSecond, int maxAttempts) {
+    return new PhotoExporter(url, source, cursor, 1, CHUNK, bytesPerSecond, maxAttempts);
+  }
+
+  private byte[] addPhoto(long id, int length) throws IOException {
+    byte[] photo = new byte[length];
+    for (int i = 0; i < length; i++) photo[i] = (byte) (i * 31 + id);
+    photos.put(id, photo);
+    catalog.add(new PhotoCatalog.Entry(id, 1_792_332_309_250L + id, "Pixel 7(Google)"));
+    return photo;
+  }
+
+  private static void assertRange(Request request, long first, long last, long length) {
+    assertEquals("bytes " + first + "-" + last + "/" + length, request.contentRange);
+  }
+
+  private static void awaitDone(ExportCursor cursor, long id) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+    while (!cursor.isDone(id)) {
+      assertTrue("photo " + id + " not exported in time", System.currentTimeMillis() < deadline);
+      Thread.sleep(10);
+    }
+  }
+
+  private static void awaitOffset(ExportCursor cursor, long id, long offset)
+      throws InterruptedException {
+    long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+    while (cursor.getOffset(id) != offset) {
+      assertTrue("cursor stuck at " + cursor.getOffset(id), System.currentTimeMillis() < deadline);
+      Thread.sleep(10);
+    }
+  }
+
+  // the counters move just after the cursor does
+  private static void awaitStats(PhotoExporter exporter, String stats)
+      throws InterruptedException {
+    long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+    while (!exporter.toString().contains(stats)) {
+      assertTrue(exporter.toString(), System.currentTimeMillis() < deadline);
+      Thread.sleep(10);
+    }
+  }
+
+  private static final class Request {
+    final String path;
+    final String contentRange;
+    final String contentType;
+    final String id;
+    final long arrivedNanos;
+
+    Request(HttpExchange exchange) {
+      path = exchange.getRequestURI().getPath();
+      contentRange = exchange.getRequestHeaders().getFirst("Content-Range");
+      contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+      id = exchange.getRequestHeaders().getFirst("X-NoteCam-Id");
+      arrivedNanos = System.nanoTime();
+    }
+  }
+
+  // a reply the endpoint gives instead of taking the chunk; -1 leaves a header out
+  private static final class Response {
+    final int status;
+    final long uploadOffset;
+    final long retryAfterSeconds;
+
+    Response(int status, long uploadOffset, long retryAfterSeconds) {
+      this.status = status;
+      this.uploadOffset = uploadOffset;
+      this.retryAfterSeconds = retryAfterSeconds;
+    }
+  }
+
+  // takes every chunk into a per-path file unless a scripted response is queued
+  private static final class Endpoint implements HttpHandler {
+    // read by the test while the server thread adds to them
+    final List<Request> requests = new CopyOnWriteArrayList<>();
+    final Queue<Response> script = new ConcurrentLinkedQueue<>();
+    final Map<String, byte[]> files = new HashMap<>();
+    volatile IntConsumer onRequest;
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+      Request request = new Request(exchange);
+      byte[] body = readAll(exchange.getRequestBody());
+      Response response;
+      int count;
+      synchronized (this) {
+        requests.add(request);
+        count = requests.size();
+        response = script.poll();
+        if (response == null) {
+          // "bytes first-last/length"
+          String first = request.contentRange.substring(6, request.contentRange.indexOf('-'));
+          store(request.path, body, Integer.parseInt(first));
+        }
+      }
+      IntConsumer hook = onRequest;
+      if (hook != null) hook.accept(count);
+      if (response == null) {
+        exchange.sendResponseHeaders(204, -1);
+      } else {
+        if (response.uploadOffset >= 0) {
+          exchange
+              .getResponseHeaders()
+              .set("Upload-Offset", String.valueOf(response.uploadOffset));
+        }
+        if (response.retryAfterSeconds >= 0) {
+          exchange
+              .getResponseHeaders()
+              .set("Retry-After", String.valueOf(response.retryAfterSeconds));
+        }
+        exchange.sendResponseHeaders(response.status, -1);
+      }
+      exchange.close();
+    }
+
+    synchronized void store(String path, byte[] data, int offset) {
+      byte[] file = files.get(path);
+      if (file == null) file = new byte[0];
+      file = Arrays.copyOf(file, Math.max(file.length, offset + data.length));
+      System.arraycopy(data, 0, file, offset, data.length);
+      files.put(path, file);
+    }
+
+    synchronized byte[] received(String path) {
+      return files.get(path);
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buffer = new byte[4096];
+      int read;
+      while ((read = in.read(buffer)) != -1) out.write(buffer, 0, read);
+      return out.toByteArray();
+    }
+  }
+}
@@ -0,0 +1,65 @@
+package com.demo.notecam;
+
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+// real sleeps, the bounds are loose enough for a busy machine
+public class TokenBucketTest {
+
+  @Test
+  public void unlimitedNeverWaits() throws InterruptedException {
+    TokenBucket bucket = new TokenBucket(0);
+    long started = System.nanoTime();
+    for (int i = 0; i < 100; i++) bucket.acquire(1 << 20);
+    assertTrue(millisSince(started) < 500);
+  }
+
+  @Test
+  public void aSecondsWorthGoesOutStraightAway() throws InterruptedException {
+    TokenBucket bucket = new TokenBucket(10_000);
+    long started = System.nanoTime();
+    bucket.acquire(4000);
+    bucket.acquire(6000);
+    assertTrue(millisSince(started) < 500);
+  }
+
+  @Test
+  public void overdrawnBucketSleepsOffTheDebt() throws InterruptedException {
+    TokenBucket bucket = new TokenBucket(10_000);
+    bucket.acquire(10_000);
+    long started = System.nanoTime();
+    // 5000 bytes of debt at 10000 B/s
+    bucket.acquire(5000);
+    long waited = millisSince(started);
+    assertTrue("waited " + waited + " ms", waited >= 450 && waited < 1500);
+  }
+
+  @Test
+  public void threadsShareTheCap() throws InterruptedException {
+    TokenBucket bucket = new TokenBucket(10_000);
+    bucket.acquire(10_000);
+    Thread[] threads = new Thread[4];
+    long started = System.nanoTime();
+    for (int i = 0; i < threads.length; i++) {
+      threads[i] =
+          new Thread(
+              () -> {
+                try {
+                  bucket.acquire(2500);
+                } catch (InterruptedException e) {
+                  Thread.currentThread().interrupt();
+                }
+              });
+      threads[i].start();
+    }
+    for (Thread thread : threads) thread.join();
+    // 10000 bytes between them takes a second whichever order they go in
+    long waited = millisSince(started);
+    assertTrue("waited " + waited + " ms", waited >= 900);
+  }
+
+  private static long millisSince(long startedNanos) {
+    return (System.nanoTime() - startedNanos) / 1_000_000;
+  }
+}
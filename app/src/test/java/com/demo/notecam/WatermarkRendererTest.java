@@ -0,0 +1,69 @@
+package com.demo.notecam;
+
+import static org.junit.Assert.assertTrue;
+
+import android.graphics.Bitmap;
+import android.location.Location;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+// Bitmap, Canvas and Location are framework classes, hence Robolectric
+@RunWith(RobolectricTestRunner.class)
+public class WatermarkRendererTest {
+
+  private static final long TIME_MILLIS = 1_792_332_309_250L;
+
+  private final WatermarkRenderer renderer =
+      new WatermarkRenderer(
+          new OverlayLayoutEngine(
+              new TextMeasurer() {
+                @Override
+                public float getTextSize() {
+                  return 80;
+                }
+
+                @Override
+                public float measure(String text) {
+                  return text.length() * 40;
+                }
+              }));
+
+  @Test
+  public void siteShotThenNoFixAtTheSameSizeGetTheirOwnBands() {
+    Bitmap photo = Bitmap.createBitmap(400, 300, Bitmap.Config.ARGB_8888);
+    renderer.draw(photo, 0, location(), 4f, TIME_MILLIS, "North Gate Yard");
+    // used to be handed the site band and fail on the missing position
+    renderer.draw(photo, 0, null, Float.NaN, TIME_MILLIS, null);
+    // site, latitude, longitude, accuracy and time, then the no-fix band's time
+    assertTrue(renderer.toString(), renderer.toString().contains("misses=2 fieldRedraws=6"));
+  }
+
+  @Test
+  public void noFixThenSiteShotAtTheSameSizeKeepsTheSiteLines() {
+    Bitmap photo = Bitmap.createBitmap(400, 300, Bitmap.Config.ARGB_8888);
+    renderer.draw(photo, 0, null, Float.NaN, TIME_MILLIS, null);
+    // used to reuse the no-fix band, drawing the time and nothing else
+    renderer.draw(photo, 0, location(), 4f, TIME_MILLIS, "North Gate Yard");
+    assertTrue(renderer.toString(), renderer.toString().contains("misses=2 fieldRedraws=6"));
+  }
+
+  @Test
+  public void sameTemplateAndSizeReuseTheBand() {
+    Bitmap photo = Bitmap.createBitmap(400, 300, Bitmap.Config.ARGB_8888);
+    renderer.draw(photo, 0, location(), 4f, TIME_MILLIS, null);
+    renderer.draw(photo, 0, location(), 4f, TIME_MILLIS, null);
+    // nothing changed between the shots, nothing redrawn
+    assertTrue(renderer.toString(), renderer.toString().contains("hits=1 misses=1 fieldRedraws=4"));
+  }
+
+  private static Location location() {
+    Location location = new Location("gps");
+    location.setLatitude(12.971599);
+    location.setLongitude(77.594566);
+    location.setAccuracy(4f);
+    location.setTime(TIME_MILLIS);
+    return location;
+  }
+}
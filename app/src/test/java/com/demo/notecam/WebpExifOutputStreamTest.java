@@ -0,0 +1,170 @@
+package com.demo.notecam;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// hand built RIFF files in the three layouts libwebp writes, run through the stream and split
+// back into chunks
+public class WebpExifOutputStreamTest {
+
+  private final ExifWriter exif = new ExifWriter().setMake("Google").setRotationDegrees(90);
+
+  @Test
+  public void lossyFileGetsAnExtendedHeaderAndTheExifChunk() throws IOException {
+    // frame tag, start code, 4032 x 3024 with the scale bits set
+    byte[] vp8 = payload(0x30, 0x01, 0x00, 0x9D, 0x01, 0x2A, 0xC0, 0x4F, 0xD0, 0xCB, 7, 8, 9);
+    byte[] webp = riff(chunk("VP8 ", vp8));
+
+    for (int chunk : new int[] {1, 5, webp.length}) {
+      List<Chunk> chunks = chunks(splice(webp, chunk));
+      assertEquals(3, chunks.size());
+      assertVp8x(chunks.get(0), 0x08, 4032, 3024);
+      assertEquals("VP8 ", chunks.get(1).fourCc);
+      assertArrayEquals(vp8, chunks.get(1).payload);
+      assertEquals("EXIF", chunks.get(2).fourCc);
+      assertArrayEquals(exif.buildTiff(), chunks.get(2).payload);
+    }
+  }
+
+  @Test
+  public void losslessFileKeepsItsAlphaFlag() throws IOException {
+    // signature, then 14 bit width - 1, 14 bit height - 1 and the alpha bit
+    int bits = (640 - 1) | (480 - 1) << 14 | 1 << 28;
+    byte[] vp8l =
+        payload(
+            0x2F, bits & 0xFF, bits >>> 8 & 0xFF, bits >>> 16 & 0xFF, bits >>> 24, 1, 2, 3, 4, 5);
+    List<Chunk> chunks = chunks(splice(riff(chunk("VP8L", vp8l)), 3));
+    assertVp8x(chunks.get(0), 0x18, 640, 480);
+    assertArrayEquals(vp8l, chunks.get(1).payload);
+    assertEquals("EXIF", chunks.get(2).fourCc);
+  }
+
+  @Test
+  public void extendedFileOnlyGainsTheFlagAndTheChunk() throws IOException {
+    byte[] vp8x = payload(0x10, 0, 0, 0, 0x7F, 0x02, 0, 0xDF, 0x01, 0);
+    byte[] alpha = payload(0, 1, 2);
+    byte[] vp8 = payload(0x30, 0x01, 0x00, 0x9D, 0x01, 0x2A, 0x80, 0x02, 0xE0, 0x01);
+    byte[] webp = riff(chunk("VP8X", vp8x), chunk("ALPH", alpha), chunk("VP8 ", vp8));
+
+    List<Chunk> chunks = chunks(splice(webp, 7));
+    assertEquals(4, chunks.size());
+    assertVp8x(chunks.get(0), 0x18, 640, 480);
+    assertArrayEquals(alpha, chunks.get(1).payload);
+    assertArrayEquals(vp8, chunks.get(2).payload);
+    assertArrayEquals(exif.buildTiff(), chunks.get(3).payload);
+  }
+
+  @Test
+  public void exifTheEncoderAnnouncedIsKept() throws IOException {
+    byte[] vp8x = payload(0x08, 0, 0, 0, 0x7F, 0x02, 0, 0xDF, 0x01, 0);
+    byte[] webp =
+        riff(chunk("VP8X", vp8x), chunk("VP8 ", payload(0, 0, 0, 0x9D, 1, 0x2A, 0, 0, 0, 0)));
+    assertArrayEquals(webp, splice(webp, 4));
+  }
+
+  @Test
+  public void notAWebpPassesThroughUntouched() throws IOException {
+    byte[] png = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n', 0, 0, 0, 13, 'I', 'H'};
+    assertArrayEquals(png, splice(png, 3));
+    byte[] wave = riff(chunk("fmt ", payload(1, 0, 2, 0, 0x44, 0xAC, 0, 0, 1, 2, 3, 4)));
+    System.arraycopy("WAVE".getBytes(StandardCharsets.US_ASCII), 0, wave, 8, 4);
+    assertArrayEquals(wave, splice(wave, wave.length));
+  }
+
+  @Test
+  public void finishWritesWhatWasHeldBack() throws IOException {
+    byte[] webp = riff(chunk("VP8 ", payload(0x30, 0x01, 0x00, 0x9D, 0x01, 0x2A, 0, 0, 0, 0)));
+    // the encoder gave up inside the first chunk header
+    byte[] cut = Arrays.copyOf(webp, 17);
+    assertArrayEquals(cut, splice(cut, 1));
+  }
+
+  private byte[] splice(byte[] webp, int chunk) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    WebpExifOutputStream stream = exif.wrapWebp(out);
+    for (int at = 0; at < webp.length; at += chunk) {
+      int length = Math.min(chunk, webp.length - at);
+      if (length == 1) {
+        stream.write(webp[at]);
+      } else {
+        stream.write(webp, at, length);
+      }
+    }
+    stream.finish();
+    return out.toByteArray();
+  }
+
+  private static void assertVp8x(Chunk chunk, int flags, int width, int height) {
+    assertEquals("VP8X", chunk.fourCc);
+    assertEquals(10, chunk.payload.length);
+    ByteBuffer payload = ByteBuffer.wrap(chunk.payload).order(ByteOrder.LITTLE_ENDIAN);
+    assertEquals(flags, payload.get(0));
+    assertEquals(width - 1, payload.getInt(4) & 0xFFFFFF);
+    assertEquals(height - 1, payload.getInt(6) >>> 8);
+  }
+
+  // the chunks of a RIFF WEBP file, checking the sizes add up on the way
+  private static List<Chunk> chunks(byte[] webp) {
+    ByteBuffer data = ByteBuffer.wrap(webp).order(ByteOrder.LITTLE_ENDIAN);
+    assertEquals("RIFF", fourCc(webp, 0));
+    assertEquals(webp.length - 8, data.getInt(4));
+    assertEquals("WEBP", fourCc(webp, 8));
+    List<Chunk> chunks = new ArrayList<>();
+    int at = 12;
+    while (at < webp.length) {
+      int size = data.getInt(at + 4);
+      chunks.add(
+          new Chunk(fourCc(webp, at), Arrays.copyOfRange(webp, at + 8, at + 8 + size)));
+      at += 8 + size + (size & 1);
+    }
+    assertEquals(webp.length, at);
+    return chunks;
+  }
+
+  private static byte[] riff(byte[]... chunks) {
+    ByteArrayOutputStream body = new ByteArrayOutputStream();
+    for (byte[] chunk : chunks) body.write(chunk, 0, chunk.length);
+    ByteBuffer out = ByteBuffer.allocate(12 + body.size()).order(ByteOrder.LITTLE_ENDIAN);
+    out.put("RIFF".getBytes(StandardCharsets.US_ASCII)).putInt(4 + body.size());
+    out.put("WEBP".getBytes(StandardCharsets.US_ASCII)).put(body.toByteArray());
+    return out.array();
+  }
+
+  private static byte[] chunk(String fourCc, byte[] payload) {
+    int padded = payload.length + (payload.length & 1);
+    ByteBuffer out = ByteBuffer.allocate(8 + padded).order(ByteOrder.LITTLE_ENDIAN);
+    out.put(fourCc.getBytes(StandardCharsets.US_ASCII)).putInt(payload.length).put(payload);
+    return out.array();
+  }
+
+  private static byte[] payload(int... values) {
+    byte[] bytes = new byte[values.length];
+    for (int i = 0; i < values.length; i++) bytes[i] = (byte) values[i];
+    return bytes;
+  }
+
+  private static String fourCc(byte[] data, int at) {
+    return new String(data, at, 4, StandardCharsets.US_ASCII);
+  }
+
+  private static final class Chunk {
+    final String fourCc;
+    final byte[] payload;
+
+    Chunk(String fourCc, byte[] payload) {
+      this.fourCc = fourCc;
+      this.payload = payload;
+    }
+  }
+}
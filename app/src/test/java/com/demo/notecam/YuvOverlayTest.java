@@ -0,0 +1,93 @@
+package com.demo.notecam;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public class YuvOverlayTest {
+
+  private static final int WIDTH = 40;
+  private static final int HEIGHT = 30;
+
+  @Test
+  public void rotatedFrameShowsTheSameBandAsAnUprightOne() {
+    GlyphAtlas atlas = atlas();
+    for (int rotation : new int[] {0, 90, 180, 270, -90, 450}) {
+      YuvFrame frame = new YuvFrame(WIDTH, HEIGHT);
+      boolean sideways = rotation % 180 != 0;
+      int displayWidth = sideways ? HEIGHT : WIDTH;
+      int displayHeight = sideways ? WIDTH : HEIGHT;
+      YuvFrame upright = new YuvFrame(displayWidth, displayHeight);
+
+      // a band along the bottom of the display with text running off its right edge
+      int top = displayHeight - 9;
+      YuvOverlay.fillRect(frame, rotation, 0, top, displayWidth, displayHeight, 200);
+      YuvOverlay.fillRect(upright, 0, top, displayWidth, displayHeight, 200);
+      int end = YuvOverlay.drawText(frame, rotation, atlas, "Lat 12.971599", 2, top + 6, 20);
+      assertEquals(end, YuvOverlay.drawText(upright, atlas, "Lat 12.971599", 2, top + 6, 20));
+      assertTrue("text should run off the display", end > displayWidth);
+
+      int drawn = 0;
+      for (int dy = 0; dy < displayHeight; dy++) {
+        for (int dx = 0; dx < displayWidth; dx++) {
+          int expected = upright.data[dy * displayWidth + dx] & 0xff;
+          int actual = frame.data[frameIndex(rotation, dx, dy)] & 0xff;
+          assertEquals("rotation " + rotation + " at " + dx + "," + dy, expected, actual);
+          if (expected != 0) drawn++;
+        }
+      }
+      assertEquals(displayWidth * 9, drawn);
+    }
+  }
+
+  @Test
+  public void rectOutsideTheDisplayIsClipped() {
+    YuvFrame frame = new YuvFrame(WIDTH, HEIGHT);
+    YuvOverlay.fillRect(frame, 90, -5, -5, HEIGHT + 5, WIDTH + 5, 255);
+    for (int i = 0; i < WIDTH * HEIGHT; i++) assertEquals(-1, frame.data[i]);
+    // chroma greyed over the whole frame, nothing written past it
+    for (int i = WIDTH * HEIGHT; i < frame.data.length; i++) assertEquals(-128, frame.data[i]);
+  }
+
+  // where display pixel (dx, dy) lives in a frame shown turned clockwise by rotation
+  private static int frameIndex(int rotation, int dx, int dy) {
+    int fx;
+    int fy;
+    switch (((rotation % 360) + 360) % 360) {
+      case 90:
+        fx = dy;
+        fy = HEIGHT - 1 - dx;
+        break;
+      case 180:
+        fx = WIDTH - 1 - dx;
+        fy = HEIGHT - 1 - dy;
+        break;
+      case 270:
+        fx = WIDTH - 1 - dy;
+        fy = dx;
+        break;
+      default:
+        fx = dx;
+        fy = dy;
+    }
+    return fy * WIDTH + fx;
+  }
+
+  // 4 pixel wide cells with a diagonal, so a glyph drawn mirrored or transposed looks different
+  private static GlyphAtlas atlas() {
+    int[] widths = new int[GlyphAtlas.LAST_CHAR - GlyphAtlas.FIRST_CHAR + 1];
+    Arrays.fill(widths, 4);
+    int stride = GlyphAtlas.totalWidth(widths);
+    int cellHeight = 7;
+    byte[] coverage = new byte[stride * cellHeight];
+    for (int row = 0; row < cellHeight; row++) {
+      for (int col = 0; col < stride; col++) {
+        if (col % 4 == row % 4 && col / 4 != 0) coverage[row * stride + col] = (byte) 255;
+      }
+    }
+    return new GlyphAtlas(cellHeight, 5, widths, coverage);
+  }
+}
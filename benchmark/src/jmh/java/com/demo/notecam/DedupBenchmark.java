@@ -0,0 +1,69 @@
+package com.demo.notecam;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// what the duplicate check adds to every shot on the decode stage: the perceptual hash of a
+// 192x256 thumbnail, SHA-256 of a 3 MB camera JPEG and a lookup in a year's worth of shots.
+// the three together are the per-frame cost
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DedupBenchmark {
+
+  private static final int THUMBNAIL_WIDTH = 192;
+  private static final int THUMBNAIL_HEIGHT = 256;
+  private static final int JPEG_BYTES = 3 * 1024 * 1024;
+  private static final int INDEXED_SHOTS = 10_000;
+
+  private final int[] thumbnail = new int[THUMBNAIL_WIDTH * THUMBNAIL_HEIGHT];
+  private final byte[] jpeg = new byte[JPEG_BYTES];
+  private final Random random = new Random(42);
+  private DuplicateIndex index;
+  private long perceptualHash;
+  private byte[] contentHash;
+
+  @Setup
+  public void setUp() throws IOException {
+    // a smooth gradient with noise, closer to a photographed page than random pixels
+    for (int y = 0; y < THUMBNAIL_HEIGHT; y++) {
+      for (int x = 0; x < THUMBNAIL_WIDTH; x++) {
+        int grey = Math.min(255, (x + y) / 2 + random.nextInt(16));
+        thumbnail[y * THUMBNAIL_WIDTH + x] = 0xFF000000 | grey << 16 | grey << 8 | grey;
+      }
+    }
+    random.nextBytes(jpeg);
+    index = DuplicateIndex.open(null, 6);
+    byte[] shot = new byte[64];
+    for (int i = 0; i < INDEXED_SHOTS; i++) {
+      random.nextBytes(shot);
+      index.add(random.nextLong(), DuplicateIndex.contentHash(shot, 0, shot.length));
+    }
+    perceptualHash = DuplicateIndex.perceptualHash(thumbnail, THUMBNAIL_WIDTH, THUMBNAIL_HEIGHT);
+    contentHash = DuplicateIndex.contentHash(jpeg, 0, jpeg.length);
+  }
+
+  @Benchmark
+  public long perceptualHash() {
+    return DuplicateIndex.perceptualHash(thumbnail, THUMBNAIL_WIDTH, THUMBNAIL_HEIGHT);
+  }
+
+  @Benchmark
+  public byte[] contentHash() {
+    return DuplicateIndex.contentHash(jpeg, 0, jpeg.length);
+  }
+
+  @Benchmark
+  public DuplicateIndex.Match lookup() {
+    return index.check(perceptualHash, contentHash);
+  }
+}
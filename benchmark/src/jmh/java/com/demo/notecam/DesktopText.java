@@ -0,0 +1,91 @@
+package com.demo.notecam;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.util.List;
+
+// stands in for Paint on a desktop JVM: AWT measures and rasterizes the glyphs, so the layout
+// and the YUV overlay run on the same kind of input they get on a device
+final class DesktopText {
+
+  private DesktopText() {}
+
+  static Font font(float textSize) {
+    return new Font(Font.SANS_SERIF, Font.PLAIN, 1).deriveFont(textSize);
+  }
+
+  static TextMeasurer measurer(float textSize) {
+    FontMetrics metrics = metrics(font(textSize));
+    return new TextMeasurer() {
+      @Override
+      public float getTextSize() {
+        return textSize;
+      }
+
+      @Override
+      public float measure(String text) {
+        return metrics.stringWidth(text);
+      }
+    };
+  }
+
+  // same strip Util.createGlyphAtlas renders, white on black so a grey level is the coverage
+  static GlyphAtlas glyphAtlas(int textSize) {
+    Font font = font(textSize);
+    FontMetrics metrics = metrics(font);
+    int ascent = metrics.getAscent();
+    int cellHeight = ascent + metrics.getDescent();
+    int[] widths = new int[GlyphAtlas.LAST_CHAR - GlyphAtlas.FIRST_CHAR + 1];
+    for (int i = 0; i < widths.length; i++) {
+      widths[i] = metrics.charWidth((char) (GlyphAtlas.FIRST_CHAR + i));
+    }
+    int stride = GlyphAtlas.totalWidth(widths);
+
+    BufferedImage strip = new BufferedImage(stride, cellHeight, BufferedImage.TYPE_BYTE_GRAY);
+    Graphics2D graphics = strip.createGraphics();
+    graphics.setRenderingHint(
+        RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+    graphics.setFont(font);
+    graphics.setColor(Color.WHITE);
+    int x = 0;
+    for (int i = 0; i < widths.length; i++) {
+      graphics.drawString(String.valueOf((char) (GlyphAtlas.FIRST_CHAR + i)), x, ascent);
+      x += widths[i];
+    }
+    graphics.dispose();
+    byte[] coverage = ((DataBufferByte) strip.getRaster().getDataBuffer()).getData();
+    return new GlyphAtlas(cellHeight, ascent, widths, coverage.clone());
+  }
+
+  // the band as WatermarkRenderer draws it onto a photo: white box, then each label and value.
+  // values[i] may be null for a line without one
+  static void drawBand(Graphics2D graphics, OverlayLayout layout, String[] values) {
+    graphics.setRenderingHint(
+        RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+    graphics.setColor(Color.WHITE);
+    graphics.fillRect(layout.left, layout.top, layout.getWidth(), layout.getHeight());
+    graphics.setColor(Color.BLACK);
+    graphics.setFont(font(layout.textSize));
+    List<OverlayTemplate.Line> lines = layout.template.lines;
+    for (int i = 0; i < lines.size(); i++) {
+      int baseline = Math.round(layout.baselines[i]);
+      graphics.drawString(lines.get(i).label, Math.round(layout.textX[i]), baseline);
+      if (values[i] != null) graphics.drawString(values[i], Math.round(layout.valueX[i]), baseline);
+    }
+  }
+
+  private static FontMetrics metrics(Font font) {
+    BufferedImage scratch = new BufferedImage(1, 1, BufferedImage.TYPE_BYTE_GRAY);
+    Graphics2D graphics = scratch.createGraphics();
+    try {
+      return graphics.getFontMetrics(font);
+    } finally {
+      graphics.dispose();
+    }
+  }
+}
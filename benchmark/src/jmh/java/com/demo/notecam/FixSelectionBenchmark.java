@@ -0,0 +1,54 @@
+package com.demo.notecam;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// picking a fix from a full history, as LocationUtil does for the preview (best recent fix)
+// and for every shot (position at the sensor timestamp). one fix a second, accuracy 3..50 m
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FixSelectionBenchmark {
+
+  private static final int HISTORY_SIZE = 64;
+  private static final long SECOND = 1_000_000_000L;
+  private static final long START = 1_000 * SECOND;
+
+  private final FixRing<Object> fixes = new FixRing<>(HISTORY_SIZE);
+  private final FixSample sample = new FixSample();
+  private final Random random = new Random(42);
+
+  @Setup
+  public void setUp() {
+    Random history = new Random(7);
+    for (int i = 0; i < HISTORY_SIZE; i++) {
+      fixes.add(
+          new Object(),
+          START + i * SECOND,
+          1_700_000_000_000L + i * 1000L,
+          12.97 + i * 1e-5,
+          77.59 + i * 1e-5,
+          3 + history.nextFloat() * 47,
+          1.2f);
+    }
+  }
+
+  @Benchmark
+  public Object bestFix() {
+    return fixes.getBest(START + HISTORY_SIZE * SECOND, 30 * SECOND, 50, 1.5);
+  }
+
+  @Benchmark
+  public boolean fixAtSensorTime() {
+    long at = START + (long) (random.nextDouble() * HISTORY_SIZE * SECOND);
+    return fixes.sampleAt(at, 10 * SECOND, 1.5, sample);
+  }
+}
@@ -0,0 +1,56 @@
+package com.demo.notecam;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+// the copy out of the camera's planes that every shot pays before it can be handed on:
+// a padded YUV_420_888 image with interleaved chroma, as most devices deliver it
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class FrameCopyBenchmark {
+
+  private static final int WIDTH = 4000;
+  private static final int HEIGHT = 3000;
+  private static final int ROW_PADDING = 64;
+  private static final int PIXEL_STRIDE = 2;
+
+  private ByteBuffer y;
+  private ByteBuffer u;
+  private ByteBuffer v;
+  private BytePool pool;
+
+  @Setup
+  public void setUp() {
+    int rowStride = WIDTH + ROW_PADDING;
+    y = ByteBuffer.allocateDirect(rowStride * HEIGHT);
+    u = ByteBuffer.allocateDirect(rowStride * HEIGHT / 2);
+    v = ByteBuffer.allocateDirect(rowStride * HEIGHT / 2);
+    pool = new BytePool(64L * 1024 * 1024);
+  }
+
+  @Benchmark
+  public YuvFrame copyPooled() {
+    byte[] buffer = pool.acquire(WIDTH * HEIGHT * 3 / 2);
+    YuvFrame frame = new YuvFrame(WIDTH, HEIGHT, buffer);
+    frame.copyFromPlanes(y, WIDTH + ROW_PADDING, u, v, WIDTH + ROW_PADDING, PIXEL_STRIDE);
+    pool.release(buffer);
+    return frame;
+  }
+
+  // what the copy costs when every shot allocates its own 18 MB
+  @Benchmark
+  public YuvFrame copyAllocating() {
+    YuvFrame frame = new YuvFrame(WIDTH, HEIGHT);
+    frame.copyFromPlanes(y, WIDTH + ROW_PADDING, u, v, WIDTH + ROW_PADDING, PIXEL_STRIDE);
+    return frame;
+  }
+}
@@ -0,0 +1,96 @@
+package com.demo.notecam;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// the site lookup made for every shot and every preview fix, against a million sites spread
+// over a country-sized box, as a national list of depots or poles would be. hits are fixes
+// next to a site, misses are fixes in the gaps, which search the most cells before giving up
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class GazetteerBenchmark {
+
+  private static final int SITES = 1_000_000;
+  private static final int QUERIES = 4096;
+  private static final double MIN_LATITUDE = 44;
+  private static final double MIN_LONGITUDE = 5;
+  private static final double SPAN_DEGREES = 6;
+  private static final double MAX_METERS = 250;
+
+  private final Random random = new Random(42);
+  private final double[] hits = new double[2 * QUERIES];
+  private final double[] misses = new double[2 * QUERIES];
+  private List<Gazetteer.Site> sites;
+  private File file;
+  private Gazetteer gazetteer;
+  private int next;
+
+  @Setup
+  public void setUp() throws IOException {
+    sites = new ArrayList<>(SITES);
+    for (int i = 0; i < SITES; i++) {
+      sites.add(
+          new Gazetteer.Site(
+              "Site " + i,
+              MIN_LATITUDE + random.nextDouble() * SPAN_DEGREES,
+              MIN_LONGITUDE + random.nextDouble() * SPAN_DEGREES));
+    }
+    for (int i = 0; i < QUERIES; i++) {
+      // within about 50 m of a site
+      Gazetteer.Site site = sites.get(random.nextInt(SITES));
+      hits[2 * i] = site.latitude + (random.nextDouble() - 0.5) * 1e-3;
+      hits[2 * i + 1] = site.longitude + (random.nextDouble() - 0.5) * 1e-3;
+      misses[2 * i] = MIN_LATITUDE + random.nextDouble() * SPAN_DEGREES;
+      misses[2 * i + 1] = MIN_LONGITUDE + random.nextDouble() * SPAN_DEGREES;
+    }
+    file = File.createTempFile("sites", ".index");
+    Gazetteer.build(sites, file);
+    gazetteer = Gazetteer.open(file);
+  }
+
+  @TearDown
+  public void tearDown() {
+    file.delete();
+  }
+
+  @Benchmark
+  public int nearestHit() {
+    int i = next++ & (QUERIES - 1);
+    return gazetteer.nearest(hits[2 * i], hits[2 * i + 1], MAX_METERS);
+  }
+
+  @Benchmark
+  public int nearestMiss() {
+    int i = next++ & (QUERIES - 1);
+    return gazetteer.nearest(misses[2 * i], misses[2 * i + 1], MAX_METERS);
+  }
+
+  @Benchmark
+  public String nearestName() {
+    int i = next++ & (QUERIES - 1);
+    int site = gazetteer.nearest(hits[2 * i], hits[2 * i + 1], MAX_METERS);
+    return site >= 0 ? gazetteer.getName(site) : null;
+  }
+
+  // rebuilding after the list changes, off the main thread at startup
+  @Benchmark
+  @BenchmarkMode(Mode.SingleShotTime)
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  public void build() throws IOException {
+    Gazetteer.build(sites, file);
+  }
+}
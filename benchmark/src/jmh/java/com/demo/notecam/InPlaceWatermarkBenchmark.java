@@ -0,0 +1,88 @@
+package com.demo.notecam;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import javax.imageio.ImageIO;
+
+// the annotate step of a 12 MP shot before and after the watermark was drawn in place: the old
+// addWaterMark decoded, copied the frame into a second mutable bitmap and drew on the copy; the
+// pipeline now decodes mutable and draws the band straight onto the decode. ImageIO and
+// BufferedImage stand in for BitmapFactory and Bitmap. gc.alloc.rate.norm is the per-shot
+// allocation, the copy shows up there as a second full frame. the encode afterwards is the
+// same for both and is left out
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class InPlaceWatermarkBenchmark {
+
+  private static final int WIDTH = 4000;
+  private static final int HEIGHT = 3000;
+  private static final OverlayTemplate TEMPLATE =
+      new OverlayTemplate("location", OverlayTemplate.Corner.BOTTOM_LEFT)
+          .addLine("Latitude : ", OverlayTemplate.Field.LATITUDE)
+          .addLine("Longitude : ", OverlayTemplate.Field.LONGITUDE)
+          .addLine("Accuracy : ", OverlayTemplate.Field.ACCURACY)
+          .addLine("Time : ", OverlayTemplate.Field.TIME)
+          .addText("Note : Pixel 7(Google)");
+  private static final String[] VALUES = {
+    "12.971599", "77.594566", "4.0 m (+/- 6 m)", "18-10-2026 14:05:09", null
+  };
+
+  private byte[] jpeg;
+  private OverlayLayout layout;
+
+  @Setup
+  public void setUp() throws IOException {
+    // a noisy gradient, so the decoder has real entropy-coded data to work through
+    BufferedImage photo = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_3BYTE_BGR);
+    Random random = new Random(42);
+    for (int y = 0; y < HEIGHT; y++) {
+      for (int x = 0; x < WIDTH; x++) {
+        int level = Math.min(255, (x + y) * 255 / (WIDTH + HEIGHT) + random.nextInt(24));
+        photo.setRGB(x, y, level << 16 | (255 - level) << 8 | level / 2);
+      }
+    }
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ImageIO.write(photo, "jpg", out);
+    jpeg = out.toByteArray();
+    layout = new OverlayLayoutEngine(DesktopText.measurer(80)).layout(WIDTH, HEIGHT, TEMPLATE);
+  }
+
+  @Benchmark
+  public BufferedImage decodeCopyAndDraw() throws IOException {
+    BufferedImage decoded = decode();
+    BufferedImage copy =
+        new BufferedImage(decoded.getWidth(), decoded.getHeight(), decoded.getType());
+    Graphics2D graphics = copy.createGraphics();
+    graphics.drawImage(decoded, 0, 0, null);
+    DesktopText.drawBand(graphics, layout, VALUES);
+    graphics.dispose();
+    return copy;
+  }
+
+  @Benchmark
+  public BufferedImage decodeAndDrawInPlace() throws IOException {
+    BufferedImage decoded = decode();
+    Graphics2D graphics = decoded.createGraphics();
+    DesktopText.drawBand(graphics, layout, VALUES);
+    graphics.dispose();
+    return decoded;
+  }
+
+  private BufferedImage decode() throws IOException {
+    return ImageIO.read(new ByteArrayInputStream(jpeg));
+  }
+}
@@ -0,0 +1,77 @@
+package com.demo.notecam;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+// the watermark as Util.drawWaterMark(YuvFrame, ...) lays it out and rasterizes it, on a 12 MP
+// frame. the template mirrors WatermarkRenderer.LOCATION_TEMPLATE, which needs Build
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class OverlayBenchmark {
+
+  private static final int WIDTH = 4000;
+  private static final int HEIGHT = 3000;
+  // more sizes than OverlayLayoutEngine caches, so cycling through them always misses
+  private static final int UNCACHED_SIZES = 20;
+  private static final OverlayTemplate TEMPLATE =
+      new OverlayTemplate("location", OverlayTemplate.Corner.BOTTOM_LEFT)
+          .addLine("Latitude : ", OverlayTemplate.Field.LATITUDE)
+          .addLine("Longitude : ", OverlayTemplate.Field.LONGITUDE)
+          .addLine("Accuracy : ", OverlayTemplate.Field.ACCURACY)
+          .addLine("Time : ", OverlayTemplate.Field.TIME)
+          .addText("Note : Pixel 7(Google)");
+  private static final String[] VALUES = {
+    "12.971599", "77.594566", "4.0 m (+/- 6 m)", "18-10-2026 14:05", null
+  };
+
+  private OverlayLayoutEngine engine;
+  private GlyphAtlas atlas;
+  private YuvFrame frame;
+  private int size;
+
+  @Setup
+  public void setUp() {
+    engine = new OverlayLayoutEngine(DesktopText.measurer(80));
+    OverlayLayout layout = engine.layout(WIDTH, HEIGHT, TEMPLATE);
+    atlas = DesktopText.glyphAtlas(Math.round(layout.textSize));
+    frame = new YuvFrame(WIDTH, HEIGHT);
+  }
+
+  @Benchmark
+  public OverlayLayout layoutCached() {
+    return engine.layout(WIDTH, HEIGHT, TEMPLATE);
+  }
+
+  @Benchmark
+  public OverlayLayout layoutUncachedSize() {
+    size = (size + 1) % UNCACHED_SIZES;
+    return engine.layout(WIDTH - size * 2, HEIGHT - size * 2, TEMPLATE);
+  }
+
+  @Benchmark
+  public YuvFrame rasterize() {
+    OverlayLayout layout = engine.layout(WIDTH, HEIGHT, TEMPLATE);
+    YuvOverlay.fillRect(
+        frame, layout.left, layout.top, layout.right, layout.bottom, YuvOverlay.LUMA_WHITE);
+    for (int i = 0; i < TEMPLATE.getLineCount(); i++) {
+      String text = TEMPLATE.lines.get(i).label;
+      if (VALUES[i] != null) text += VALUES[i];
+      YuvOverlay.drawText(
+          frame,
+          atlas,
+          text,
+          Math.round(layout.textX[i]),
+          Math.round(layout.baselines[i]),
+          YuvOverlay.LUMA_BLACK);
+    }
+    return frame;
+  }
+}
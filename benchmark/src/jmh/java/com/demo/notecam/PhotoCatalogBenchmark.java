@@ -0,0 +1,86 @@
+package com.demo.notecam;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// 100k synthetic shots: most around a few towns, the rest anywhere, spread over a year
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PhotoCatalogBenchmark {
+
+  private static final int ROWS = 100_000;
+  private static final long START = 1_672_531_200_000L;
+  private static final long YEAR = 365L * 24 * 60 * 60 * 1000;
+  private static final long WEEK = 7L * 24 * 60 * 60 * 1000;
+  private static final double[][] TOWNS = {
+    {12.97, 77.59}, {19.07, 72.87}, {28.61, 77.21}, {51.51, -0.13}, {-33.87, 151.21}
+  };
+
+  private PhotoCatalog catalog;
+  private final Random random = new Random(42);
+
+  @Setup
+  public void setUp() throws Exception {
+    catalog = new PhotoCatalog(null);
+    Random rows = new Random(7);
+    for (int i = 0; i < ROWS; i++) {
+      long time = START + (long) (rows.nextDouble() * YEAR);
+      if (i % 20 == 0) {
+        catalog.add(new PhotoCatalog.Entry(i, time, "bench"));
+      } else if (i % 5 == 0) {
+        double latitude = rows.nextDouble() * 160 - 80;
+        double longitude = rows.nextDouble() * 360 - 180;
+        catalog.add(new PhotoCatalog.Entry(i, time, latitude, longitude, 10, "bench"));
+      } else {
+        double[] town = TOWNS[rows.nextInt(TOWNS.length)];
+        // ~10 km spread
+        double latitude = town[0] + rows.nextGaussian() * 0.1;
+        double longitude = town[1] + rows.nextGaussian() * 0.1;
+        catalog.add(new PhotoCatalog.Entry(i, time, latitude, longitude, 10, "bench"));
+      }
+    }
+  }
+
+  private double[] somewhereInTown() {
+    double[] town = TOWNS[random.nextInt(TOWNS.length)];
+    return new double[] {
+      town[0] + random.nextGaussian() * 0.05, town[1] + random.nextGaussian() * 0.05
+    };
+  }
+
+  @Benchmark
+  public List<PhotoCatalog.Entry> near200mAnyTime() {
+    double[] here = somewhereInTown();
+    return catalog.queryNear(here[0], here[1], 200, Long.MIN_VALUE, Long.MAX_VALUE);
+  }
+
+  @Benchmark
+  public List<PhotoCatalog.Entry> near200mOneWeek() {
+    double[] here = somewhereInTown();
+    long from = START + (long) (random.nextDouble() * (YEAR - WEEK));
+    return catalog.queryNear(here[0], here[1], 200, from, from + WEEK);
+  }
+
+  @Benchmark
+  public List<PhotoCatalog.Entry> near5kmOneWeek() {
+    double[] here = somewhereInTown();
+    long from = START + (long) (random.nextDouble() * (YEAR - WEEK));
+    return catalog.queryNear(here[0], here[1], 5_000, from, from + WEEK);
+  }
+
+  @Benchmark
+  public List<PhotoCatalog.Entry> oneDay() {
+    long from = START + (long) (random.nextDouble() * (YEAR - WEEK));
+    return catalog.queryTime(from, from + WEEK / 7);
+  }
+}
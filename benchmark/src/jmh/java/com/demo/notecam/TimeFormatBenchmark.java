@@ -0,0 +1,60 @@
+package com.demo.notecam;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+// what the watermark and preview clock used to do, a formatter and a Calendar per call
+// (android.icu on the device, java.text here) with or without a once-a-minute cache in front,
+// against TimeFormatter writing into a char buffer. its runs move the clock on every call,
+// so the seconds change each time and the minute cache rolls over every 60 calls
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TimeFormatBenchmark {
+
+  private long cachedMinute = -1;
+  private String cachedTime;
+  private final TimeFormatter timeFormatter = new TimeFormatter();
+  private final char[] out = new char[TimeFormatter.SECONDS_LENGTH];
+  private long timeMillis = 1_700_000_000_000L;
+
+  @Benchmark
+  public String formatPerCall() {
+    return new SimpleDateFormat("dd-MM-yyyy HH:mm", Locale.getDefault())
+        .format(Calendar.getInstance().getTime());
+  }
+
+  @Benchmark
+  public String cachedPerMinute() {
+    long minute = System.currentTimeMillis() / 60_000;
+    if (minute != cachedMinute) {
+      cachedTime = formatPerCall();
+      cachedMinute = minute;
+    }
+    return cachedTime;
+  }
+
+  @Benchmark
+  public char[] timeFormatterSeconds() {
+    timeMillis += 1000;
+    timeFormatter.formatSeconds(timeMillis, out, 0);
+    return out;
+  }
+
+  // a new minute on every call, the cost of a rollover
+  @Benchmark
+  public char[] timeFormatterRollover() {
+    timeMillis += 60_000;
+    timeFormatter.formatMinutes(timeMillis, out, 0);
+    return out;
+  }
+}
@@ -0,0 +1,172 @@
+package com.demo.notecam;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+// the watermark on a 12 MP photo as the old Util.addWaterMark drew it against the band
+// WatermarkRenderer keeps: the old code made its paints and a SimpleDateFormat per shot and drew
+// the box and all five lines at fixed pixels; the renderer draws labels once, redraws only the
+// values that changed and blits the band. AWT stands in for Canvas and Paint, the band here is
+// a copy of WatermarkRenderer's logic since the real one needs Bitmap. both draw onto the same
+// photo in place, the bitmap copy the old code also made is InPlaceWatermarkBenchmark's concern
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class WatermarkBandBenchmark {
+
+  private static final int WIDTH = 4000;
+  private static final int HEIGHT = 3000;
+  private static final float TEXT_SIZE = 80;
+  private static final String NOTE = "Note : Pixel 7(Google)";
+  private static final OverlayTemplate TEMPLATE =
+      new OverlayTemplate("location", OverlayTemplate.Corner.BOTTOM_LEFT)
+          .addLine("Latitude : ", OverlayTemplate.Field.LATITUDE)
+          .addLine("Longitude : ", OverlayTemplate.Field.LONGITUDE)
+          .addLine("Accuracy : ", OverlayTemplate.Field.ACCURACY)
+          .addLine("Time : ", OverlayTemplate.Field.TIME)
+          .addText(NOTE);
+  // a walk of fixes, formatted up front so both sides pay the same for the numbers
+  private static final int FIXES = 64;
+
+  private final String[][] fixValues = new String[FIXES][];
+  private BufferedImage photo;
+  private OverlayLayout layout;
+  private BufferedImage band;
+  private Graphics2D bandGraphics;
+  private FontMetrics bandMetrics;
+  private final String[] bandValues = new String[TEMPLATE.getLineCount()];
+  private String time;
+  private int fix;
+
+  @Setup
+  public void setUp() {
+    photo = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_3BYTE_BGR);
+    for (int i = 0; i < FIXES; i++) {
+      double latitude = 12.971599 + i * 0.00001;
+      double longitude = 77.594566 - i * 0.00002;
+      fixValues[i] =
+          new String[] {
+            String.valueOf(latitude),
+            String.valueOf(longitude),
+            String.format(Locale.US, "%.1f m (+/- %d m)", 4.0 + i % 5, 6 + i % 7)
+          };
+    }
+    // once a minute, as OverlayFormatter caches it
+    time = new SimpleDateFormat("dd-MM-yyyy HH:mm", Locale.US).format(new Date());
+
+    layout =
+        new OverlayLayoutEngine(DesktopText.measurer(TEXT_SIZE)).layout(WIDTH, HEIGHT, TEMPLATE);
+    // same pixel format as the photo, like ARGB_8888 onto ARGB_8888 on the device, so AWT
+    // blits it as a plain copy rather than converting every pixel
+    band = new BufferedImage(layout.getWidth(), layout.getHeight(), photo.getType());
+    bandGraphics = band.createGraphics();
+    bandGraphics.setRenderingHint(
+        RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+    bandGraphics.setFont(DesktopText.font(layout.textSize));
+    bandMetrics = bandGraphics.getFontMetrics();
+    // renderStatic: white box and every label
+    bandGraphics.setColor(Color.WHITE);
+    bandGraphics.fillRect(0, 0, band.getWidth(), band.getHeight());
+    bandGraphics.setColor(Color.BLACK);
+    List<OverlayTemplate.Line> lines = layout.template.lines;
+    for (int i = 0; i < lines.size(); i++) {
+      bandGraphics.drawString(
+          lines.get(i).label,
+          Math.round(layout.textX[i] - layout.left),
+          Math.round(layout.baselines[i] - layout.top));
+    }
+  }
+
+  // the old per-shot path, the time formatted with a new SimpleDateFormat as getCurrentTime did
+  @Benchmark
+  public BufferedImage addWaterMark() {
+    String[] values = nextFix();
+    Font font = DesktopText.font(TEXT_SIZE);
+    String now =
+        new SimpleDateFormat("dd-MM-yyyy HH:mm", Locale.getDefault())
+            .format(Calendar.getInstance().getTime());
+    int h = photo.getHeight();
+    Graphics2D graphics = photo.createGraphics();
+    graphics.setRenderingHint(
+        RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+    graphics.setColor(Color.WHITE);
+    graphics.fillRect(0, h - 550, 1000, 550);
+    graphics.setColor(Color.BLACK);
+    graphics.setFont(font);
+    graphics.drawString("Latitude : " + values[0], 50, h - 450);
+    graphics.drawString("Longitude : " + values[1], 50, h - 350);
+    graphics.drawString("Accuracy : " + values[2], 50, h - 250);
+    graphics.drawString("Time : " + now, 50, h - 150);
+    graphics.drawString(NOTE, 50, h - 50);
+    graphics.dispose();
+    return photo;
+  }
+
+  // a new fix for every shot: position and accuracy redrawn, the time is the same minute
+  @Benchmark
+  public BufferedImage cachedBandNewFix() {
+    String[] values = nextFix();
+    update(0, values[0]);
+    update(1, values[1]);
+    update(2, values[2]);
+    update(3, time);
+    return blit();
+  }
+
+  // a burst on one fix: nothing to redraw, only the blit
+  @Benchmark
+  public BufferedImage cachedBandSameFix() {
+    String[] values = fixValues[0];
+    update(0, values[0]);
+    update(1, values[1]);
+    update(2, values[2]);
+    update(3, time);
+    return blit();
+  }
+
+  private String[] nextFix() {
+    fix = (fix + 1) % FIXES;
+    return fixValues[fix];
+  }
+
+  // WatermarkRenderer.update: wipe the value's line back to white and draw the new text
+  private void update(int line, String value) {
+    if (value.equals(bandValues[line])) return;
+    int x = Math.round(layout.valueX[line] - layout.left);
+    int baseline = Math.round(layout.baselines[line] - layout.top);
+    bandGraphics.setColor(Color.WHITE);
+    bandGraphics.fillRect(
+        x,
+        baseline - bandMetrics.getAscent(),
+        band.getWidth() - x,
+        bandMetrics.getAscent() + bandMetrics.getDescent());
+    bandGraphics.setColor(Color.BLACK);
+    bandGraphics.drawString(value, x, baseline);
+    bandValues[line] = value;
+  }
+
+  private BufferedImage blit() {
+    Graphics2D graphics = photo.createGraphics();
+    graphics.drawImage(band, layout.left, layout.top, null);
+    graphics.dispose();
+    return photo;
+  }
+}